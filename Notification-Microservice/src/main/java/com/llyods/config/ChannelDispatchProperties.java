@@ -0,0 +1,33 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "pubsub.dispatch")
+public class ChannelDispatchProperties {
+
+    /**
+     * Settings applied to any stream without its own {@code dispatch} entry.
+     */
+    private Dispatch defaults = new Dispatch();
+
+    public enum Mode {
+        DIRECT,
+        EXECUTOR,
+        VIRTUAL
+    }
+
+    @Getter
+    @Setter
+    public static class Dispatch {
+
+        private Mode mode = Mode.DIRECT;
+
+        private int maxConcurrency = 4;
+
+        private int queueCapacity = 100;
+    }
+}
@@ -0,0 +1,63 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.dead-letter")
+public class DeadLetterProperties {
+
+    /**
+     * Pub/Sub topic dead letters are also published to; not published when blank.
+     */
+    private String topic;
+
+    /**
+     * Dead-letter notifications whose retries ran out instead of handing them back to Pub/Sub.
+     * Only applies while the journal is enabled, so nothing is dropped without a local record.
+     */
+    private boolean afterRetries = true;
+
+    private Journal journal = new Journal();
+
+    private Replay replay = new Replay();
+
+    @Getter
+    @Setter
+    public static class Journal {
+
+        private boolean enabled = true;
+
+        private Path directory = Path.of("data", "dead-letters");
+
+        /**
+         * Size of each memory-mapped segment file; a dead letter must fit in one.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(8);
+
+        /**
+         * Segments kept on disk; the oldest is deleted, replayed or not, when a new one would exceed it.
+         */
+        private int maxSegments = 16;
+    }
+
+    @Getter
+    @Setter
+    public static class Replay {
+
+        /**
+         * Dead letters read and sent together, grouped by stream.
+         */
+        private int batchSize = 20;
+
+        /**
+         * Upper bound on replayed sends per second, so a replay after an outage does not flood the relay.
+         */
+        private double ratePerSecond = 5;
+    }
+}
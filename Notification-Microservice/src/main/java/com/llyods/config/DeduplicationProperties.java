@@ -0,0 +1,38 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.dedup")
+public class DeduplicationProperties {
+
+    public enum Key {
+        /**
+         * Pub/Sub message ID; catches redeliveries of the same message.
+         */
+        MESSAGE_ID,
+        /**
+         * SHA-256 of the message data; also catches the same notification published twice.
+         */
+        PAYLOAD_HASH
+    }
+
+    private boolean enabled = true;
+
+    private Key key = Key.MESSAGE_ID;
+
+    /**
+     * Upper bound on remembered keys; the least valuable entries are evicted beyond it.
+     */
+    private long maximumSize = 100_000;
+
+    /**
+     * How long a delivered notification is remembered. Should cover the subscription's redelivery window.
+     */
+    private Duration ttl = Duration.ofMinutes(10);
+}
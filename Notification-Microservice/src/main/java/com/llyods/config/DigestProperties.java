@@ -0,0 +1,49 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.digest")
+public class DigestProperties {
+
+    /**
+     * Coalesce notifications of {@link #types} for the same recipient into one digest email.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Notification types (lower case) that may be coalesced. High priority notifications, such as
+     * OTPs and password resets, are never coalesced, even if listed.
+     */
+    private Set<String> types = new HashSet<>(Set.of("transactioncomplete"));
+
+    /**
+     * How long a recipient's digest stays open after its first notification. Must stay well inside
+     * the subscription's ack deadline extension.
+     */
+    private Duration window = Duration.ofSeconds(30);
+
+    /**
+     * Notifications per digest; a full digest is sent straight away.
+     */
+    private int maxItems = 20;
+
+    private String template = "transactionDigestTemplate";
+
+    /**
+     * Subject of a digest; {@code %d} is replaced by the number of notifications in it.
+     */
+    private String subject = "Your %d recent transactions";
+
+    /**
+     * Threads sending digests whose window has closed.
+     */
+    private int senders = 2;
+}
@@ -0,0 +1,122 @@
+package com.llyods.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Builds the input channel for a subscription according to its configured dispatch mode.
+ * Executor backed channels hand work off the Pub/Sub callback thread; once the queue is full the
+ * callback thread runs or waits for the work itself, so the subscriber is throttled rather than
+ * buffering without bound.
+ */
+@Slf4j
+@Component
+public class DispatchChannelFactory implements DisposableBean {
+
+    private final ChannelDispatchProperties properties;
+    private final List<ThreadPoolTaskExecutor> pools = new CopyOnWriteArrayList<>();
+    private final List<ExecutorService> virtualExecutors = new CopyOnWriteArrayList<>();
+
+    public DispatchChannelFactory(ChannelDispatchProperties properties) {
+        this.properties = properties;
+    }
+
+    public MessageChannel create(String name, ChannelDispatchProperties.Dispatch dispatch) {
+        if (dispatch == null) {
+            dispatch = properties.getDefaults();
+        }
+        log.info("Creating {} input channel for {} subscription (maxConcurrency: {}, queueCapacity: {})",
+                dispatch.getMode(), name, dispatch.getMaxConcurrency(), dispatch.getQueueCapacity());
+
+        switch (dispatch.getMode()) {
+            case EXECUTOR:
+                return new ExecutorChannel(threadPool(name, dispatch));
+            case VIRTUAL:
+                return new ExecutorChannel(virtualThreads(name, dispatch));
+            default:
+                return new DirectChannel();
+        }
+    }
+
+    private Executor threadPool(String name, ChannelDispatchProperties.Dispatch dispatch) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(dispatch.getMaxConcurrency());
+        executor.setMaxPoolSize(dispatch.getMaxConcurrency());
+        executor.setQueueCapacity(dispatch.getQueueCapacity());
+        executor.setThreadNamePrefix(name + "-dispatch-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        pools.add(executor);
+        return executor;
+    }
+
+    private Executor virtualThreads(String name, ChannelDispatchProperties.Dispatch dispatch) {
+        try {
+            // Looked up reflectively so the service still builds and runs on a Java 17 runtime.
+            ExecutorService delegate = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            virtualExecutors.add(delegate);
+            return new BoundedExecutor(delegate, dispatch.getMaxConcurrency(), dispatch.getQueueCapacity());
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads are not available on this runtime, using a thread pool for {} subscription", name);
+            return threadPool(name, dispatch);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pools.forEach(ThreadPoolTaskExecutor::shutdown);
+        virtualExecutors.forEach(ExecutorService::shutdown);
+    }
+
+    /**
+     * Caps a thread-per-task executor: at most {@code maxConcurrency} tasks run at once and at most
+     * {@code queueCapacity} more may be waiting. Submitting beyond that blocks the caller.
+     */
+    static class BoundedExecutor implements Executor {
+
+        private final Executor delegate;
+        private final Semaphore admitted;
+        private final Semaphore running;
+
+        BoundedExecutor(Executor delegate, int maxConcurrency, int queueCapacity) {
+            this.delegate = delegate;
+            this.admitted = new Semaphore(maxConcurrency + queueCapacity);
+            this.running = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            admitted.acquireUninterruptibly();
+            try {
+                delegate.execute(() -> {
+                    running.acquireUninterruptibly();
+                    try {
+                        task.run();
+                    } finally {
+                        running.release();
+                        admitted.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                admitted.release();
+                throw e;
+            }
+        }
+    }
+}
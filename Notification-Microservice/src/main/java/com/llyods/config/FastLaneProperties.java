@@ -0,0 +1,63 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.fast-lane")
+public class FastLaneProperties {
+
+    /**
+     * Send notifications rendered with one of {@link #templates} on their own workers, SMTP
+     * connections and retry budget instead of the shared ones.
+     */
+    private boolean enabled = false;
+
+    private Set<String> templates = new HashSet<>(Set.of("otpTemplate", "passwordResetTemplate"));
+
+    /**
+     * Worker threads that only send fast lane notifications.
+     */
+    private int workers = 4;
+
+    /**
+     * Notifications waiting for a fast lane worker. Submitting to a full queue blocks the caller.
+     */
+    private int queueCapacity = 200;
+
+    /**
+     * How long after publishing a code is still worth sending. Older notifications are acked and
+     * dropped instead.
+     */
+    private Duration validity = Duration.ofMinutes(5);
+
+    /**
+     * SMTP connections used only by the fast lane.
+     */
+    private MailPoolProperties pool = new MailPoolProperties();
+
+    private Retry retry = new Retry();
+
+    /**
+     * In-process retries made by the fast lane workers. Once they are used up the message is handed
+     * back to Pub/Sub, and a redelivery that arrives after {@link #validity} is dropped.
+     */
+    @Getter
+    @Setter
+    public static class Retry {
+
+        private int maxAttempts = 2;
+
+        private Duration delay = Duration.ofMillis(200);
+
+        private double multiplier = 2.0;
+
+        private Duration maxDelay = Duration.ofSeconds(1);
+    }
+}
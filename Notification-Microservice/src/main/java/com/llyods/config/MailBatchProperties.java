@@ -0,0 +1,38 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.mail.batch")
+public class MailBatchProperties {
+
+    /**
+     * When disabled, messages submitted for batching are sent one at a time on the calling thread.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Messages sent over one SMTP session at most.
+     */
+    private int maxSize = 50;
+
+    /**
+     * How long a batch stays open for more messages after its first one arrives.
+     */
+    private Duration window = Duration.ofMillis(20);
+
+    /**
+     * Batches sent concurrently. Should not exceed {@code notification.mail.pool.size}.
+     */
+    private int senders = 4;
+
+    /**
+     * Messages waiting to join a batch. Submitting to a full queue blocks the caller.
+     */
+    private int queueCapacity = 1000;
+}
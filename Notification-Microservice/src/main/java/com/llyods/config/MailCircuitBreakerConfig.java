@@ -0,0 +1,81 @@
+package com.llyods.config;
+
+import com.llyods.mail.CircuitBreakingMailSender;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Circuit breaker around the SMTP relay. Its state and call counts are published as
+ * {@code resilience4j.circuitbreaker.*} meters and through the {@code mailCircuitBreaker} health
+ * contributor.
+ */
+@Slf4j
+@Configuration
+public class MailCircuitBreakerConfig {
+
+    static final String BREAKER_NAME = "smtp";
+
+    @Bean
+    public CircuitBreaker mailCircuitBreaker(MailCircuitBreakerProperties properties, MeterRegistry meterRegistry) {
+        log.info("Configuring SMTP circuit breaker (failureRate: {}%, slowCallRate: {}% over {}, window: {}, open for: {}, probes: {}, openAction: {}, enabled: {})",
+                properties.getFailureRateThreshold(), properties.getSlowCallRateThreshold(), properties.getSlowCallDuration(),
+                properties.getSlidingWindowSize(), properties.getWaitInOpenState(), properties.getPermittedCallsInHalfOpenState(),
+                properties.getOpenAction(), properties.isEnabled());
+
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(circuitBreakerConfig(properties));
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+
+        CircuitBreaker circuitBreaker = registry.circuitBreaker(BREAKER_NAME);
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("SMTP circuit breaker {}", event.getStateTransition()));
+        if (!properties.isEnabled()) {
+            circuitBreaker.transitionToDisabledState();
+        }
+        return circuitBreaker;
+    }
+
+    @Bean
+    public HealthIndicator mailCircuitBreakerHealthIndicator(CircuitBreaker mailCircuitBreaker) {
+        return () -> {
+            CircuitBreaker.Metrics metrics = mailCircuitBreaker.getMetrics();
+            // OPEN is reported as its own status rather than DOWN, so an outage at the relay does
+            // not get the pod restarted or taken out of service
+            Health.Builder health = switch (mailCircuitBreaker.getState()) {
+                case OPEN, FORCED_OPEN -> Health.status("CIRCUIT_OPEN");
+                case HALF_OPEN -> Health.status("CIRCUIT_HALF_OPEN");
+                default -> Health.up();
+            };
+            return health
+                    .withDetail("state", mailCircuitBreaker.getState())
+                    .withDetail("failureRate", metrics.getFailureRate())
+                    .withDetail("slowCallRate", metrics.getSlowCallRate())
+                    .withDetail("bufferedCalls", metrics.getNumberOfBufferedCalls())
+                    .withDetail("notPermittedCalls", metrics.getNumberOfNotPermittedCalls())
+                    .build();
+        };
+    }
+
+    static CircuitBreakerConfig circuitBreakerConfig(MailCircuitBreakerProperties properties) {
+        return CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(properties.getSlidingWindowSize())
+                .minimumNumberOfCalls(properties.getMinimumNumberOfCalls())
+                .failureRateThreshold(properties.getFailureRateThreshold())
+                .slowCallRateThreshold(properties.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(properties.getSlowCallDuration())
+                .waitDurationInOpenState(properties.getWaitInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(properties.getPermittedCallsInHalfOpenState())
+                // with ingestion paused no send would arrive to move the breaker on, so it moves itself
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .recordException(CircuitBreakingMailSender::isRelayFailure)
+                .build();
+    }
+}
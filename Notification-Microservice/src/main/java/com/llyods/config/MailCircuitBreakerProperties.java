@@ -0,0 +1,66 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.mail.circuit-breaker")
+public class MailCircuitBreakerProperties {
+
+    /**
+     * What ingestion does while the breaker is open.
+     */
+    public enum OpenAction {
+        /** Keep consuming and hand every message straight back to Pub/Sub. */
+        NACK,
+        /** Stop the subscriptions until the breaker lets probe sends through again. */
+        PAUSE
+    }
+
+    /**
+     * When disabled every send goes to the relay and failures are only retried.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Percentage of failed sends in the sliding window that opens the breaker.
+     */
+    private float failureRateThreshold = 50;
+
+    /**
+     * Percentage of sends slower than {@code slowCallDuration} that opens the breaker.
+     */
+    private float slowCallRateThreshold = 80;
+
+    /**
+     * Sends taking longer than this count as slow. Keep it below {@code mail.smtp.connectiontimeout}
+     * so a relay that stops answering opens the breaker before every send times out.
+     */
+    private Duration slowCallDuration = Duration.ofSeconds(8);
+
+    /**
+     * Number of most recent sends the failure and slow-call rates are computed over.
+     */
+    private int slidingWindowSize = 20;
+
+    /**
+     * Sends needed in the window before the rates are evaluated.
+     */
+    private int minimumNumberOfCalls = 10;
+
+    /**
+     * How long the breaker stays open before letting probe sends through.
+     */
+    private Duration waitInOpenState = Duration.ofSeconds(30);
+
+    /**
+     * Probe sends allowed while half-open. The breaker closes if they succeed and opens again if not.
+     */
+    private int permittedCallsInHalfOpenState = 3;
+
+    private OpenAction openAction = OpenAction.PAUSE;
+}
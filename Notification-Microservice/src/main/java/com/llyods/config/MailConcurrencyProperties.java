@@ -0,0 +1,76 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.mail.concurrency")
+public class MailConcurrencyProperties {
+
+    public enum Algorithm {
+        /**
+         * Scales the limit by how far recent latency has moved from its long-term baseline.
+         */
+        GRADIENT,
+        /**
+         * Adds one while sends stay fast and error free, multiplies by {@code backoff-ratio} otherwise.
+         */
+        AIMD
+    }
+
+    /**
+     * When disabled, sends are only bounded by the connection pool.
+     */
+    private boolean enabled = false;
+
+    private Algorithm algorithm = Algorithm.GRADIENT;
+
+    private int initialLimit = 4;
+
+    private int minLimit = 1;
+
+    /**
+     * Upper bound on the limit. Keep {@code notification.mail.pool.size} at least this large, or
+     * sends queue for connections instead.
+     */
+    private int maxLimit = 16;
+
+    /**
+     * Sends sampled between limit updates.
+     */
+    private int windowSize = 20;
+
+    /**
+     * GRADIENT: how much slower than the baseline recent sends may get before the limit shrinks.
+     */
+    private double rttTolerance = 1.5;
+
+    /**
+     * GRADIENT: weight of each new limit estimate; lower values move the limit more slowly.
+     */
+    private double smoothing = 0.2;
+
+    /**
+     * GRADIENT: weight of each window in the long-term latency baseline.
+     */
+    private double baselineSmoothing = 0.05;
+
+    /**
+     * AIMD: windows slower than this (90th percentile) shrink the limit.
+     */
+    private Duration slowThreshold = Duration.ofSeconds(5);
+
+    /**
+     * Factor applied to the limit after a window with relay failures (and, for AIMD, a slow window).
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * How long a send waits for a free slot before it is refused and its message handed back.
+     */
+    private Duration maxWait = Duration.ofSeconds(10);
+}
@@ -0,0 +1,45 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.mail.pool")
+public class MailPoolProperties {
+
+    /**
+     * When disabled every send opens and closes its own SMTP session, as {@code JavaMailSenderImpl} does.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of SMTP connections open at once. Sends wait for a free connection beyond it.
+     */
+    private int size = 4;
+
+    /**
+     * How long a send waits for a free connection before failing.
+     */
+    private Duration borrowTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Idle connections older than this are closed rather than reused. Keep it below the server's
+     * own idle disconnect.
+     */
+    private Duration idleTimeout = Duration.ofSeconds(60);
+
+    /**
+     * Messages sent over one connection before it is closed and replaced.
+     */
+    private int maxMessagesPerConnection = 100;
+
+    /**
+     * Connections idle for longer than this are checked with an SMTP NOOP before reuse. Zero checks
+     * on every borrow, at the cost of a round trip per send.
+     */
+    private Duration validateAfterIdle = Duration.ofSeconds(2);
+}
@@ -0,0 +1,67 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.mail.rate-limit")
+public class MailRateLimitProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Longest a send waits for its tokens. A send that would wait longer is refused and its message
+     * handed back instead.
+     */
+    private Duration maxDelay = Duration.ofSeconds(2);
+
+    /**
+     * Limits on every send, by name (for example the account's per-minute and per-day quotas).
+     */
+    private Map<String, Limit> global = new LinkedHashMap<>();
+
+    /**
+     * Share of every global limit kept for the fast lane. Other sends are also held to the rest of
+     * each limit, so bulk traffic that uses up its share still leaves tokens for codes.
+     */
+    private double fastLaneReserve = 0;
+
+    /**
+     * Limits per recipient domain (lower case).
+     */
+    private Map<String, Limit> domains = new LinkedHashMap<>();
+
+    /**
+     * Limit applied separately to each recipient domain without its own entry; none when unset.
+     */
+    private Limit defaultDomain;
+
+    /**
+     * Limits per notification type (lower case).
+     */
+    private Map<String, Limit> types = new LinkedHashMap<>();
+
+    @Getter
+    @Setter
+    public static class Limit {
+
+        /**
+         * Sends allowed per {@link #period} on average.
+         */
+        private int permits;
+
+        private Duration period = Duration.ofMinutes(1);
+
+        /**
+         * Sends allowed back to back after the limit has been idle. Any period can carry up to
+         * {@code burst} sends over its average, so keep it small against hard quotas.
+         */
+        private int burst = 1;
+    }
+}
@@ -0,0 +1,67 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.mail.routing")
+public class MailRoutingProperties {
+
+    /**
+     * Spread sends across {@link #relays} instead of the single {@code spring.mail.host}.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Relays by name. Unset connection settings are taken from {@code spring.mail.*}.
+     */
+    private Map<String, Relay> relays = new LinkedHashMap<>();
+
+    /**
+     * Per-message latency at or under which a relay keeps its full share of traffic. A slower relay's
+     * share shrinks in proportion.
+     */
+    private Duration latencyTarget = Duration.ofSeconds(2);
+
+    /**
+     * Weight of each send in a relay's latency and error rate averages.
+     */
+    private double smoothing = 0.1;
+
+    /**
+     * Lowest health score a relay can fall to, so a degraded relay still gets some traffic and can
+     * show that it has recovered.
+     */
+    private double minScore = 0.05;
+
+    @Getter
+    @Setter
+    public static class Relay {
+
+        private String host;
+
+        private Integer port;
+
+        private String username;
+
+        private String password;
+
+        private String protocol;
+
+        /**
+         * Share of traffic relative to the other relays while all are healthy.
+         */
+        private int weight = 1;
+
+        /**
+         * JavaMail properties added to (or replacing) {@code spring.mail.properties} for this relay.
+         */
+        private Map<String, String> properties = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,193 @@
+package com.llyods.config;
+
+import com.llyods.mail.AdaptiveConcurrencyLimiter;
+import com.llyods.mail.CircuitBreakingMailSender;
+import com.llyods.mail.ConcurrencyLimitingMailSender;
+import com.llyods.mail.PooledJavaMailSender;
+import com.llyods.mail.RoutingMailSender;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Replaces the auto-configured {@code JavaMailSenderImpl} with a pooled sender built from the same
+ * {@code spring.mail.*} properties, and sends through it under the SMTP circuit breaker and the
+ * adaptive concurrency limit. The OTP fast lane gets a second pool to the same relay.
+ * <p>
+ * With {@code notification.mail.routing.enabled}, sends are spread over the configured relays
+ * instead, each with its own pool and circuit breaker, and the fast lane gets a second pool to each
+ * of them. The {@code mailCircuitBreaker} then only opens when sends fail on every relay.
+ */
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(MailProperties.class)
+public class MailSenderConfig {
+
+    @Bean
+    @Primary
+    public JavaMailSender mailSender(@Qualifier("relayMailSender") JavaMailSender relayMailSender,
+                                     CircuitBreaker mailCircuitBreaker, AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        // The limiter goes outside the breaker so time spent waiting for a slot is not a slow call
+        return new ConcurrencyLimitingMailSender(new CircuitBreakingMailSender(relayMailSender, mailCircuitBreaker),
+                concurrencyLimiter);
+    }
+
+    /**
+     * The sender that talks to the relays: the {@code spring.mail.host} pool, or a
+     * {@link RoutingMailSender} over {@code notification.mail.routing.relays} when routing is enabled.
+     */
+    @Bean
+    public JavaMailSender relayMailSender(@Qualifier("pooledMailSender") PooledJavaMailSender pooledMailSender,
+                                          MailProperties mailProperties, MailPoolProperties poolProperties,
+                                          MailRoutingProperties routingProperties,
+                                          CircuitBreakerRegistry relayCircuitBreakerRegistry, MeterRegistry meterRegistry) {
+        if (!routes(routingProperties)) {
+            return pooledMailSender;
+        }
+        return routingMailSender("", mailProperties, poolProperties, routingProperties, relayCircuitBreakerRegistry, meterRegistry);
+    }
+
+    /**
+     * The fast lane's {@link #relayMailSender}: its own pool to every relay, named {@code fast-lane-<relay>},
+     * behind the same per-relay circuit breakers as the bulk pools.
+     */
+    @Bean
+    public JavaMailSender fastLaneRelayMailSender(@Qualifier("fastLanePooledMailSender") PooledJavaMailSender fastLanePooledMailSender,
+                                                  MailProperties mailProperties, FastLaneProperties fastLaneProperties,
+                                                  MailRoutingProperties routingProperties,
+                                                  CircuitBreakerRegistry relayCircuitBreakerRegistry, MeterRegistry meterRegistry) {
+        if (!routes(routingProperties)) {
+            return fastLanePooledMailSender;
+        }
+        return routingMailSender("fast-lane-", mailProperties, fastLaneProperties.getPool(), routingProperties,
+                relayCircuitBreakerRegistry, meterRegistry);
+    }
+
+    /**
+     * Sender for the OTP fast lane: the same relays and circuit breakers, but its own connections, so
+     * bulk sends never hold every connection while a code waits. Its small fixed pools are not under the
+     * adaptive concurrency limit, so a limit squeezed by bulk traffic does not hold codes back.
+     */
+    @Bean
+    public JavaMailSender fastLaneMailSender(@Qualifier("fastLaneRelayMailSender") JavaMailSender fastLaneRelayMailSender,
+                                             CircuitBreaker mailCircuitBreaker) {
+        return new CircuitBreakingMailSender(fastLaneRelayMailSender, mailCircuitBreaker);
+    }
+
+    /**
+     * Circuit breakers per relay, named {@code smtp-<relay>}. Bulk and fast lane sends to a relay
+     * share its breaker.
+     */
+    @Bean
+    public CircuitBreakerRegistry relayCircuitBreakerRegistry(MailCircuitBreakerProperties circuitBreakerProperties,
+                                                              MeterRegistry meterRegistry) {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(
+                MailCircuitBreakerConfig.circuitBreakerConfig(circuitBreakerProperties));
+        registry.getEventPublisher().onEntryAdded(event -> {
+            CircuitBreaker circuitBreaker = event.getAddedEntry();
+            circuitBreaker.getEventPublisher().onStateTransition(transition ->
+                    log.warn("SMTP circuit breaker {} {}", circuitBreaker.getName(), transition.getStateTransition()));
+            if (!circuitBreakerProperties.isEnabled()) {
+                circuitBreaker.transitionToDisabledState();
+            }
+        });
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        return registry;
+    }
+
+    @Bean
+    public PooledJavaMailSender pooledMailSender(MailProperties mailProperties, MailPoolProperties poolProperties,
+                                                 MeterRegistry meterRegistry) {
+        log.info("Configuring SMTP connection pool for {}:{} (size: {}, idleTimeout: {}, maxMessagesPerConnection: {}, enabled: {})",
+                mailProperties.getHost(), mailProperties.getPort(), poolProperties.getSize(), poolProperties.getIdleTimeout(),
+                poolProperties.getMaxMessagesPerConnection(), poolProperties.isEnabled());
+        PooledJavaMailSender sender = new PooledJavaMailSender(poolProperties, meterRegistry);
+        applyProperties(mailProperties, sender);
+        return sender;
+    }
+
+    @Bean
+    public PooledJavaMailSender fastLanePooledMailSender(MailProperties mailProperties, FastLaneProperties fastLaneProperties,
+                                                         MeterRegistry meterRegistry) {
+        MailPoolProperties poolProperties = fastLaneProperties.getPool();
+        log.info("Configuring fast lane SMTP connection pool for {}:{} (size: {}, idleTimeout: {}, enabled: {})",
+                mailProperties.getHost(), mailProperties.getPort(), poolProperties.getSize(), poolProperties.getIdleTimeout(),
+                poolProperties.isEnabled());
+        PooledJavaMailSender sender = new PooledJavaMailSender(poolProperties, meterRegistry, "fast-lane");
+        applyProperties(mailProperties, sender);
+        return sender;
+    }
+
+    private RoutingMailSender routingMailSender(String prefix, MailProperties mailProperties, MailPoolProperties poolProperties,
+                                                MailRoutingProperties routingProperties,
+                                                CircuitBreakerRegistry relayCircuitBreakerRegistry, MeterRegistry meterRegistry) {
+        List<RoutingMailSender.Relay> relays = new ArrayList<>();
+        routingProperties.getRelays().forEach((name, relay) -> {
+            PooledJavaMailSender sender = new PooledJavaMailSender(poolProperties, meterRegistry, prefix + name);
+            applyProperties(mailProperties, sender);
+            applyRelay(relay, sender);
+            CircuitBreaker circuitBreaker = relayCircuitBreakerRegistry.circuitBreaker(MailCircuitBreakerConfig.BREAKER_NAME + "-" + name);
+            log.info("Routing SMTP sends to relay {} at {}:{} (weight: {}, pool size: {})", prefix + name, sender.getHost(),
+                    sender.getPort(), relay.getWeight(), poolProperties.getSize());
+            relays.add(new RoutingMailSender.Relay(prefix + name, relay.getWeight(), sender, circuitBreaker));
+        });
+        return new RoutingMailSender(relays, routingProperties, meterRegistry);
+    }
+
+    private static boolean routes(MailRoutingProperties routingProperties) {
+        return routingProperties.isEnabled() && !routingProperties.getRelays().isEmpty();
+    }
+
+    static void applyRelay(MailRoutingProperties.Relay relay, PooledJavaMailSender sender) {
+        if (relay.getHost() != null) {
+            sender.setHost(relay.getHost());
+        }
+        if (relay.getPort() != null) {
+            sender.setPort(relay.getPort());
+        }
+        if (relay.getUsername() != null) {
+            sender.setUsername(relay.getUsername());
+            sender.setPassword(relay.getPassword());
+        }
+        if (relay.getProtocol() != null) {
+            sender.setProtocol(relay.getProtocol());
+        }
+        if (!relay.getProperties().isEmpty()) {
+            Properties javaMailProperties = new Properties();
+            javaMailProperties.putAll(sender.getJavaMailProperties());
+            javaMailProperties.putAll(relay.getProperties());
+            sender.setJavaMailProperties(javaMailProperties);
+        }
+    }
+
+    static void applyProperties(MailProperties mailProperties, PooledJavaMailSender sender) {
+        sender.setHost(mailProperties.getHost());
+        if (mailProperties.getPort() != null) {
+            sender.setPort(mailProperties.getPort());
+        }
+        sender.setUsername(mailProperties.getUsername());
+        sender.setPassword(mailProperties.getPassword());
+        sender.setProtocol(mailProperties.getProtocol());
+        if (mailProperties.getDefaultEncoding() != null) {
+            sender.setDefaultEncoding(mailProperties.getDefaultEncoding().name());
+        }
+        if (!mailProperties.getProperties().isEmpty()) {
+            Properties javaMailProperties = new Properties();
+            javaMailProperties.putAll(mailProperties.getProperties());
+            sender.setJavaMailProperties(javaMailProperties);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.outbox")
+public class OutboxProperties {
+
+    /**
+     * When enabled, received notifications are written to the local outbox and acked as soon as
+     * they are on disk; the outbox senders deliver them independently of Pub/Sub.
+     */
+    private boolean enabled = false;
+
+    private Path directory = Path.of("data", "outbox");
+
+    /**
+     * Size of each memory-mapped segment file; a notification must fit in one.
+     */
+    private DataSize segmentSize = DataSize.ofMegabytes(16);
+
+    /**
+     * How long the committer waits after the first unsynced append so that more appends share one
+     * fsync. Zero syncs as soon as anything is waiting.
+     */
+    private Duration groupCommitWindow = Duration.ofMillis(2);
+
+    /**
+     * Threads sending outbox entries.
+     */
+    private int senders = 4;
+
+    /**
+     * Entries read ahead of the checkpoint and not yet settled at most.
+     */
+    private int maxInFlight = 200;
+
+    /**
+     * How long the reader waits for new entries, or for the relay to come back, before looking again.
+     */
+    private Duration pollInterval = Duration.ofMillis(50);
+
+    /**
+     * Delay before an entry refused by the open circuit breaker, or that could not be dead-lettered,
+     * is tried again.
+     */
+    private Duration relayRetryDelay = Duration.ofSeconds(5);
+}
@@ -0,0 +1,53 @@
+package com.llyods.config;
+
+import com.llyods.model.NotificationPriority;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.priority")
+public class PriorityProperties {
+
+    public enum Mode {
+        WEIGHTED,
+        STRICT
+    }
+
+    private boolean enabled = true;
+
+    private Mode mode = Mode.WEIGHTED;
+
+    /**
+     * Worker threads shared by every priority; this is the service's overall send concurrency.
+     */
+    private int workers = 8;
+
+    /**
+     * Capacity of each priority queue. Submitting to a full queue blocks the caller.
+     */
+    private int queueCapacity = 500;
+
+    /**
+     * Share of worker picks given to each priority in WEIGHTED mode.
+     */
+    private Map<NotificationPriority, Integer> weights = new EnumMap<>(Map.of(
+            NotificationPriority.HIGH, 8,
+            NotificationPriority.NORMAL, 3,
+            NotificationPriority.LOW, 1));
+
+    /**
+     * Notification type (lower case) to priority. Unlisted types run at NORMAL.
+     */
+    private Map<String, NotificationPriority> types = new HashMap<>();
+
+    public NotificationPriority priorityOf(String type) {
+        return type == null ? NotificationPriority.NORMAL
+                : types.getOrDefault(type.toLowerCase(), NotificationPriority.NORMAL);
+    }
+}
@@ -1,49 +1,92 @@
 package com.llyods.config;
 
+import com.llyods.mail.DeliveryFailure;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.retry.RetryPolicy;
 import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.retry.policy.ExceptionClassifierRetryPolicy;
+import org.springframework.retry.policy.NeverRetryPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
 @Slf4j
 @Configuration
 @EnableRetry
 public class RetryConfig {
 
-    @Value("${retry.maxAttempts}")
-    private int maxAttempts;
+    private final RetryProperties properties;
 
-    @Value("${retry.delay}")
-    private long delay;
+    public RetryConfig(RetryProperties properties) {
+        this.properties = properties;
+    }
 
-    @Value("${retry.multiplier}")
-    private double multiplier;
+    @Bean
+    @Primary
+    public RetryTemplate retryTemplate() {
+        log.info("Configuring RetryTemplate with maxAttempts: {} (transient: {}, timeout: {}, connection: {}), delay: {}, multiplier: {}, maxDelay: {}, mode: {}",
+                properties.getMaxAttempts(), properties.attempts(DeliveryFailure.TRANSIENT),
+                properties.attempts(DeliveryFailure.TIMEOUT), properties.attempts(DeliveryFailure.CONNECTION),
+                properties.getDelay(), properties.getMultiplier(), properties.getMaxDelay(), properties.getMode());
 
-    @Value("${retry.maxDelay}")
-    private long maxDelay;
+        // The rest get the attempts configured for their failure type
+        Map<DeliveryFailure, RetryPolicy> policies = new EnumMap<>(DeliveryFailure.class);
+        for (DeliveryFailure failure : List.of(DeliveryFailure.TRANSIENT, DeliveryFailure.TIMEOUT,
+                DeliveryFailure.CONNECTION, DeliveryFailure.UNKNOWN)) {
+            policies.put(failure, retryPolicy(properties.attempts(failure)));
+        }
+        return retryTemplate(policies, properties.getDelay(), properties.getMultiplier(), properties.getMaxDelay());
+    }
 
+    /**
+     * Retries for the OTP fast lane: a few quick in-process attempts for every retryable failure
+     * type, whatever the retry mode, so a code is not held back behind the shared backoff.
+     */
     @Bean
-    public RetryTemplate retryTemplate() {
-        log.info("Configuring RetryTemplate with maxAttempts: {}, delay: {}, multiplier: {}, maxDelay: {}",
-                maxAttempts, delay, multiplier, maxDelay);
+    public RetryTemplate fastLaneRetryTemplate(FastLaneProperties fastLaneProperties) {
+        FastLaneProperties.Retry retry = fastLaneProperties.getRetry();
+        log.info("Configuring fast lane RetryTemplate with maxAttempts: {}, delay: {}, multiplier: {}, maxDelay: {}",
+                retry.getMaxAttempts(), retry.getDelay(), retry.getMultiplier(), retry.getMaxDelay());
 
-        RetryTemplate retryTemplate = new RetryTemplate();
+        Map<DeliveryFailure, RetryPolicy> policies = new EnumMap<>(DeliveryFailure.class);
+        for (DeliveryFailure failure : List.of(DeliveryFailure.TRANSIENT, DeliveryFailure.TIMEOUT,
+                DeliveryFailure.CONNECTION, DeliveryFailure.UNKNOWN)) {
+            policies.put(failure, new SimpleRetryPolicy(retry.getMaxAttempts()));
+        }
+        return retryTemplate(policies, retry.getDelay().toMillis(), retry.getMultiplier(), retry.getMaxDelay().toMillis());
+    }
+
+    private static RetryTemplate retryTemplate(Map<DeliveryFailure, RetryPolicy> policies, long delay, double multiplier,
+                                               long maxDelay) {
+        // Permanent failures (5xx, bad addresses) and sends refused by the open circuit breaker or the
+        // rate limiter are never retried here
+        policies.put(DeliveryFailure.PERMANENT, new NeverRetryPolicy());
+        policies.put(DeliveryFailure.CIRCUIT_OPEN, new NeverRetryPolicy());
+        policies.put(DeliveryFailure.RATE_LIMITED, new NeverRetryPolicy());
 
-        SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy();
-        retryPolicy.setMaxAttempts(maxAttempts);
+        ExceptionClassifierRetryPolicy retryPolicy = new ExceptionClassifierRetryPolicy();
+        retryPolicy.setExceptionClassifier(error -> policies.get(DeliveryFailure.of(error)));
 
         ExponentialBackOffPolicy backOffPolicy = new ExponentialBackOffPolicy();
         backOffPolicy.setInitialInterval(delay);
         backOffPolicy.setMultiplier(multiplier);
         backOffPolicy.setMaxInterval(maxDelay);
 
+        RetryTemplate retryTemplate = new RetryTemplate();
         retryTemplate.setRetryPolicy(retryPolicy);
         retryTemplate.setBackOffPolicy(backOffPolicy);
-
         return retryTemplate;
     }
+
+    private RetryPolicy retryPolicy(int attempts) {
+        // Outside BLOCKING mode retries happen off the worker thread, so the template makes a single attempt
+        return new SimpleRetryPolicy(properties.getMode() == RetryMode.BLOCKING ? attempts : 1);
+    }
 }
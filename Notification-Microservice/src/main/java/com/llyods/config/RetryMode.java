@@ -0,0 +1,20 @@
+package com.llyods.config;
+
+/**
+ * How a failed send is retried ({@code retry.mode}).
+ */
+public enum RetryMode {
+    /**
+     * The {@code RetryTemplate} retries in place, sleeping the worker thread between attempts.
+     */
+    BLOCKING,
+    /**
+     * The worker is freed straight away and the send is queued again after the backoff delay.
+     */
+    SCHEDULED,
+    /**
+     * No in-process retry: the message is handed back to Pub/Sub with an ack deadline computed from
+     * its delivery attempt.
+     */
+    NACK
+}
@@ -0,0 +1,59 @@
+package com.llyods.config;
+
+import com.llyods.mail.DeliveryFailure;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Retry budget and backoff shared by the {@code RetryTemplate} and the {@code RetryScheduler}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "retry")
+public class RetryProperties {
+
+    private RetryMode mode = RetryMode.BLOCKING;
+
+    private int maxAttempts = 3;
+
+    /**
+     * Backoff before the first retry, in milliseconds.
+     */
+    private long delay = 2000;
+
+    private double multiplier = 1.5;
+
+    /**
+     * Longest backoff between attempts, in milliseconds.
+     */
+    private long maxDelay = 5000;
+
+    /**
+     * Attempts per failure type; a missing or 0 entry falls back to {@link #maxAttempts}.
+     */
+    private Map<DeliveryFailure, Integer> failureAttempts = new EnumMap<>(DeliveryFailure.class);
+
+    private Scheduler scheduler = new Scheduler();
+
+    @Getter
+    @Setter
+    public static class Scheduler {
+
+        /**
+         * Threads that wait out the backoff and dispatch retries.
+         */
+        private int threads = 1;
+    }
+
+    /**
+     * Attempts for {@code failure}, from {@link #failureAttempts} or else {@link #maxAttempts}.
+     */
+    public int attempts(DeliveryFailure failure) {
+        int configured = failureAttempts.getOrDefault(failure, 0);
+        return configured > 0 ? configured : maxAttempts;
+    }
+}
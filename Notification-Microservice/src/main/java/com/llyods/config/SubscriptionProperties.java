@@ -0,0 +1,78 @@
+package com.llyods.config;
+
+import com.google.cloud.spring.pubsub.integration.AckMode;
+import com.llyods.model.NotificationPriority;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The notification streams the service consumes. Every entry becomes an inbound adapter, an input
+ * channel and a handler, so a new notification type only needs a new entry here.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "pubsub")
+public class SubscriptionProperties {
+
+    public enum Startup {
+        SEQUENTIAL,
+        PARALLEL,
+        LAZY
+    }
+
+    /**
+     * How subscriptions are started: one after another, all at once while the context starts, or
+     * in the background once the context has started.
+     */
+    private Startup startup = Startup.PARALLEL;
+
+    private Ack ack = new Ack();
+
+    private List<Stream> streams = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Ack {
+
+        private AckMode mode = AckMode.MANUAL;
+    }
+
+    @Getter
+    @Setter
+    public static class Stream {
+
+        private String name;
+
+        private String subscription;
+
+        /**
+         * Dispatch settings for this stream's input channel; {@code pubsub.dispatch.defaults} when unset.
+         */
+        private ChannelDispatchProperties.Dispatch dispatch;
+
+        /**
+         * Ack mode for this stream's adapter; {@code pubsub.ack.mode} when unset.
+         */
+        private AckMode ackMode;
+
+        /**
+         * Template used for every message on this stream; chosen from the notification type when unset.
+         */
+        private String template;
+
+        /**
+         * Priority for every message on this stream; chosen from the notification type when unset.
+         */
+        private NotificationPriority priority;
+
+        /**
+         * Send this stream's mail through the micro-batcher ({@code notification.mail.batch}) and
+         * ack each message when its batch result comes back.
+         */
+        private boolean batch;
+    }
+}
@@ -0,0 +1,144 @@
+package com.llyods.config;
+
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.cloud.spring.pubsub.integration.inbound.PubSubInboundChannelAdapter;
+import com.google.protobuf.ByteString;
+import com.llyods.service.PubSubConsumerService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.context.IntegrationFlowContext;
+import org.springframework.messaging.MessageHandler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates an adapter, input channel and handler for every entry in {@code pubsub.streams} and
+ * registers them as integration flows. Flows are registered without auto-startup and started
+ * according to {@code pubsub.startup}, so subscribing is not done one bean at a time during refresh.
+ */
+@Slf4j
+public class SubscriptionRegistry implements SmartLifecycle {
+
+    private final IntegrationFlowContext flowContext;
+    private final PubSubTemplate pubSubTemplate;
+    private final DispatchChannelFactory dispatchChannelFactory;
+    private final SubscriptionProperties properties;
+    private final PubSubConsumerService pubSubConsumerService;
+    private final Map<String, IntegrationFlowContext.IntegrationFlowRegistration> registrations = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile boolean paused;
+
+    public SubscriptionRegistry(IntegrationFlowContext flowContext, PubSubTemplate pubSubTemplate,
+                                DispatchChannelFactory dispatchChannelFactory, SubscriptionProperties properties,
+                                PubSubConsumerService pubSubConsumerService) {
+        this.flowContext = flowContext;
+        this.pubSubTemplate = pubSubTemplate;
+        this.dispatchChannelFactory = dispatchChannelFactory;
+        this.properties = properties;
+        this.pubSubConsumerService = pubSubConsumerService;
+    }
+
+    /**
+     * Registers the flows on the first start and reuses them on every later one, so a restart after
+     * {@link #stop()} does not register the same flow ids, adapters and dispatch pools again.
+     */
+    @Override
+    public synchronized void start() {
+        for (SubscriptionProperties.Stream stream : properties.getStreams()) {
+            registrations.computeIfAbsent(stream.getName(), name -> flowContext.registration(buildFlow(stream))
+                    .id(name + "Flow")
+                    .autoStartup(false)
+                    .register());
+        }
+        log.info("{} subscription flows registered, starting them {}", registrations.size(), properties.getStartup());
+
+        switch (properties.getStartup()) {
+            case SEQUENTIAL:
+                registrations.values().forEach(IntegrationFlowContext.IntegrationFlowRegistration::start);
+                break;
+            case LAZY:
+                CompletableFuture.runAsync(this::startAll);
+                break;
+            default:
+                startAll();
+        }
+        running = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        registrations.values().forEach(IntegrationFlowContext.IntegrationFlowRegistration::stop);
+        running = false;
+        paused = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops pulling from every subscription without unregistering the flows. Messages already
+     * received are still handled; outstanding ones are redelivered once their ack deadline expires.
+     */
+    public synchronized void pause() {
+        if (running && !paused) {
+            registrations.values().forEach(IntegrationFlowContext.IntegrationFlowRegistration::stop);
+            paused = true;
+            log.warn("Paused {} subscription flows", registrations.size());
+        }
+    }
+
+    public synchronized void resume() {
+        if (running && paused) {
+            registrations.values().forEach(IntegrationFlowContext.IntegrationFlowRegistration::start);
+            paused = false;
+            log.info("Resumed {} subscription flows", registrations.size());
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public List<String> getStreamNames() {
+        return List.copyOf(registrations.keySet());
+    }
+
+    IntegrationFlow buildFlow(SubscriptionProperties.Stream stream) {
+        return IntegrationFlow.from(createAdapter(stream))
+                .channel(dispatchChannelFactory.create(stream.getName(), stream.getDispatch()))
+                .handle((MessageHandler) message -> pubSubConsumerService.receive(message, stream))
+                .get();
+    }
+
+    PubSubInboundChannelAdapter createAdapter(SubscriptionProperties.Stream stream) {
+        PubSubInboundChannelAdapter adapter = new PubSubInboundChannelAdapter(pubSubTemplate, stream.getSubscription());
+        adapter.setAckMode(stream.getAckMode() != null ? stream.getAckMode() : properties.getAck().getMode());
+        // The message's own ByteString, decoded in place rather than copied out with toByteArray()
+        adapter.setPayloadType(ByteString.class);
+        log.info("Created PubSubInboundChannelAdapter for {} subscription: {}", stream.getName(), stream.getSubscription());
+        return adapter;
+    }
+
+    private void startAll() {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, registrations.size()));
+        try {
+            CompletableFuture.allOf(registrations.entrySet().stream()
+                            .map(entry -> CompletableFuture.runAsync(() -> {
+                                entry.getValue().start();
+                                log.info("Started {} subscription flow", entry.getKey());
+                            }, executor))
+                            .toArray(CompletableFuture[]::new))
+                    .join();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.supersede")
+public class SupersedeProperties {
+
+    /**
+     * Send only the latest code per recipient and type; older ones still waiting to send are dropped.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Notification types (lower case) where a newer notification makes older ones worthless.
+     */
+    private Set<String> types = new HashSet<>(Set.of("otp", "resetpassword"));
+
+    /**
+     * How long the latest code per recipient and type is remembered. Should cover the code's
+     * validity, so an older code redelivered after the latest one was sent is still dropped.
+     */
+    private Duration retention = Duration.ofMinutes(10);
+
+    /**
+     * Upper bound on remembered recipients; the least valuable entries are evicted beyond it.
+     */
+    private long maximumSize = 100_000;
+}
@@ -0,0 +1,49 @@
+package com.llyods.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.templates")
+public class TemplateProperties {
+
+    public enum RenderMode {
+        /**
+         * Every message goes through {@code TemplateEngine.process}.
+         */
+        THYMELEAF,
+        /**
+         * Templates are rendered once at startup into static segments and variable slots; each
+         * message only escapes and splices its variables. Templates whose output cannot be
+         * reproduced exactly keep using Thymeleaf.
+         */
+        PRECOMPILED
+    }
+
+    /**
+     * Notification type (lower case) to Thymeleaf template name.
+     */
+    private Map<String, String> types = new HashMap<>(Map.of(
+            "otp", "otpTemplate",
+            "resetpassword", "passwordResetTemplate",
+            "passwordupdatesuccess", "passwordUpdateSuccessTemplate",
+            "transactioncomplete", "transactionTemplate"));
+
+    /**
+     * Template used for types missing from {@link #types}.
+     */
+    private String fallback = "defaultTemplate";
+
+    /**
+     * Render every known template once at startup so the first message of each type does not pay
+     * for parsing, and fail startup if any of them cannot be rendered.
+     */
+    private boolean warmUp = true;
+
+    private RenderMode renderMode = RenderMode.PRECOMPILED;
+}
@@ -0,0 +1,80 @@
+package com.llyods.endpoint;
+
+import com.llyods.model.DeadLetter;
+import com.llyods.service.DeadLetterJournal;
+import com.llyods.service.DeadLetterReplayService;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * {@code deadletters}: lists journaled dead letters, reads one by sequence, starts a throttled
+ * replay and stops it. It is exposed over JMX only, never over the unauthenticated web endpoints.
+ * The list shows where and why each notification failed, not its payload.
+ */
+@Component
+@Endpoint(id = "deadletters")
+public class DeadLetterEndpoint {
+
+    private static final int MAX_LIST = 500;
+
+    private final DeadLetterJournal deadLetterJournal;
+    private final DeadLetterReplayService deadLetterReplayService;
+
+    public record Summary(long firstSequence, long replayFrom, long nextSequence, DeadLetterReplayService.Status replay,
+                          List<Item> entries) {
+    }
+
+    /**
+     * A listed dead letter, without the notification itself.
+     */
+    public record Item(long sequence, String stream, String type, String failure, String reason, long failedAt) {
+
+        static Item of(DeadLetterJournal.Entry entry) {
+            DeadLetter deadLetter = entry.deadLetter();
+            return new Item(entry.sequence(), deadLetter.stream(),
+                    deadLetter.payload() != null ? deadLetter.payload().getType() : null,
+                    deadLetter.failure(), deadLetter.reason(), deadLetter.failedAt());
+        }
+    }
+
+    public DeadLetterEndpoint(DeadLetterJournal deadLetterJournal, DeadLetterReplayService deadLetterReplayService) {
+        this.deadLetterJournal = deadLetterJournal;
+        this.deadLetterReplayService = deadLetterReplayService;
+    }
+
+    /**
+     * Journal positions, the last replay and up to {@code limit} entries from {@code from}, which
+     * default to 50 entries from the replay checkpoint.
+     */
+    @ReadOperation
+    public Summary list(@Nullable Long from, @Nullable Integer limit) {
+        long start = from != null ? from : deadLetterJournal.replayFrom();
+        int count = limit != null ? Math.max(0, Math.min(limit, MAX_LIST)) : 50;
+        return new Summary(deadLetterJournal.firstSequence(), deadLetterJournal.replayFrom(),
+                deadLetterJournal.nextSequence(), deadLetterReplayService.status(),
+                deadLetterJournal.read(start, count).stream().map(Item::of).toList());
+    }
+
+    @ReadOperation
+    public DeadLetterJournal.Entry entry(@Selector long sequence) {
+        List<DeadLetterJournal.Entry> entries = deadLetterJournal.read(sequence, 1);
+        return entries.isEmpty() || entries.get(0).sequence() != sequence ? null : entries.get(0);
+    }
+
+    @WriteOperation
+    public DeadLetterReplayService.Status replay(@Nullable Long from, @Nullable Integer limit, @Nullable Double ratePerSecond) {
+        return deadLetterReplayService.start(from, limit, ratePerSecond);
+    }
+
+    @DeleteOperation
+    public DeadLetterReplayService.Status stop() {
+        return deadLetterReplayService.stop();
+    }
+}
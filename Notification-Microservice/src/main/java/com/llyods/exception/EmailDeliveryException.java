@@ -4,5 +4,9 @@ public class EmailDeliveryException extends RuntimeException {
     public EmailDeliveryException(String message) {
         super(message);
     }
+
+    public EmailDeliveryException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
 
@@ -4,4 +4,8 @@ public class MessageProcessingException extends RuntimeException {
     public MessageProcessingException(String message) {
         super(message);
     }
+
+    public MessageProcessingException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -0,0 +1,42 @@
+package com.llyods.journal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A journal sequence kept in a small file next to the journal. Saves write a temporary file, force
+ * it and move it over the old one, so a crash leaves either the old or the new value.
+ */
+public class Checkpoint {
+
+    private final Path file;
+    private final Path temporary;
+    private volatile long value;
+
+    public Checkpoint(Path file, long initialValue) throws IOException {
+        this.file = file;
+        this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        this.value = Files.exists(file)
+                ? Long.parseLong(Files.readString(file, StandardCharsets.US_ASCII).trim())
+                : initialValue;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public synchronized void save(long newValue) throws IOException {
+        if (newValue == value) {
+            return;
+        }
+        Files.writeString(temporary, Long.toString(newValue), StandardCharsets.US_ASCII,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                StandardOpenOption.SYNC);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        value = newValue;
+    }
+}
@@ -0,0 +1,299 @@
+package com.llyods.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of byte records, numbered by a sequence that only grows, split over fixed-size
+ * memory-mapped segment files named after their first sequence. Each record is written as its
+ * payload length, a CRC32 of sequence and payload, the sequence and the payload. A zero length marks
+ * the unwritten rest of a segment.
+ * <p>
+ * Appends are not durable until {@link #sync()}; on open the last segment is scanned and anything
+ * after the first record that fails its CRC, such as a write torn by a crash, is discarded. Appends
+ * are serialised; reads can run alongside them and see every record appended before the read began.
+ */
+@Slf4j
+public class SegmentedJournal implements Closeable {
+
+    /** length, CRC32, sequence */
+    static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\d{20})\\.seg");
+
+    private final Path directory;
+    private final int segmentSize;
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private Segment active;
+    private volatile long nextSequence;
+
+    public record Record(long sequence, byte[] data) {
+    }
+
+    public SegmentedJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be larger than " + HEADER_SIZE + " bytes");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    long firstSequence = Long.parseLong(matcher.group(1));
+                    // Sealed until proven otherwise; the last segment is scanned by recover below
+                    segments.put(firstSequence, Segment.open(file, firstSequence, segmentSize));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(0);
+            nextSequence = 0;
+        } else {
+            active = segments.lastEntry().getValue();
+            nextSequence = recover(active);
+        }
+        log.info("Opened journal {} with {} segments, next sequence {}", directory, segments.size(), nextSequence);
+    }
+
+    /**
+     * Appends {@code data} and returns its sequence.
+     */
+    public synchronized long append(byte[] data) throws IOException {
+        int size = HEADER_SIZE + data.length;
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("Record of " + data.length + " bytes does not fit a " + segmentSize + " byte segment");
+        }
+        if (active.writePosition + size > segmentSize) {
+            active.force();
+            active = createSegment(nextSequence);
+        }
+        long sequence = nextSequence;
+        ByteBuffer buffer = active.buffer.duplicate();
+        int position = active.writePosition;
+        buffer.position(position + Integer.BYTES + Integer.BYTES);
+        buffer.putLong(sequence);
+        buffer.put(data);
+        buffer.putInt(position + Integer.BYTES, crc(active.buffer, position + Integer.BYTES + Integer.BYTES, Long.BYTES + data.length));
+        buffer.putInt(position, data.length);
+        active.writePosition = position + size;
+        nextSequence = sequence + 1;
+        return sequence;
+    }
+
+    /**
+     * Forces every record appended so far to disk.
+     */
+    public synchronized void sync() {
+        active.force();
+    }
+
+    /**
+     * Reads up to {@code max} records starting at sequence {@code from}.
+     */
+    public List<Record> read(long from, int max) {
+        List<Record> records = new ArrayList<>(Math.min(max, 256));
+        Map.Entry<Long, Segment> start = segments.floorEntry(from);
+        Map<Long, Segment> candidates = start != null ? segments.tailMap(start.getKey(), true) : segments;
+        for (Segment segment : candidates.values()) {
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int limit = segment.writePosition;
+            int position = 0;
+            while (position + HEADER_SIZE <= limit && records.size() < max) {
+                int length = buffer.getInt(position);
+                long sequence = buffer.getLong(position + Integer.BYTES + Integer.BYTES);
+                if (length <= 0 || position + HEADER_SIZE + length > limit) {
+                    break;
+                }
+                if (crc(buffer, position + Integer.BYTES + Integer.BYTES, Long.BYTES + length) != buffer.getInt(position + Integer.BYTES)) {
+                    log.error("Journal record {} in {} failed its CRC check, skipping the rest of the segment", sequence, segment.path);
+                    break;
+                }
+                if (sequence >= from) {
+                    byte[] data = new byte[length];
+                    buffer.get(position + HEADER_SIZE, data);
+                    records.add(new Record(sequence, data));
+                }
+                position += HEADER_SIZE + length;
+            }
+            if (records.size() >= max) {
+                break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Deletes segments that only hold records before {@code sequence}. The segment being appended to
+     * is always kept.
+     */
+    public synchronized int deleteBefore(long sequence) throws IOException {
+        int deleted = 0;
+        for (Map.Entry<Long, Segment> entry : segments.headMap(active.firstSequence, false).entrySet()) {
+            Long nextFirst = segments.higherKey(entry.getKey());
+            if (nextFirst == null || nextFirst > sequence) {
+                break;
+            }
+            segments.remove(entry.getKey());
+            entry.getValue().close();
+            Files.deleteIfExists(entry.getValue().path);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the oldest segments until at most {@code maxSegments} are left, the segment being
+     * appended to included. Returns the sequence of the oldest record kept.
+     */
+    public synchronized long retain(int maxSegments) throws IOException {
+        while (segments.size() > Math.max(1, maxSegments)) {
+            Map.Entry<Long, Segment> oldest = segments.pollFirstEntry();
+            oldest.getValue().close();
+            Files.deleteIfExists(oldest.getValue().path);
+        }
+        return firstSequence();
+    }
+
+    /**
+     * Sequence of the oldest record still on disk, or {@link #nextSequence()} if there are none.
+     */
+    public long firstSequence() {
+        return segments.isEmpty() ? nextSequence : segments.firstKey();
+    }
+
+    public long nextSequence() {
+        return nextSequence;
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        active.force();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    /**
+     * Creates the empty segment whose first record will be {@code firstSequence}. Fails rather than
+     * reuse the file of a segment that already exists.
+     */
+    private Segment createSegment(long firstSequence) throws IOException {
+        if (segments.containsKey(firstSequence)) {
+            throw new IllegalStateException("Journal segment for sequence " + firstSequence + " already exists in " + directory);
+        }
+        Segment segment = Segment.create(directory.resolve(String.format("%020d.seg", firstSequence)), firstSequence, segmentSize);
+        segments.put(firstSequence, segment);
+        return segment;
+    }
+
+    /**
+     * Finds the end of the last valid record in {@code segment} and returns the sequence after it.
+     * Bytes past that point are zeroed so a later scan cannot mistake them for records.
+     */
+    private long recover(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        long next = segment.firstSequence;
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > segmentSize
+                    || crc(buffer, position + Integer.BYTES + Integer.BYTES, Long.BYTES + length) != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            next = buffer.getLong(position + Integer.BYTES + Integer.BYTES) + 1;
+            position += HEADER_SIZE + length;
+        }
+        if (position + Integer.BYTES <= segmentSize && buffer.getInt(position) != 0) {
+            log.warn("Discarding torn or corrupt tail of journal segment {} at offset {}", segment.path, position);
+            for (int i = position; i < segmentSize; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            segment.buffer.force();
+        }
+        segment.writePosition = position;
+        segment.syncedPosition = position;
+        return next;
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final long firstSequence;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private volatile int writePosition;
+        private int syncedPosition;
+
+        private Segment(Path path, long firstSequence, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Opens an existing segment as sealed: nothing more is appended to it, and reads scan it
+         * up to its first unwritten record.
+         */
+        static Segment open(Path path, long firstSequence, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(path, firstSequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            segment.seal(size);
+            return segment;
+        }
+
+        /**
+         * Creates a new, empty segment file to append to.
+         */
+        static Segment create(Path path, long firstSequence, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, firstSequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        void seal(int size) {
+            writePosition = size;
+            syncedPosition = size;
+        }
+
+        void force() {
+            int position = writePosition;
+            if (position > syncedPosition) {
+                buffer.force(syncedPosition, position - syncedPosition);
+                syncedPosition = position;
+            }
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.llyods.logging;
+
+import com.google.protobuf.ByteString;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.nio.charset.StandardCharsets;
+
+public final class LogMarkers {
+
+    /**
+     * Marks debug statements that carry a notification payload body. These are sampled by
+     * {@link PayloadSamplingTurboFilter} before the event is built. Delivery outcomes are not
+     * marked, so every one of them is logged.
+     */
+    public static final Marker PAYLOAD = MarkerFactory.getMarker("PAYLOAD");
+
+    private LogMarkers() {
+    }
+
+    /**
+     * Wraps a message payload so raw bytes are only decoded to text if the log statement is actually written.
+     */
+    public static Object payloadText(Object payload) {
+        return new Object() {
+            @Override
+            public String toString() {
+                if (payload instanceof ByteString data) {
+                    return data.toStringUtf8();
+                }
+                return payload instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : String.valueOf(payload);
+            }
+        };
+    }
+}
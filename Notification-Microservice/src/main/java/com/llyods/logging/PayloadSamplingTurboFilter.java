@@ -0,0 +1,59 @@
+package com.llyods.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets through one in every N {@link LogMarkers#PAYLOAD} statements per logger and denies the rest
+ * before an event is created or its message formatted. Other statements are not affected.
+ *
+ * <pre>
+ * &lt;turboFilter class="com.llyods.logging.PayloadSamplingTurboFilter"&gt;
+ *     &lt;defaultRate&gt;100&lt;/defaultRate&gt;
+ *     &lt;loggerRate&gt;com.llyods.service.PubSubConsumerService=10&lt;/loggerRate&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ */
+public class PayloadSamplingTurboFilter extends TurboFilter {
+
+    private final Map<String, Integer> loggerRates = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private int defaultRate = 1;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // isXxxEnabled(marker) checks arrive without a format; only count real log statements
+        if (format == null || marker == null || !marker.contains(LogMarkers.PAYLOAD)) {
+            return FilterReply.NEUTRAL;
+        }
+        int rate = loggerRates.getOrDefault(logger.getName(), defaultRate);
+        if (rate <= 1) {
+            return FilterReply.NEUTRAL;
+        }
+        long count = counters.computeIfAbsent(logger.getName(), name -> new AtomicLong()).getAndIncrement();
+        return count % rate == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    public void setDefaultRate(int defaultRate) {
+        this.defaultRate = defaultRate;
+    }
+
+    /**
+     * Adds a {@code logger.name=rate} override.
+     */
+    public void addLoggerRate(String loggerRate) {
+        int separator = loggerRate.lastIndexOf('=');
+        if (separator <= 0) {
+            addError("Invalid loggerRate '" + loggerRate + "', expected <logger>=<rate>");
+            return;
+        }
+        loggerRates.put(loggerRate.substring(0, separator).trim(), Integer.parseInt(loggerRate.substring(separator + 1).trim()));
+    }
+}
@@ -0,0 +1,145 @@
+package com.llyods.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.fasterxml.jackson.core.JsonGenerator;
+import net.logstash.logback.composite.loggingevent.MessageJsonProvider;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes the log message with email addresses and OTP-like digit runs masked. The message is
+ * formatted from the pattern and arguments into a per-thread buffer, and only argument values are
+ * scanned and masked as they are appended, so the unmasked message is never built as a String.
+ * Email local parts keep their first character; digit runs of {@code otpMinDigits} to
+ * {@code otpMaxDigits} that are not part of a longer word are masked entirely.
+ */
+public class RedactingMessageJsonProvider extends MessageJsonProvider {
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+    private static final ThreadLocal<char[]> CHARS = ThreadLocal.withInitial(() -> new char[512]);
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private int otpMinDigits = 4;
+    private int otpMaxDigits = 8;
+
+    @Override
+    public void writeTo(JsonGenerator generator, ILoggingEvent event) throws IOException {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        format(buffer, event.getMessage(), event.getArgumentArray());
+
+        int length = buffer.length();
+        char[] chars = CHARS.get();
+        if (chars.length < length) {
+            chars = new char[length];
+            if (length <= MAX_RETAINED_CAPACITY) {
+                CHARS.set(chars);
+            }
+        }
+        buffer.getChars(0, length, chars, 0);
+        generator.writeFieldName(getFieldName());
+        generator.writeString(chars, 0, length);
+
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            BUFFER.remove();
+        }
+    }
+
+    /**
+     * SLF4J style formatting: {@code {}} takes the next argument, {@code \{}} is a literal
+     * {@code {}} and {@code \\{}} is a literal backslash followed by the argument.
+     */
+    void format(StringBuilder out, String pattern, Object[] arguments) {
+        if (pattern == null) {
+            return;
+        }
+        if (arguments == null || arguments.length == 0) {
+            out.append(pattern);
+            return;
+        }
+        int from = 0;
+        int argument = 0;
+        while (argument < arguments.length) {
+            int placeholder = pattern.indexOf("{}", from);
+            if (placeholder < 0) {
+                break;
+            }
+            boolean escaped = placeholder > 0 && pattern.charAt(placeholder - 1) == '\\';
+            boolean doubleEscaped = escaped && placeholder > 1 && pattern.charAt(placeholder - 2) == '\\';
+            if (escaped && !doubleEscaped) {
+                out.append(pattern, from, placeholder - 1).append("{}");
+            } else {
+                out.append(pattern, from, doubleEscaped ? placeholder - 1 : placeholder);
+                appendRedacted(out, render(arguments[argument++]));
+            }
+            from = placeholder + 2;
+        }
+        out.append(pattern, from, pattern.length());
+    }
+
+    void appendRedacted(StringBuilder out, String value) {
+        int base = out.length();
+        out.append(value);
+        int end = out.length();
+        int i = base;
+        while (i < end) {
+            char c = out.charAt(i);
+            if (c == '@') {
+                maskLocalPart(out, base, i, end);
+                i++;
+            } else if (c >= '0' && c <= '9') {
+                int start = i;
+                while (i < end && out.charAt(i) >= '0' && out.charAt(i) <= '9') {
+                    i++;
+                }
+                int run = i - start;
+                boolean standalone = (start == base || !Character.isLetterOrDigit(out.charAt(start - 1)))
+                        && (i == end || !Character.isLetterOrDigit(out.charAt(i)));
+                if (standalone && run >= otpMinDigits && run <= otpMaxDigits) {
+                    mask(out, start, i);
+                }
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private void maskLocalPart(StringBuilder out, int base, int at, int end) {
+        if (at + 1 >= end || !Character.isLetterOrDigit(out.charAt(at + 1))) {
+            return;
+        }
+        int start = at;
+        while (start > base && isLocalPartChar(out.charAt(start - 1))) {
+            start--;
+        }
+        if (start < at) {
+            mask(out, start + 1, at);
+        }
+    }
+
+    private static void mask(StringBuilder out, int from, int to) {
+        for (int k = from; k < to; k++) {
+            out.setCharAt(k, '*');
+        }
+    }
+
+    private static boolean isLocalPartChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.' || c == '_' || c == '-' || c == '+';
+    }
+
+    private static String render(Object argument) {
+        if (argument instanceof Object[] array) {
+            return Arrays.deepToString(array);
+        }
+        return String.valueOf(argument);
+    }
+
+    public void setOtpMinDigits(int otpMinDigits) {
+        this.otpMinDigits = otpMinDigits;
+    }
+
+    public void setOtpMaxDigits(int otpMaxDigits) {
+        this.otpMaxDigits = otpMaxDigits;
+    }
+}
@@ -0,0 +1,216 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailConcurrencyProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many sends are in flight to the SMTP relay, and adapts that limit to how the relay is
+ * coping. Per-message send latency is sampled in windows of {@code window-size} sends; at the end of
+ * each window the limit grows while latency holds steady and shrinks when it climbs (by its 90th
+ * percentile against a slow-moving baseline for {@code GRADIENT}, against {@code slow-threshold} for
+ * {@code AIMD}). A relay failure closes the window early and cuts the limit by
+ * {@code backoff-ratio}. The limit only grows while sends actually use at least half of it.
+ * <p>
+ * A send beyond the limit waits up to {@code max-wait} for a slot, then fails with a
+ * {@link ConcurrencyLimitExceededException}. The limit, sends in flight and waiting, and a moving
+ * average of the wait are published as {@code mail.concurrency.*} gauges.
+ */
+@Slf4j
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    // Weight of each wait in the published queueing time
+    private static final double QUEUE_TIME_SMOOTHING = 0.2;
+
+    private final MailConcurrencyProperties properties;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final long[] window;
+    private volatile double limit;
+    private volatile long queueTime;
+    // Guarded by lock
+    private int inFlight;
+    private int waiting;
+    private int samples;
+    private int peakInFlight;
+    private boolean dropped;
+    private double baseline;
+
+    public AdaptiveConcurrencyLimiter(MailConcurrencyProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.window = new long[Math.max(1, properties.getWindowSize())];
+        this.limit = clamp(properties.getInitialLimit());
+        Gauge.builder("mail.concurrency.limit", this, AdaptiveConcurrencyLimiter::limit)
+                .description("Sends currently allowed in flight to the SMTP relay")
+                .register(meterRegistry);
+        Gauge.builder("mail.concurrency.inflight", this, AdaptiveConcurrencyLimiter::inFlight)
+                .description("Sends in flight to the SMTP relay")
+                .register(meterRegistry);
+        Gauge.builder("mail.concurrency.waiting", this, AdaptiveConcurrencyLimiter::waiting)
+                .description("Sends waiting for a slot under the concurrency limit")
+                .register(meterRegistry);
+        TimeGauge.builder("mail.concurrency.queue.time", this, TimeUnit.NANOSECONDS, limiter -> limiter.queueTime)
+                .description("Moving average of the time sends wait for a slot")
+                .register(meterRegistry);
+        log.info("Adaptive SMTP concurrency limit {} ({}, initial: {}, min: {}, max: {}, maxWait: {})",
+                properties.isEnabled() ? "enabled" : "disabled", properties.getAlgorithm(), properties.getInitialLimit(),
+                properties.getMinLimit(), properties.getMaxLimit(), properties.getMaxWait());
+    }
+
+    /**
+     * Takes a send slot, waiting up to {@code max-wait} for one to free up. Every successful call
+     * must be followed by {@link #release}.
+     *
+     * @throws ConcurrencyLimitExceededException if no slot frees up in time
+     */
+    public void acquire() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long remaining = properties.getMaxWait().toNanos();
+        lock.lock();
+        try {
+            waiting++;
+            try {
+                while (inFlight >= slots()) {
+                    if (remaining <= 0) {
+                        throw new ConcurrencyLimitExceededException("No SMTP send slot free under concurrency limit "
+                                + slots() + " within " + properties.getMaxWait());
+                    }
+                    remaining = slotFreed.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConcurrencyLimitExceededException("Interrupted while waiting for an SMTP send slot");
+            } finally {
+                waiting--;
+                long waited = System.nanoTime() - start;
+                queueTime = (long) (queueTime * (1 - QUEUE_TIME_SMOOTHING) + waited * QUEUE_TIME_SMOOTHING);
+            }
+            inFlight++;
+            peakInFlight = Math.max(peakInFlight, inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back the slot of a send of {@code messages} messages that took {@code latencyNanos},
+     * with {@code failure} {@code null} if it succeeded. Sends refused before reaching the relay
+     * ({@link DeliveryFailure#CIRCUIT_OPEN}, {@link DeliveryFailure#RATE_LIMITED}) are not sampled.
+     */
+    public void release(long latencyNanos, int messages, DeliveryFailure failure) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            inFlight--;
+            if (failure != DeliveryFailure.CIRCUIT_OPEN && failure != DeliveryFailure.RATE_LIMITED) {
+                sample(latencyNanos / Math.max(1, messages), failure != null && failure.isRelayFailure());
+            }
+            slotFreed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int waiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sample(long latency, boolean relayFailure) {
+        window[samples++] = latency;
+        dropped |= relayFailure;
+        if (samples < window.length && !dropped) {
+            return;
+        }
+        double previous = limit;
+        // A limit the traffic never reaches says nothing about what the relay could take
+        boolean appLimited = peakInFlight < previous / 2;
+        double next;
+        if (dropped) {
+            next = previous * properties.getBackoffRatio();
+        } else if (properties.getAlgorithm() == MailConcurrencyProperties.Algorithm.AIMD) {
+            next = aimd(previous, percentile90(), appLimited);
+        } else {
+            next = gradient(previous, percentile90(), appLimited);
+        }
+        limit = clamp(next);
+        if (limit != previous) {
+            log.debug("SMTP concurrency limit {} -> {} (dropped: {}, peak in flight: {})",
+                    String.format("%.2f", previous), String.format("%.2f", limit), dropped, peakInFlight);
+        }
+        if (limit > previous) {
+            slotFreed.signalAll();
+        }
+        samples = 0;
+        dropped = false;
+        peakInFlight = inFlight;
+    }
+
+    private double aimd(double previous, long latency, boolean appLimited) {
+        if (latency > properties.getSlowThreshold().toNanos()) {
+            return previous * properties.getBackoffRatio();
+        }
+        return appLimited ? previous : previous + 1;
+    }
+
+    private double gradient(double previous, long latency, boolean appLimited) {
+        double smoothing = properties.getBaselineSmoothing();
+        baseline = baseline == 0 ? latency : baseline * (1 - smoothing) + latency * smoothing;
+        // Once the relay has recovered, follow latency straight down instead of decaying towards it
+        if (baseline > 2.0 * latency) {
+            baseline = latency;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, properties.getRttTolerance() * baseline / Math.max(1, latency)));
+        // sqrt(limit) of headroom keeps a small limit growing while latency holds
+        double estimate = previous * gradient + Math.sqrt(previous);
+        if (appLimited && estimate > previous) {
+            return previous;
+        }
+        return previous * (1 - properties.getSmoothing()) + estimate * properties.getSmoothing();
+    }
+
+    private long percentile90() {
+        long[] sorted = Arrays.copyOf(window, samples);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(sorted.length * 0.9) - 1];
+    }
+
+    private int slots() {
+        return Math.max(1, (int) limit);
+    }
+
+    private double clamp(double value) {
+        return Math.max(Math.max(1, properties.getMinLimit()), Math.min(properties.getMaxLimit(), value));
+    }
+}
@@ -0,0 +1,39 @@
+package com.llyods.mail;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.function.Consumer;
+
+/**
+ * Sends through {@code delegate} under a circuit breaker. Each send call, single message or batch,
+ * is one call to the breaker; while it is open, sends fail at once with a
+ * {@link RelayUnavailableException} instead of waiting out the SMTP connect timeout.
+ */
+public class CircuitBreakingMailSender extends ForwardingMailSender {
+
+    private final CircuitBreaker circuitBreaker;
+
+    public CircuitBreakingMailSender(JavaMailSender delegate, CircuitBreaker circuitBreaker) {
+        super(delegate);
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Whether a failed send says something about the relay rather than the message. Rejected
+     * recipients and messages that could not be built do not count against the breaker.
+     */
+    public static boolean isRelayFailure(Throwable error) {
+        return DeliveryFailure.of(error).isRelayFailure();
+    }
+
+    @Override
+    protected void forward(Consumer<JavaMailSender> send, int messages) {
+        try {
+            circuitBreaker.executeRunnable(() -> send.accept(delegate));
+        } catch (CallNotPermittedException e) {
+            throw new RelayUnavailableException("SMTP relay circuit breaker is " + circuitBreaker.getState(), e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.llyods.mail;
+
+/**
+ * Thrown instead of sending when no send slot frees up under the adaptive concurrency limit
+ * within {@code notification.mail.concurrency.max-wait}. Nothing was sent; it is handled like a
+ * refusal by the rate limiter.
+ */
+public class ConcurrencyLimitExceededException extends RateLimitedException {
+
+    public ConcurrencyLimitExceededException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,32 @@
+package com.llyods.mail;
+
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.function.Consumer;
+
+/**
+ * Sends through {@code delegate} under an {@link AdaptiveConcurrencyLimiter}. Each send call, single
+ * message or batch, holds one slot, and its latency per message and outcome feed the limit.
+ */
+public class ConcurrencyLimitingMailSender extends ForwardingMailSender {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitingMailSender(JavaMailSender delegate, AdaptiveConcurrencyLimiter limiter) {
+        super(delegate);
+        this.limiter = limiter;
+    }
+
+    @Override
+    protected void forward(Consumer<JavaMailSender> send, int messages) {
+        limiter.acquire();
+        long start = System.nanoTime();
+        try {
+            send.accept(delegate);
+        } catch (RuntimeException e) {
+            limiter.release(System.nanoTime() - start, messages, DeliveryFailure.of(e));
+            throw e;
+        }
+        limiter.release(System.nanoTime() - start, messages, null);
+    }
+}
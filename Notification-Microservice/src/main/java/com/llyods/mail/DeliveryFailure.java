@@ -0,0 +1,145 @@
+package com.llyods.mail;
+
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.AddressException;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.util.MailConnectException;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Why a send failed, worked out from SMTP reply codes and exception types anywhere in the cause
+ * chain. Only {@link #PERMANENT} failures are certain to fail again; everything else may succeed on
+ * a later attempt.
+ */
+public enum DeliveryFailure {
+
+    /** 5xx reply for the message or recipient, or an address or message that could not be built. */
+    PERMANENT,
+    /** 4xx reply for the message or recipient, such as a full mailbox or greylisting. */
+    TRANSIENT,
+    /** The relay did not answer in time. */
+    TIMEOUT,
+    /** The relay could not be reached or refused the session: connect errors, resets, 421, failed AUTH. */
+    CONNECTION,
+    /** The SMTP circuit breaker refused the send; nothing was sent. */
+    CIRCUIT_OPEN,
+    /** The outbound rate or concurrency limiter refused the send; nothing was sent. */
+    RATE_LIMITED,
+    /** Nothing in the cause chain says either way. */
+    UNKNOWN;
+
+    private static final Pattern REPLY_CODE = Pattern.compile("^\\s*([2-5]\\d\\d)(?:[\\s-]|$)");
+    private static final int MAX_CAUSES = 16;
+
+    public boolean isRetryable() {
+        return this != PERMANENT;
+    }
+
+    /**
+     * Whether the failure says something about the relay rather than the message it was sending.
+     */
+    public boolean isRelayFailure() {
+        return this == TIMEOUT || this == CONNECTION || this == UNKNOWN;
+    }
+
+    public static DeliveryFailure of(Throwable error) {
+        boolean rejectedAddresses = false;
+        boolean connectFailed = false;
+        Throwable cause = error;
+        for (int depth = 0; cause != null && depth < MAX_CAUSES; depth++, cause = cause.getCause()) {
+            if (cause instanceof RelayUnavailableException) {
+                return CIRCUIT_OPEN;
+            }
+            if (cause instanceof RateLimitedException) {
+                return RATE_LIMITED;
+            }
+            if (cause instanceof MailSendException sendException && !sendException.getFailedMessages().isEmpty()) {
+                return ofAll(sendException.getFailedMessages().values());
+            }
+            if (cause instanceof MailParseException || cause instanceof MailPreparationException
+                    || cause instanceof AddressException) {
+                return PERMANENT;
+            }
+            if (cause instanceof MailAuthenticationException || cause instanceof AuthenticationFailedException) {
+                return CONNECTION;
+            }
+            int replyCode = replyCode(cause);
+            if (replyCode > 0) {
+                return ofReplyCode(replyCode);
+            }
+            if (cause instanceof SocketTimeoutException) {
+                return TIMEOUT;
+            }
+            if (cause instanceof IOException) {
+                return CONNECTION;
+            }
+            // JavaMail reports rejected recipients as "Invalid Addresses" with the replies chained
+            // behind it, so keep walking for a reply code before settling on PERMANENT
+            if (cause instanceof SendFailedException sendFailed && sendFailed.getInvalidAddresses() != null
+                    && sendFailed.getInvalidAddresses().length > 0) {
+                rejectedAddresses = true;
+            }
+            connectFailed |= cause instanceof MailConnectException;
+        }
+        if (connectFailed) {
+            return CONNECTION;
+        }
+        return rejectedAddresses ? PERMANENT : UNKNOWN;
+    }
+
+    /**
+     * SMTP reply code carried by {@code error}, or 0. Codes are read from the JavaMail SMTP
+     * exceptions, or from the start of the message for exceptions that only quote the reply.
+     */
+    public static int replyCode(Throwable error) {
+        if (error instanceof SMTPAddressFailedException addressFailed) {
+            return addressFailed.getReturnCode();
+        }
+        if (error instanceof SMTPSendFailedException sendFailed) {
+            return sendFailed.getReturnCode();
+        }
+        if (error instanceof MessagingException && error.getMessage() != null) {
+            Matcher matcher = REPLY_CODE.matcher(error.getMessage());
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        return 0;
+    }
+
+    static DeliveryFailure ofReplyCode(int replyCode) {
+        return switch (replyCode) {
+            // service not available, closing the channel: the whole session is gone, not this message
+            case 421 -> CONNECTION;
+            // authentication required / too weak / failed / encryption required: relay configuration
+            case 530, 534, 535, 538 -> CONNECTION;
+            default -> replyCode >= 500 ? PERMANENT : replyCode >= 400 ? TRANSIENT : UNKNOWN;
+        };
+    }
+
+    /**
+     * A batch failure is permanent only if every failed message failed permanently; otherwise the
+     * first retryable failure decides.
+     */
+    private static DeliveryFailure ofAll(Collection<Exception> failures) {
+        for (Exception failure : failures) {
+            DeliveryFailure type = of(failure);
+            if (type != PERMANENT) {
+                return type;
+            }
+        }
+        return PERMANENT;
+    }
+}
@@ -0,0 +1,69 @@
+package com.llyods.mail;
+
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.mail.MailException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Base for {@link JavaMailSender} decorators. Messages are created by {@code delegate}, and every
+ * {@code send} overload, single message or batch, goes through {@link #forward} as one call.
+ */
+public abstract class ForwardingMailSender implements JavaMailSender {
+
+    protected final JavaMailSender delegate;
+
+    protected ForwardingMailSender(JavaMailSender delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Performs one send call of {@code messages} messages by applying {@code send} to the sender
+     * that should carry it.
+     */
+    protected abstract void forward(Consumer<JavaMailSender> send, int messages);
+
+    @Override
+    public MimeMessage createMimeMessage() {
+        return delegate.createMimeMessage();
+    }
+
+    @Override
+    public MimeMessage createMimeMessage(InputStream contentStream) throws MailException {
+        return delegate.createMimeMessage(contentStream);
+    }
+
+    @Override
+    public void send(MimeMessage mimeMessage) throws MailException {
+        forward(sender -> sender.send(mimeMessage), 1);
+    }
+
+    @Override
+    public void send(MimeMessage... mimeMessages) throws MailException {
+        forward(sender -> sender.send(mimeMessages), mimeMessages.length);
+    }
+
+    @Override
+    public void send(MimeMessagePreparator mimeMessagePreparator) throws MailException {
+        forward(sender -> sender.send(mimeMessagePreparator), 1);
+    }
+
+    @Override
+    public void send(MimeMessagePreparator... mimeMessagePreparators) throws MailException {
+        forward(sender -> sender.send(mimeMessagePreparators), mimeMessagePreparators.length);
+    }
+
+    @Override
+    public void send(SimpleMailMessage simpleMessage) throws MailException {
+        forward(sender -> sender.send(simpleMessage), 1);
+    }
+
+    @Override
+    public void send(SimpleMailMessage... simpleMessages) throws MailException {
+        forward(sender -> sender.send(simpleMessages), simpleMessages.length);
+    }
+}
@@ -0,0 +1,150 @@
+package com.llyods.mail;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeUtility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds notifications as single-part {@code text/html} messages instead of the
+ * {@code multipart/mixed} wrapper {@code MimeMessageHelper} creates for them, with no boundaries or
+ * nested part headers. The body is transfer-encoded once, when the message is built: {@code 7bit}
+ * when it is plain ASCII, {@code quoted-printable} when it is mostly ASCII, {@code base64} otherwise.
+ * Saving the message does not re-encode it, and the encoded subject is kept per template, so a
+ * template's repeated subject is only encoded once.
+ */
+public class HtmlMessageBuilder {
+
+    static final String CONTENT_TYPE = "text/html; charset=UTF-8";
+    // RFC 5322 line length limit, without the CRLF
+    private static final int MAX_LINE_LENGTH = 998;
+
+    private final Map<String, EncodedSubject> subjects = new ConcurrentHashMap<>();
+
+    private record EncodedSubject(String subject, String encoded) {
+    }
+
+    enum TransferEncoding {
+        SEVEN_BIT("7bit"),
+        QUOTED_PRINTABLE("quoted-printable"),
+        BASE64("base64");
+
+        private final String header;
+
+        TransferEncoding(String header) {
+            this.header = header;
+        }
+
+        String header() {
+            return header;
+        }
+
+        /**
+         * The most compact encoding that keeps {@code body} within 7-bit SMTP: none for short-lined
+         * ASCII, quoted-printable while no more than a third of the bytes need escaping, base64 beyond.
+         */
+        static TransferEncoding of(byte[] body) {
+            int nonAscii = 0;
+            int lineLength = 0;
+            boolean longLines = false;
+            for (byte b : body) {
+                if (b < 0 || b == 0) {
+                    nonAscii++;
+                }
+                if (b == '\n' || b == '\r') {
+                    lineLength = 0;
+                } else if (++lineLength > MAX_LINE_LENGTH) {
+                    longLines = true;
+                }
+            }
+            if (nonAscii == 0 && !longLines) {
+                return SEVEN_BIT;
+            }
+            return nonAscii * 3 <= body.length ? QUOTED_PRINTABLE : BASE64;
+        }
+
+        byte[] encode(byte[] body) throws MessagingException {
+            if (this == SEVEN_BIT) {
+                return body;
+            }
+            // base64 grows the body by a third; mostly-ASCII quoted-printable by much less
+            int expected = this == BASE64 ? body.length * 4 / 3 : body.length + body.length / 8;
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(expected + 64);
+            try (OutputStream out = MimeUtility.encode(encoded, header)) {
+                out.write(body);
+            } catch (IOException e) {
+                throw new MessagingException("Failed to " + header + " encode message body", e);
+            }
+            return encoded.toByteArray();
+        }
+    }
+
+    /**
+     * Message to {@code to} with {@code html} as its whole body.
+     *
+     * @param templateName template the body was rendered with; keys the cached subject encoding
+     * @throws AddressException if {@code to} is not a valid address
+     */
+    public MimeMessage build(Session session, String templateName, String to, String subject, String html)
+            throws MessagingException {
+        if (to == null) {
+            throw new AddressException("No recipient address");
+        }
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        TransferEncoding encoding = TransferEncoding.of(body);
+        HtmlMimeMessage message = new HtmlMimeMessage(session, encoding.encode(body));
+        message.setHeader("MIME-Version", "1.0");
+        message.setRecipient(MimeMessage.RecipientType.TO, new InternetAddress(to));
+        if (subject != null) {
+            message.setHeader("Subject", encodedSubject(templateName, subject));
+        }
+        message.setHeader("Content-Type", CONTENT_TYPE);
+        message.setHeader("Content-Transfer-Encoding", encoding.header());
+        return message;
+    }
+
+    private String encodedSubject(String templateName, String subject) throws MessagingException {
+        String key = templateName == null ? "" : templateName;
+        EncodedSubject cached = subjects.get(key);
+        if (cached != null && cached.subject().equals(subject)) {
+            return cached.encoded();
+        }
+        try {
+            // "Subject: " is 9 characters
+            String encoded = MimeUtility.fold(9, MimeUtility.encodeText(subject, "UTF-8", null));
+            subjects.put(key, new EncodedSubject(subject, encoded));
+            return encoded;
+        } catch (UnsupportedEncodingException e) {
+            throw new MessagingException("Failed to encode subject", e);
+        }
+    }
+
+    /**
+     * A message whose headers and encoded body are complete when it is built. Saving it only assigns
+     * a Message-ID, and writing it copies the body bytes as they are.
+     */
+    private static final class HtmlMimeMessage extends MimeMessage {
+
+        private HtmlMimeMessage(Session session, byte[] encodedBody) {
+            super(session);
+            this.content = encodedBody;
+        }
+
+        @Override
+        public void saveChanges() throws MessagingException {
+            saved = true;
+            modified = false;
+            updateMessageID();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailBatchProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects rendered messages for up to {@code window} or {@code maxSize} messages and sends each
+ * batch with one {@code JavaMailSender.send(MimeMessage...)} call, so one SMTP session carries the
+ * whole batch. Every submitted message gets its own future, completed exceptionally only if that
+ * message is among the batch's failed messages. Once the batcher has stopped, submitted messages
+ * fail straight away instead of waiting in a queue nothing drains any more.
+ */
+@Slf4j
+@Component
+public class MailBatcher {
+
+    private final JavaMailSender mailSender;
+    private final MailBatchProperties properties;
+    private final BlockingQueue<Pending> queue;
+    private final DistributionSummary batchSizes;
+    private ThreadPoolExecutor senders;
+    private Thread collector;
+    private volatile boolean running;
+    private volatile boolean stopped;
+
+    public MailBatcher(JavaMailSender mailSender, MailBatchProperties properties, MeterRegistry meterRegistry) {
+        this.mailSender = mailSender;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.batchSizes = DistributionSummary.builder("mail.batch.size")
+                .description("Messages sent per SMTP batch")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            log.info("Mail batching disabled, messages are sent one at a time");
+            return;
+        }
+        log.info("Starting mail batcher (maxSize: {}, window: {}, senders: {})",
+                properties.getMaxSize(), properties.getWindow(), properties.getSenders());
+        AtomicInteger threadNumber = new AtomicInteger();
+        // A full hand-off queue makes the collector send the batch itself, which stops it collecting more
+        senders = new ThreadPoolExecutor(properties.getSenders(), properties.getSenders(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getSenders()),
+                task -> new Thread(task, "mail-batch-sender-" + threadNumber.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        running = true;
+        collector = new Thread(this::collect, "mail-batch-collector");
+        collector.setDaemon(true);
+        collector.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (collector == null) {
+            return;
+        }
+        // Set before the final drain: a submit that queues after it sees the flag and takes its message back
+        stopped = true;
+        running = false;
+        collector.interrupt();
+        collector.join(TimeUnit.SECONDS.toMillis(5));
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            send(remaining);
+        }
+        senders.shutdown();
+        senders.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues the message for the next batch, blocking while the queue is full.
+     */
+    public CompletableFuture<Void> submit(MimeMessage message) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (stopped) {
+            result.completeExceptionally(new MailSendException("Mail batcher is stopped"));
+            return result;
+        }
+        if (!running) {
+            send(List.of(new Pending(message, result)));
+            return result;
+        }
+        Pending pending = new Pending(message, result);
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(new MailSendException("Interrupted while queueing message", e));
+            return result;
+        }
+        // Queued after stop() drained the queue; if the drain did not take it, nothing ever will
+        if (stopped && queue.remove(pending)) {
+            result.completeExceptionally(new MailSendException("Mail batcher is stopped"));
+        }
+        return result;
+    }
+
+    private void collect() {
+        long windowNanos = properties.getWindow().toNanos();
+        while (running) {
+            List<Pending> batch = new ArrayList<>(properties.getMaxSize());
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < properties.getMaxSize()) {
+                    // take whatever is already queued before waiting out the window
+                    if (queue.drainTo(batch, properties.getMaxSize() - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                senders.execute(() -> send(batch));
+            }
+        }
+    }
+
+    void send(List<Pending> batch) {
+        batchSizes.record(batch.size());
+        MimeMessage[] messages = new MimeMessage[batch.size()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = batch.get(i).message();
+        }
+        Map<Object, Exception> failed = Map.of();
+        try {
+            mailSender.send(messages);
+        } catch (MailSendException e) {
+            failed = e.getFailedMessages();
+            if (failed.isEmpty()) {
+                batch.forEach(pending -> pending.result().completeExceptionally(e));
+                return;
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to send batch of {} emails. Error: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+            return;
+        }
+        for (Pending pending : batch) {
+            Exception failure = failed.get(pending.message());
+            if (failure == null) {
+                pending.result().complete(null);
+            } else {
+                pending.result().completeExceptionally(failure);
+            }
+        }
+    }
+
+    record Pending(MimeMessage message, CompletableFuture<Void> result) {
+    }
+}
@@ -0,0 +1,228 @@
+package com.llyods.mail;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.llyods.config.MailRateLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces outbound mail under the sending account's quotas with {@link TokenBucket}s: global limits
+ * on every send, plus limits per recipient domain and per notification type. With a
+ * {@code fast-lane-reserve}, sends other than the fast lane's also take from a bulk ceiling below
+ * each global limit, so bulk traffic cannot use up the tokens a code needs. A send takes a token
+ * from every bucket that applies and waits for the latest of them, up to {@code max-delay};
+ * beyond that it takes nothing and fails with a {@link RateLimitedException}, so the message is
+ * handed back rather than pushing the account into a lockout.
+ * <p>
+ * Each configured bucket publishes {@code mail.ratelimit.saturation}; waits and refusals are
+ * counted by scope as {@code mail.ratelimit.throttled}.
+ */
+@Slf4j
+@Component
+public class MailRateLimiter {
+
+    private static final String GLOBAL = "global";
+    private static final String BULK = "bulk";
+    private static final String DOMAIN = "domain";
+    private static final String TYPE = "type";
+
+    private final MailRateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final List<Scoped> global = new ArrayList<>();
+    private final List<Scoped> bulk = new ArrayList<>();
+    private final Map<String, Scoped> domains = new LinkedHashMap<>();
+    private final Map<String, Scoped> types = new LinkedHashMap<>();
+    private final Cache<String, Scoped> otherDomains;
+    private final Map<String, Counter> delayed = new LinkedHashMap<>();
+    private final Map<String, Counter> rejected = new LinkedHashMap<>();
+    private final Timer delays;
+    private final boolean fastLane;
+    private final MailRateLimiter fastLaneLimiter;
+
+    private record Scoped(String scope, String name, TokenBucket bucket) {
+    }
+
+    @Autowired
+    public MailRateLimiter(MailRateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        double reserve = properties.getFastLaneReserve();
+        if (reserve < 0 || reserve >= 1) {
+            throw new IllegalArgumentException("fast-lane-reserve must be at least 0 and below 1");
+        }
+        long now = System.nanoTime();
+        properties.getGlobal().forEach((name, limit) -> {
+            global.add(register(GLOBAL, name, limit, now));
+            if (reserve > 0) {
+                bulk.add(register(BULK, name, bulkCeiling(limit, reserve), now));
+            }
+        });
+        properties.getDomains().forEach((domain, limit) ->
+                domains.put(domain.toLowerCase(Locale.ROOT), register(DOMAIN, domain.toLowerCase(Locale.ROOT), limit, now)));
+        properties.getTypes().forEach((type, limit) ->
+                types.put(type.toLowerCase(Locale.ROOT), register(TYPE, type.toLowerCase(Locale.ROOT), limit, now)));
+        // Buckets for unlisted domains come and go with traffic and are not published one by one
+        this.otherDomains = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterAccess(Duration.ofHours(1))
+                .build();
+        for (String scope : List.of(GLOBAL, BULK, DOMAIN, TYPE)) {
+            delayed.put(scope, throttled(scope, "delayed", meterRegistry));
+            rejected.put(scope, throttled(scope, "rejected", meterRegistry));
+        }
+        this.delays = Timer.builder("mail.ratelimit.delay")
+                .description("Time sends waited for rate limit tokens")
+                .register(meterRegistry);
+        this.fastLane = false;
+        this.fastLaneLimiter = new MailRateLimiter(this);
+        log.info("Outbound mail rate limiting {} (global: {}, fastLaneReserve: {}, domains: {}, types: {}, maxDelay: {})",
+                properties.isEnabled() ? "enabled" : "disabled", properties.getGlobal().keySet(), reserve,
+                properties.getDomains().keySet(), properties.getTypes().keySet(), properties.getMaxDelay());
+    }
+
+    /**
+     * The fast lane's view of {@code shared}: the same buckets and meters, without the bulk ceilings.
+     */
+    private MailRateLimiter(MailRateLimiter shared) {
+        this.properties = shared.properties;
+        this.meterRegistry = shared.meterRegistry;
+        this.global.addAll(shared.global);
+        this.domains.putAll(shared.domains);
+        this.types.putAll(shared.types);
+        this.otherDomains = shared.otherDomains;
+        this.delayed.putAll(shared.delayed);
+        this.rejected.putAll(shared.rejected);
+        this.delays = shared.delays;
+        this.fastLane = true;
+        this.fastLaneLimiter = this;
+    }
+
+    /**
+     * The limiter for fast lane sends: it shares every limit with this one but may also use the
+     * {@code fast-lane-reserve} of the global limits.
+     */
+    public MailRateLimiter fastLane() {
+        return fastLaneLimiter;
+    }
+
+    /**
+     * Takes a token for a {@code type} notification to {@code recipient}, waiting for it if it is
+     * free within {@code max-delay}.
+     *
+     * @throws RateLimitedException if a limit has no token within {@code max-delay}; no token is taken
+     */
+    public void acquire(String type, String recipient) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        List<Scoped> buckets = bucketsFor(type, recipient);
+        long now = System.nanoTime();
+        long maxWait = properties.getMaxDelay().toNanos();
+        long wait = 0;
+        Scoped slowest = null;
+        for (int i = 0; i < buckets.size(); i++) {
+            Scoped scoped = buckets.get(i);
+            long bucketWait = scoped.bucket().reserve(now, maxWait);
+            if (bucketWait < 0) {
+                for (int taken = 0; taken < i; taken++) {
+                    buckets.get(taken).bucket().refund();
+                }
+                rejected.get(scoped.scope()).increment();
+                throw new RateLimitedException("Rate limit " + scoped.scope() + " " + scoped.name()
+                        + " has no token within " + properties.getMaxDelay());
+            }
+            if (bucketWait > wait) {
+                wait = bucketWait;
+                slowest = scoped;
+            }
+        }
+        if (slowest != null) {
+            delayed.get(slowest.scope()).increment();
+            delays.record(wait, TimeUnit.NANOSECONDS);
+            long deadline = now + wait;
+            for (long remaining = wait; remaining > 0; remaining = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new RateLimitedException("Interrupted while waiting for rate limit " + slowest.name());
+                }
+            }
+        }
+    }
+
+    private List<Scoped> bucketsFor(String type, String recipient) {
+        List<Scoped> buckets = new ArrayList<>(global.size() + bulk.size() + 2);
+        buckets.addAll(global);
+        if (!fastLane) {
+            buckets.addAll(bulk);
+        }
+        String domain = domainOf(recipient);
+        if (domain != null) {
+            Scoped domainBucket = domains.get(domain);
+            if (domainBucket == null && properties.getDefaultDomain() != null) {
+                domainBucket = otherDomains.get(domain, key -> new Scoped(DOMAIN, key,
+                        bucket(properties.getDefaultDomain(), System.nanoTime())));
+            }
+            if (domainBucket != null) {
+                buckets.add(domainBucket);
+            }
+        }
+        if (type != null) {
+            Scoped typeBucket = types.get(type.toLowerCase(Locale.ROOT));
+            if (typeBucket != null) {
+                buckets.add(typeBucket);
+            }
+        }
+        return buckets;
+    }
+
+    private Scoped register(String scope, String name, MailRateLimitProperties.Limit limit, long now) {
+        Scoped scoped = new Scoped(scope, name, bucket(limit, now));
+        Gauge.builder("mail.ratelimit.saturation", scoped.bucket(), bucket -> bucket.saturation(System.nanoTime()))
+                .description("Share of the rate limit's burst in use; above 1 sends are waiting for tokens")
+                .tag("scope", scope)
+                .tag("limit", name)
+                .register(meterRegistry);
+        return scoped;
+    }
+
+    private static Counter throttled(String scope, String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder("mail.ratelimit.throttled")
+                .description("Sends that waited for or were refused a rate limit token")
+                .tag("scope", scope)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static MailRateLimitProperties.Limit bulkCeiling(MailRateLimitProperties.Limit limit, double reserve) {
+        MailRateLimitProperties.Limit ceiling = new MailRateLimitProperties.Limit();
+        ceiling.setPermits(Math.max(1, (int) (limit.getPermits() * (1 - reserve))));
+        ceiling.setPeriod(limit.getPeriod());
+        ceiling.setBurst(Math.max(1, (int) (limit.getBurst() * (1 - reserve))));
+        return ceiling;
+    }
+
+    private static TokenBucket bucket(MailRateLimitProperties.Limit limit, long now) {
+        return new TokenBucket(limit.getPermits(), limit.getPeriod(), limit.getBurst(), now);
+    }
+
+    private static String domainOf(String recipient) {
+        int at = recipient == null ? -1 : recipient.lastIndexOf('@');
+        return at < 0 ? null : recipient.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,264 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailPoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link JavaMailSenderImpl} that keeps SMTP connections open between sends instead of paying for
+ * TCP, STARTTLS and AUTH on every message. Connections are borrowed most recently used first, so
+ * under light load the spare ones age past {@code idleTimeout} and are closed. A connection is
+ * retired after {@code maxMessagesPerConnection} messages or after a failure that leaves it
+ * disconnected, in which case the rest of the batch continues on a new connection.
+ */
+@Slf4j
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+    private final MailPoolProperties properties;
+    private final BlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger open = new AtomicInteger();
+    private final Counter created;
+    private final Counter reused;
+    private volatile boolean closed;
+
+    public PooledJavaMailSender(MailPoolProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, "default");
+    }
+
+    /**
+     * @param name tags this pool's meters, to tell it apart from other pools to the same relay
+     */
+    public PooledJavaMailSender(MailPoolProperties properties, MeterRegistry meterRegistry, String name) {
+        this.properties = properties;
+        this.permits = new Semaphore(properties.getSize(), true);
+        Gauge.builder("mail.pool.connections", open, AtomicInteger::get)
+                .description("Open SMTP connections")
+                .tag("pool", name)
+                .tag("state", "open")
+                .register(meterRegistry);
+        Gauge.builder("mail.pool.connections", idle, BlockingDeque::size)
+                .description("Open SMTP connections")
+                .tag("pool", name)
+                .tag("state", "idle")
+                .register(meterRegistry);
+        this.created = Counter.builder("mail.pool.borrows").tag("pool", name).tag("connection", "new").register(meterRegistry);
+        this.reused = Counter.builder("mail.pool.borrows").tag("pool", name).tag("connection", "reused").register(meterRegistry);
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) throws MailException {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        PooledTransport connection;
+        try {
+            connection = borrow();
+        } catch (MessagingException ex) {
+            throw connectFailure(ex, mimeMessages, originalMessages, 0, failedMessages);
+        }
+
+        int next = 0;
+        try {
+            for (; next < mimeMessages.length; next++) {
+                if (connection == null) {
+                    connection = connect();
+                }
+                MimeMessage mimeMessage = mimeMessages[next];
+                try {
+                    send(connection.transport, mimeMessage);
+                    connection.sent++;
+                } catch (Exception ex) {
+                    Object original = (originalMessages != null ? originalMessages[next] : mimeMessage);
+                    failedMessages.put(original, ex);
+                    if (!connection.transport.isConnected()) {
+                        close(connection);
+                        connection = null;
+                    }
+                }
+            }
+        } catch (MessagingException ex) {
+            // reconnecting after a dropped connection failed
+            throw connectFailure(ex, mimeMessages, originalMessages, next, failedMessages);
+        } finally {
+            giveBack(connection);
+        }
+
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    /**
+     * Closes every idle connection. Connections in use are closed when they are returned.
+     */
+    @Override
+    public void destroy() {
+        closed = true;
+        PooledTransport connection;
+        while ((connection = idle.poll()) != null) {
+            close(connection);
+        }
+    }
+
+    private void send(Transport transport, MimeMessage mimeMessage) throws MessagingException {
+        // Same preparation as JavaMailSenderImpl.doSend
+        if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+        }
+        String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if (messageId != null) {
+            mimeMessage.setHeader(HEADER_MESSAGE_ID, messageId);
+        }
+        Address[] addresses = mimeMessage.getAllRecipients();
+        transport.sendMessage(mimeMessage, (addresses != null ? addresses : new Address[0]));
+    }
+
+    private PooledTransport borrow() throws MessagingException {
+        if (!properties.isEnabled()) {
+            return connect();
+        }
+        try {
+            if (!permits.tryAcquire(properties.getBorrowTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new MailSendException("No SMTP connection available within " + properties.getBorrowTimeout());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailSendException("Interrupted while waiting for an SMTP connection", e);
+        }
+        try {
+            long now = System.nanoTime();
+            PooledTransport connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (isExpired(connection, now)) {
+                    close(connection);
+                } else if (now - connection.lastUsed > properties.getValidateAfterIdle().toNanos()
+                        && !connection.transport.isConnected()) {
+                    // isConnected sends an SMTP NOOP on an open connection
+                    close(connection);
+                } else {
+                    reused.increment();
+                    return connection;
+                }
+            }
+            return connect();
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection, or {@code null} if it was lost during the send, and frees its slot.
+     */
+    private void giveBack(PooledTransport connection) {
+        if (!properties.isEnabled()) {
+            close(connection);
+            return;
+        }
+        try {
+            if (connection != null) {
+                connection.lastUsed = System.nanoTime();
+                if (closed || connection.sent >= properties.getMaxMessagesPerConnection()) {
+                    close(connection);
+                } else {
+                    idle.offerFirst(connection);
+                }
+            }
+            evictExpired();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        Transport transport = connectTransport();
+        open.incrementAndGet();
+        created.increment();
+        log.debug("Opened SMTP connection to {}:{}", getHost(), getPort());
+        return new PooledTransport(transport);
+    }
+
+    private void close(PooledTransport connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.transport.close();
+        } catch (MessagingException e) {
+            log.debug("Failed to close SMTP connection: {}", e.getMessage());
+        } finally {
+            open.decrementAndGet();
+        }
+    }
+
+    /**
+     * Idle connections are kept most recently used first, so expired ones collect at the tail.
+     */
+    private void evictExpired() {
+        long now = System.nanoTime();
+        Iterator<PooledTransport> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext()) {
+            PooledTransport connection = oldestFirst.next();
+            if (!isExpired(connection, now)) {
+                return;
+            }
+            if (idle.removeLastOccurrence(connection)) {
+                close(connection);
+            }
+        }
+    }
+
+    private boolean isExpired(PooledTransport connection, long now) {
+        return now - connection.lastUsed > properties.getIdleTimeout().toNanos();
+    }
+
+    /**
+     * Fails every message from {@code from} onwards; earlier messages were already sent or failed.
+     */
+    private MailException connectFailure(MessagingException ex, MimeMessage[] mimeMessages, Object[] originalMessages,
+                                         int from, Map<Object, Exception> failedMessages) {
+        if (ex instanceof AuthenticationFailedException && failedMessages.isEmpty() && from == 0) {
+            return new MailAuthenticationException(ex);
+        }
+        for (int i = from; i < mimeMessages.length; i++) {
+            Object original = (originalMessages != null ? originalMessages[i] : mimeMessages[i]);
+            failedMessages.putIfAbsent(original, ex);
+        }
+        return new MailSendException("Mail server connection failed", ex, failedMessages);
+    }
+
+    private static final class PooledTransport {
+
+        private final Transport transport;
+        private long lastUsed = System.nanoTime();
+        private int sent;
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
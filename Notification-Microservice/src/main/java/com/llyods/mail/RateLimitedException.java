@@ -0,0 +1,15 @@
+package com.llyods.mail;
+
+import org.springframework.mail.MailException;
+
+/**
+ * Thrown instead of sending when the outbound rate limiter has no token for the message within
+ * {@code notification.mail.rate-limit.max-delay}. Nothing was sent, so the message should be handed
+ * back without retrying in-process.
+ */
+public class RateLimitedException extends MailException {
+
+    public RateLimitedException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,14 @@
+package com.llyods.mail;
+
+import org.springframework.mail.MailException;
+
+/**
+ * Thrown instead of sending while the SMTP circuit breaker is open, or half-open with all probe
+ * sends taken. Nothing was sent, so the message should be handed back without retrying in-process.
+ */
+public class RelayUnavailableException extends MailException {
+
+    public RelayUnavailableException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
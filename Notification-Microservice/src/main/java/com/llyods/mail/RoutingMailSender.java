@@ -0,0 +1,216 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailRoutingProperties;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Spreads sends across several SMTP relays, each behind its own circuit breaker. A relay is picked
+ * at random in proportion to its configured weight times its health score. The score is the share
+ * of recent sends that did not fail at the relay, scaled down when per-message latency is above
+ * {@code latency-target}. Relays whose circuit is open are skipped.
+ * <p>
+ * A send refused by a relay's breaker, or one that could not reach the relay, goes to the next
+ * relay, as long as the relay accepted none of its messages, so failing over never sends a message
+ * twice. Any other failure is thrown as is. A send with no relay left fails as a relay failure, so
+ * the breaker around this sender still opens when every relay is down.
+ * <p>
+ * Relay health is published as {@code mail.relay.score}. Sends and failovers are counted per relay
+ * as {@code mail.relay.sends} and {@code mail.relay.failovers}.
+ */
+@Slf4j
+public class RoutingMailSender extends ForwardingMailSender implements DisposableBean {
+
+    /**
+     * A relay to route to. {@code sender} talks to the relay itself; {@code circuitBreaker} guards only it.
+     */
+    public record Relay(String name, int weight, JavaMailSender sender, CircuitBreaker circuitBreaker) {
+    }
+
+    private final MailRoutingProperties properties;
+    private final List<Route> routes = new ArrayList<>();
+
+    public RoutingMailSender(List<Relay> relays, MailRoutingProperties properties, MeterRegistry meterRegistry) {
+        // Messages are created by the first relay's sender; any relay can send them
+        super(firstSender(relays));
+        this.properties = properties;
+        relays.forEach(relay -> routes.add(new Route(relay, meterRegistry)));
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (Route route : routes) {
+            if (route.relay.sender() instanceof DisposableBean disposable) {
+                disposable.destroy();
+            }
+        }
+    }
+
+    /**
+     * Health score of the relay named {@code name}, between {@code min-score} and 1.
+     */
+    public double score(String name) {
+        return routes.stream()
+                .filter(route -> route.relay.name().equals(name))
+                .findFirst()
+                .map(Route::score)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown SMTP relay " + name));
+    }
+
+    @Override
+    protected void forward(Consumer<JavaMailSender> send, int messages) {
+        List<Route> tried = new ArrayList<>(routes.size());
+        MailException last = null;
+        Route route;
+        while ((route = pick(tried)) != null) {
+            tried.add(route);
+            long start = System.nanoTime();
+            try {
+                send.accept(route.sender);
+                route.succeeded((System.nanoTime() - start) / Math.max(1, messages));
+                return;
+            } catch (MailException e) {
+                DeliveryFailure failure = DeliveryFailure.of(e);
+                route.failed((System.nanoTime() - start) / Math.max(1, messages), failure);
+                if (!failsOver(failure, e, messages)) {
+                    throw e;
+                }
+                route.failovers.increment();
+                log.warn("SMTP relay {} did not take the send ({}), trying another relay: {}",
+                        route.relay.name(), failure, e.getMessage());
+                last = e;
+            }
+        }
+        if (last != null) {
+            throw last;
+        }
+        throw new MailSendException("No SMTP relay available, the circuit of every relay is open");
+    }
+
+    private static JavaMailSender firstSender(List<Relay> relays) {
+        if (relays.isEmpty()) {
+            throw new IllegalArgumentException("At least one SMTP relay is required");
+        }
+        return relays.get(0).sender();
+    }
+
+    private Route pick(List<Route> tried) {
+        double[] weights = new double[routes.size()];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            Route route = routes.get(i);
+            if (!tried.contains(route) && route.isAvailable()) {
+                weights[i] = route.relay.weight() * route.score();
+                total += weights[i];
+            }
+        }
+        if (total <= 0) {
+            return null;
+        }
+        double point = ThreadLocalRandom.current().nextDouble(total);
+        Route picked = null;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] > 0) {
+                picked = routes.get(i);
+                point -= weights[i];
+                if (point < 0) {
+                    break;
+                }
+            }
+        }
+        return picked;
+    }
+
+    /**
+     * Whether the send may go to another relay: the relay was not tried, or could not be reached and
+     * took none of the messages.
+     */
+    private static boolean failsOver(DeliveryFailure failure, MailException error, int messages) {
+        if (failure == DeliveryFailure.CIRCUIT_OPEN) {
+            return true;
+        }
+        if (failure != DeliveryFailure.CONNECTION) {
+            return false;
+        }
+        return !(error instanceof MailSendException sendException) || sendException.getFailedMessages().isEmpty()
+                || sendException.getFailedMessages().size() >= messages;
+    }
+
+    private static Counter sends(String relay, String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder("mail.relay.sends")
+                .description("Sends routed to the relay")
+                .tag("relay", relay)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private final class Route {
+
+        private final Relay relay;
+        private final JavaMailSender sender;
+        private final Counter sent;
+        private final Counter failedSends;
+        private final Counter failovers;
+        // Guarded by this
+        private double latency;
+        private double errorRate;
+
+        private Route(Relay relay, MeterRegistry meterRegistry) {
+            this.relay = relay;
+            this.sender = new CircuitBreakingMailSender(relay.sender(), relay.circuitBreaker());
+            this.sent = sends(relay.name(), "sent", meterRegistry);
+            this.failedSends = sends(relay.name(), "failed", meterRegistry);
+            this.failovers = Counter.builder("mail.relay.failovers")
+                    .description("Sends this relay did not take that went to another relay")
+                    .tag("relay", relay.name())
+                    .register(meterRegistry);
+            Gauge.builder("mail.relay.score", this, Route::score)
+                    .description("Relay health from recent error rate and latency; scales the relay's share of traffic")
+                    .tag("relay", relay.name())
+                    .register(meterRegistry);
+        }
+
+        private boolean isAvailable() {
+            CircuitBreaker.State state = relay.circuitBreaker().getState();
+            return state != CircuitBreaker.State.OPEN && state != CircuitBreaker.State.FORCED_OPEN;
+        }
+
+        private void succeeded(long latencyPerMessage) {
+            sent.increment();
+            record(latencyPerMessage, false, true);
+        }
+
+        private void failed(long latencyPerMessage, DeliveryFailure failure) {
+            failedSends.increment();
+            // Refusals never reached the relay, and a refused connection says nothing about its latency
+            if (failure != DeliveryFailure.CIRCUIT_OPEN && failure != DeliveryFailure.RATE_LIMITED) {
+                record(latencyPerMessage, failure.isRelayFailure(), failure != DeliveryFailure.CONNECTION);
+            }
+        }
+
+        private synchronized void record(long latencyPerMessage, boolean relayFailure, boolean sampleLatency) {
+            double smoothing = properties.getSmoothing();
+            if (sampleLatency) {
+                latency = latency == 0 ? latencyPerMessage : latency * (1 - smoothing) + latencyPerMessage * smoothing;
+            }
+            errorRate = errorRate * (1 - smoothing) + (relayFailure ? smoothing : 0);
+        }
+
+        private synchronized double score() {
+            double latencyFactor = latency <= 0 ? 1 : Math.min(1, properties.getLatencyTarget().toNanos() / latency);
+            return Math.max(properties.getMinScore(), (1 - errorRate) * latencyFactor);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.llyods.mail;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket kept as a single timestamp, the theoretical arrival time of the next send
+ * (GCRA). A send may go at {@code now} if that time is no more than {@code burst - 1} intervals
+ * ahead; taking a token moves it one interval on with a compare-and-set, so there is no refill
+ * thread and no lock. Times are {@link System#nanoTime()} values.
+ */
+public class TokenBucket {
+
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong nextArrival;
+
+    public TokenBucket(int permits, Duration period, int burst, long now) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        this.interval = Math.max(1, period.toNanos() / permits);
+        this.tolerance = (Math.max(burst, 1) - 1) * interval;
+        this.nextArrival = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token if one is free within {@code maxWait}, and returns how long the caller must wait
+     * before using it (0 if it is free now), or -1 without taking anything if it is not.
+     */
+    public long reserve(long now, long maxWait) {
+        while (true) {
+            long arrival = nextArrival.get();
+            long wait = Math.max(0, arrival - tolerance - now);
+            if (wait > maxWait) {
+                return -1;
+            }
+            if (nextArrival.compareAndSet(arrival, Math.max(arrival, now) + interval)) {
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #reserve} that was not used.
+     */
+    public void refund() {
+        nextArrival.addAndGet(-interval);
+    }
+
+    /**
+     * Share of the burst in use at {@code now}: 0 when idle, around 1 once the burst is used up and
+     * sends start to wait, and higher the longer they wait.
+     */
+    public double saturation(long now) {
+        return Math.max(0, nextArrival.get() - now) / (double) (tolerance + interval);
+    }
+}
@@ -0,0 +1,12 @@
+package com.llyods.model;
+
+/**
+ * A notification taken out of the retry cycle, as recorded in the dead-letter journal.
+ *
+ * @param stream   stream the notification was consumed from
+ * @param failure  {@code DeliveryFailure} of the last attempt
+ * @param reason   innermost error message, usually the SMTP reply
+ * @param failedAt epoch milliseconds of the last attempt
+ */
+public record DeadLetter(String stream, String failure, String reason, long failedAt, NotificationPayload payload) {
+}
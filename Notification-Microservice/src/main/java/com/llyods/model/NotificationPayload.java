@@ -1,28 +1,37 @@
 package com.llyods.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Email;
 
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class NotificationPayload {
 
     @NotNull(message = "Notification type cannot be null")
-    private String type;
+    private final String type;
 
     @Email(message = "Invalid email format")
     @NotNull(message = "Email cannot be null")
-    private String mail;
+    private final String mail;
 
     @NotNull(message = "Recipient name cannot be null")
-    private String name;
+    private final String name;
 
     @NotNull(message = "Subject cannot be null")
-    private String subject;
+    private final String subject;
 
     @NotNull(message = "Message content cannot be null")
-    private String messageContent;
-
-    public NotificationPayload(String type, String mail, String name, String subject, String messageContent) {
-        this.type=type;
+    private final String messageContent;
+
+    @JsonCreator
+    public NotificationPayload(@JsonProperty("type") String type,
+                               @JsonProperty("mail") String mail,
+                               @JsonProperty("name") String name,
+                               @JsonProperty("subject") String subject,
+                               @JsonProperty("messageContent") String messageContent) {
+        this.type = type;
         this.mail = mail;
         this.name = name;
         this.subject = subject;
@@ -33,39 +42,19 @@ public class NotificationPayload {
         return type;
     }
 
-    public void setType(String type) {
-        this.type = type;
-    }
-
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
     public String getMail() {
         return mail;
     }
 
-    public void setMail(String mail) {
-        this.mail = mail;
-    }
-
     public String getSubject() {
         return subject;
     }
 
-    public void setSubject(String subject) {
-        this.subject = subject;
-    }
-
     public String getMessageContent() {
         return messageContent;
     }
-
-    public void setMessageContent(String messageContent) {
-        this.messageContent = messageContent;
-    }
 }
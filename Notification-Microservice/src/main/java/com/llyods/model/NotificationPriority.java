@@ -0,0 +1,7 @@
+package com.llyods.model;
+
+public enum NotificationPriority {
+    HIGH,
+    NORMAL,
+    LOW
+}
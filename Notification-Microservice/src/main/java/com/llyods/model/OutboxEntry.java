@@ -0,0 +1,10 @@
+package com.llyods.model;
+
+/**
+ * A received notification as written to the outbox before its Pub/Sub message is acked.
+ *
+ * @param stream     stream the notification was consumed from
+ * @param receivedAt epoch milliseconds when it was received
+ */
+public record OutboxEntry(String stream, long receivedAt, NotificationPayload payload) {
+}
@@ -0,0 +1,146 @@
+package com.llyods.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llyods.config.DeadLetterProperties;
+import com.llyods.journal.Checkpoint;
+import com.llyods.journal.SegmentedJournal;
+import com.llyods.model.DeadLetter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local, durable record of dead letters in a {@link SegmentedJournal} under
+ * {@code notification.dead-letter.journal.directory}. Each dead letter is synced to disk before
+ * {@link #append} returns, so its Pub/Sub message can be acked. A checkpoint file next to the
+ * segments remembers how far replay has got.
+ */
+@Slf4j
+@Component
+public class DeadLetterJournal {
+
+    private final DeadLetterProperties properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private SegmentedJournal journal;
+    private Checkpoint replayed;
+
+    public record Entry(long sequence, DeadLetter deadLetter) {
+    }
+
+    public DeadLetterJournal(DeadLetterProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        DeadLetterProperties.Journal settings = properties.getJournal();
+        if (!settings.isEnabled()) {
+            log.info("Dead-letter journal disabled");
+            return;
+        }
+        journal = new SegmentedJournal(settings.getDirectory(), Math.toIntExact(settings.getSegmentSize().toBytes()));
+        replayed = new Checkpoint(settings.getDirectory().resolve("replay.checkpoint"), journal.firstSequence());
+        Gauge.builder("notification.deadletters.journal.pending", this, DeadLetterJournal::pending)
+                .description("Journaled dead letters not replayed yet")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Writes {@code deadLetter} to disk and returns its sequence, or -1 if the journal is disabled.
+     */
+    public long append(DeadLetter deadLetter) {
+        if (journal == null) {
+            return -1;
+        }
+        try {
+            long sequence;
+            synchronized (this) {
+                sequence = journal.append(objectMapper.writeValueAsBytes(deadLetter));
+                journal.sync();
+                long oldest = journal.retain(properties.getJournal().getMaxSegments());
+                if (oldest > replayed.get()) {
+                    log.warn("Dead-letter journal is full, dropped entries {} to {} before they were replayed",
+                            replayed.get(), oldest - 1);
+                    replayed.save(oldest);
+                }
+            }
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to journal dead letter for " + deadLetter.payload().getMail(), e);
+        }
+    }
+
+    /**
+     * Up to {@code limit} entries from sequence {@code from} on. Entries that no longer parse are
+     * logged and skipped.
+     */
+    public List<Entry> read(long from, int limit) {
+        if (journal == null) {
+            return List.of();
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (SegmentedJournal.Record record : journal.read(from, limit)) {
+            try {
+                entries.add(new Entry(record.sequence(), objectMapper.readValue(record.data(), DeadLetter.class)));
+            } catch (IOException e) {
+                log.error("Skipping unreadable dead letter {}: {}", record.sequence(), e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * First entry that has not been replayed.
+     */
+    public long replayFrom() {
+        return journal == null ? 0 : Math.max(replayed.get(), journal.firstSequence());
+    }
+
+    /**
+     * Records that every entry before {@code sequence} has been replayed. Never moves backwards.
+     */
+    public synchronized void markReplayed(long sequence) {
+        if (journal == null || sequence <= replayed.get()) {
+            return;
+        }
+        try {
+            replayed.save(sequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save dead-letter replay checkpoint", e);
+        }
+    }
+
+    public long firstSequence() {
+        return journal == null ? 0 : journal.firstSequence();
+    }
+
+    public long nextSequence() {
+        return journal == null ? 0 : journal.nextSequence();
+    }
+
+    long pending() {
+        return nextSequence() - replayFrom();
+    }
+}
@@ -0,0 +1,274 @@
+package com.llyods.service;
+
+import com.llyods.config.DeadLetterProperties;
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.mail.DeliveryFailure;
+import com.llyods.model.DeadLetter;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends journaled dead letters again, one replay at a time on its own thread. Entries are read in
+ * batches of {@code notification.dead-letter.replay.batch-size}, grouped by the template of the
+ * stream they came from and sent with one {@code processBatch} call per group, with the next batch
+ * held back so no more than {@code rate-per-second} sends go out.
+ * <p>
+ * Entries are checked the way the fast lane checks live codes before anything is sent: a code
+ * whose validity window has passed, or for which a newer code has been registered, is settled
+ * without sending and counted as dropped. Dead letters keep no publish time, so both are measured
+ * from {@code failedAt}, which is never earlier than the publish time.
+ * <p>
+ * Entries that fail again with a retryable error are appended to the journal once more, so a later
+ * replay picks them up; permanent failures are only counted. A relay failure or an open circuit
+ * breaker ends the replay after the current batch. The replay checkpoint moves past each batch
+ * once it has been settled.
+ */
+@Slf4j
+@Service
+public class DeadLetterReplayService {
+
+    private final DeadLetterJournal deadLetterJournal;
+    private final MessageProcessorService messageProcessorService;
+    private final FastLane fastLane;
+    private final SupersedeService supersedeService;
+    private final SubscriptionProperties subscriptionProperties;
+    private final DeadLetterProperties properties;
+    private final Counter replayedCounter;
+    private final Counter failedCounter;
+    private final Counter droppedCounter;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "dead-letter-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Replay current;
+
+    /**
+     * Progress of a replay. {@code next} is the first entry not yet settled and {@code until} the end
+     * of the journal when the replay started; entries re-appended during the replay are left for the
+     * next one.
+     */
+    public record Status(boolean running, Instant startedAt, long from, long next, long until, double ratePerSecond,
+                         long replayed, long requeued, long failed, long dropped, String stoppedBy) {
+    }
+
+    public DeadLetterReplayService(DeadLetterJournal deadLetterJournal, MessageProcessorService messageProcessorService,
+                                   FastLane fastLane, SupersedeService supersedeService,
+                                   SubscriptionProperties subscriptionProperties, DeadLetterProperties properties,
+                                   MeterRegistry meterRegistry) {
+        this.deadLetterJournal = deadLetterJournal;
+        this.messageProcessorService = messageProcessorService;
+        this.fastLane = fastLane;
+        this.supersedeService = supersedeService;
+        this.subscriptionProperties = subscriptionProperties;
+        this.properties = properties;
+        this.replayedCounter = Counter.builder("notification.deadletters.replayed")
+                .description("Journaled dead letters sent again successfully")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("notification.deadletters.replay.failed")
+                .description("Journaled dead letters that failed again when replayed")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("notification.deadletters.replay.dropped")
+                .description("Journaled codes settled without sending because they had expired or been superseded")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts replaying up to {@code limit} entries from {@code from}, the replay checkpoint when
+     * {@code null}, at no more than {@code ratePerSecond} sends per second. Returns the status of the
+     * replay already running instead if there is one.
+     */
+    public synchronized Status start(Long from, Integer limit, Double ratePerSecond) {
+        if (!deadLetterJournal.isEnabled()) {
+            throw new IllegalStateException("Dead-letter journal is disabled");
+        }
+        if (current != null && current.running) {
+            return current.status();
+        }
+        long start = from != null ? Math.max(from, deadLetterJournal.firstSequence()) : deadLetterJournal.replayFrom();
+        long end = deadLetterJournal.nextSequence();
+        if (limit != null) {
+            end = Math.min(end, start + Math.max(0, limit));
+        }
+        double rate = ratePerSecond != null && ratePerSecond > 0 ? ratePerSecond : properties.getReplay().getRatePerSecond();
+        Replay replay = new Replay(start, end, rate);
+        current = replay;
+        log.info("Replaying dead letters {} to {} at up to {}/s", start, end - 1, rate);
+        executor.execute(replay::run);
+        return replay.status();
+    }
+
+    /**
+     * Asks the running replay to stop after its current batch.
+     */
+    public Status stop() {
+        Replay replay = current;
+        if (replay == null) {
+            return null;
+        }
+        if (replay.running) {
+            replay.stoppedBy = "request";
+            replay.running = false;
+        }
+        return replay.status();
+    }
+
+    public Status status() {
+        Replay replay = current;
+        return replay != null ? replay.status() : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stop();
+        executor.shutdownNow();
+    }
+
+    private Map<String, String> templatesByStream() {
+        Map<String, String> templates = new LinkedHashMap<>();
+        for (SubscriptionProperties.Stream stream : subscriptionProperties.getStreams()) {
+            templates.put(stream.getName(), stream.getTemplate());
+        }
+        return templates;
+    }
+
+    private final class Replay {
+
+        private final Instant startedAt = Instant.now();
+        private final long from;
+        private final long until;
+        private final double ratePerSecond;
+        private final AtomicLong next;
+        private final AtomicLong replayed = new AtomicLong();
+        private final AtomicLong requeued = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean running = true;
+        private volatile String stoppedBy;
+
+        private Replay(long from, long until, double ratePerSecond) {
+            this.from = from;
+            this.until = until;
+            this.ratePerSecond = ratePerSecond;
+            this.next = new AtomicLong(from);
+        }
+
+        Status status() {
+            return new Status(running, startedAt, from, next.get(), until, ratePerSecond,
+                    replayed.get(), requeued.get(), failed.get(), dropped.get(), stoppedBy);
+        }
+
+        void run() {
+            Map<String, String> templates = templatesByStream();
+            long nanosPerSend = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+            long nextBatchAt = System.nanoTime();
+            try {
+                while (running && next.get() < until) {
+                    int batchSize = (int) Math.min(properties.getReplay().getBatchSize(), until - next.get());
+                    List<DeadLetterJournal.Entry> batch = deadLetterJournal.read(next.get(), batchSize);
+                    batch.removeIf(entry -> entry.sequence() >= until);
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.sleep(nextBatchAt - System.nanoTime());
+                    nextBatchAt = System.nanoTime() + nanosPerSend * batch.size();
+
+                    boolean relayDown = send(batch, templates);
+                    long settled = batch.get(batch.size() - 1).sequence() + 1;
+                    next.set(settled);
+                    deadLetterJournal.markReplayed(settled);
+                    if (relayDown) {
+                        stoppedBy = "relay unavailable";
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stoppedBy = "interrupted";
+            } catch (RuntimeException e) {
+                log.error("Dead-letter replay stopped at {}: {}", next.get(), e.getMessage(), e);
+                stoppedBy = e.getMessage();
+            } finally {
+                running = false;
+                log.info("Dead-letter replay finished at {}: {} replayed, {} requeued, {} failed, {} dropped",
+                        next.get(), replayed.get(), requeued.get(), failed.get(), dropped.get());
+            }
+        }
+
+        /**
+         * Sends one batch and settles every entry in it. Returns {@code true} if the relay looked
+         * unavailable.
+         */
+        private boolean send(List<DeadLetterJournal.Entry> batch, Map<String, String> templates) {
+            Map<String, List<DeadLetter>> byTemplate = new LinkedHashMap<>();
+            for (DeadLetterJournal.Entry entry : batch) {
+                String template = templates.get(entry.deadLetter().stream());
+                if (isStale(entry, template)) {
+                    dropped.incrementAndGet();
+                    droppedCounter.increment();
+                    continue;
+                }
+                byTemplate.computeIfAbsent(template, key -> new ArrayList<>()).add(entry.deadLetter());
+            }
+            boolean relayDown = false;
+            for (Map.Entry<String, List<DeadLetter>> group : byTemplate.entrySet()) {
+                List<NotificationPayload> payloads = group.getValue().stream().map(DeadLetter::payload).toList();
+                Map<NotificationPayload, Exception> failures = messageProcessorService.processBatch(payloads, group.getKey());
+                for (DeadLetter deadLetter : group.getValue()) {
+                    Exception error = failures.get(deadLetter.payload());
+                    if (error == null) {
+                        replayed.incrementAndGet();
+                        replayedCounter.increment();
+                        continue;
+                    }
+                    failedCounter.increment();
+                    DeliveryFailure failure = DeliveryFailure.of(error);
+                    relayDown |= failure == DeliveryFailure.CIRCUIT_OPEN || failure == DeliveryFailure.RATE_LIMITED
+                            || failure.isRelayFailure();
+                    if (failure.isRetryable()) {
+                        deadLetterJournal.append(new DeadLetter(deadLetter.stream(), failure.name(),
+                                DeadLetterService.reason(error), System.currentTimeMillis(), deadLetter.payload()));
+                        requeued.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }
+            }
+            return relayDown;
+        }
+
+        /**
+         * Whether the entry is a code that is no longer worth sending: its validity window has passed
+         * since it last failed, or a newer code for the same recipient has been registered since.
+         */
+        private boolean isStale(DeadLetterJournal.Entry entry, String template) {
+            DeadLetter deadLetter = entry.deadLetter();
+            Instant failedAt = Instant.ofEpochMilli(deadLetter.failedAt());
+            if (fastLane.accepts(deadLetter.payload(), template) && fastLane.isExpired(failedAt)) {
+                log.info("Dropping dead letter {} from {}, failed at {} and no longer valid", entry.sequence(),
+                        deadLetter.stream(), failedAt);
+                return true;
+            }
+            if (supersedeService.dropIfSupersededSince(deadLetter.payload(), failedAt)) {
+                log.info("Dropping dead letter {} from {}, superseded by a newer code", entry.sequence(), deadLetter.stream());
+                return true;
+            }
+            return false;
+        }
+    }
+}
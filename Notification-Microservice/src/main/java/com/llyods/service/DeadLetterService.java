@@ -0,0 +1,91 @@
+package com.llyods.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.llyods.config.DeadLetterProperties;
+import com.llyods.mail.DeliveryFailure;
+import com.llyods.model.DeadLetter;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Takes notifications that can never be delivered, or have run out of retries, out of the retry
+ * cycle. Each one is counted in {@code notification.deadletters}, written to the
+ * {@link DeadLetterJournal} for later replay and, when {@code notification.dead-letter.topic} is
+ * set, published there with the failure as attributes. The caller acks the original message once
+ * the returned future completes.
+ */
+@Slf4j
+@Service
+public class DeadLetterService {
+
+    private final PubSubTemplate pubSubTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final DeadLetterJournal deadLetterJournal;
+    private final DeadLetterProperties properties;
+
+    public DeadLetterService(PubSubTemplate pubSubTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                             DeadLetterJournal deadLetterJournal, DeadLetterProperties properties) {
+        this.pubSubTemplate = pubSubTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.deadLetterJournal = deadLetterJournal;
+        this.properties = properties;
+    }
+
+    /**
+     * Whether notifications that exhausted their retries should be dead-lettered rather than handed
+     * back to Pub/Sub: {@code notification.dead-letter.after-retries} is set and the journal keeps a
+     * copy to replay.
+     */
+    public boolean acceptsExhaustedRetries() {
+        return properties.isAfterRetries() && deadLetterJournal.isEnabled();
+    }
+
+    public CompletableFuture<Void> deadLetter(String stream, NotificationPayload payload, Throwable error) {
+        DeliveryFailure failure = DeliveryFailure.of(error);
+        String reason = reason(error);
+        meterRegistry.counter("notification.deadletters", "stream", stream, "failure", failure.name()).increment();
+        log.warn("Dead-lettering {} notification to {} after {} failure: {}", stream, payload.getMail(), failure, reason);
+
+        try {
+            deadLetterJournal.append(new DeadLetter(stream, failure.name(), reason, System.currentTimeMillis(), payload));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String topic = properties.getTopic();
+        if (topic == null || topic.isBlank()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Map<String, String> attributes = Map.of(
+                "stream", stream,
+                "failure", failure.name(),
+                "reason", reason);
+        return pubSubTemplate.publish(topic, body, attributes)
+                .thenAccept(messageId -> log.debug("Published dead letter {} to {}", messageId, topic));
+    }
+
+    /**
+     * Message of the innermost cause, which for SMTP failures is the server's reply.
+     */
+    static String reason(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+    }
+}
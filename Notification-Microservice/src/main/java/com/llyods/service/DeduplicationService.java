@@ -0,0 +1,142 @@
+package com.llyods.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.cloud.spring.pubsub.support.BasicAcknowledgeablePubsubMessage;
+import com.google.cloud.spring.pubsub.support.GcpPubSubHeaders;
+import com.google.protobuf.ByteString;
+import com.llyods.config.DeduplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Remembers recently seen notifications so Pub/Sub redeliveries are not sent twice. A key is
+ * claimed before delivery, marked delivered once the mail has gone out and released again if
+ * delivery fails, so only successful sends suppress later copies.
+ */
+@Slf4j
+@Service
+public class DeduplicationService {
+
+    public enum State {
+        /**
+         * First time the key is seen; the caller must later call {@link #delivered} or {@link #release}.
+         */
+        NEW,
+        /**
+         * Another delivery of the same notification is still being processed.
+         */
+        IN_FLIGHT,
+        /**
+         * The notification has already been sent.
+         */
+        DELIVERED
+    }
+
+    private final DeduplicationProperties properties;
+    private final Cache<String, State> seen;
+    private final Counter inFlightDuplicates;
+    private final Counter deliveredDuplicates;
+
+    public DeduplicationService(DeduplicationProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.seen = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, seen, "notification.dedup");
+        this.inFlightDuplicates = duplicateCounter(meterRegistry, State.IN_FLIGHT);
+        this.deliveredDuplicates = duplicateCounter(meterRegistry, State.DELIVERED);
+        log.info("Notification deduplication {} (key: {}, maximumSize: {}, ttl: {})",
+                properties.isEnabled() ? "enabled" : "disabled", properties.getKey(),
+                properties.getMaximumSize(), properties.getTtl());
+    }
+
+    /**
+     * Key for a streamed message: its Pub/Sub message ID, or a hash of the payload when configured
+     * that way or when the message carries no original Pub/Sub message.
+     */
+    public String keyOf(Message<?> message) {
+        BasicAcknowledgeablePubsubMessage original = message.getHeaders()
+                .get(GcpPubSubHeaders.ORIGINAL_MESSAGE, BasicAcknowledgeablePubsubMessage.class);
+        return keyOf(original != null ? original.getPubsubMessage().getMessageId() : null, message.getPayload());
+    }
+
+    /**
+     * Key for a pulled message, see {@link #keyOf(Message)}.
+     */
+    public String keyOf(String messageId, Object data) {
+        if (properties.getKey() == DeduplicationProperties.Key.MESSAGE_ID && messageId != null && !messageId.isEmpty()) {
+            return messageId;
+        }
+        return hash(data);
+    }
+
+    /**
+     * Atomically records the key as in flight if it has not been seen, and returns its previous state.
+     */
+    public State claim(String key) {
+        if (!properties.isEnabled()) {
+            return State.NEW;
+        }
+        boolean[] created = new boolean[1];
+        State state = seen.get(key, k -> {
+            created[0] = true;
+            return State.IN_FLIGHT;
+        });
+        if (created[0]) {
+            return State.NEW;
+        }
+        (state == State.DELIVERED ? deliveredDuplicates : inFlightDuplicates).increment();
+        return state;
+    }
+
+    public void delivered(String key) {
+        if (properties.isEnabled()) {
+            seen.put(key, State.DELIVERED);
+        }
+    }
+
+    /**
+     * Forgets a claimed key after a failed delivery so the redelivered message is processed again.
+     */
+    public void release(String key) {
+        if (properties.isEnabled()) {
+            seen.invalidate(key);
+        }
+    }
+
+    private String hash(Object data) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        if (data instanceof byte[] bytes) {
+            digest.update(bytes);
+        } else if (data instanceof ByteString byteString) {
+            digest.update(byteString.asReadOnlyByteBuffer());
+        } else {
+            digest.update(String.valueOf(data).getBytes(StandardCharsets.UTF_8));
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static Counter duplicateCounter(MeterRegistry meterRegistry, State state) {
+        return Counter.builder("notification.dedup.duplicates")
+                .description("Duplicate notifications that were not sent again")
+                .tag("state", state.name().toLowerCase())
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,175 @@
+package com.llyods.service;
+
+import com.llyods.config.DigestProperties;
+import com.llyods.model.NotificationPayload;
+import com.llyods.model.NotificationPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces notifications for the same recipient into one digest email. The first notification for
+ * an address opens a digest; later ones join it until {@code notification.digest.window} has passed
+ * or {@code max-items} have joined, and the digest is then sent once, rendered with the digest
+ * template. A digest of one is sent as the notification itself, with its stream's template.
+ * <p>
+ * Every notification gets a future completed when its digest has been sent, so callers only settle
+ * the Pub/Sub message then. If the digest fails, every member fails with the same cause.
+ */
+@Slf4j
+@Service
+public class DigestCoalescer {
+
+    private final DigestProperties properties;
+    private final MessageProcessorService messageProcessorService;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Digest> open = new ConcurrentHashMap<>();
+    private Set<String> types;
+    private ScheduledThreadPoolExecutor senders;
+    private DistributionSummary digestSizes;
+    private Counter coalesced;
+
+    private record Member(NotificationPayload payload, String templateName, CompletableFuture<Void> sent) {
+    }
+
+    private static final class Digest {
+
+        private final List<Member> members = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+    }
+
+    public DigestCoalescer(DigestProperties properties, MessageProcessorService messageProcessorService,
+                           MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.messageProcessorService = messageProcessorService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        types = properties.getTypes().stream().map(type -> type.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+        AtomicInteger threadNumber = new AtomicInteger();
+        senders = new ScheduledThreadPoolExecutor(properties.getSenders(),
+                task -> new Thread(task, "digest-sender-" + threadNumber.incrementAndGet()));
+        senders.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        digestSizes = DistributionSummary.builder("notification.digest.size")
+                .description("Notifications sent together in one digest email")
+                .register(meterRegistry);
+        coalesced = Counter.builder("notification.digest.coalesced")
+                .description("Notifications that joined a recipient's open digest instead of being sent on their own")
+                .register(meterRegistry);
+        Gauge.builder("notification.digest.open", open, Map::size)
+                .description("Recipients with a digest waiting for its window to close")
+                .register(meterRegistry);
+        log.info("Coalescing {} notifications per recipient (window: {}, maxItems: {})",
+                types, properties.getWindow(), properties.getMaxItems());
+    }
+
+    /**
+     * Sends every open digest now, then waits for the sends to finish.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (senders == null) {
+            return;
+        }
+        for (String recipient : open.keySet()) {
+            Digest digest = open.remove(recipient);
+            if (digest != null) {
+                digest.timer.cancel(false);
+                senders.execute(() -> send(digest));
+            }
+        }
+        senders.shutdown();
+        senders.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Whether a notification should go through {@link #add}: coalescing is enabled, its type is
+     * listed and it is not high priority.
+     */
+    public boolean accepts(NotificationPayload payload, NotificationPriority priority) {
+        return senders != null
+                && priority != NotificationPriority.HIGH
+                && payload.getType() != null
+                && types.contains(payload.getType().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Adds the notification to its recipient's digest and returns a future completed once the
+     * digest has been sent.
+     *
+     * @param templateName template of the notification's stream, used if it ends up sent on its own
+     */
+    public CompletableFuture<Void> add(NotificationPayload payload, String templateName) {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        String recipient = payload.getMail().toLowerCase(Locale.ROOT);
+        Digest[] full = new Digest[1];
+        open.compute(recipient, (key, digest) -> {
+            if (digest == null) {
+                Digest opened = new Digest();
+                opened.timer = senders.schedule(() -> close(key, opened), properties.getWindow().toMillis(), TimeUnit.MILLISECONDS);
+                digest = opened;
+            } else {
+                coalesced.increment();
+            }
+            digest.members.add(new Member(payload, templateName, sent));
+            if (digest.members.size() >= properties.getMaxItems()) {
+                full[0] = digest;
+                return null;
+            }
+            return digest;
+        });
+        if (full[0] != null) {
+            Digest digest = full[0];
+            digest.timer.cancel(false);
+            senders.execute(() -> send(digest));
+        }
+        return sent;
+    }
+
+    private void close(String recipient, Digest digest) {
+        if (open.remove(recipient, digest)) {
+            send(digest);
+        }
+    }
+
+    private void send(Digest digest) {
+        List<Member> members = digest.members;
+        try {
+            if (members.size() == 1) {
+                Member member = members.get(0);
+                messageProcessorService.processMessage(member.payload(), member.templateName());
+            } else {
+                List<NotificationPayload> payloads = members.stream().map(Member::payload).toList();
+                messageProcessorService.processDigest(payloads, properties.getTemplate(),
+                        String.format(properties.getSubject(), members.size()));
+            }
+            digestSizes.record(members.size());
+            members.forEach(member -> member.sent().complete(null));
+        } catch (RuntimeException e) {
+            members.forEach(member -> member.sent().completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.llyods.service;
+
+import com.llyods.config.FastLaneProperties;
+import com.llyods.mail.MailBatcher;
+import com.llyods.mail.MailRateLimiter;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Sends OTP and password reset codes apart from everything else: its own workers, its own SMTP
+ * connections ({@code fastLaneMailSender}) and a short in-process retry budget
+ * ({@code fastLaneRetryTemplate}), so bulk mail can never hold the threads or connections a code
+ * is waiting for. A code older than {@code notification.fast-lane.validity} when a worker picks
+ * it up is dropped rather than sent.
+ * <p>
+ * Time from publish to SMTP acceptance is recorded for both lanes as
+ * {@code notification.delivery.latency}, tagged {@code lane=fast} or {@code lane=bulk}.
+ */
+@Slf4j
+@Service
+public class FastLane {
+
+    public enum Outcome {
+        SENT,
+        EXPIRED,
+        SUPERSEDED
+    }
+
+    private final FastLaneProperties properties;
+    private final TemplateRegistry templateRegistry;
+    private final MessageProcessorService messageProcessorService;
+    private final MeterRegistry meterRegistry;
+    private final Timer fastLatency;
+    private final Timer bulkLatency;
+    private final Counter expired;
+    private ThreadPoolExecutor workers;
+
+    public FastLane(FastLaneProperties properties, TemplateRegistry templateRegistry, TemplateRenderer templateRenderer,
+                    MailBatcher mailBatcher, MailRateLimiter rateLimiter,
+                    @Qualifier("fastLaneMailSender") JavaMailSender fastLaneMailSender,
+                    @Qualifier("fastLaneRetryTemplate") RetryTemplate fastLaneRetryTemplate, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.templateRegistry = templateRegistry;
+        // Same rendering, error handling and rate limits as the shared path, over the lane's own sender and retries;
+        // the lane's limiter may also draw on the share of the global limits bulk traffic cannot take
+        this.messageProcessorService = new MessageProcessorService(new PubSubMailSenderService(
+                fastLaneMailSender, fastLaneRetryTemplate, templateRenderer, templateRegistry, mailBatcher, rateLimiter.fastLane()));
+        this.meterRegistry = meterRegistry;
+        this.fastLatency = latencyTimer("fast", meterRegistry);
+        this.bulkLatency = latencyTimer("bulk", meterRegistry);
+        this.expired = Counter.builder("notification.fastlane.expired")
+                .description("Codes dropped because they were older than their validity window")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            log.info("Fast lane disabled, OTP notifications share the send workers and SMTP pool");
+            return;
+        }
+        log.info("Starting fast lane for {} with {} workers (validity: {}, retry maxAttempts: {})",
+                properties.getTemplates(), properties.getWorkers(), properties.getValidity(), properties.getRetry().getMaxAttempts());
+        AtomicInteger threadNumber = new AtomicInteger();
+        // A full queue blocks the submitting subscription thread, as the priority dispatcher does
+        workers = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                task -> new Thread(task, "fast-lane-" + threadNumber.incrementAndGet()),
+                (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Fast lane is stopped");
+                    }
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while queueing fast lane notification", e);
+                    }
+                });
+        Gauge.builder("notification.fastlane.queue", workers.getQueue(), BlockingQueue::size)
+                .description("Codes waiting for a fast lane worker")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (workers == null) {
+            return;
+        }
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Whether the notification goes on the fast lane: the lane is running and the notification is
+     * rendered with one of its templates, the stream's template if it has one.
+     */
+    public boolean accepts(NotificationPayload payload, String streamTemplate) {
+        if (workers == null) {
+            return false;
+        }
+        String template = streamTemplate != null ? streamTemplate : templateRegistry.mappedTemplate(payload.getType());
+        return template != null && properties.getTemplates().contains(template);
+    }
+
+    /**
+     * Whether a code published at {@code publishedAt} is past its validity window. Unknown publish
+     * times never expire.
+     */
+    public boolean isExpired(Instant publishedAt) {
+        return publishedAt != null
+                && Duration.between(publishedAt, Instant.now()).compareTo(properties.getValidity()) > 0;
+    }
+
+    /**
+     * Queues the notification for a fast lane worker. The future completes with {@link Outcome#EXPIRED}
+     * if the code went stale before a worker got to it, with {@link Outcome#SUPERSEDED} if
+     * {@code superseded} says a newer code has arrived by then, and fails with a
+     * {@link com.llyods.exception.MessageProcessingException} once the lane's retries are used up.
+     */
+    public CompletableFuture<Outcome> send(NotificationPayload payload, String templateName, Instant publishedAt,
+                                           BooleanSupplier superseded) {
+        CompletableFuture<Outcome> result = new CompletableFuture<>();
+        workers.execute(() -> {
+            try {
+                if (superseded.getAsBoolean()) {
+                    log.info("Dropping {} notification to {}, a newer code has arrived", payload.getType(), payload.getMail());
+                    result.complete(Outcome.SUPERSEDED);
+                    return;
+                }
+                if (isExpired(publishedAt)) {
+                    expired.increment();
+                    log.warn("Dropping {} notification to {}, published at {} and no longer valid",
+                            payload.getType(), payload.getMail(), publishedAt);
+                    result.complete(Outcome.EXPIRED);
+                    return;
+                }
+                messageProcessorService.processMessage(payload, templateName);
+                result.complete(Outcome.SENT);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Records how long the notification took from publish to SMTP acceptance on its lane.
+     */
+    public void recordLatency(boolean fastLane, Instant publishedAt) {
+        if (publishedAt != null) {
+            (fastLane ? fastLatency : bulkLatency).record(Duration.between(publishedAt, Instant.now()));
+        }
+    }
+
+    private static Timer latencyTimer(String lane, MeterRegistry meterRegistry) {
+        return Timer.builder("notification.delivery.latency")
+                .description("Time from publish to the SMTP relay accepting the notification")
+                .tag("lane", lane)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,99 @@
+package com.llyods.service;
+
+import com.google.cloud.spring.pubsub.support.AcknowledgeablePubsubMessage;
+import com.google.cloud.spring.pubsub.support.BasicAcknowledgeablePubsubMessage;
+import com.google.cloud.spring.pubsub.support.GcpPubSubHeaders;
+import com.google.protobuf.Timestamp;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Settles Pub/Sub messages received with {@code AckMode.MANUAL}. Messages without the original
+ * Pub/Sub message header (for example when the adapter runs in AUTO mode) are left alone.
+ */
+@Slf4j
+@Component
+public class MessageAcknowledger {
+
+    private static final String DELIVERY_ATTEMPT_HEADER = "googclient_deliveryattempt";
+
+    @Value("${pubsub.ack.retryDelaySeconds:30}")
+    private int retryDelaySeconds;
+
+    public void ack(Message<?> message) {
+        BasicAcknowledgeablePubsubMessage original = originalMessage(message);
+        if (original != null) {
+            track(original.ack(), "ack", original);
+        }
+    }
+
+    /**
+     * Hands the message back for redelivery after a transient failure. Pulled messages have their
+     * ack deadline moved out by {@code pubsub.ack.retryDelaySeconds}; streaming messages cannot have
+     * their deadline modified, so they are nacked and the subscription's retry policy applies.
+     */
+    public void retryLater(Message<?> message) {
+        retryLater(message, retryDelaySeconds);
+    }
+
+    /**
+     * As {@link #retryLater(Message)}, with the redelivery delay for pulled messages given explicitly.
+     */
+    public void retryLater(Message<?> message, int delaySeconds) {
+        BasicAcknowledgeablePubsubMessage original = originalMessage(message);
+        if (original == null) {
+            return;
+        }
+        if (original instanceof AcknowledgeablePubsubMessage pulled) {
+            track(pulled.modifyAckDeadline(delaySeconds), "modifyAckDeadline", original);
+        } else {
+            track(original.nack(), "nack", original);
+        }
+    }
+
+    /**
+     * Delivery attempt reported by the Pub/Sub client, which is only present when the subscription
+     * has a dead-letter policy; 1 otherwise.
+     */
+    public int deliveryAttempt(Message<?> message) {
+        Object attempt = message.getHeaders().get(DELIVERY_ATTEMPT_HEADER);
+        if (attempt != null) {
+            try {
+                return Math.max(1, Integer.parseInt(attempt.toString()));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring malformed delivery attempt header: {}", attempt);
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * When Pub/Sub accepted the message from its publisher, or {@code null} when the original
+     * Pub/Sub message is not available.
+     */
+    public Instant publishTime(Message<?> message) {
+        BasicAcknowledgeablePubsubMessage original = originalMessage(message);
+        if (original == null || !original.getPubsubMessage().hasPublishTime()) {
+            return null;
+        }
+        Timestamp publishTime = original.getPubsubMessage().getPublishTime();
+        return Instant.ofEpochSecond(publishTime.getSeconds(), publishTime.getNanos());
+    }
+
+    private BasicAcknowledgeablePubsubMessage originalMessage(Message<?> message) {
+        return message.getHeaders().get(GcpPubSubHeaders.ORIGINAL_MESSAGE, BasicAcknowledgeablePubsubMessage.class);
+    }
+
+    private void track(CompletableFuture<Void> result, String operation, BasicAcknowledgeablePubsubMessage original) {
+        result.whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.error("Failed to {} message {}: {}", operation, original.getPubsubMessage().getMessageId(), error.getMessage());
+            }
+        });
+    }
+}
@@ -6,8 +6,9 @@ import com.llyods.model.NotificationPayload;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Slf4j
@@ -20,22 +21,71 @@ public class MessageProcessorService {
     }
 
     public void processMessage(NotificationPayload payload) {
+        processMessage(payload, null);
+    }
+
+    /**
+     * Sends the notification, rendering it with {@code templateName} when given instead of the
+     * template chosen from the notification type.
+     */
+    public void processMessage(NotificationPayload payload, String templateName) {
         String toEmail = payload.getMail();
         String subject = payload.getSubject();
 
         log.info("Processing message to email: {}, subject: {}", toEmail, subject);
 
         try {
-            Map<String, Object> variables = new HashMap<>();
-            variables.put("name", payload.getName());
-            variables.put("message", payload.getMessageContent());
-            mailSenderService.sendEmail(payload);
+            mailSenderService.sendEmail(payload, templateName);
         } catch (EmailDeliveryException e) {
             log.error("Failed to send email to: {}. Error: {}", toEmail, e.getMessage(), e);
-            throw new MessageProcessingException("Failed to process message for email: " + toEmail);
+            throw new MessageProcessingException("Failed to process message for email: " + toEmail, e);
         } catch (Exception e) {
             log.error("Unexpected error while processing message for email: {}. Error: {}", toEmail, e.getMessage(), e);
-            throw new MessageProcessingException("Unexpected error occurred while processing message for email: " + toEmail);
+            throw new MessageProcessingException("Unexpected error occurred while processing message for email: " + toEmail, e);
         }
     }
+
+    /**
+     * Sends notifications for one recipient as a single digest email.
+     */
+    public void processDigest(List<NotificationPayload> payloads, String templateName, String subject) {
+        String toEmail = payloads.get(0).getMail();
+        log.info("Processing digest of {} messages to email: {}", payloads.size(), toEmail);
+
+        try {
+            mailSenderService.sendDigest(payloads, templateName, subject);
+        } catch (EmailDeliveryException e) {
+            log.error("Failed to send digest to: {}. Error: {}", toEmail, e.getMessage(), e);
+            throw new MessageProcessingException("Failed to process digest for email: " + toEmail, e);
+        } catch (Exception e) {
+            log.error("Unexpected error while processing digest for email: {}. Error: {}", toEmail, e.getMessage(), e);
+            throw new MessageProcessingException("Unexpected error occurred while processing digest for email: " + toEmail, e);
+        }
+    }
+
+    /**
+     * Sends the notification through the mail batcher. The future fails with a
+     * {@link MessageProcessingException} if this notification was not sent.
+     */
+    public CompletableFuture<Void> processMessageAsync(NotificationPayload payload, String templateName) {
+        log.info("Processing message to email: {}, subject: {}", payload.getMail(), payload.getSubject());
+        return mailSenderService.sendEmailAsync(payload, templateName).handle((ignored, error) -> {
+            if (error != null) {
+                throw new MessageProcessingException("Failed to process message for email: " + payload.getMail(), error);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Sends a batch of notifications and returns the ones that failed, mapped to their cause.
+     * {@code templateName} overrides the per-type template when given.
+     */
+    public Map<NotificationPayload, Exception> processBatch(List<NotificationPayload> payloads, String templateName) {
+        log.info("Processing batch of {} messages", payloads.size());
+        Map<NotificationPayload, Exception> failures = mailSenderService.sendEmails(payloads, templateName);
+        failures.forEach((payload, e) ->
+                log.error("Failed to send email to: {}. Error: {}", payload.getMail(), e.getMessage()));
+        return failures;
+    }
 }
@@ -0,0 +1,212 @@
+package com.llyods.service;
+
+import com.llyods.config.OutboxProperties;
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.mail.DeliveryFailure;
+import com.llyods.model.OutboxEntry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers outbox entries on its own pool of {@code notification.outbox.senders} threads, so sending
+ * is paced by the relay rather than by Pub/Sub ack deadlines. One reader thread hands out entries
+ * from the checkpoint on, keeping at most {@code max-in-flight} unsettled, and stops reading while
+ * the SMTP circuit breaker is open.
+ * <p>
+ * An entry is settled once it is sent or dead-lettered. Failed sends are classified as in the
+ * streaming path: refused by the open breaker, the entry is tried again after
+ * {@code relay-retry-delay}; otherwise it is rescheduled by the {@link RetryScheduler} until its
+ * attempts run out and then dead-lettered. The checkpoint is the oldest unsettled entry, so a
+ * restart resends whatever was in flight.
+ */
+@Slf4j
+@Service
+public class OutboxSender {
+
+    private final OutboxService outboxService;
+    private final MessageProcessorService messageProcessorService;
+    private final DeadLetterService deadLetterService;
+    private final RetryScheduler retryScheduler;
+    private final RelayOutageListener relayOutageListener;
+    private final SubscriptionProperties subscriptionProperties;
+    private final OutboxProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final NavigableSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final Map<String, String> templates = new HashMap<>();
+    private ScheduledThreadPoolExecutor senders;
+    private Timer deliveryDelay;
+    private Thread reader;
+    private volatile boolean running;
+    private long readPosition;
+
+    public OutboxSender(OutboxService outboxService, MessageProcessorService messageProcessorService,
+                        DeadLetterService deadLetterService, RetryScheduler retryScheduler,
+                        RelayOutageListener relayOutageListener, SubscriptionProperties subscriptionProperties,
+                        OutboxProperties properties, MeterRegistry meterRegistry) {
+        this.outboxService = outboxService;
+        this.messageProcessorService = messageProcessorService;
+        this.deadLetterService = deadLetterService;
+        this.retryScheduler = retryScheduler;
+        this.relayOutageListener = relayOutageListener;
+        this.subscriptionProperties = subscriptionProperties;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!outboxService.isEnabled()) {
+            return;
+        }
+        for (SubscriptionProperties.Stream stream : subscriptionProperties.getStreams()) {
+            templates.put(stream.getName(), stream.getTemplate());
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        senders = new ScheduledThreadPoolExecutor(properties.getSenders(),
+                task -> new Thread(task, "outbox-sender-" + threadNumber.incrementAndGet()));
+        senders.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        deliveryDelay = Timer.builder("notification.outbox.delivery.delay")
+                .description("Time from a notification being written to the outbox to its send")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("notification.outbox.inflight", inFlight, NavigableSet::size)
+                .description("Outbox entries handed to the senders and not yet settled")
+                .register(meterRegistry);
+        readPosition = outboxService.checkpoint();
+        running = true;
+        reader = new Thread(this::read, "outbox-reader");
+        reader.setDaemon(true);
+        reader.start();
+        log.info("Outbox senders started ({} threads) from entry {}", properties.getSenders(), readPosition);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (reader == null) {
+            return;
+        }
+        running = false;
+        reader.interrupt();
+        reader.join(TimeUnit.SECONDS.toMillis(5));
+        senders.shutdown();
+        if (!senders.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Outbox senders still busy on shutdown, {} entries will be resent on restart", inFlight.size());
+            senders.shutdownNow();
+        }
+        saveCheckpoint();
+    }
+
+    private void read() {
+        Duration pollInterval = properties.getPollInterval();
+        while (running) {
+            try {
+                saveCheckpoint();
+                int room = properties.getMaxInFlight() - inFlight.size();
+                if (room <= 0 || relayOutageListener.isRelayUnavailable()) {
+                    Thread.sleep(pollInterval.toMillis());
+                    continue;
+                }
+                List<OutboxService.Entry> entries = outboxService.read(readPosition, room);
+                if (entries.isEmpty()) {
+                    outboxService.awaitEntries(readPosition, pollInterval);
+                    continue;
+                }
+                for (OutboxService.Entry entry : entries) {
+                    inFlight.add(entry.sequence());
+                    readPosition = entry.sequence() + 1;
+                    senders.execute(() -> send(entry, 1));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Outbox reader failed at entry {}: {}", readPosition, e.getMessage(), e);
+                LockSupport.parkNanos(pollInterval.toNanos());
+            }
+        }
+    }
+
+    /**
+     * Moves the checkpoint to the oldest unsettled entry, or past everything read if none is.
+     */
+    private void saveCheckpoint() {
+        Long oldest = inFlight.ceiling(Long.MIN_VALUE);
+        outboxService.saveCheckpoint(oldest != null ? oldest : readPosition);
+    }
+
+    void send(OutboxService.Entry entry, int attempt) {
+        OutboxEntry outboxEntry = entry.entry();
+        if (outboxEntry == null) {
+            settle(entry);
+            return;
+        }
+        try {
+            messageProcessorService.processMessage(outboxEntry.payload(), templates.get(outboxEntry.stream()));
+        } catch (Exception e) {
+            log.error("Error sending outbox entry {}: {}", entry.sequence(), e.getMessage());
+            handleFailure(entry, attempt, e);
+            return;
+        }
+        deliveryDelay.record(Math.max(0, System.currentTimeMillis() - outboxEntry.receivedAt()), TimeUnit.MILLISECONDS);
+        settle(entry);
+    }
+
+    private void handleFailure(OutboxService.Entry entry, int failedAttempt, Exception error) {
+        switch (DeliveryFailure.of(error)) {
+            case CIRCUIT_OPEN, RATE_LIMITED -> {
+                tryAgainLater(entry, failedAttempt);
+                return;
+            }
+            case PERMANENT -> {
+                deadLetter(entry, failedAttempt, error);
+                return;
+            }
+            default -> {
+                // may succeed on a later attempt
+            }
+        }
+        boolean scheduled = retryScheduler.scheduleRetry(failedAttempt,
+                () -> senders.execute(() -> send(entry, failedAttempt + 1)));
+        if (!scheduled) {
+            deadLetter(entry, failedAttempt, error);
+        }
+    }
+
+    private void deadLetter(OutboxService.Entry entry, int failedAttempt, Exception error) {
+        deadLetterService.deadLetter(entry.entry().stream(), entry.entry().payload(), error)
+                .whenComplete((ignored, failure) -> {
+                    if (failure == null) {
+                        settle(entry);
+                    } else {
+                        log.error("Failed to dead-letter outbox entry {}: {}", entry.sequence(), failure.getMessage());
+                        tryAgainLater(entry, failedAttempt);
+                    }
+                });
+    }
+
+    private void tryAgainLater(OutboxService.Entry entry, int attempt) {
+        if (!senders.isShutdown()) {
+            senders.schedule(() -> send(entry, attempt), properties.getRelayRetryDelay().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void settle(OutboxService.Entry entry) {
+        inFlight.remove(entry.sequence());
+    }
+}
@@ -0,0 +1,232 @@
+package com.llyods.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llyods.config.OutboxProperties;
+import com.llyods.journal.Checkpoint;
+import com.llyods.journal.SegmentedJournal;
+import com.llyods.model.NotificationPayload;
+import com.llyods.model.OutboxEntry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-ahead outbox for {@code notification.outbox.enabled}. Received notifications are appended to
+ * a {@link SegmentedJournal} and {@link #append} completes once a sync covers them, so the Pub/Sub
+ * message can be acked before anything is sent. One committer thread syncs for every append waiting
+ * at the time (group commit); appends made during a sync wait for the next one.
+ * <p>
+ * The {@link OutboxSender} reads synced entries from the {@link #checkpoint()} on and moves the
+ * checkpoint past the ones it has settled. Segments entirely before the checkpoint are deleted.
+ */
+@Slf4j
+@Service
+public class OutboxService {
+
+    private final OutboxProperties properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Queue<Waiter> waiting = new ConcurrentLinkedQueue<>();
+    private final Object synced = new Object();
+    private SegmentedJournal journal;
+    private Checkpoint checkpoint;
+    private DistributionSummary commitSizes;
+    private Thread committer;
+    private volatile boolean running;
+    private volatile long durableSequence;
+
+    /**
+     * An outbox entry; {@code entry} is {@code null} if the record could not be read back.
+     */
+    public record Entry(long sequence, OutboxEntry entry) {
+    }
+
+    private record Waiter(long sequence, CompletableFuture<Long> future) {
+    }
+
+    public OutboxService(OutboxProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        journal = new SegmentedJournal(properties.getDirectory(), Math.toIntExact(properties.getSegmentSize().toBytes()));
+        checkpoint = new Checkpoint(properties.getDirectory().resolve("sent.checkpoint"), journal.firstSequence());
+        durableSequence = journal.nextSequence();
+        commitSizes = DistributionSummary.builder("notification.outbox.commit.size")
+                .description("Appends made durable by one outbox sync")
+                .register(meterRegistry);
+        Gauge.builder("notification.outbox.backlog", this, outbox -> outbox.durableSequence - outbox.checkpoint())
+                .description("Outbox entries received and not yet settled by the senders")
+                .register(meterRegistry);
+        log.info("Outbox enabled in {}, resuming from {} with {} entries to send",
+                properties.getDirectory(), checkpoint(), durableSequence - checkpoint());
+        running = true;
+        committer = new Thread(this::commitLoop, "outbox-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (journal == null) {
+            return;
+        }
+        running = false;
+        committer.interrupt();
+        committer.join(TimeUnit.SECONDS.toMillis(5));
+        commit();
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Appends the notification and returns its sequence once it has been synced to disk.
+     */
+    public CompletableFuture<Long> append(String stream, NotificationPayload payload) {
+        if (journal == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Outbox is disabled"));
+        }
+        long sequence;
+        try {
+            sequence = journal.append(objectMapper.writeValueAsBytes(new OutboxEntry(stream, System.currentTimeMillis(), payload)));
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Long> durable = new CompletableFuture<>();
+        waiting.add(new Waiter(sequence, durable));
+        LockSupport.unpark(committer);
+        return durable;
+    }
+
+    /**
+     * Up to {@code max} synced entries from sequence {@code from} on.
+     */
+    public List<Entry> read(long from, int max) {
+        long durable = durableSequence;
+        List<Entry> entries = new ArrayList<>();
+        for (SegmentedJournal.Record record : journal.read(from, max)) {
+            if (record.sequence() >= durable) {
+                break;
+            }
+            try {
+                entries.add(new Entry(record.sequence(), objectMapper.readValue(record.data(), OutboxEntry.class)));
+            } catch (IOException e) {
+                log.error("Skipping unreadable outbox entry {}: {}", record.sequence(), e.getMessage());
+                entries.add(new Entry(record.sequence(), null));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Waits up to {@code timeout} for an entry at or after {@code from} to be synced.
+     */
+    public void awaitEntries(long from, Duration timeout) throws InterruptedException {
+        synchronized (synced) {
+            if (durableSequence <= from) {
+                synced.wait(Math.max(1, timeout.toMillis()));
+            }
+        }
+    }
+
+    /**
+     * First entry the senders have not settled.
+     */
+    public long checkpoint() {
+        return Math.max(checkpoint.get(), journal.firstSequence());
+    }
+
+    /**
+     * Records that every entry before {@code sequence} has been settled and deletes the segments
+     * that only hold such entries.
+     */
+    public void saveCheckpoint(long sequence) {
+        if (sequence <= checkpoint.get()) {
+            return;
+        }
+        try {
+            checkpoint.save(sequence);
+            journal.deleteBefore(sequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save outbox checkpoint", e);
+        }
+    }
+
+    private void commitLoop() {
+        long window = properties.getGroupCommitWindow().toNanos();
+        while (running) {
+            if (waiting.isEmpty()) {
+                LockSupport.parkNanos(this, properties.getPollInterval().toNanos());
+                continue;
+            }
+            if (window > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(window);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            commit();
+        }
+    }
+
+    /**
+     * Syncs everything appended so far and completes the appends it covers.
+     */
+    void commit() {
+        long upTo = journal.nextSequence();
+        RuntimeException failure = null;
+        try {
+            journal.sync();
+        } catch (RuntimeException e) {
+            log.error("Outbox sync failed: {}", e.getMessage(), e);
+            failure = e;
+        }
+        int committed = 0;
+        for (Iterator<Waiter> it = waiting.iterator(); it.hasNext(); ) {
+            Waiter waiter = it.next();
+            if (waiter.sequence() < upTo) {
+                it.remove();
+                if (failure == null) {
+                    waiter.future().complete(waiter.sequence());
+                    committed++;
+                } else {
+                    waiter.future().completeExceptionally(failure);
+                }
+            }
+        }
+        if (failure == null) {
+            durableSequence = Math.max(durableSequence, upTo);
+            commitSizes.record(committed);
+            synchronized (synced) {
+                synced.notifyAll();
+            }
+        }
+    }
+}
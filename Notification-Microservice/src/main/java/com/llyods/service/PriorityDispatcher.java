@@ -0,0 +1,173 @@
+package com.llyods.service;
+
+import com.llyods.config.PriorityProperties;
+import com.llyods.model.NotificationPriority;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedules decoded notifications onto a shared worker pool by priority, so OTP traffic is not stuck
+ * behind bulk transaction mail. In WEIGHTED mode workers take from each priority in proportion to its
+ * weight; in STRICT mode a lower priority only runs when every higher queue is empty. Either way an
+ * idle priority's share goes to the others. Time spent queued is recorded per priority as
+ * {@code notification.queue.wait}.
+ */
+@Slf4j
+@Service
+public class PriorityDispatcher {
+
+    private final PriorityProperties properties;
+    private final Map<NotificationPriority, BlockingQueue<QueuedTask>> queues = new EnumMap<>(NotificationPriority.class);
+    private final Map<NotificationPriority, Timer> waitTimers = new EnumMap<>(NotificationPriority.class);
+    private final Semaphore queued = new Semaphore(0);
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final NotificationPriority[] schedule;
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    public PriorityDispatcher(PriorityProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        for (NotificationPriority priority : NotificationPriority.values()) {
+            BlockingQueue<QueuedTask> queue = new LinkedBlockingQueue<>(properties.getQueueCapacity());
+            queues.put(priority, queue);
+            waitTimers.put(priority, Timer.builder("notification.queue.wait")
+                    .description("Time a notification waits for a send worker")
+                    .tag("priority", priority.name())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+            Gauge.builder("notification.queue.depth", queue, BlockingQueue::size)
+                    .tag("priority", priority.name())
+                    .register(meterRegistry);
+        }
+        this.schedule = buildSchedule(properties.getWeights());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            log.info("Priority dispatch disabled, notifications are processed on the receiving thread");
+            return;
+        }
+        log.info("Starting priority dispatcher in {} mode with {} workers", properties.getMode(), properties.getWorkers());
+        running = true;
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(properties.getWorkers(),
+                task -> new Thread(task, "priority-worker-" + threadNumber.incrementAndGet()));
+        for (int i = 0; i < properties.getWorkers(); i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (workers == null) {
+            return;
+        }
+        running = false;
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    public NotificationPriority priorityOf(String type) {
+        return properties.priorityOf(type);
+    }
+
+    /**
+     * Queues the task at the given priority, blocking while that priority's queue is full. When
+     * dispatch is disabled the task runs on the calling thread.
+     */
+    public void dispatch(NotificationPriority priority, Runnable task) {
+        if (!running) {
+            task.run();
+            return;
+        }
+        try {
+            queues.get(priority).put(new QueuedTask(priority, task, System.nanoTime()));
+            queued.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing " + priority + " notification", e);
+        }
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                queued.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            QueuedTask task = next();
+            if (task == null) {
+                continue;
+            }
+            waitTimers.get(task.priority()).record(System.nanoTime() - task.enqueuedNanos(), TimeUnit.NANOSECONDS);
+            try {
+                task.task().run();
+            } catch (Exception e) {
+                log.error("{} priority notification task failed: {}", task.priority(), e.getMessage());
+            }
+        }
+    }
+
+    private QueuedTask next() {
+        if (properties.getMode() == PriorityProperties.Mode.WEIGHTED && schedule.length > 0) {
+            NotificationPriority turn = schedule[Math.floorMod(cursor.getAndIncrement(), schedule.length)];
+            QueuedTask task = queues.get(turn).poll();
+            if (task != null) {
+                return task;
+            }
+        }
+        for (NotificationPriority priority : NotificationPriority.values()) {
+            QueuedTask task = queues.get(priority).poll();
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Smooth weighted round robin: spreads each priority's turns evenly across one cycle instead of
+     * running all of a priority's turns back to back.
+     */
+    static NotificationPriority[] buildSchedule(Map<NotificationPriority, Integer> weights) {
+        int total = weights.values().stream().mapToInt(weight -> Math.max(weight, 0)).sum();
+        Map<NotificationPriority, Integer> current = new EnumMap<>(NotificationPriority.class);
+        List<NotificationPriority> turns = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            NotificationPriority best = null;
+            for (Map.Entry<NotificationPriority, Integer> entry : weights.entrySet()) {
+                int value = current.merge(entry.getKey(), Math.max(entry.getValue(), 0), Integer::sum);
+                if (best == null || value > current.get(best)) {
+                    best = entry.getKey();
+                }
+            }
+            current.merge(best, -total, Integer::sum);
+            turns.add(best);
+        }
+        return turns.toArray(new NotificationPriority[0]);
+    }
+
+    private record QueuedTask(NotificationPriority priority, Runnable task, long enqueuedNanos) {
+    }
+}
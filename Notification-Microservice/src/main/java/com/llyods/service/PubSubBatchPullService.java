@@ -0,0 +1,302 @@
+package com.llyods.service;
+
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.cloud.spring.pubsub.support.AcknowledgeablePubsubMessage;
+import com.google.protobuf.Timestamp;
+import com.google.pubsub.v1.PubsubMessage;
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.mail.DeliveryFailure;
+import com.llyods.model.NotificationPayload;
+import com.llyods.util.NotificationDecoder;
+import com.llyods.util.PayloadValidator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Synchronous-pull ingestion used instead of the streaming adapters when
+ * {@code pubsub.ingestion.mode=pull}. Each subscription is drained in batches: the batch is decoded
+ * and validated together, handed to the mail layer in one call and settled with one ack and one
+ * ack-deadline request.
+ * <p>
+ * As on the streaming path, codes superseded by a newer one are settled without sending, and
+ * notifications for fast lane templates go to the {@link FastLane} instead of the batch; the batch
+ * waits for them before it is settled. Digests are not built in pull mode: a batch already shares
+ * one SMTP session.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "pubsub.ingestion.mode", havingValue = "pull")
+public class PubSubBatchPullService implements SchedulingConfigurer {
+
+    private final PubSubTemplate pubSubTemplate;
+    private final NotificationDecoder notificationDecoder;
+    private final PayloadValidator payloadValidator;
+    private final MessageProcessorService messageProcessorService;
+    private final SubscriptionProperties subscriptionProperties;
+    private final DeduplicationService deduplicationService;
+    private final RelayOutageListener relayOutageListener;
+    private final DeadLetterService deadLetterService;
+    private final OutboxService outboxService;
+    private final FastLane fastLane;
+    private final SupersedeService supersedeService;
+
+    @Value("${pubsub.pull.batchSize:100}")
+    private int batchSize;
+
+    @Value("${pubsub.pull.intervalMillis:200}")
+    private long intervalMillis;
+
+    @Value("${pubsub.ack.retryDelaySeconds:30}")
+    private int retryDelaySeconds;
+
+    public PubSubBatchPullService(PubSubTemplate pubSubTemplate, NotificationDecoder notificationDecoder,
+                                  PayloadValidator payloadValidator, MessageProcessorService messageProcessorService,
+                                  SubscriptionProperties subscriptionProperties, DeduplicationService deduplicationService,
+                                  RelayOutageListener relayOutageListener, DeadLetterService deadLetterService,
+                                  OutboxService outboxService, FastLane fastLane, SupersedeService supersedeService) {
+        this.pubSubTemplate = pubSubTemplate;
+        this.notificationDecoder = notificationDecoder;
+        this.payloadValidator = payloadValidator;
+        this.messageProcessorService = messageProcessorService;
+        this.subscriptionProperties = subscriptionProperties;
+        this.deduplicationService = deduplicationService;
+        this.relayOutageListener = relayOutageListener;
+        this.deadLetterService = deadLetterService;
+        this.outboxService = outboxService;
+        this.fastLane = fastLane;
+        this.supersedeService = supersedeService;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        for (SubscriptionProperties.Stream stream : subscriptionProperties.getStreams()) {
+            log.info("Scheduling batch pull for {} subscription: {} (batchSize: {}, interval: {}ms)",
+                    stream.getName(), stream.getSubscription(), batchSize, intervalMillis);
+            taskRegistrar.addFixedDelayTask(() -> drain(stream), Duration.ofMillis(intervalMillis));
+        }
+    }
+
+    /**
+     * Pulls until a batch comes back short, so a backlog is worked through without waiting for the
+     * next scheduled run. Nothing is pulled while the SMTP circuit breaker is open; the messages
+     * stay in the subscription until the relay is back.
+     */
+    public void drain(SubscriptionProperties.Stream stream) {
+        try {
+            while (!relayOutageListener.isRelayUnavailable() && pullBatch(stream) == batchSize) {
+                log.debug("Full batch pulled from {}, pulling again", stream.getSubscription());
+            }
+        } catch (Exception e) {
+            log.error("Batch pull from subscription {} failed: {}", stream.getSubscription(), e.getMessage(), e);
+        }
+    }
+
+    int pullBatch(SubscriptionProperties.Stream stream) {
+        String subscription = stream.getSubscription();
+        List<AcknowledgeablePubsubMessage> messages = pubSubTemplate.pull(subscription, batchSize, false);
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        List<AcknowledgeablePubsubMessage> toAck = new ArrayList<>();
+        List<AcknowledgeablePubsubMessage> toRetry = new ArrayList<>();
+        List<AcknowledgeablePubsubMessage> accepted = new ArrayList<>();
+        List<NotificationPayload> payloads = new ArrayList<>();
+        List<String> dedupKeys = new ArrayList<>();
+        List<Instant> publishTimes = new ArrayList<>();
+        List<SupersedeService.Ticket> tickets = new ArrayList<>();
+
+        for (AcknowledgeablePubsubMessage message : messages) {
+            NotificationPayload payload;
+            try {
+                payload = notificationDecoder.decode(message.getPubsubMessage().getData());
+                payloadValidator.validate(payload);
+            } catch (Exception e) {
+                log.error("Discarding invalid message {} from {}: {}",
+                        message.getPubsubMessage().getMessageId(), subscription, e.getMessage());
+                toAck.add(message);
+                continue;
+            }
+            String dedupKey = deduplicationService.keyOf(message.getPubsubMessage().getMessageId(), message.getPubsubMessage().getData());
+            switch (deduplicationService.claim(dedupKey)) {
+                case DELIVERED -> toAck.add(message);
+                case IN_FLIGHT -> toRetry.add(message);
+                default -> {
+                    Instant publishedAt = publishTime(message);
+                    payloads.add(payload);
+                    accepted.add(message);
+                    dedupKeys.add(dedupKey);
+                    publishTimes.add(publishedAt);
+                    tickets.add(supersedeService.register(payload, publishedAt));
+                }
+            }
+        }
+
+        // registered together first, so a newer code later in the batch supersedes an older one
+        List<Integer> live = new ArrayList<>();
+        for (int i = 0; i < payloads.size(); i++) {
+            if (supersedeService.dropIfSuperseded(tickets.get(i))) {
+                log.info("Dropping message {} from {}, superseded by a newer code",
+                        accepted.get(i).getPubsubMessage().getMessageId(), subscription);
+                deduplicationService.delivered(dedupKeys.get(i));
+                toAck.add(accepted.get(i));
+            } else {
+                live.add(i);
+            }
+        }
+
+        Map<Integer, CompletableFuture<Void>> deadLetters = new LinkedHashMap<>();
+        if (!live.isEmpty() && outboxService.isEnabled()) {
+            writeToOutbox(stream, live, payloads, accepted, dedupKeys, toAck, toRetry);
+        } else if (!live.isEmpty()) {
+            Map<Integer, CompletableFuture<FastLane.Outcome>> fastLaneSends = new LinkedHashMap<>();
+            List<Integer> bulk = new ArrayList<>();
+            for (int i : live) {
+                if (!fastLane.accepts(payloads.get(i), stream.getTemplate())) {
+                    bulk.add(i);
+                } else if (fastLane.isExpired(publishTimes.get(i))) {
+                    log.warn("Dropping message {} from {}, published at {} and no longer valid",
+                            accepted.get(i).getPubsubMessage().getMessageId(), subscription, publishTimes.get(i));
+                    deduplicationService.delivered(dedupKeys.get(i));
+                    toAck.add(accepted.get(i));
+                } else {
+                    SupersedeService.Ticket ticket = tickets.get(i);
+                    try {
+                        fastLaneSends.put(i, fastLane.send(payloads.get(i), stream.getTemplate(), publishTimes.get(i),
+                                () -> supersedeService.dropIfSuperseded(ticket)));
+                    } catch (RejectedExecutionException e) {
+                        log.error("Fast lane refused message {} from {}: {}",
+                                accepted.get(i).getPubsubMessage().getMessageId(), subscription, e.getMessage());
+                        deduplicationService.release(dedupKeys.get(i));
+                        toRetry.add(accepted.get(i));
+                    }
+                }
+            }
+            if (!bulk.isEmpty()) {
+                sendBatch(stream, bulk, payloads, accepted, dedupKeys, publishTimes, deadLetters, toAck, toRetry);
+            }
+            fastLaneSends.forEach((i, send) -> {
+                try {
+                    if (send.join() == FastLane.Outcome.SENT) {
+                        fastLane.recordLatency(true, publishTimes.get(i));
+                    }
+                    deduplicationService.delivered(dedupKeys.get(i));
+                    toAck.add(accepted.get(i));
+                } catch (CompletionException e) {
+                    log.error("Fast lane failed to send message {} from {}: {}",
+                            accepted.get(i).getPubsubMessage().getMessageId(), subscription, e.getCause().getMessage());
+                    if (DeliveryFailure.of(e.getCause()) == DeliveryFailure.PERMANENT) {
+                        deadLetters.put(i, deadLetterService.deadLetter(stream.getName(), payloads.get(i), e.getCause()));
+                    } else {
+                        deduplicationService.release(dedupKeys.get(i));
+                        toRetry.add(accepted.get(i));
+                    }
+                }
+            });
+        }
+
+        // dead letters are in flight together; each message is acked once its own is recorded
+        deadLetters.forEach((i, deadLetter) -> {
+            try {
+                deadLetter.join();
+                deduplicationService.delivered(dedupKeys.get(i));
+                toAck.add(accepted.get(i));
+            } catch (CompletionException e) {
+                log.error("Failed to dead-letter message {} from {}: {}",
+                        accepted.get(i).getPubsubMessage().getMessageId(), subscription, e.getMessage());
+                deduplicationService.release(dedupKeys.get(i));
+                toRetry.add(accepted.get(i));
+            }
+        });
+
+        if (!toAck.isEmpty()) {
+            pubSubTemplate.ack(toAck);
+        }
+        if (!toRetry.isEmpty()) {
+            pubSubTemplate.modifyAckDeadline(toRetry, retryDelaySeconds);
+        }
+        log.info("Processed batch of {} messages from {}: {} acked ({} dead-lettered), {} returned for retry",
+                messages.size(), subscription, toAck.size(), deadLetters.size(), toRetry.size());
+        return messages.size();
+    }
+
+    /**
+     * Sends the notifications at {@code indexes} as one batch and sorts each into acked, dead-lettered
+     * or returned for retry.
+     */
+    private void sendBatch(SubscriptionProperties.Stream stream, List<Integer> indexes, List<NotificationPayload> payloads,
+                           List<AcknowledgeablePubsubMessage> accepted, List<String> dedupKeys, List<Instant> publishTimes,
+                           Map<Integer, CompletableFuture<Void>> deadLetters,
+                           List<AcknowledgeablePubsubMessage> toAck, List<AcknowledgeablePubsubMessage> toRetry) {
+        List<NotificationPayload> batch = indexes.stream().map(payloads::get).toList();
+        try {
+            Map<NotificationPayload, Exception> failures = messageProcessorService.processBatch(batch, stream.getTemplate());
+            for (int i : indexes) {
+                Exception failure = failures.get(payloads.get(i));
+                if (failure == null) {
+                    fastLane.recordLatency(false, publishTimes.get(i));
+                    deduplicationService.delivered(dedupKeys.get(i));
+                    toAck.add(accepted.get(i));
+                } else if (!DeliveryFailure.of(failure).isRetryable()) {
+                    deadLetters.put(i, deadLetterService.deadLetter(stream.getName(), payloads.get(i), failure));
+                } else {
+                    deduplicationService.release(dedupKeys.get(i));
+                    toRetry.add(accepted.get(i));
+                }
+            }
+        } catch (Exception e) {
+            log.error("Batch of {} messages from {} failed: {}", batch.size(), stream.getSubscription(), e.getMessage(), e);
+            for (int i : indexes) {
+                deadLetters.remove(i);
+                deduplicationService.release(dedupKeys.get(i));
+                toRetry.add(accepted.get(i));
+            }
+        }
+    }
+
+    /**
+     * Appends the accepted notifications at {@code indexes} to the outbox together, so they share a
+     * sync, and acks each one that made it to disk.
+     */
+    private void writeToOutbox(SubscriptionProperties.Stream stream, List<Integer> indexes, List<NotificationPayload> payloads,
+                               List<AcknowledgeablePubsubMessage> accepted, List<String> dedupKeys,
+                               List<AcknowledgeablePubsubMessage> toAck, List<AcknowledgeablePubsubMessage> toRetry) {
+        Map<Integer, CompletableFuture<Long>> appended = new LinkedHashMap<>();
+        indexes.forEach(i -> appended.put(i, outboxService.append(stream.getName(), payloads.get(i))));
+        appended.forEach((i, append) -> {
+            try {
+                append.join();
+                deduplicationService.delivered(dedupKeys.get(i));
+                toAck.add(accepted.get(i));
+            } catch (CompletionException e) {
+                log.error("Failed to write message {} from {} to the outbox: {}",
+                        accepted.get(i).getPubsubMessage().getMessageId(), stream.getSubscription(), e.getMessage());
+                deduplicationService.release(dedupKeys.get(i));
+                toRetry.add(accepted.get(i));
+            }
+        });
+    }
+
+    private static Instant publishTime(AcknowledgeablePubsubMessage message) {
+        PubsubMessage pubsubMessage = message.getPubsubMessage();
+        if (!pubsubMessage.hasPublishTime()) {
+            return null;
+        }
+        Timestamp publishTime = pubsubMessage.getPublishTime();
+        return Instant.ofEpochSecond(publishTime.getSeconds(), publishTime.getNanos());
+    }
+}
@@ -1,73 +1,338 @@
 package com.llyods.service;
 
+import com.llyods.config.RetryMode;
+import com.llyods.config.SubscriptionProperties;
 import com.llyods.exception.InvalidPayloadException;
 import com.llyods.exception.MessageProcessingException;
+import com.llyods.logging.LogMarkers;
+import com.llyods.mail.DeliveryFailure;
+import com.llyods.model.NotificationPriority;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.llyods.model.NotificationPayload;
+import com.llyods.util.NotificationDecoder;
 import com.llyods.util.PayloadValidator;
 
+import java.time.Instant;
+
 @Service
 @Slf4j
 public class PubSubConsumerService {
 
     private final MessageProcessorService messageProcessorService;
-    private final ObjectMapper objectMapper;
+    private final NotificationDecoder notificationDecoder;
     private final PayloadValidator payloadValidator;
+    private final MessageAcknowledger messageAcknowledger;
+    private final PriorityDispatcher priorityDispatcher;
+    private final DeduplicationService deduplicationService;
+    private final RetryScheduler retryScheduler;
+    private final DeadLetterService deadLetterService;
+    private final OutboxService outboxService;
+    private final DigestCoalescer digestCoalescer;
+    private final FastLane fastLane;
+    private final SupersedeService supersedeService;
 
-    public PubSubConsumerService(MessageProcessorService messageProcessorService, ObjectMapper objectMapper, PayloadValidator payloadValidator) {
+    public PubSubConsumerService(MessageProcessorService messageProcessorService, NotificationDecoder notificationDecoder,
+                                 PayloadValidator payloadValidator, MessageAcknowledger messageAcknowledger,
+                                 PriorityDispatcher priorityDispatcher, DeduplicationService deduplicationService,
+                                 RetryScheduler retryScheduler, DeadLetterService deadLetterService,
+                                 OutboxService outboxService, DigestCoalescer digestCoalescer, FastLane fastLane,
+                                 SupersedeService supersedeService) {
         this.messageProcessorService = messageProcessorService;
-        this.objectMapper = objectMapper;
+        this.notificationDecoder = notificationDecoder;
         this.payloadValidator = payloadValidator;
+        this.messageAcknowledger = messageAcknowledger;
+        this.priorityDispatcher = priorityDispatcher;
+        this.deduplicationService = deduplicationService;
+        this.retryScheduler = retryScheduler;
+        this.deadLetterService = deadLetterService;
+        this.outboxService = outboxService;
+        this.digestCoalescer = digestCoalescer;
+        this.fastLane = fastLane;
+        this.supersedeService = supersedeService;
     }
 
-    @ServiceActivator(inputChannel = "transactionInputChannel")
-    public void receiveTransactionCompletedMessage(Message<String> message) {
-        log.info("Received transaction message: {}", message.getPayload());
-        processMessage(message);
+    /**
+     * Handler for every stream registered by {@code SubscriptionRegistry}.
+     */
+    public void receive(Message<?> message, SubscriptionProperties.Stream stream) {
+        log.info("Received {} message", stream.getName());
+        log.debug(LogMarkers.PAYLOAD, "{} message payload: {}", stream.getName(), LogMarkers.payloadText(message.getPayload()));
+        processMessage(message, stream);
     }
 
-    @ServiceActivator(inputChannel = "profileInputChannel")
-    public void receiveProfileUpdatedMessage(Message<String> message) {
-        log.info("Received profile update message: {}", message.getPayload());
-        processMessage(message);
+    private void processMessage(Message<?> message, SubscriptionProperties.Stream stream) {
+        NotificationPayload notificationPayload;
+        try {
+            notificationPayload = notificationDecoder.decodePayload(message.getPayload());
+            payloadValidator.validate(notificationPayload);
+
+        } catch (JsonProcessingException e) {
+            log.error("Malformed payload, discarding message: {}", e.getOriginalMessage());
+            messageAcknowledger.ack(message);
+            throw new InvalidPayloadException("Error processing message: " + e.getOriginalMessage());
+        } catch (InvalidPayloadException e) {
+            log.error("Invalid payload, discarding message: {}", e.getMessage());
+            messageAcknowledger.ack(message);
+            throw new InvalidPayloadException("Error processing message: " + e.getMessage());
+        } catch (Exception e) {
+            log.error("Error deserializing or processing the message: {}", e.getMessage(), e); // Logs any other errors
+            messageAcknowledger.retryLater(message);
+            throw new MessageProcessingException("Unexpected error processing message");
+        }
+
+        String dedupKey = deduplicationService.keyOf(message);
+        switch (deduplicationService.claim(dedupKey)) {
+            case DELIVERED -> {
+                log.info("Dropping duplicate {} message {}, already delivered", stream.getName(), dedupKey);
+                messageAcknowledger.ack(message);
+                return;
+            }
+            case IN_FLIGHT -> {
+                log.info("Duplicate {} message {} is still being delivered, returning it", stream.getName(), dedupKey);
+                messageAcknowledger.retryLater(message);
+                return;
+            }
+            default -> {
+                // first delivery, carry on
+            }
+        }
+
+        NotificationPriority priority = stream.getPriority() != null
+                ? stream.getPriority()
+                : priorityDispatcher.priorityOf(notificationPayload.getType());
+        Instant publishedAt = messageAcknowledger.publishTime(message);
+        boolean fastLaneNotification = fastLane.accepts(notificationPayload, stream.getTemplate());
+        Delivery delivery = new Delivery(message, notificationPayload, stream, priority, dedupKey, publishedAt,
+                fastLaneNotification, supersedeService.register(notificationPayload, publishedAt));
+        if (superseded(delivery)) {
+            return;
+        }
+        if (outboxService.isEnabled()) {
+            writeToOutbox(delivery);
+            return;
+        }
+        if (fastLaneNotification) {
+            sendOnFastLane(delivery);
+            return;
+        }
+        if (digestCoalescer.accepts(notificationPayload, priority)) {
+            coalesce(delivery);
+            return;
+        }
+        try {
+            dispatch(delivery, 1);
+        } catch (MessageProcessingException e) {
+            // thrown by deliver once the message has been handed back and its key released
+            throw e;
+        } catch (RuntimeException e) {
+            deduplicationService.release(dedupKey);
+            throw e;
+        }
     }
 
-    @ServiceActivator(inputChannel = "otpInputChannel")
-    public void receiveOTPdMessage(Message<String> message) {
-        log.info("Received OTP message: {}", message.getPayload());
-        processMessage(message);
+    /**
+     * Acks the message as soon as the notification is on disk in the outbox; the outbox senders
+     * deliver it from there.
+     */
+    private void writeToOutbox(Delivery delivery) {
+        outboxService.append(delivery.stream().getName(), delivery.payload())
+                .whenComplete((sequence, error) -> {
+                    if (error == null) {
+                        delivered(delivery);
+                    } else {
+                        log.error("Failed to write {} message {} to the outbox: {}", delivery.stream().getName(),
+                                delivery.dedupKey(), error.getMessage());
+                        handBack(delivery);
+                    }
+                });
     }
 
-    @ServiceActivator(inputChannel = "passwordUpdateInputChannel")
-    public void receivePasswordUpdateSuccessMessage(Message<String> message) {
-        log.info("Received Password Update Success message: {}", message.getPayload());
-        processMessage(message);
+    /**
+     * Sends a code on the fast lane. Codes that are already stale are settled without sending;
+     * failures left after the lane's own retries are dead-lettered if permanent and otherwise handed
+     * back, so a redelivery that arrives after the validity window is dropped.
+     */
+    private void sendOnFastLane(Delivery delivery) {
+        if (fastLane.isExpired(delivery.publishedAt())) {
+            log.warn("Dropping {} message {}, published at {} and no longer valid", delivery.stream().getName(),
+                    delivery.dedupKey(), delivery.publishedAt());
+            delivered(delivery);
+            return;
+        }
+        fastLane.send(delivery.payload(), delivery.stream().getTemplate(), delivery.publishedAt(),
+                        () -> supersedeService.dropIfSuperseded(delivery.ticket()))
+                .whenComplete((outcome, error) -> {
+                    if (error == null) {
+                        if (outcome == FastLane.Outcome.SENT) {
+                            sent(delivery);
+                        } else {
+                            delivered(delivery);
+                        }
+                        return;
+                    }
+                    log.error("Fast lane failed to send {} message {}: {}", delivery.stream().getName(),
+                            delivery.dedupKey(), error.getMessage());
+                    if (DeliveryFailure.of(error) == DeliveryFailure.PERMANENT) {
+                        deadLetter(delivery, error);
+                    } else {
+                        handBack(delivery);
+                    }
+                });
     }
 
-    @ServiceActivator(inputChannel = "resetotpInputChannel")
-    public void receiveRESETOTPMessage(Message<String> message) {
-        log.info("Received RESET OTP message: {}", message.getPayload());
-        processMessage(message);
+    /**
+     * Holds the notification in its recipient's digest and settles the message once the digest has
+     * been sent. A failed digest is handled per member, so retries go out as single notifications.
+     */
+    private void coalesce(Delivery delivery) {
+        digestCoalescer.add(delivery.payload(), delivery.stream().getTemplate())
+                .whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        sent(delivery);
+                    } else {
+                        log.error("Digest with {} message {} failed: {}", delivery.stream().getName(),
+                                delivery.dedupKey(), error.getMessage());
+                        handleFailure(delivery, 1, error);
+                    }
+                });
     }
 
-    private void processMessage(Message<String> message) {
-        try {
-            String payload = message.getPayload();
-            log.info("Received payload: {}", payload);
-            NotificationPayload notificationPayload = objectMapper.readValue(payload, NotificationPayload.class);
-            payloadValidator.validate(payload);
-            messageProcessorService.processMessage(notificationPayload);
+    private void dispatch(Delivery delivery, int attempt) {
+        priorityDispatcher.dispatch(delivery.priority(), delivery.stream().isBatch()
+                ? () -> deliverBatched(delivery, attempt)
+                : () -> deliver(delivery, attempt));
+    }
 
-        } catch (InvalidPayloadException e) {
-            log.error("Invalid payload: {}", e.getMessage());
-            throw new InvalidPayloadException("Error processing message: " + e.getMessage());
+    /**
+     * Settles the message without sending if a newer code for the same recipient and type has
+     * arrived since it was received.
+     */
+    private boolean superseded(Delivery delivery) {
+        if (!supersedeService.dropIfSuperseded(delivery.ticket())) {
+            return false;
+        }
+        log.info("Dropping {} message {}, superseded by a newer code", delivery.stream().getName(), delivery.dedupKey());
+        delivered(delivery);
+        return true;
+    }
+
+    private void deliver(Delivery delivery, int attempt) {
+        if (superseded(delivery)) {
+            return;
+        }
+        try {
+            messageProcessorService.processMessage(delivery.payload(), delivery.stream().getTemplate());
         } catch (Exception e) {
-            log.error("Error deserializing or processing the message: {}", e.getMessage(), e); // Logs any other errors
+            log.error("Error processing the message: {}", e.getMessage(), e);
+            if (handleFailure(delivery, attempt, e)) {
+                return;
+            }
             throw new MessageProcessingException("Unexpected error processing message");
         }
+        sent(delivery);
+    }
+
+    /**
+     * Hands the notification to the mail batcher and settles the Pub/Sub message when its own result
+     * comes back, so the worker thread is free while the batch fills.
+     */
+    private void deliverBatched(Delivery delivery, int attempt) {
+        if (superseded(delivery)) {
+            return;
+        }
+        messageProcessorService.processMessageAsync(delivery.payload(), delivery.stream().getTemplate())
+                .whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        sent(delivery);
+                    } else {
+                        log.error("Error processing the message: {}", error.getMessage());
+                        handleFailure(delivery, attempt, error);
+                    }
+                });
+    }
+
+    private void sent(Delivery delivery) {
+        fastLane.recordLatency(delivery.fastLane(), delivery.publishedAt());
+        delivered(delivery);
+    }
+
+    private void delivered(Delivery delivery) {
+        deduplicationService.delivered(delivery.dedupKey());
+        messageAcknowledger.ack(delivery.message());
+    }
+
+    /**
+     * Settles a failed delivery by why it failed. Permanent failures are dead-lettered, sends refused
+     * by the open circuit breaker or the rate limiter go straight back to Pub/Sub, and anything else is queued again after
+     * a backoff in {@code SCHEDULED} retry mode, dead-lettered once its retries are exhausted (with
+     * {@code notification.dead-letter.after-retries}) or handed back. Returns {@code false} if the
+     * message was handed back.
+     */
+    private boolean handleFailure(Delivery delivery, int failedAttempt, Throwable error) {
+        switch (DeliveryFailure.of(error)) {
+            case PERMANENT -> {
+                deadLetter(delivery, error);
+                return true;
+            }
+            case CIRCUIT_OPEN, RATE_LIMITED -> {
+                handBack(delivery);
+                return false;
+            }
+            default -> {
+                // may succeed on a later attempt
+            }
+        }
+        boolean scheduled = retryScheduler.scheduleRetry(failedAttempt, () -> {
+            try {
+                dispatch(delivery, failedAttempt + 1);
+            } catch (MessageProcessingException e) {
+                // deliver has already handed the message back
+            } catch (RuntimeException e) {
+                handBack(delivery);
+            }
+        });
+        if (scheduled) {
+            log.info("Retrying {} message {} after attempt {}", delivery.stream().getName(), delivery.dedupKey(), failedAttempt);
+            return true;
+        }
+        if (deadLetterService.acceptsExhaustedRetries()
+                && retryScheduler.isExhausted(failedAttempt, messageAcknowledger.deliveryAttempt(delivery.message()))) {
+            deadLetter(delivery, error);
+            return true;
+        }
+        handBack(delivery);
+        return false;
+    }
+
+    private void deadLetter(Delivery delivery, Throwable error) {
+        deadLetterService.deadLetter(delivery.stream().getName(), delivery.payload(), error)
+                .whenComplete((ignored, failure) -> {
+                    if (failure == null) {
+                        // settled for good, so a redelivery is dropped as a duplicate
+                        delivered(delivery);
+                    } else {
+                        log.error("Failed to dead-letter {} message {}: {}", delivery.stream().getName(),
+                                delivery.dedupKey(), failure.getMessage());
+                        handBack(delivery);
+                    }
+                });
+    }
+
+    private void handBack(Delivery delivery) {
+        deduplicationService.release(delivery.dedupKey());
+        if (retryScheduler.getMode() == RetryMode.NACK) {
+            int attempt = messageAcknowledger.deliveryAttempt(delivery.message());
+            messageAcknowledger.retryLater(delivery.message(), retryScheduler.ackDeadlineSeconds(attempt));
+        } else {
+            messageAcknowledger.retryLater(delivery.message());
+        }
+    }
+
+    private record Delivery(Message<?> message, NotificationPayload payload, SubscriptionProperties.Stream stream,
+                            NotificationPriority priority, String dedupKey, Instant publishedAt, boolean fastLane,
+                            SupersedeService.Ticket ticket) {
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,28 @@
 package com.llyods.service;
 
 import com.llyods.exception.EmailDeliveryException;
+import com.llyods.mail.HtmlMessageBuilder;
+import com.llyods.mail.MailBatcher;
+import com.llyods.mail.MailRateLimiter;
 import com.llyods.model.NotificationPayload;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Service;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
 
 import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
 import jakarta.mail.internet.MimeMessage;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -23,63 +30,170 @@ public class PubSubMailSenderService {
 
     private final JavaMailSender mailSender;
     private final RetryTemplate retryTemplate;
-    private final TemplateEngine templateEngine;
+    private final TemplateRenderer templateRenderer;
+    private final TemplateRegistry templateRegistry;
+    private final MailBatcher mailBatcher;
+    private final MailRateLimiter rateLimiter;
+    private final HtmlMessageBuilder messageBuilder = new HtmlMessageBuilder();
+    private volatile Session session;
 
     @Autowired
-    public PubSubMailSenderService(JavaMailSender mailSender, RetryTemplate retryTemplate, TemplateEngine templateEngine) {
+    public PubSubMailSenderService(JavaMailSender mailSender, RetryTemplate retryTemplate, TemplateRenderer templateRenderer,
+                                   TemplateRegistry templateRegistry, MailBatcher mailBatcher, MailRateLimiter rateLimiter) {
         this.mailSender = mailSender;
         this.retryTemplate = retryTemplate;
-        this.templateEngine = templateEngine;
+        this.templateRenderer = templateRenderer;
+        this.templateRegistry = templateRegistry;
+        this.mailBatcher = mailBatcher;
+        this.rateLimiter = rateLimiter;
     }
 
     public void sendEmail(NotificationPayload payload) {
+        sendEmail(payload, null);
+    }
+
+    public void sendEmail(NotificationPayload payload, String templateName) {
         log.debug("Preparing to send email to: {}, subject: {}", payload.getMail(), payload.getSubject());
 
+        String template = templateFor(payload, templateName);
         retryTemplate.execute(context -> {
             try {
-                String templateName = selectTemplate(payload.getType());
-
-                Map<String, Object> variables = new HashMap<>();
-                variables.put("name", payload.getName());
-                variables.put("messageContent", payload.getMessageContent());
-
-                String htmlContent = generateEmailContent(templateName, variables);
-
-                MimeMessage message = mailSender.createMimeMessage();
-                MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-                helper.setTo(payload.getMail());
-                helper.setSubject(payload.getSubject());
-                helper.setText(htmlContent, true);
-
+                MimeMessage message = createMessage(template, payload);
+                rateLimiter.acquire(payload.getType(), payload.getMail());
                 mailSender.send(message);
                 log.info("Email sent successfully to: {}", payload.getMail());
                 return null;
             } catch (MailException | MessagingException e) {
                 log.error("Failed to send email to: {}. Error: {}", payload.getMail(), e.getMessage());
-                throw new EmailDeliveryException("Failed to send email to: " + payload.getMail());
+                throw new EmailDeliveryException("Failed to send email to: " + payload.getMail(), e);
+            }
+        });
+    }
+
+    /**
+     * Sends several notifications for one recipient as a single email rendered with
+     * {@code templateName}, which gets the recipient's {@code name}, the {@code items} (each
+     * notification's message content, oldest first) and their {@code count}.
+     */
+    public void sendDigest(List<NotificationPayload> payloads, String templateName, String subject) {
+        NotificationPayload first = payloads.get(0);
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("name", first.getName());
+        variables.put("items", payloads.stream().map(NotificationPayload::getMessageContent).toList());
+        variables.put("count", payloads.size());
+        log.debug("Preparing to send digest of {} notifications to: {}", payloads.size(), first.getMail());
+
+        retryTemplate.execute(context -> {
+            try {
+                MimeMessage message = createMessage(templateName, first.getMail(), subject, variables);
+                rateLimiter.acquire(first.getType(), first.getMail());
+                mailSender.send(message);
+                log.info("Digest of {} notifications sent successfully to: {}", payloads.size(), first.getMail());
+                return null;
+            } catch (MailException | MessagingException e) {
+                log.error("Failed to send digest to: {}. Error: {}", first.getMail(), e.getMessage());
+                throw new EmailDeliveryException("Failed to send email to: " + first.getMail(), e);
+            }
+        });
+    }
+
+    /**
+     * Renders the message and hands it to the micro-batcher. The future fails with an
+     * {@link EmailDeliveryException} if this message could not be sent; there is no in-process retry,
+     * the caller hands the Pub/Sub message back for redelivery instead.
+     */
+    public CompletableFuture<Void> sendEmailAsync(NotificationPayload payload, String templateName) {
+        MimeMessage message;
+        try {
+            message = createMessage(templateFor(payload, templateName), payload);
+            rateLimiter.acquire(payload.getType(), payload.getMail());
+        } catch (MessagingException | RuntimeException e) {
+            log.error("Failed to prepare email to: {}. Error: {}", payload.getMail(), e.getMessage());
+            return CompletableFuture.failedFuture(new EmailDeliveryException("Failed to send email to: " + payload.getMail(), e));
+        }
+        return mailBatcher.submit(message).handle((ignored, error) -> {
+            if (error != null) {
+                log.error("Failed to send email to: {}. Error: {}", payload.getMail(), error.getMessage());
+                throw new EmailDeliveryException("Failed to send email to: " + payload.getMail(), error);
+            }
+            log.info("Email sent successfully to: {}", payload.getMail());
+            return null;
+        });
+    }
+
+    /**
+     * Renders a batch grouped by template and sends it over a single SMTP connection. Failures are
+     * reported per message so one bad recipient does not fail the rest of the batch; a message the
+     * rate limiter refuses fails the same way.
+     */
+    public Map<NotificationPayload, Exception> sendEmails(List<NotificationPayload> payloads, String templateName) {
+        Map<NotificationPayload, Exception> failures = new IdentityHashMap<>();
+        Map<MimeMessage, NotificationPayload> prepared = new LinkedHashMap<>();
+
+        Map<String, List<NotificationPayload>> byTemplate = payloads.stream()
+                .collect(Collectors.groupingBy(payload -> templateFor(payload, templateName), LinkedHashMap::new, Collectors.toList()));
+        byTemplate.forEach((template, group) -> {
+            for (NotificationPayload payload : group) {
+                try {
+                    MimeMessage message = createMessage(template, payload);
+                    rateLimiter.acquire(payload.getType(), payload.getMail());
+                    prepared.put(message, payload);
+                } catch (MessagingException | RuntimeException e) {
+                    log.error("Failed to prepare email to: {}. Error: {}", payload.getMail(), e.getMessage());
+                    failures.put(payload, e);
+                }
             }
         });
+
+        if (prepared.isEmpty()) {
+            return failures;
+        }
+
+        try {
+            mailSender.send(prepared.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                // Nothing was attempted, e.g. no pooled connection could be borrowed: the whole batch failed
+                log.error("Failed to send batch of {} emails. Error: {}", prepared.size(), e.getMessage());
+                prepared.values().forEach(payload -> failures.put(payload, e));
+            } else {
+                e.getFailedMessages().forEach((message, cause) -> failures.put(prepared.get(message), cause));
+            }
+        } catch (MailException e) {
+            log.error("Failed to send batch of {} emails. Error: {}", prepared.size(), e.getMessage());
+            prepared.values().forEach(payload -> failures.put(payload, e));
+        }
+        log.info("Sent batch of {} emails, {} failed", payloads.size(), failures.size());
+        return failures;
+    }
+
+    private MimeMessage createMessage(String templateName, NotificationPayload payload) throws MessagingException {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("name", payload.getName());
+        variables.put("messageContent", payload.getMessageContent());
+        return createMessage(templateName, payload.getMail(), payload.getSubject(), variables);
+    }
+
+    private MimeMessage createMessage(String templateName, String to, String subject, Map<String, Object> variables)
+            throws MessagingException {
+        String htmlContent = templateRenderer.render(templateName, variables);
+        return messageBuilder.build(session(), templateName, to, subject, htmlContent);
     }
 
-    private String selectTemplate(String type) {
-        switch (type.toLowerCase()) {
-            case "otp":
-                return "otpTemplate";
-            case "resetpassword":
-                return "passwordResetTemplate";
-            case "passwordupdatesuccess":
-                return "passwordUpdateSuccessTemplate";
-            case "transactioncomplete":
-                return "transactionTemplate";
-            default:
-                return "default-template";
+    /**
+     * The mail sender's session, taken from the first message it creates; every message after that
+     * is built directly on it.
+     */
+    private Session session() {
+        Session current = session;
+        if (current == null) {
+            current = mailSender.createMimeMessage().getSession();
+            session = current;
         }
+        return current;
     }
 
-    private String generateEmailContent(String templateName, Map<String, Object> variables) {
-        Context context = new Context();
-        context.setVariables(variables);
-        return templateEngine.process(templateName, context);
+    private String templateFor(NotificationPayload payload, String templateName) {
+        return templateName != null ? templateName : templateRegistry.templateFor(payload.getType());
     }
 }
\ No newline at end of file
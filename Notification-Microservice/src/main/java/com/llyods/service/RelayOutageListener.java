@@ -0,0 +1,58 @@
+package com.llyods.service;
+
+import com.llyods.config.MailCircuitBreakerProperties;
+import com.llyods.config.SubscriptionRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnStateTransitionEvent;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * With {@code notification.mail.circuit-breaker.open-action=PAUSE}, stops the subscriptions while
+ * the SMTP circuit breaker is open and starts them again when it goes half-open, so the first
+ * messages received are the probe sends.
+ */
+@Slf4j
+@Component
+public class RelayOutageListener {
+
+    private final CircuitBreaker mailCircuitBreaker;
+    private final MailCircuitBreakerProperties properties;
+    private final ObjectProvider<SubscriptionRegistry> subscriptionRegistry;
+
+    public RelayOutageListener(CircuitBreaker mailCircuitBreaker, MailCircuitBreakerProperties properties,
+                               ObjectProvider<SubscriptionRegistry> subscriptionRegistry) {
+        this.mailCircuitBreaker = mailCircuitBreaker;
+        this.properties = properties;
+        this.subscriptionRegistry = subscriptionRegistry;
+    }
+
+    @PostConstruct
+    public void register() {
+        if (properties.getOpenAction() == MailCircuitBreakerProperties.OpenAction.PAUSE) {
+            mailCircuitBreaker.getEventPublisher().onStateTransition(this::onStateTransition);
+        }
+    }
+
+    void onStateTransition(CircuitBreakerOnStateTransitionEvent event) {
+        // the registry only exists for streaming ingestion; batch pull checks the breaker itself
+        SubscriptionRegistry registry = subscriptionRegistry.getIfAvailable();
+        if (registry == null) {
+            return;
+        }
+        switch (event.getStateTransition().getToState()) {
+            case OPEN, FORCED_OPEN -> registry.pause();
+            default -> registry.resume();
+        }
+    }
+
+    /**
+     * Whether sends are currently refused, so callers that pull on their own schedule can skip a run.
+     */
+    public boolean isRelayUnavailable() {
+        CircuitBreaker.State state = mailCircuitBreaker.getState();
+        return state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN;
+    }
+}
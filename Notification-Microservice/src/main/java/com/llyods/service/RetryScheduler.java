@@ -0,0 +1,116 @@
+package com.llyods.service;
+
+import com.llyods.config.RetryMode;
+import com.llyods.config.RetryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delays retries without holding a worker thread. A failed send is handed back here with its
+ * attempt number; in {@code SCHEDULED} mode the retry is run after the same exponential backoff the
+ * {@code RetryTemplate} uses ({@code retry.delay}, {@code retry.multiplier}, {@code retry.maxDelay}).
+ * <p>
+ * The retry is dispatched from a scheduler thread. With {@code notification.priority.enabled} the
+ * send is queued for a priority worker; without it dispatch runs inline, so the scheduler thread
+ * sends the retry itself and {@code retry.scheduler.threads} bounds how many retries send at once.
+ */
+@Slf4j
+@Component
+public class RetryScheduler {
+
+    private final RetryProperties properties;
+    private final MeterRegistry meterRegistry;
+    private ScheduledThreadPoolExecutor scheduler;
+    private Counter scheduled;
+
+    public RetryScheduler(RetryProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        scheduler = new ScheduledThreadPoolExecutor(properties.getScheduler().getThreads(), task -> {
+            Thread thread = new Thread(task, "retry-scheduler-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduled = Counter.builder("notification.retry.scheduled")
+                .description("Sends queued again after a backoff delay")
+                .register(meterRegistry);
+        Gauge.builder("notification.retry.pending", scheduler, executor -> executor.getQueue().size())
+                .description("Retries waiting for their backoff delay to pass")
+                .register(meterRegistry);
+        log.info("Retry mode {} (maxAttempts: {}, delay: {}ms, multiplier: {}, maxDelay: {}ms)",
+                properties.getMode(), properties.getMaxAttempts(), properties.getDelay(), properties.getMultiplier(),
+                properties.getMaxDelay());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public RetryMode getMode() {
+        return properties.getMode();
+    }
+
+    /**
+     * Runs {@code retry} after the backoff for {@code failedAttempt} (1 for the first attempt).
+     * Returns {@code false}, without scheduling anything, outside {@code SCHEDULED} mode or once
+     * {@code retry.maxAttempts} attempts have been made.
+     */
+    public boolean scheduleRetry(int failedAttempt, Runnable retry) {
+        if (properties.getMode() != RetryMode.SCHEDULED || failedAttempt >= properties.getMaxAttempts() || scheduler.isShutdown()) {
+            return false;
+        }
+        scheduler.schedule(() -> {
+            try {
+                retry.run();
+            } catch (RuntimeException e) {
+                log.error("Scheduled retry failed to start: {}", e.getMessage());
+            }
+        }, backoffMillis(failedAttempt), TimeUnit.MILLISECONDS);
+        scheduled.increment();
+        return true;
+    }
+
+    /**
+     * Whether a send that failed on its {@code failedAttempt}th local attempt, of the message's
+     * {@code deliveryAttempt}th delivery, has no retries left: in {@code BLOCKING} mode the
+     * {@code RetryTemplate} has already used them, in {@code SCHEDULED} mode they are counted
+     * locally and in {@code NACK} mode by Pub/Sub redeliveries.
+     */
+    public boolean isExhausted(int failedAttempt, int deliveryAttempt) {
+        return switch (properties.getMode()) {
+            case BLOCKING -> true;
+            case SCHEDULED -> failedAttempt >= properties.getMaxAttempts();
+            case NACK -> deliveryAttempt >= properties.getMaxAttempts();
+        };
+    }
+
+    /**
+     * Ack deadline, in seconds, for handing back a message on its {@code deliveryAttempt}th delivery.
+     */
+    public int ackDeadlineSeconds(int deliveryAttempt) {
+        return (int) Math.min(600, Math.max(1, TimeUnit.MILLISECONDS.toSeconds(backoffMillis(deliveryAttempt) + 999)));
+    }
+
+    long backoffMillis(int failedAttempt) {
+        double backoff = properties.getDelay() * Math.pow(properties.getMultiplier(), Math.max(0, failedAttempt - 1));
+        return (long) Math.min(backoff, properties.getMaxDelay());
+    }
+}
@@ -0,0 +1,122 @@
+package com.llyods.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.llyods.config.SupersedeProperties;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Latest-wins index for codes such as OTPs: every notification of a configured type registers a
+ * ticket under its recipient and type, and only the newest ticket is still worth sending. Newest
+ * means latest Pub/Sub publish time, then latest arrival, so an older code redelivered out of
+ * order does not take over. Tickets are checked again when a worker picks the code up, which is
+ * where a backlog of resent codes gets thinned out.
+ */
+@Slf4j
+@Service
+public class SupersedeService {
+
+    /**
+     * A registered notification. Compared by identity: a key holds exactly one latest ticket.
+     */
+    public record Ticket(String key, long publishedMicros, long arrival) {
+
+        boolean isNewerThan(Ticket other) {
+            return publishedMicros != other.publishedMicros
+                    ? publishedMicros > other.publishedMicros
+                    : arrival > other.arrival;
+        }
+    }
+
+    private final SupersedeProperties properties;
+    private final Set<String> types;
+    private final Cache<String, Ticket> latest;
+    private final AtomicLong arrivals = new AtomicLong();
+    private final Counter superseded;
+
+    public SupersedeService(SupersedeProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.types = properties.getTypes().stream().map(type -> type.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+        this.latest = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getRetention())
+                .build();
+        Gauge.builder("notification.supersede.index.size", latest, Cache::estimatedSize)
+                .description("Recipients and types with a remembered latest code")
+                .register(meterRegistry);
+        this.superseded = Counter.builder("notification.superseded")
+                .description("Codes dropped because a newer code for the same recipient and type arrived")
+                .register(meterRegistry);
+        log.info("Superseding of {} notifications {} (retention: {})", types,
+                properties.isEnabled() ? "enabled" : "disabled", properties.getRetention());
+    }
+
+    /**
+     * Registers the notification as the latest for its recipient and type, unless a newer one is
+     * already known. Returns {@code null} for types that are never superseded.
+     */
+    public Ticket register(NotificationPayload payload, Instant publishedAt) {
+        String key = keyOf(payload);
+        if (key == null) {
+            return null;
+        }
+        Instant published = publishedAt != null ? publishedAt : Instant.now();
+        Ticket ticket = new Ticket(key, ChronoUnit.MICROS.between(Instant.EPOCH, published), arrivals.incrementAndGet());
+        latest.asMap().merge(key, ticket, (current, candidate) -> candidate.isNewerThan(current) ? candidate : current);
+        return ticket;
+    }
+
+    /**
+     * Whether a newer code has been registered for the same recipient and type; counted as a drop
+     * when it has. A {@code null} ticket is never superseded.
+     */
+    public boolean dropIfSuperseded(Ticket ticket) {
+        if (ticket == null) {
+            return false;
+        }
+        Ticket current = latest.getIfPresent(ticket.key());
+        if (current == null || current == ticket) {
+            return false;
+        }
+        superseded.increment();
+        return true;
+    }
+
+    /**
+     * Whether a code for the same recipient and type published after {@code since} has been
+     * registered; counted as a drop when it has. Checks notifications that hold no ticket, such as
+     * replayed dead letters, without registering them.
+     */
+    public boolean dropIfSupersededSince(NotificationPayload payload, Instant since) {
+        String key = keyOf(payload);
+        if (key == null) {
+            return false;
+        }
+        Ticket current = latest.getIfPresent(key);
+        if (current == null || current.publishedMicros() <= ChronoUnit.MICROS.between(Instant.EPOCH, since)) {
+            return false;
+        }
+        superseded.increment();
+        return true;
+    }
+
+    private String keyOf(NotificationPayload payload) {
+        if (!properties.isEnabled() || payload.getType() == null
+                || !types.contains(payload.getType().toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        return payload.getMail().toLowerCase(Locale.ROOT) + '|' + payload.getType().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,135 @@
+package com.llyods.service;
+
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.config.TemplateProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.StandardCache;
+import org.thymeleaf.cache.StandardCacheManager;
+import org.thymeleaf.context.Context;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * Maps notification types to templates and warms the Thymeleaf template cache before any
+ * subscription starts, so a missing template fails startup rather than the first matching message.
+ */
+@Slf4j
+@Component
+public class TemplateRegistry implements InitializingBean {
+
+    private final TemplateEngine templateEngine;
+    private final TemplateProperties properties;
+    private final SubscriptionProperties subscriptionProperties;
+    private final Map<String, String> types = new LinkedHashMap<>();
+    private final Counter fallbacks;
+
+    public TemplateRegistry(TemplateEngine templateEngine, TemplateProperties properties,
+                            SubscriptionProperties subscriptionProperties, MeterRegistry meterRegistry) {
+        this.templateEngine = templateEngine;
+        this.properties = properties;
+        this.subscriptionProperties = subscriptionProperties;
+        properties.getTypes().forEach((type, template) -> types.put(type.toLowerCase(), template));
+
+        // Hit and miss counts are only kept when enabled before the engine initialises
+        if (!templateEngine.isInitialized() && templateEngine.getCacheManager() instanceof StandardCacheManager cacheManager) {
+            cacheManager.setTemplateCacheEnableCounters(true);
+        }
+        Gauge.builder("notification.template.cache.size", templateEngine, engine -> {
+                    ICache<?, ?> cache = templateCache(engine);
+                    return cache == null ? 0 : cache.size();
+                })
+                .description("Parsed templates held in the Thymeleaf template cache")
+                .register(meterRegistry);
+        cacheCounter(meterRegistry, "hit", StandardCache::getHitCount);
+        cacheCounter(meterRegistry, "miss", StandardCache::getMissCount);
+        this.fallbacks = Counter.builder("notification.template.fallback")
+                .description("Notifications rendered with the fallback template because their type is not mapped")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.isWarmUp()) {
+            return;
+        }
+        Set<String> templates = templateNames();
+        Map<String, String> failures = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        for (String template : templates) {
+            try {
+                templateEngine.process(template, sampleContext());
+            } catch (RuntimeException e) {
+                failures.put(template, e.getMessage());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Notification templates failed to render: " + failures);
+        }
+        log.info("Warmed up {} notification templates in {}ms", templates.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Every template a notification can be rendered with: the mapped ones, the fallback and any
+     * per-stream template.
+     */
+    public Set<String> templateNames() {
+        Set<String> templates = new TreeSet<>(types.values());
+        templates.add(properties.getFallback());
+        subscriptionProperties.getStreams().stream()
+                .map(SubscriptionProperties.Stream::getTemplate)
+                .filter(template -> template != null && !template.isBlank())
+                .forEach(templates::add);
+        return templates;
+    }
+
+    /**
+     * Template for a notification type, or the fallback template when the type is not mapped.
+     */
+    public String templateFor(String type) {
+        String template = type == null ? null : types.get(type.toLowerCase());
+        if (template == null) {
+            fallbacks.increment();
+            return properties.getFallback();
+        }
+        return template;
+    }
+
+    /**
+     * Template mapped to a notification type, or {@code null} when the type is not mapped. Unlike
+     * {@link #templateFor} this is not counted as a fallback.
+     */
+    public String mappedTemplate(String type) {
+        return type == null ? null : types.get(type.toLowerCase());
+    }
+
+    private static Context sampleContext() {
+        Context context = new Context();
+        context.setVariable("name", "Warm Up");
+        context.setVariable("messageContent", "https://example.com/warm-up");
+        return context;
+    }
+
+    private static ICache<?, ?> templateCache(TemplateEngine engine) {
+        return engine.getCacheManager() == null ? null : engine.getCacheManager().getTemplateCache();
+    }
+
+    private void cacheCounter(MeterRegistry meterRegistry, String result, ToLongFunction<StandardCache<?, ?>> count) {
+        FunctionCounter.builder("notification.template.cache.gets", templateEngine, engine ->
+                        templateCache(engine) instanceof StandardCache<?, ?> cache ? count.applyAsLong(cache) : 0)
+                .description("Template cache lookups")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
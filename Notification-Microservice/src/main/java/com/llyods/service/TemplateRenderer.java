@@ -0,0 +1,113 @@
+package com.llyods.service;
+
+import com.llyods.config.TemplateProperties;
+import com.llyods.util.SegmentedTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders notification templates. In {@code PRECOMPILED} mode each template is rendered once at
+ * startup with sentinel variable values and split into a {@link SegmentedTemplate}; sends then only
+ * escape and splice {@code name} and {@code messageContent} into a per-thread buffer. A template is
+ * only precompiled if its segmented output is byte-identical to Thymeleaf's for a set of probe
+ * values, otherwise it keeps going through the template engine.
+ */
+@Slf4j
+@Component
+public class TemplateRenderer implements InitializingBean {
+
+    static final List<String> VARIABLES = List.of("name", "messageContent");
+
+    private static final List<Map<String, Object>> PROBES = List.of(
+            Map.of("name", "John Doe", "messageContent", "Your payment of GBP 1,250.00 has been completed."),
+            Map.of("name", "Zoë <O'Brien> & \"Co\"", "messageContent", "https://example.com/reset?token=a1&user=<b>'\"é€"));
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(8192));
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private final TemplateEngine templateEngine;
+    private final TemplateRegistry templateRegistry;
+    private final TemplateProperties properties;
+    private final Map<String, SegmentedTemplate> precompiled = new ConcurrentHashMap<>();
+
+    public TemplateRenderer(TemplateEngine templateEngine, TemplateRegistry templateRegistry, TemplateProperties properties) {
+        this.templateEngine = templateEngine;
+        this.templateRegistry = templateRegistry;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.getRenderMode() != TemplateProperties.RenderMode.PRECOMPILED) {
+            return;
+        }
+        for (String template : templateRegistry.templateNames()) {
+            try {
+                SegmentedTemplate segmented = compile(template);
+                if (segmented != null) {
+                    precompiled.put(template, segmented);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not precompile {}, rendering it with Thymeleaf: {}", template, e.getMessage());
+            }
+        }
+        log.info("Precompiled {} of {} notification templates", precompiled.size(), templateRegistry.templateNames().size());
+    }
+
+    public String render(String template, Map<String, Object> variables) {
+        SegmentedTemplate segmented = precompiled.get(template);
+        if (segmented != null) {
+            StringBuilder buffer = BUFFER.get();
+            buffer.setLength(0);
+            try {
+                if (segmented.renderTo(buffer, variables)) {
+                    return buffer.toString();
+                }
+            } finally {
+                if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+                    BUFFER.remove();
+                }
+            }
+        }
+        return process(template, variables);
+    }
+
+    boolean isPrecompiled(String template) {
+        return precompiled.containsKey(template);
+    }
+
+    private SegmentedTemplate compile(String template) {
+        Map<String, String> sentinels = new LinkedHashMap<>();
+        for (int i = 0; i < VARIABLES.size(); i++) {
+            sentinels.put(VARIABLES.get(i), "__slot" + i + "x7f3a9c__");
+        }
+        SegmentedTemplate segmented = SegmentedTemplate.compile(process(template, new LinkedHashMap<>(sentinels)), sentinels);
+
+        for (Map<String, Object> probe : PROBES) {
+            StringBuilder spliced = new StringBuilder();
+            byte[] expected = process(template, probe).getBytes(StandardCharsets.UTF_8);
+            if (!segmented.renderTo(spliced, probe)
+                    || !Arrays.equals(expected, spliced.toString().getBytes(StandardCharsets.UTF_8))) {
+                log.warn("Precompiled output of {} differs from Thymeleaf, rendering it with Thymeleaf", template);
+                return null;
+            }
+        }
+        return segmented;
+    }
+
+    private String process(String template, Map<String, Object> variables) {
+        Context context = new Context();
+        context.setVariables(variables);
+        return templateEngine.process(template, context);
+    }
+}
@@ -0,0 +1,66 @@
+package com.llyods.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.google.protobuf.ByteString;
+import com.llyods.model.NotificationPayload;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Decodes notification JSON straight from the message bytes with a single {@link ObjectReader}
+ * bound to {@link NotificationPayload}, so no intermediate UTF-16 {@code String} is built. In
+ * BLACKBIRD mode the reader uses generated accessors instead of reflection.
+ */
+@Slf4j
+@Component
+public class NotificationDecoder {
+
+    public enum Mode {
+        STANDARD,
+        BLACKBIRD
+    }
+
+    private final ObjectReader reader;
+
+    public NotificationDecoder(ObjectMapper objectMapper, @Value("${notification.decoder.mode:STANDARD}") Mode mode) {
+        ObjectMapper mapper = mode == Mode.BLACKBIRD
+                ? objectMapper.copy().registerModule(new BlackbirdModule())
+                : objectMapper;
+        this.reader = mapper.readerFor(NotificationPayload.class);
+        log.info("Notification decoder using {} mode", mode);
+    }
+
+    public NotificationPayload decode(byte[] data) throws IOException {
+        return reader.readValue(data);
+    }
+
+    /**
+     * Reads a Pub/Sub message body without copying it into a new array first.
+     */
+    public NotificationPayload decode(ByteString data) throws IOException {
+        return reader.readValue(data.newInput());
+    }
+
+    public NotificationPayload decode(String json) throws IOException {
+        return reader.readValue(json);
+    }
+
+    /**
+     * Decodes an inbound message payload, which is the message's own {@link ByteString} from the
+     * Pub/Sub adapters.
+     */
+    public NotificationPayload decodePayload(Object payload) throws IOException {
+        if (payload instanceof ByteString data) {
+            return decode(data);
+        }
+        if (payload instanceof byte[] bytes) {
+            return decode(bytes);
+        }
+        return decode(payload.toString());
+    }
+}
@@ -2,7 +2,6 @@ package com.llyods.util;
 
 import com.llyods.exception.InvalidPayloadException;
 import com.llyods.model.NotificationPayload;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -10,44 +9,68 @@ import org.springframework.stereotype.Component;
 @Component
 public class PayloadValidator {
 
-    private final ObjectMapper objectMapper;
+    /**
+     * Validates an already decoded payload, so the message JSON is only parsed once.
+     */
+    public void validate(NotificationPayload notificationPayload) {
+        if (notificationPayload == null) {
+            log.error("Invalid payload: Empty message");
+            throw new InvalidPayloadException("Invalid message payload: Empty message");
+        }
 
-    public PayloadValidator(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
-    }
+        if (notificationPayload.getMail() == null || notificationPayload.getMail().isEmpty()) {
+            log.error("Invalid payload: Missing email");
+            throw new InvalidPayloadException("Invalid message payload: Missing email");
+        }
 
-    public void validate(String payload) {
-        try {
-            log.info("Validating JSON payload: {}", payload);
-            NotificationPayload notificationPayload = objectMapper.readValue(payload, NotificationPayload.class);
+        if (notificationPayload.getSubject() == null || notificationPayload.getSubject().isEmpty()) {
+            log.error("Invalid payload: Missing subject");
+            throw new InvalidPayloadException("Invalid message payload: Missing subject");
+        }
 
-            if (notificationPayload.getMail() == null || notificationPayload.getMail().isEmpty()) {
-                log.error("Invalid payload: Missing email");
-                throw new InvalidPayloadException("Invalid message payload: Missing email");
-            }
+        if (notificationPayload.getMessageContent() == null || notificationPayload.getMessageContent().isEmpty()) {
+            log.error("Invalid payload: Missing content");
+            throw new InvalidPayloadException("Invalid payload: Missing Content");
+        }
 
-            if (notificationPayload.getSubject() == null || notificationPayload.getSubject().isEmpty()) {
-                log.error("Invalid payload: Missing subject");
-                throw new InvalidPayloadException("Invalid message payload: Missing subject");
-            }
+        if (!isValidEmail(notificationPayload.getMail())) {
+            log.error("Invalid email format: {}", notificationPayload.getMail());
+            throw new InvalidPayloadException("Invalid email format: " + notificationPayload.getMail());
+        }
+    }
 
-            if (notificationPayload.getMessageContent() == null || notificationPayload.getMessageContent().isEmpty()) {
-                log.error("Invalid payload: Missing content");
-                throw new InvalidPayloadException("Invalid payload: Missing Content");
+    /**
+     * Same acceptance as {@code ^[A-Za-z0-9+_.-]+@(.+)$}, checked in a single pass without a regex:
+     * a non-empty local part of letters, digits and {@code + _ . -}, then {@code @}, then at least
+     * one character that is not a line terminator.
+     */
+    public boolean isValidEmail(String email) {
+        if (email == null) {
+            return false;
+        }
+        int at = email.indexOf('@');
+        if (at <= 0 || at == email.length() - 1) {
+            return false;
+        }
+        for (int i = 0; i < at; i++) {
+            if (!isLocalPartChar(email.charAt(i))) {
+                return false;
             }
-
-            if (!isValidEmail(notificationPayload.getMail())) {
-                log.error("Invalid email format: {}", notificationPayload.getMail());
-                throw new InvalidPayloadException("Invalid email format: " + notificationPayload.getMail());
+        }
+        for (int i = at + 1; i < email.length(); i++) {
+            if (isLineTerminator(email.charAt(i))) {
+                return false;
             }
-
-        } catch (Exception e) {
-            log.error("Error deserializing or validating payload: {}", e.getMessage());
-            throw new InvalidPayloadException("Invalid message payload: " + e.getMessage());
         }
+        return true;
     }
 
-    public boolean isValidEmail(String email) {
-        return email != null && email.matches("^[A-Za-z0-9+_.-]+@(.+)$");
+    private static boolean isLocalPartChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '+' || c == '_' || c == '.' || c == '-';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
     }
 }
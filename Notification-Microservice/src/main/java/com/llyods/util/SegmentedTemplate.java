@@ -0,0 +1,77 @@
+package com.llyods.util;
+
+import org.unbescape.html.HtmlEscape;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template pre-rendered into static text segments with variable slots between them. Slot values
+ * are escaped the way Thymeleaf escapes {@code th:text} and attribute output.
+ */
+public final class SegmentedTemplate {
+
+    private final String[] segments;
+    private final String[] slots;
+
+    private SegmentedTemplate(String[] segments, String[] slots) {
+        this.segments = segments;
+        this.slots = slots;
+    }
+
+    /**
+     * Splits {@code rendered}, the template output produced with each variable set to its sentinel,
+     * at every sentinel occurrence.
+     *
+     * @param sentinels variable name to the sentinel value it was rendered with; sentinels must be
+     *                  left unchanged by HTML escaping and must not otherwise occur in the template
+     */
+    public static SegmentedTemplate compile(String rendered, Map<String, String> sentinels) {
+        List<String> segments = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int from = 0;
+        while (true) {
+            int next = -1;
+            String variable = null;
+            for (Map.Entry<String, String> sentinel : sentinels.entrySet()) {
+                int index = rendered.indexOf(sentinel.getValue(), from);
+                if (index >= 0 && (next < 0 || index < next)) {
+                    next = index;
+                    variable = sentinel.getKey();
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            segments.add(rendered.substring(from, next));
+            slots.add(variable);
+            from = next + sentinels.get(variable).length();
+        }
+        segments.add(rendered.substring(from));
+        return new SegmentedTemplate(segments.toArray(new String[0]), slots.toArray(new String[0]));
+    }
+
+    /**
+     * Appends the rendered template to {@code out}. Returns {@code false}, leaving {@code out}
+     * untouched, if a slot's variable is missing or empty: Thymeleaf may drop the surrounding
+     * attribute in that case, so such messages are left to the template engine.
+     */
+    public boolean renderTo(StringBuilder out, Map<String, ?> variables) {
+        for (String slot : slots) {
+            Object value = variables.get(slot);
+            if (value == null || value.toString().isEmpty()) {
+                return false;
+            }
+        }
+        for (int i = 0; i < slots.length; i++) {
+            out.append(segments[i]).append(HtmlEscape.escapeHtml4Xml(variables.get(slots[i]).toString()));
+        }
+        out.append(segments[slots.length]);
+        return true;
+    }
+
+    public int slotCount() {
+        return slots.length;
+    }
+}
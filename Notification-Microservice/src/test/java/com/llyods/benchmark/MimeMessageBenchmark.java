@@ -0,0 +1,143 @@
+package com.llyods.benchmark;
+
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.config.TemplateProperties;
+import com.llyods.mail.HtmlMessageBuilder;
+import com.llyods.service.TemplateRegistry;
+import com.llyods.service.TemplateRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building one notification and writing it out as in the SMTP DATA phase: the multipart
+ * {@code MimeMessageHelper} message against the single-part {@link HtmlMessageBuilder} one. Each
+ * benchmark also reports the message's bytes on the wire as the {@code wireBytes} secondary result.
+ * Run with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=com.llyods.benchmark.MimeMessageBenchmark -Dexec.classpathScope=test};
+ * the GC profiler reports {@code gc.alloc.rate.norm}, the bytes allocated per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MimeMessageBenchmark {
+
+    @Param({"otpTemplate", "transactionTemplate", "passwordResetTemplate"})
+    private String template;
+
+    private final Session session = Session.getInstance(new Properties());
+    private final HtmlMessageBuilder builder = new HtmlMessageBuilder();
+    private String html;
+
+    @Setup
+    public void setUp() throws Exception {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+
+        TemplateProperties properties = new TemplateProperties();
+        TemplateRegistry templateRegistry = new TemplateRegistry(templateEngine, properties, new SubscriptionProperties(), new SimpleMeterRegistry());
+        templateRegistry.afterPropertiesSet();
+        TemplateRenderer templateRenderer = new TemplateRenderer(templateEngine, templateRegistry, properties);
+        templateRenderer.afterPropertiesSet();
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("name", "John Doe");
+        variables.put("messageContent", "Your payment of £1,250.00 to ACME & Sons Ltd has been completed.");
+        html = templateRenderer.render(template, variables);
+    }
+
+    /**
+     * Size of the last message written, reported next to the timing of the benchmark.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WireSize {
+
+        public long wireBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public long multipartHelper(WireSize wireSize) throws MessagingException, IOException {
+        MimeMessage message = new MimeMessage(session);
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        helper.setTo("demo@gmail.com");
+        helper.setSubject("Transaction complete");
+        helper.setText(html, true);
+        return wireSize.wireBytes = wire(message);
+    }
+
+    @Benchmark
+    public long singlePart(WireSize wireSize) throws MessagingException, IOException {
+        return wireSize.wireBytes = wire(builder.build(session, template, "demo@gmail.com", "Transaction complete", html));
+    }
+
+    private static long wire(MimeMessage message) throws MessagingException, IOException {
+        message.saveChanges();
+        CountingOutputStream out = new CountingOutputStream();
+        message.writeTo(out);
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MimeMessageBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
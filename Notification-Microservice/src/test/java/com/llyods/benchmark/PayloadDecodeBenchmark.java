@@ -0,0 +1,104 @@
+package com.llyods.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llyods.model.NotificationPayload;
+import com.llyods.util.NotificationDecoder;
+import com.llyods.util.PayloadValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode and validate cost per message: the old path (parse, parse again inside the validator,
+ * regex address check) against the single-parse path, and String decoding against decoding the
+ * message bytes with the cached reader, with and without Blackbird. Run with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=com.llyods.benchmark.PayloadDecodeBenchmark -Dexec.classpathScope=test};
+ * the GC profiler reports {@code gc.alloc.rate.norm}, the bytes allocated per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadDecodeBenchmark {
+
+    private static final String EMAIL_REGEX = "^[A-Za-z0-9+_.-]+@(.+)$";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final PayloadValidator payloadValidator = new PayloadValidator();
+    private final NotificationDecoder standardDecoder = new NotificationDecoder(objectMapper, NotificationDecoder.Mode.STANDARD);
+    private final NotificationDecoder blackbirdDecoder = new NotificationDecoder(objectMapper, NotificationDecoder.Mode.BLACKBIRD);
+    private String json;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        json = "{\"type\":\"transactioncomplete\",\"mail\":\"john.doe@example.com\",\"name\":\"John Doe\","
+                + "\"subject\":\"Transaction complete\",\"messageContent\":\"Your payment of GBP 1,250.00 to ACME Ltd has been completed.\"}";
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public NotificationPayload doubleParseWithRegex() throws Exception {
+        NotificationPayload payload = objectMapper.readValue(json, NotificationPayload.class);
+        NotificationPayload validated = objectMapper.readValue(json, NotificationPayload.class);
+        if (validated.getMail() == null || validated.getSubject() == null || validated.getMessageContent() == null
+                || !validated.getMail().matches(EMAIL_REGEX)) {
+            throw new IllegalStateException("invalid");
+        }
+        return payload;
+    }
+
+    @Benchmark
+    public NotificationPayload singleParse() throws Exception {
+        NotificationPayload payload = objectMapper.readValue(json, NotificationPayload.class);
+        payloadValidator.validate(payload);
+        return payload;
+    }
+
+    @Benchmark
+    public NotificationPayload bytesToStringThenMapper() throws Exception {
+        return objectMapper.readValue(new String(bytes, StandardCharsets.UTF_8), NotificationPayload.class);
+    }
+
+    @Benchmark
+    public NotificationPayload bytesWithReader() throws Exception {
+        return standardDecoder.decode(bytes);
+    }
+
+    @Benchmark
+    public NotificationPayload bytesWithBlackbirdReader() throws Exception {
+        return blackbirdDecoder.decode(bytes);
+    }
+
+    @Benchmark
+    public boolean regexEmailCheck() {
+        return "john.doe@example.com".matches(EMAIL_REGEX);
+    }
+
+    @Benchmark
+    public boolean handWrittenEmailCheck() {
+        return payloadValidator.isValidEmail("john.doe@example.com");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PayloadDecodeBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,90 @@
+package com.llyods.benchmark;
+
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.config.TemplateProperties;
+import com.llyods.service.TemplateRegistry;
+import com.llyods.service.TemplateRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message render cost of {@code TemplateEngine.process} against the precompiled segment path,
+ * both with a warm template cache. Run with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=com.llyods.benchmark.TemplateRenderBenchmark -Dexec.classpathScope=test}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateRenderBenchmark {
+
+    @Param({"otpTemplate", "transactionTemplate", "passwordResetTemplate"})
+    private String template;
+
+    private TemplateEngine templateEngine;
+    private TemplateRenderer templateRenderer;
+    private Map<String, Object> variables;
+
+    @Setup
+    public void setUp() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+
+        TemplateProperties properties = new TemplateProperties();
+        TemplateRegistry templateRegistry = new TemplateRegistry(templateEngine, properties, new SubscriptionProperties(), new SimpleMeterRegistry());
+        templateRegistry.afterPropertiesSet();
+        templateRenderer = new TemplateRenderer(templateEngine, templateRegistry, properties);
+        templateRenderer.afterPropertiesSet();
+
+        variables = new HashMap<>();
+        variables.put("name", "John Doe");
+        variables.put("messageContent", "Your payment of GBP 1,250.00 to ACME & Sons Ltd has been completed.");
+    }
+
+    @Benchmark
+    public String thymeleaf() {
+        Context context = new Context();
+        context.setVariables(variables);
+        return templateEngine.process(template, context);
+    }
+
+    @Benchmark
+    public String precompiled() {
+        return templateRenderer.render(template, variables);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TemplateRenderBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,91 @@
+package com.llyods.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.messaging.MessageChannel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class DispatchChannelFactoryTest {
+
+    private ChannelDispatchProperties properties;
+    private DispatchChannelFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ChannelDispatchProperties();
+        factory = new DispatchChannelFactory(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.destroy();
+    }
+
+    @Test
+    void testDefaultModeCreatesDirectChannel() {
+        MessageChannel channel = factory.create("profile", null);
+        assertThat(channel).isInstanceOf(DirectChannel.class);
+    }
+
+    @Test
+    void testExecutorModeCreatesExecutorChannel() {
+        MessageChannel channel = factory.create("transaction", dispatch(ChannelDispatchProperties.Mode.EXECUTOR, 2, 10));
+        assertThat(channel).isInstanceOf(ExecutorChannel.class);
+    }
+
+    @Test
+    void testVirtualModeCreatesExecutorChannel() {
+        MessageChannel channel = factory.create("otp", dispatch(ChannelDispatchProperties.Mode.VIRTUAL, 2, 10));
+        assertThat(channel).isInstanceOf(ExecutorChannel.class);
+    }
+
+    @Test
+    void testBoundedExecutorLimitsConcurrency() throws InterruptedException {
+        Executor unbounded = task -> new Thread(task).start();
+        DispatchChannelFactory.BoundedExecutor executor = new DispatchChannelFactory.BoundedExecutor(unbounded, 2, 10);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(8);
+
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleepQuietly();
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        boolean completed = done.await(5, TimeUnit.SECONDS);
+        assertAll(
+                () -> assertThat(completed).isTrue(),
+                () -> assertThat(peak.get()).isLessThanOrEqualTo(2)
+        );
+    }
+
+    private ChannelDispatchProperties.Dispatch dispatch(ChannelDispatchProperties.Mode mode, int maxConcurrency, int queueCapacity) {
+        ChannelDispatchProperties.Dispatch dispatch = new ChannelDispatchProperties.Dispatch();
+        dispatch.setMode(mode);
+        dispatch.setMaxConcurrency(maxConcurrency);
+        dispatch.setQueueCapacity(queueCapacity);
+        return dispatch;
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.llyods.config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class MailCircuitBreakerConfigTest {
+
+    private final MailCircuitBreakerConfig config = new MailCircuitBreakerConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testBreakerUsesConfiguredThresholds() {
+        MailCircuitBreakerProperties properties = new MailCircuitBreakerProperties();
+        properties.setFailureRateThreshold(25);
+        properties.setSlowCallDuration(Duration.ofSeconds(3));
+        properties.setWaitInOpenState(Duration.ofSeconds(5));
+
+        CircuitBreaker circuitBreaker = config.mailCircuitBreaker(properties, meterRegistry);
+
+        assertAll(
+                () -> assertThat(circuitBreaker.getName()).isEqualTo("smtp"),
+                () -> assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED),
+                () -> assertThat(circuitBreaker.getCircuitBreakerConfig().getFailureRateThreshold()).isEqualTo(25),
+                () -> assertThat(circuitBreaker.getCircuitBreakerConfig().getSlowCallDurationThreshold()).isEqualTo(Duration.ofSeconds(3)),
+                () -> assertThat(circuitBreaker.getCircuitBreakerConfig().isAutomaticTransitionFromOpenToHalfOpenEnabled()).isTrue()
+        );
+    }
+
+    @Test
+    void testBreakerStateIsPublishedAsMeters() {
+        CircuitBreaker circuitBreaker = config.mailCircuitBreaker(new MailCircuitBreakerProperties(), meterRegistry);
+        circuitBreaker.transitionToOpenState();
+
+        assertThat(meterRegistry.get("resilience4j.circuitbreaker.state")
+                .tag("name", "smtp").tag("state", "open").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void testDisabledBreakerPermitsEverySend() {
+        MailCircuitBreakerProperties properties = new MailCircuitBreakerProperties();
+        properties.setEnabled(false);
+
+        CircuitBreaker circuitBreaker = config.mailCircuitBreaker(properties, meterRegistry);
+
+        assertAll(
+                () -> assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.DISABLED),
+                () -> assertThat(circuitBreaker.tryAcquirePermission()).isTrue()
+        );
+    }
+
+    @Test
+    void testHealthReportsBreakerState() {
+        CircuitBreaker circuitBreaker = config.mailCircuitBreaker(new MailCircuitBreakerProperties(), meterRegistry);
+        HealthIndicator indicator = config.mailCircuitBreakerHealthIndicator(circuitBreaker);
+
+        Health closed = indicator.health();
+        circuitBreaker.transitionToOpenState();
+        Health open = indicator.health();
+        circuitBreaker.transitionToHalfOpenState();
+        Health halfOpen = indicator.health();
+
+        assertAll(
+                () -> assertThat(closed.getStatus()).isEqualTo(Status.UP),
+                () -> assertThat(open.getStatus().getCode()).isEqualTo("CIRCUIT_OPEN"),
+                () -> assertThat(open.getDetails()).containsEntry("state", CircuitBreaker.State.OPEN),
+                () -> assertThat(halfOpen.getStatus().getCode()).isEqualTo("CIRCUIT_HALF_OPEN")
+        );
+    }
+}
@@ -0,0 +1,131 @@
+package com.llyods.config;
+
+import com.llyods.mail.AdaptiveConcurrencyLimiter;
+import com.llyods.mail.ConcurrencyLimitingMailSender;
+import com.llyods.mail.PooledJavaMailSender;
+import com.llyods.mail.RoutingMailSender;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class MailSenderConfigTest {
+
+    @Test
+    void testMailSenderUsesSpringMailProperties() {
+        MailProperties mailProperties = new MailProperties();
+        mailProperties.setHost("smtp.gmail.com");
+        mailProperties.setPort(587);
+        mailProperties.setUsername("user");
+        mailProperties.setPassword("secret");
+        mailProperties.getProperties().put("mail.smtp.starttls.enable", "true");
+
+        PooledJavaMailSender sender = new MailSenderConfig()
+                .pooledMailSender(mailProperties, new MailPoolProperties(), new SimpleMeterRegistry());
+
+        assertAll(
+                () -> assertThat(sender.getHost()).isEqualTo("smtp.gmail.com"),
+                () -> assertThat(sender.getPort()).isEqualTo(587),
+                () -> assertThat(sender.getUsername()).isEqualTo("user"),
+                () -> assertThat(sender.getProtocol()).isEqualTo("smtp"),
+                () -> assertThat(sender.getJavaMailProperties()).containsEntry("mail.smtp.starttls.enable", "true")
+        );
+    }
+
+    @Test
+    void testFastLaneGetsItsOwnPoolToTheSameRelay() {
+        MailProperties mailProperties = new MailProperties();
+        mailProperties.setHost("smtp.gmail.com");
+        mailProperties.setPort(587);
+        FastLaneProperties fastLaneProperties = new FastLaneProperties();
+        fastLaneProperties.getPool().setSize(2);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        PooledJavaMailSender sender = new MailSenderConfig()
+                .fastLanePooledMailSender(mailProperties, fastLaneProperties, meterRegistry);
+
+        assertAll(
+                () -> assertThat(sender.getHost()).isEqualTo("smtp.gmail.com"),
+                () -> assertThat(meterRegistry.get("mail.pool.connections").tag("pool", "fast-lane").tag("state", "open").gauge().value()).isZero()
+        );
+    }
+
+    @Test
+    void testMailSenderSendsUnderTheConcurrencyLimit() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MailSenderConfig config = new MailSenderConfig();
+
+        JavaMailSender sender = config.mailSender(
+                config.pooledMailSender(new MailProperties(), new MailPoolProperties(), meterRegistry),
+                CircuitBreaker.ofDefaults("smtp"),
+                new AdaptiveConcurrencyLimiter(new MailConcurrencyProperties(), meterRegistry));
+
+        assertThat(sender).isInstanceOf(ConcurrencyLimitingMailSender.class);
+    }
+
+    @Test
+    void testRelayMailSenderRoutesOverConfiguredRelaysWhenEnabled() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MailProperties mailProperties = new MailProperties();
+        mailProperties.setHost("smtp.gmail.com");
+        mailProperties.setPort(587);
+        MailRoutingProperties routingProperties = new MailRoutingProperties();
+        MailSenderConfig senderConfig = new MailSenderConfig();
+        PooledJavaMailSender pooledMailSender = senderConfig.pooledMailSender(mailProperties, new MailPoolProperties(), meterRegistry);
+        CircuitBreakerRegistry relayCircuitBreakers = senderConfig.relayCircuitBreakerRegistry(new MailCircuitBreakerProperties(), meterRegistry);
+
+        JavaMailSender single = senderConfig.relayMailSender(pooledMailSender, mailProperties, new MailPoolProperties(),
+                routingProperties, relayCircuitBreakers, meterRegistry);
+        MailRoutingProperties.Relay backup = new MailRoutingProperties.Relay();
+        backup.setHost("smtp.backup.example.com");
+        backup.setWeight(2);
+        routingProperties.setEnabled(true);
+        routingProperties.getRelays().put("primary", new MailRoutingProperties.Relay());
+        routingProperties.getRelays().put("backup", backup);
+        JavaMailSender routed = senderConfig.relayMailSender(pooledMailSender, mailProperties, new MailPoolProperties(),
+                routingProperties, relayCircuitBreakers, meterRegistry);
+
+        assertAll(
+                () -> assertThat(single).isSameAs(pooledMailSender),
+                () -> assertThat(routed).isInstanceOf(RoutingMailSender.class),
+                () -> assertThat(meterRegistry.get("mail.pool.connections").tag("pool", "backup").tag("state", "open").gauge().value()).isZero(),
+                () -> assertThat(meterRegistry.get("mail.relay.score").tag("relay", "primary").gauge().value()).isEqualTo(1)
+        );
+    }
+
+    @Test
+    void testFastLaneGetsItsOwnPoolToEveryRelayWhenRoutingIsEnabled() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MailProperties mailProperties = new MailProperties();
+        mailProperties.setHost("smtp.gmail.com");
+        FastLaneProperties fastLaneProperties = new FastLaneProperties();
+        MailRoutingProperties routingProperties = new MailRoutingProperties();
+        MailRoutingProperties.Relay backup = new MailRoutingProperties.Relay();
+        backup.setHost("smtp.backup.example.com");
+        routingProperties.setEnabled(true);
+        routingProperties.getRelays().put("primary", new MailRoutingProperties.Relay());
+        routingProperties.getRelays().put("backup", backup);
+        MailSenderConfig senderConfig = new MailSenderConfig();
+        CircuitBreakerRegistry relayCircuitBreakers = senderConfig.relayCircuitBreakerRegistry(new MailCircuitBreakerProperties(), meterRegistry);
+        PooledJavaMailSender fastLanePooledMailSender = senderConfig.fastLanePooledMailSender(mailProperties, fastLaneProperties, meterRegistry);
+
+        senderConfig.relayMailSender(senderConfig.pooledMailSender(mailProperties, new MailPoolProperties(), meterRegistry),
+                mailProperties, new MailPoolProperties(), routingProperties, relayCircuitBreakers, meterRegistry);
+        JavaMailSender fastLane = senderConfig.fastLaneRelayMailSender(fastLanePooledMailSender, mailProperties, fastLaneProperties,
+                routingProperties, relayCircuitBreakers, meterRegistry);
+
+        assertAll(
+                () -> assertThat(fastLane).isInstanceOf(RoutingMailSender.class),
+                () -> assertThat(((RoutingMailSender) fastLane).score("fast-lane-backup")).isEqualTo(1),
+                () -> assertThat(meterRegistry.get("mail.pool.connections").tag("pool", "fast-lane-primary").tag("state", "open").gauge().value()).isZero(),
+                () -> assertThat(meterRegistry.get("mail.pool.connections").tag("pool", "fast-lane-backup").tag("state", "open").gauge().value()).isZero(),
+                () -> assertThat(relayCircuitBreakers.getAllCircuitBreakers()).extracting(CircuitBreaker::getName)
+                        .containsExactlyInAnyOrder("smtp-primary", "smtp-backup")
+        );
+    }
+}
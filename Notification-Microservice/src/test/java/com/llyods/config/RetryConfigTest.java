@@ -1,37 +1,46 @@
 package com.llyods.config;
 
+import com.llyods.exception.EmailDeliveryException;
+import com.llyods.mail.DeliveryFailure;
+import com.llyods.mail.RelayUnavailableException;
+import jakarta.mail.internet.InternetAddress;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
-import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.classify.Classifier;
+import org.springframework.mail.MailSendException;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.retry.RetryPolicy;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
+import org.springframework.retry.policy.NeverRetryPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
 
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertAll;
 
-@ExtendWith(MockitoExtension.class)
 class RetryConfigTest {
 
-    @InjectMocks
-    private RetryConfig retryConfig;
+    private final RetryProperties properties = new RetryProperties();
+    private final RetryConfig retryConfig = new RetryConfig(properties);
 
     @BeforeEach
     void setUp() {
-        ReflectionTestUtils.setField(retryConfig, "maxAttempts", 3);
-        ReflectionTestUtils.setField(retryConfig, "delay", 1000L);
-        ReflectionTestUtils.setField(retryConfig, "multiplier", 2.0);
-        ReflectionTestUtils.setField(retryConfig, "maxDelay", 10000L);
+        properties.setMaxAttempts(3);
+        properties.setDelay(1000L);
+        properties.setMultiplier(2.0);
+        properties.setMaxDelay(10000L);
     }
 
     @Test
     void testRetryTemplateConfiguration() {
         RetryTemplate retryTemplate = retryConfig.retryTemplate();
 
-        SimpleRetryPolicy retryPolicy = (SimpleRetryPolicy) ReflectionTestUtils.getField(retryTemplate, "retryPolicy");
+        SimpleRetryPolicy retryPolicy = (SimpleRetryPolicy) policyFor(retryTemplate, new MailSendException("Mail server error"));
         ExponentialBackOffPolicy backOffPolicy = (ExponentialBackOffPolicy) ReflectionTestUtils.getField(retryTemplate, "backOffPolicy");
 
         assertAll(
@@ -41,4 +50,81 @@ class RetryConfigTest {
                 () -> assertThat(backOffPolicy.getMaxInterval()).isEqualTo(10000L)
         );
     }
+
+    @Test
+    void testRetryTemplateMakesSingleAttemptWhenRetriesAreScheduled() {
+        properties.setMode(RetryMode.SCHEDULED);
+        RetryTemplate retryTemplate = retryConfig.retryTemplate();
+
+        SimpleRetryPolicy retryPolicy = (SimpleRetryPolicy) policyFor(retryTemplate, new MailSendException("Mail server error"));
+
+        assertThat(retryPolicy.getMaxAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    void testRetryTemplateUsesAttemptsConfiguredPerFailureType() throws Exception {
+        properties.getFailureAttempts().put(DeliveryFailure.TRANSIENT, 5);
+        RetryTemplate retryTemplate = retryConfig.retryTemplate();
+
+        SimpleRetryPolicy transientPolicy = (SimpleRetryPolicy) policyFor(retryTemplate, new SMTPAddressFailedException(
+                new InternetAddress("demo@gmail.com"), "RCPT TO", 452, "452 4.2.2 Mailbox full"));
+        SimpleRetryPolicy timeoutPolicy = (SimpleRetryPolicy) policyFor(retryTemplate,
+                new MailSendException("Mail server connection failed", new SocketTimeoutException("Read timed out")));
+
+        assertAll(
+                () -> assertThat(transientPolicy.getMaxAttempts()).isEqualTo(5),
+                () -> assertThat(timeoutPolicy.getMaxAttempts()).isEqualTo(3)
+        );
+    }
+
+    @Test
+    void testRetryTemplateNeverRetriesPermanentFailures() throws Exception {
+        RetryTemplate retryTemplate = retryConfig.retryTemplate();
+
+        RetryPolicy rejected = policyFor(retryTemplate, new EmailDeliveryException("Failed to send email to: demo@gmail.com",
+                new SMTPAddressFailedException(new InternetAddress("demo@gmail.com"), "RCPT TO", 550, "550 5.1.1 User unknown")));
+
+        assertThat(rejected).isInstanceOf(NeverRetryPolicy.class);
+    }
+
+    @Test
+    void testRetryTemplateDoesNotRetryWhileRelayIsUnavailable() {
+        RetryTemplate retryTemplate = retryConfig.retryTemplate();
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryTemplate.execute(context -> {
+            attempts.incrementAndGet();
+            throw new EmailDeliveryException("Failed to send email to: demo@gmail.com",
+                    new RelayUnavailableException("SMTP relay circuit breaker is OPEN", null));
+        })).isInstanceOf(EmailDeliveryException.class);
+
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testFastLaneRetryTemplateRetriesInProcessWhateverTheMode() {
+        properties.setMode(RetryMode.SCHEDULED);
+        FastLaneProperties fastLaneProperties = new FastLaneProperties();
+        fastLaneProperties.getRetry().setMaxAttempts(2);
+        RetryTemplate retryTemplate = retryConfig.fastLaneRetryTemplate(fastLaneProperties);
+
+        SimpleRetryPolicy retryPolicy = (SimpleRetryPolicy) policyFor(retryTemplate, new MailSendException("Mail server error"));
+        ExponentialBackOffPolicy backOffPolicy = (ExponentialBackOffPolicy) ReflectionTestUtils.getField(retryTemplate, "backOffPolicy");
+
+        assertAll(
+                () -> assertThat(retryPolicy.getMaxAttempts()).isEqualTo(2),
+                () -> assertThat(backOffPolicy.getInitialInterval()).isEqualTo(200L),
+                () -> assertThat(backOffPolicy.getMaxInterval()).isEqualTo(1000L),
+                () -> assertThat(policyFor(retryTemplate, new RelayUnavailableException("SMTP relay circuit breaker is OPEN", null)))
+                        .isInstanceOf(NeverRetryPolicy.class)
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private RetryPolicy policyFor(RetryTemplate retryTemplate, Throwable error) {
+        Object retryPolicy = ReflectionTestUtils.getField(retryTemplate, "retryPolicy");
+        Classifier<Throwable, RetryPolicy> classifier =
+                (Classifier<Throwable, RetryPolicy>) ReflectionTestUtils.getField(retryPolicy, "exceptionClassifier");
+        return classifier.classify(error);
+    }
 }
@@ -0,0 +1,141 @@
+package com.llyods.config;
+
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.cloud.spring.pubsub.integration.AckMode;
+import com.google.cloud.spring.pubsub.integration.inbound.PubSubInboundChannelAdapter;
+import com.google.protobuf.ByteString;
+import com.llyods.service.PubSubConsumerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.context.IntegrationFlowContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionRegistryTest {
+
+    @Mock
+    private IntegrationFlowContext flowContext;
+
+    @Mock
+    private IntegrationFlowContext.IntegrationFlowRegistrationBuilder registrationBuilder;
+
+    @Mock
+    private IntegrationFlowContext.IntegrationFlowRegistration registration;
+
+    @Mock
+    private PubSubTemplate pubSubTemplate;
+
+    @Mock
+    private DispatchChannelFactory dispatchChannelFactory;
+
+    @Mock
+    private PubSubConsumerService pubSubConsumerService;
+
+    private SubscriptionProperties properties;
+    private SubscriptionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SubscriptionProperties();
+        properties.setStreams(List.of(stream("transaction", null), stream("otp", AckMode.AUTO)));
+        registry = new SubscriptionRegistry(flowContext, pubSubTemplate, dispatchChannelFactory, properties, pubSubConsumerService);
+    }
+
+    @Test
+    void testAdapterUsesStreamAckModeOrDefault() {
+        PubSubInboundChannelAdapter transactionAdapter = registry.createAdapter(properties.getStreams().get(0));
+        PubSubInboundChannelAdapter otpAdapter = registry.createAdapter(properties.getStreams().get(1));
+        assertAll(
+                () -> assertThat(transactionAdapter.getAckMode()).isEqualTo(AckMode.MANUAL),
+                () -> assertThat(otpAdapter.getAckMode()).isEqualTo(AckMode.AUTO),
+                () -> assertThat(ReflectionTestUtils.getField(transactionAdapter, "payloadType")).isEqualTo(ByteString.class)
+        );
+    }
+
+    @Test
+    void testStartRegistersAndStartsEveryStream() {
+        when(dispatchChannelFactory.create(any(), any())).thenReturn(new DirectChannel());
+        when(flowContext.registration(any(IntegrationFlow.class))).thenReturn(registrationBuilder);
+        when(registrationBuilder.id(any())).thenReturn(registrationBuilder);
+        when(registrationBuilder.autoStartup(false)).thenReturn(registrationBuilder);
+        when(registrationBuilder.register()).thenReturn(registration);
+
+        registry.start();
+
+        assertAll(
+                () -> verify(registrationBuilder).id("transactionFlow"),
+                () -> verify(registrationBuilder).id("otpFlow"),
+                () -> verify(registration, times(2)).start(),
+                () -> assertThat(registry.getStreamNames()).containsExactlyInAnyOrder("transaction", "otp"),
+                () -> assertThat(registry.isRunning()).isTrue()
+        );
+    }
+
+    @Test
+    void testRestartReusesRegisteredFlows() {
+        when(dispatchChannelFactory.create(any(), any())).thenReturn(new DirectChannel());
+        when(flowContext.registration(any(IntegrationFlow.class))).thenReturn(registrationBuilder);
+        when(registrationBuilder.id(any())).thenReturn(registrationBuilder);
+        when(registrationBuilder.autoStartup(false)).thenReturn(registrationBuilder);
+        when(registrationBuilder.register()).thenReturn(registration);
+
+        registry.start();
+        registry.stop();
+        boolean stopped = !registry.isRunning();
+        registry.start();
+
+        assertAll(
+                () -> assertThat(stopped).isTrue(),
+                () -> assertThat(registry.isRunning()).isTrue(),
+                () -> verify(registrationBuilder, times(2)).register(),
+                () -> verify(dispatchChannelFactory, times(2)).create(any(), any()),
+                () -> verify(registration, times(2)).stop(),
+                () -> verify(registration, times(4)).start()
+        );
+    }
+
+    @Test
+    void testPauseAndResumeOnlyWhileRunning() {
+        when(dispatchChannelFactory.create(any(), any())).thenReturn(new DirectChannel());
+        when(flowContext.registration(any(IntegrationFlow.class))).thenReturn(registrationBuilder);
+        when(registrationBuilder.id(any())).thenReturn(registrationBuilder);
+        when(registrationBuilder.autoStartup(false)).thenReturn(registrationBuilder);
+        when(registrationBuilder.register()).thenReturn(registration);
+
+        registry.pause();
+        verify(registration, never()).stop();
+
+        registry.start();
+        registry.pause();
+        registry.pause();
+        boolean paused = registry.isPaused();
+        registry.resume();
+
+        assertAll(
+                () -> assertThat(paused).isTrue(),
+                () -> assertThat(registry.isPaused()).isFalse(),
+                () -> verify(registration, times(2)).stop(),
+                () -> verify(registration, times(4)).start()
+        );
+    }
+
+    private SubscriptionProperties.Stream stream(String name, AckMode ackMode) {
+        SubscriptionProperties.Stream stream = new SubscriptionProperties.Stream();
+        stream.setName(name);
+        stream.setSubscription(name + "-subscription");
+        stream.setAckMode(ackMode);
+        return stream;
+    }
+}
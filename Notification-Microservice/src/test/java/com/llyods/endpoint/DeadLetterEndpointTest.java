@@ -0,0 +1,78 @@
+package com.llyods.endpoint;
+
+import com.llyods.model.DeadLetter;
+import com.llyods.model.NotificationPayload;
+import com.llyods.service.DeadLetterJournal;
+import com.llyods.service.DeadLetterReplayService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeadLetterEndpointTest {
+
+    @Mock
+    private DeadLetterJournal deadLetterJournal;
+
+    @Mock
+    private DeadLetterReplayService deadLetterReplayService;
+
+    private DeadLetterEndpoint endpoint;
+    private DeadLetterJournal.Entry entry;
+
+    @BeforeEach
+    void setUp() {
+        endpoint = new DeadLetterEndpoint(deadLetterJournal, deadLetterReplayService);
+        entry = new DeadLetterJournal.Entry(7, new DeadLetter("otp", "CONNECTION", "Connection refused", 0L,
+                new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Subject", "Message")));
+    }
+
+    @Test
+    void shouldListFromReplayCheckpointByDefaultWithoutPayloads() {
+        when(deadLetterJournal.replayFrom()).thenReturn(7L);
+        when(deadLetterJournal.nextSequence()).thenReturn(8L);
+        when(deadLetterJournal.read(7, 50)).thenReturn(List.of(entry));
+
+        DeadLetterEndpoint.Summary summary = endpoint.list(null, null);
+
+        assertAll(
+                () -> assertThat(summary.replayFrom()).isEqualTo(7),
+                () -> assertThat(summary.nextSequence()).isEqualTo(8),
+                () -> assertThat(summary.entries()).containsExactly(
+                        new DeadLetterEndpoint.Item(7, "otp", "otp", "CONNECTION", "Connection refused", 0L))
+        );
+    }
+
+    @Test
+    void shouldCapListLimit() {
+        endpoint.list(0L, 100_000);
+
+        verify(deadLetterJournal).read(0, 500);
+    }
+
+    @Test
+    void shouldReturnEntryOnlyForExactSequence() {
+        when(deadLetterJournal.read(7, 1)).thenReturn(List.of(entry));
+        when(deadLetterJournal.read(6, 1)).thenReturn(List.of(entry));
+
+        assertAll(
+                () -> assertThat(endpoint.entry(7)).isEqualTo(entry),
+                () -> assertThat(endpoint.entry(6)).isNull()
+        );
+    }
+
+    @Test
+    void shouldStartReplayWithRequestedRange() {
+        endpoint.replay(3L, 10, 2.0);
+
+        verify(deadLetterReplayService).start(3L, 10, 2.0);
+    }
+}
@@ -0,0 +1,194 @@
+package com.llyods.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class SegmentedJournalTest {
+
+    private static final int SEGMENT_SIZE = 128;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReadBackAppendedRecordsInOrder() throws IOException {
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            long first = journal.append(bytes("first"));
+            long second = journal.append(bytes("second"));
+
+            List<SegmentedJournal.Record> records = journal.read(0, 10);
+
+            assertAll(
+                    () -> assertThat(first).isZero(),
+                    () -> assertThat(second).isEqualTo(1),
+                    () -> assertThat(records).extracting(SegmentedJournal.Record::sequence).containsExactly(0L, 1L),
+                    () -> assertThat(text(records.get(1))).isEqualTo("second"),
+                    () -> assertThat(journal.read(1, 10)).hasSize(1),
+                    () -> assertThat(journal.read(0, 1)).hasSize(1)
+            );
+        }
+    }
+
+    @Test
+    void shouldRollToNewSegmentWhenFull() throws IOException {
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(bytes("record-" + i + "-padding-padding"));
+            }
+
+            assertAll(
+                    () -> assertThat(journal.segmentCount()).isEqualTo(4),
+                    () -> assertThat(journal.read(0, 100)).extracting(SegmentedJournal.Record::sequence)
+                            .containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L),
+                    () -> assertThat(text(journal.read(7, 1).get(0))).startsWith("record-7")
+            );
+        }
+    }
+
+    @Test
+    void shouldRollIntoNewFilesAcrossReopen() throws IOException {
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 4; i++) {
+                journal.append(bytes("record-" + i + "-padding-padding"));
+            }
+            journal.sync();
+        }
+
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            for (int i = 4; i < 7; i++) {
+                journal.append(bytes("record-" + i + "-padding-padding"));
+            }
+
+            assertAll(
+                    () -> assertThat(segmentFiles()).hasSize(3).doesNotHaveDuplicates(),
+                    () -> assertThat(journal.segmentCount()).isEqualTo(3),
+                    () -> assertThat(journal.read(0, 100)).extracting(SegmentedJournal.Record::sequence)
+                            .containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L)
+            );
+        }
+    }
+
+    @Test
+    void shouldContinueSequenceAfterReopening() throws IOException {
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(bytes("record-" + i + "-padding-padding"));
+            }
+            journal.sync();
+        }
+
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            assertAll(
+                    () -> assertThat(journal.nextSequence()).isEqualTo(5),
+                    () -> assertThat(journal.append(bytes("after-reopen"))).isEqualTo(5),
+                    () -> assertThat(journal.read(0, 100)).hasSize(6)
+            );
+        }
+    }
+
+    @Test
+    void shouldDiscardTornTailOnRecovery() throws IOException {
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            journal.append(bytes("kept"));
+            journal.append(bytes("torn"));
+            journal.sync();
+        }
+        int secondRecord = SegmentedJournal.HEADER_SIZE + "kept".length();
+        corrupt(onlySegment(), secondRecord + SegmentedJournal.HEADER_SIZE);
+
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            assertAll(
+                    () -> assertThat(journal.read(0, 10)).extracting(this::text).containsExactly("kept"),
+                    () -> assertThat(journal.nextSequence()).isEqualTo(1),
+                    () -> assertThat(journal.append(bytes("replacement"))).isEqualTo(1),
+                    () -> assertThat(journal.read(0, 10)).extracting(this::text).containsExactly("kept", "replacement")
+            );
+        }
+    }
+
+    @Test
+    void shouldDeleteOnlyWholeSegmentsBeforeSequence() throws IOException {
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(bytes("record-" + i + "-padding-padding"));
+            }
+            // three 40 byte records per segment: 0-2, 3-5, 6-8 and 9
+            int deleted = journal.deleteBefore(4);
+
+            assertAll(
+                    () -> assertThat(deleted).isEqualTo(1),
+                    () -> assertThat(journal.firstSequence()).isEqualTo(3),
+                    () -> assertThat(journal.read(0, 100)).extracting(SegmentedJournal.Record::sequence).startsWith(3L, 4L),
+                    () -> assertThat(journal.deleteBefore(Long.MAX_VALUE)).isEqualTo(2),
+                    () -> assertThat(journal.segmentCount()).isEqualTo(1),
+                    () -> assertThat(journal.read(0, 100)).extracting(SegmentedJournal.Record::sequence).containsExactly(9L)
+            );
+        }
+    }
+
+    @Test
+    void shouldRetainNewestSegments() throws IOException {
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(bytes("record-" + i + "-padding-padding"));
+            }
+
+            long oldest = journal.retain(2);
+
+            assertAll(
+                    () -> assertThat(oldest).isEqualTo(6),
+                    () -> assertThat(journal.segmentCount()).isEqualTo(2),
+                    () -> assertThat(journal.read(0, 100).get(0).sequence()).isEqualTo(6L),
+                    () -> assertThat(journal.read(0, 100)).last().extracting(SegmentedJournal.Record::sequence).isEqualTo(9L)
+            );
+        }
+    }
+
+    @Test
+    void shouldRejectRecordLargerThanSegment() throws IOException {
+        try (SegmentedJournal journal = new SegmentedJournal(directory, SEGMENT_SIZE)) {
+            assertThatThrownBy(() -> journal.append(new byte[SEGMENT_SIZE]))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).toList();
+        }
+    }
+
+    private void corrupt(Path file, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), offset);
+        }
+    }
+
+    private byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String text(SegmentedJournal.Record record) {
+        return new String(record.data(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,55 @@
+package com.llyods.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MarkerFactory;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class PayloadSamplingTurboFilterTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger consumerLogger = context.getLogger("com.llyods.service.PubSubConsumerService");
+    private final Logger mailLogger = context.getLogger("com.llyods.service.PubSubMailSenderService");
+
+    @Test
+    void shouldKeepOneInEveryRatePayloadStatementsPerLogger() {
+        PayloadSamplingTurboFilter filter = new PayloadSamplingTurboFilter();
+        filter.setDefaultRate(10);
+        filter.addLoggerRate("com.llyods.service.PubSubMailSenderService=2");
+
+        assertAll(
+                () -> assertThat(accepted(filter, consumerLogger, 100)).isEqualTo(10),
+                () -> assertThat(accepted(filter, mailLogger, 100)).isEqualTo(50)
+        );
+    }
+
+    @Test
+    void shouldNotSampleOtherStatementsOrEnabledChecks() {
+        PayloadSamplingTurboFilter filter = new PayloadSamplingTurboFilter();
+        filter.setDefaultRate(10);
+
+        assertAll(
+                () -> assertThat(filter.decide(null, consumerLogger, Level.INFO, "Received {} message", null, null))
+                        .isEqualTo(FilterReply.NEUTRAL),
+                () -> assertThat(filter.decide(MarkerFactory.getMarker("OTHER"), consumerLogger, Level.INFO, "x", null, null))
+                        .isEqualTo(FilterReply.NEUTRAL),
+                () -> assertThat(IntStream.range(0, 5)
+                        .mapToObj(i -> filter.decide(LogMarkers.PAYLOAD, consumerLogger, Level.DEBUG, null, null, null)))
+                        .containsOnly(FilterReply.NEUTRAL)
+        );
+    }
+
+    private long accepted(PayloadSamplingTurboFilter filter, Logger logger, int statements) {
+        return IntStream.range(0, statements)
+                .mapToObj(i -> filter.decide(LogMarkers.PAYLOAD, logger, Level.INFO, "payload: {}", new Object[]{i}, null))
+                .filter(reply -> reply == FilterReply.NEUTRAL)
+                .count();
+    }
+}
@@ -0,0 +1,70 @@
+package com.llyods.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class RedactingMessageJsonProviderTest {
+
+    private final RedactingMessageJsonProvider provider = new RedactingMessageJsonProvider();
+
+    @Test
+    void shouldMaskEmailLocalPartKeepingFirstCharacter() {
+        assertAll(
+                () -> assertThat(format("Email sent successfully to: {}", "john.doe@gmail.com"))
+                        .isEqualTo("Email sent successfully to: j*******@gmail.com"),
+                () -> assertThat(format("to: {}, subject: {}", "a@b.com", "Hello"))
+                        .isEqualTo("to: a@b.com, subject: Hello")
+        );
+    }
+
+    @Test
+    void shouldMaskStandaloneOtpCodes() {
+        assertAll(
+                () -> assertThat(format("Your code is {}", "Your OTP is 482913."))
+                        .isEqualTo("Your code is Your OTP is ******."),
+                () -> assertThat(format("Batch of {} messages", 100)).isEqualTo("Batch of 100 messages"),
+                () -> assertThat(format("Order {}", "AB12345678")).isEqualTo("Order AB12345678"),
+                () -> assertThat(format("Account {}", "123456789012")).isEqualTo("Account 123456789012")
+        );
+    }
+
+    @Test
+    void shouldOnlyRedactArgumentsAndHonourEscapes() {
+        assertAll(
+                () -> assertThat(format("Code 123456 for {}", "x")).isEqualTo("Code 123456 for x"),
+                () -> assertThat(format("literal \\{} then {}", "a")).isEqualTo("literal {} then a"),
+                () -> assertThat(format("path C:\\\\{}", "dir")).isEqualTo("path C:\\dir"),
+                () -> assertThat(format("{} and {}", "one")).isEqualTo("one and {}"),
+                () -> assertThat(format("no placeholders", "ignored")).isEqualTo("no placeholders")
+        );
+    }
+
+    @Test
+    void shouldWriteRedactedMessageField() throws Exception {
+        LoggerContext context = new LoggerContext();
+        LoggingEvent event = new LoggingEvent(getClass().getName(), context.getLogger("test"), Level.INFO,
+                "Sending OTP {} to {}", null, new Object[]{"0042", "jane@example.org"});
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(json)) {
+            generator.writeStartObject();
+            provider.writeTo(generator, event);
+            generator.writeEndObject();
+        }
+        assertThat(json.toString()).isEqualTo("{\"message\":\"Sending OTP **** to j***@example.org\"}");
+    }
+
+    private String format(String pattern, Object... arguments) {
+        StringBuilder out = new StringBuilder();
+        provider.format(out, pattern, arguments);
+        return out.toString();
+    }
+}
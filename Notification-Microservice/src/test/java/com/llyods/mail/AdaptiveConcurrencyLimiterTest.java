@@ -0,0 +1,150 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailConcurrencyProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MailConcurrencyProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MailConcurrencyProperties();
+        properties.setEnabled(true);
+        properties.setMaxWait(Duration.ofMillis(50));
+    }
+
+    @Test
+    void shouldGrowWhileLatencyHoldsSteady() {
+        properties.setInitialLimit(2);
+        properties.setWindowSize(4);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties, meterRegistry);
+
+        IntStream.range(0, 12).forEach(i -> sends(limiter, 2, 10));
+
+        assertAll(
+                () -> assertThat(limiter.limit()).isGreaterThan(3),
+                () -> assertThat(meterRegistry.get("mail.concurrency.limit").gauge().value()).isEqualTo(limiter.limit())
+        );
+    }
+
+    @Test
+    void shouldShrinkWhenLatencyClimbsAboveBaseline() {
+        properties.setInitialLimit(8);
+        properties.setWindowSize(8);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties, meterRegistry);
+        sends(limiter, 8, 10);
+        double steady = limiter.limit();
+
+        sends(limiter, 8, 100);
+
+        assertAll(
+                () -> assertThat(steady).isGreaterThan(8),
+                () -> assertThat(limiter.limit()).isLessThan(steady)
+        );
+    }
+
+    @Test
+    void shouldNotGrowWhileTrafficUsesLessThanHalfTheLimit() {
+        properties.setInitialLimit(10);
+        properties.setWindowSize(2);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties, meterRegistry);
+
+        IntStream.range(0, 10).forEach(i -> sends(limiter, 1, 10));
+
+        assertThat(limiter.limit()).isEqualTo(10);
+    }
+
+    @Test
+    void shouldBackOffAtOnceOnRelayFailure() {
+        properties.setInitialLimit(10);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties, meterRegistry);
+
+        limiter.acquire();
+        limiter.release(TimeUnit.SECONDS.toNanos(5), 1, DeliveryFailure.TIMEOUT);
+
+        assertThat(limiter.limit()).isCloseTo(9, within(0.001));
+    }
+
+    @Test
+    void shouldNotSampleSendsThatNeverReachedTheRelay() {
+        properties.setInitialLimit(4);
+        properties.setWindowSize(1);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties, meterRegistry);
+
+        limiter.acquire();
+        limiter.release(0, 1, DeliveryFailure.CIRCUIT_OPEN);
+        limiter.acquire();
+        limiter.release(0, 1, DeliveryFailure.RATE_LIMITED);
+
+        assertAll(
+                () -> assertThat(limiter.limit()).isEqualTo(4),
+                () -> assertThat(limiter.inFlight()).isZero()
+        );
+    }
+
+    @Test
+    void shouldAddOneOrBackOffPerWindowWithAimd() {
+        properties.setAlgorithm(MailConcurrencyProperties.Algorithm.AIMD);
+        properties.setSlowThreshold(Duration.ofMillis(50));
+        properties.setInitialLimit(2);
+        properties.setWindowSize(2);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties, meterRegistry);
+
+        sends(limiter, 2, 10);
+        double grown = limiter.limit();
+        sends(limiter, 2, 100);
+
+        assertAll(
+                () -> assertThat(grown).isEqualTo(3),
+                () -> assertThat(limiter.limit()).isCloseTo(2.7, within(0.001))
+        );
+    }
+
+    @Test
+    void shouldRefuseOnceNoSlotFreesUpInTime() {
+        properties.setInitialLimit(1);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties, meterRegistry);
+        limiter.acquire();
+
+        assertAll(
+                () -> assertThatThrownBy(limiter::acquire)
+                        .isInstanceOf(ConcurrencyLimitExceededException.class)
+                        .hasMessageContaining("concurrency limit 1"),
+                () -> assertThat(DeliveryFailure.of(new ConcurrencyLimitExceededException("full"))).isEqualTo(DeliveryFailure.RATE_LIMITED),
+                () -> assertThat(meterRegistry.get("mail.concurrency.inflight").gauge().value()).isEqualTo(1),
+                () -> assertThat(meterRegistry.get("mail.concurrency.waiting").gauge().value()).isZero(),
+                () -> assertThat(meterRegistry.get("mail.concurrency.queue.time").timeGauge().value(TimeUnit.MILLISECONDS)).isGreaterThan(0)
+        );
+    }
+
+    @Test
+    void shouldLetSendsThroughWhenDisabled() {
+        properties.setEnabled(false);
+        properties.setInitialLimit(1);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties, meterRegistry);
+
+        assertThatCode(() -> IntStream.range(0, 5).forEach(i -> limiter.acquire())).doesNotThrowAnyException();
+    }
+
+    /**
+     * Starts {@code concurrent} sends, then completes them all successfully after {@code latencyMillis}.
+     */
+    private static void sends(AdaptiveConcurrencyLimiter limiter, int concurrent, long latencyMillis) {
+        IntStream.range(0, concurrent).forEach(i -> limiter.acquire());
+        IntStream.range(0, concurrent).forEach(i -> limiter.release(TimeUnit.MILLISECONDS.toNanos(latencyMillis), 1, null));
+    }
+}
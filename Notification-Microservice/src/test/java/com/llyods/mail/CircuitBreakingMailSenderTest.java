@@ -0,0 +1,106 @@
+package com.llyods.mail;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CircuitBreakingMailSenderTest {
+
+    private final JavaMailSender delegate = mock(JavaMailSender.class);
+    private CircuitBreaker circuitBreaker;
+    private CircuitBreakingMailSender sender;
+
+    @BeforeEach
+    void setUp() {
+        circuitBreaker = CircuitBreaker.of("smtp", CircuitBreakerConfig.custom()
+                .slidingWindowSize(4)
+                .minimumNumberOfCalls(4)
+                .failureRateThreshold(50)
+                .recordException(CircuitBreakingMailSender::isRelayFailure)
+                .build());
+        sender = new CircuitBreakingMailSender(delegate, circuitBreaker);
+    }
+
+    @Test
+    void shouldSendThroughDelegateWhileClosed() {
+        MimeMessage message = message();
+
+        sender.send(message);
+
+        assertAll(
+                () -> verify(delegate).send(message),
+                () -> assertThat(circuitBreaker.getMetrics().getNumberOfSuccessfulCalls()).isEqualTo(1)
+        );
+    }
+
+    @Test
+    void shouldOpenOnRelayFailuresAndFailFast() {
+        doThrow(new MailSendException("Mail server connection failed")).when(delegate).send(any(MimeMessage.class));
+        IntStream.range(0, 4).forEach(i ->
+                assertThatThrownBy(() -> sender.send(message())).isInstanceOf(MailSendException.class));
+
+        assertAll(
+                () -> assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN),
+                () -> assertThatThrownBy(() -> sender.send(message()))
+                        .isInstanceOf(RelayUnavailableException.class)
+                        .hasMessageContaining("OPEN"),
+                () -> verify(delegate, times(4)).send(any(MimeMessage.class))
+        );
+    }
+
+    @Test
+    void shouldNotCountRejectedRecipientsAgainstRelay() {
+        MimeMessage message = message();
+        doThrow(new MailSendException(Map.of(message, new SendFailedException("550 mailbox unavailable"))))
+                .when(delegate).send(any(MimeMessage.class));
+        IntStream.range(0, 4).forEach(i ->
+                assertThatThrownBy(() -> sender.send(message)).isInstanceOf(MailSendException.class));
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void shouldClassifyRelayFailures() {
+        MimeMessage message = message();
+        assertAll(
+                () -> assertThat(CircuitBreakingMailSender.isRelayFailure(new MailSendException("connect timed out"))).isTrue(),
+                () -> assertThat(CircuitBreakingMailSender.isRelayFailure(
+                        new MailSendException(Map.of(message, new MessagingException("421 closing connection"))))).isTrue(),
+                () -> assertThat(CircuitBreakingMailSender.isRelayFailure(
+                        new MailSendException(Map.of(message, new SendFailedException("550 mailbox unavailable"))))).isFalse(),
+                () -> assertThat(CircuitBreakingMailSender.isRelayFailure(new MailParseException("bad address"))).isFalse()
+        );
+    }
+
+    @Test
+    void shouldCountBatchAsOneCall() {
+        sender.send(message(), message(), message());
+
+        assertAll(
+                () -> verify(delegate).send(any(MimeMessage[].class)),
+                () -> assertThat(circuitBreaker.getMetrics().getNumberOfBufferedCalls()).isEqualTo(1)
+        );
+    }
+
+    private MimeMessage message() {
+        return new MimeMessage(Session.getInstance(new Properties()));
+    }
+}
@@ -0,0 +1,91 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailConcurrencyProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.time.Duration;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ConcurrencyLimitingMailSenderTest {
+
+    private final JavaMailSender delegate = mock(JavaMailSender.class);
+    private AdaptiveConcurrencyLimiter limiter;
+    private ConcurrencyLimitingMailSender sender;
+
+    @BeforeEach
+    void setUp() {
+        MailConcurrencyProperties properties = new MailConcurrencyProperties();
+        properties.setEnabled(true);
+        properties.setInitialLimit(1);
+        properties.setWindowSize(1);
+        properties.setMaxWait(Duration.ofMillis(20));
+        limiter = new AdaptiveConcurrencyLimiter(properties, new SimpleMeterRegistry());
+        sender = new ConcurrencyLimitingMailSender(delegate, limiter);
+    }
+
+    @Test
+    void shouldSendThroughDelegateAndGiveBackTheSlot() {
+        MimeMessage message = message();
+
+        sender.send(message);
+        sender.send(message(), message());
+
+        assertAll(
+                () -> verify(delegate).send(message),
+                () -> verify(delegate).send(any(MimeMessage[].class)),
+                () -> assertThat(limiter.inFlight()).isZero(),
+                () -> assertThat(limiter.limit()).isGreaterThan(1)
+        );
+    }
+
+    @Test
+    void shouldBackOffWhenRelayFailsAndRethrow() {
+        sender.send(message());
+        double before = limiter.limit();
+        doThrow(new MailSendException("Mail server connection failed")).when(delegate).send(any(MimeMessage.class));
+
+        assertAll(
+                () -> assertThatThrownBy(() -> sender.send(message())).isInstanceOf(MailSendException.class),
+                () -> assertThat(limiter.limit()).isCloseTo(Math.max(1, before * 0.9), within(0.001)),
+                () -> assertThat(limiter.inFlight()).isZero()
+        );
+    }
+
+    @Test
+    void shouldNotSampleSendsRefusedByCircuitBreaker() {
+        doThrow(new RelayUnavailableException("SMTP relay circuit breaker is OPEN", null)).when(delegate).send(any(MimeMessage.class));
+
+        assertAll(
+                () -> assertThatThrownBy(() -> sender.send(message())).isInstanceOf(RelayUnavailableException.class),
+                () -> assertThat(limiter.limit()).isEqualTo(1),
+                () -> assertThat(limiter.inFlight()).isZero()
+        );
+    }
+
+    @Test
+    void shouldNotCallDelegateWithoutASlot() {
+        limiter.acquire();
+
+        assertAll(
+                () -> assertThatThrownBy(() -> sender.send(message())).isInstanceOf(ConcurrencyLimitExceededException.class),
+                () -> verify(delegate, never()).send(any(MimeMessage.class))
+        );
+    }
+
+    private static MimeMessage message() {
+        return new MimeMessage(Session.getInstance(new Properties()));
+    }
+}
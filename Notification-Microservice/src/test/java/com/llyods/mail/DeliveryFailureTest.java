@@ -0,0 +1,130 @@
+package com.llyods.mail;
+
+import com.llyods.exception.EmailDeliveryException;
+import com.llyods.exception.MessageProcessingException;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailSendException;
+
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class DeliveryFailureTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "550, PERMANENT",
+            "553, PERMANENT",
+            "554, PERMANENT",
+            "450, TRANSIENT",
+            "452, TRANSIENT",
+            "421, CONNECTION",
+            "535, CONNECTION",
+            "250, UNKNOWN"
+    })
+    void shouldClassifyReplyCodes(int replyCode, DeliveryFailure expected) throws Exception {
+        SMTPAddressFailedException rejected = new SMTPAddressFailedException(
+                new InternetAddress("demo@gmail.com"), "RCPT TO", replyCode, replyCode + " reply");
+
+        assertThat(DeliveryFailure.of(rejected)).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldFindReplyBehindInvalidAddresses() throws Exception {
+        InternetAddress recipient = new InternetAddress("demo@gmail.com");
+        SMTPAddressFailedException reply = new SMTPAddressFailedException(recipient, "RCPT TO", 451, "451 4.7.1 Greylisted");
+        SendFailedException invalidAddresses = new SendFailedException("Invalid Addresses", reply,
+                null, null, new InternetAddress[]{recipient});
+
+        assertThat(DeliveryFailure.of(invalidAddresses)).isEqualTo(DeliveryFailure.TRANSIENT);
+    }
+
+    @Test
+    void shouldTreatRejectedAddressesWithoutReplyAsPermanent() throws Exception {
+        SendFailedException invalidAddresses = new SendFailedException("Invalid Addresses", null,
+                null, null, new InternetAddress[]{new InternetAddress("demo@gmail.com")});
+
+        assertThat(DeliveryFailure.of(invalidAddresses)).isEqualTo(DeliveryFailure.PERMANENT);
+    }
+
+    @Test
+    void shouldClassifyExceptionTypes() {
+        assertAll(
+                () -> assertThat(DeliveryFailure.of(new MailParseException("Could not parse mail"))).isEqualTo(DeliveryFailure.PERMANENT),
+                () -> assertThat(DeliveryFailure.of(new AddressException("Missing final '@domain'"))).isEqualTo(DeliveryFailure.PERMANENT),
+                () -> assertThat(DeliveryFailure.of(new MailAuthenticationException(new AuthenticationFailedException()))).isEqualTo(DeliveryFailure.CONNECTION),
+                () -> assertThat(DeliveryFailure.of(new MessagingException("Exception reading response", new SocketTimeoutException("Read timed out"))))
+                        .isEqualTo(DeliveryFailure.TIMEOUT),
+                () -> assertThat(DeliveryFailure.of(new MessagingException("Couldn't connect to host", new ConnectException("Connection refused"))))
+                        .isEqualTo(DeliveryFailure.CONNECTION),
+                () -> assertThat(DeliveryFailure.of(new MessagingException("Can't send command", new SocketException("Connection reset"))))
+                        .isEqualTo(DeliveryFailure.CONNECTION),
+                () -> assertThat(DeliveryFailure.of(new RelayUnavailableException("SMTP relay circuit breaker is OPEN", null)))
+                        .isEqualTo(DeliveryFailure.CIRCUIT_OPEN),
+                () -> assertThat(DeliveryFailure.of(new RuntimeException("Failed to send email",
+                        new RateLimitedException("Rate limit global per-minute has no token within PT2S"))))
+                        .isEqualTo(DeliveryFailure.RATE_LIMITED),
+                () -> assertThat(DeliveryFailure.of(new RuntimeException("550 looks like a reply but is not one"))).isEqualTo(DeliveryFailure.UNKNOWN)
+        );
+    }
+
+    @Test
+    void shouldLookThroughWrappingExceptions() throws Exception {
+        SMTPSendFailedException rejected = new SMTPSendFailedException("DATA", 554, "554 5.7.1 Message rejected", null, null, null, null);
+        Throwable wrapped = new CompletionException(new MessageProcessingException("Failed to process message",
+                new EmailDeliveryException("Failed to send email", rejected)));
+
+        assertThat(DeliveryFailure.of(wrapped)).isEqualTo(DeliveryFailure.PERMANENT);
+    }
+
+    @Test
+    void shouldBePermanentOnlyWhenEveryMessageInBatchIs() throws Exception {
+        Map<Object, Exception> allRejected = new LinkedHashMap<>();
+        allRejected.put(message(), new SendFailedException("550 5.1.1 User unknown"));
+        allRejected.put(message(), new SendFailedException("553 5.1.3 Invalid address"));
+        Map<Object, Exception> mixed = new LinkedHashMap<>(allRejected);
+        mixed.put(message(), new MessagingException("Exception reading response", new SocketTimeoutException("Read timed out")));
+
+        assertAll(
+                () -> assertThat(DeliveryFailure.of(new MailSendException(allRejected))).isEqualTo(DeliveryFailure.PERMANENT),
+                () -> assertThat(DeliveryFailure.of(new MailSendException(mixed))).isEqualTo(DeliveryFailure.TIMEOUT)
+        );
+    }
+
+    @Test
+    void shouldReportRelayFailuresAndRetryability() {
+        assertAll(
+                () -> assertThat(DeliveryFailure.PERMANENT.isRetryable()).isFalse(),
+                () -> assertThat(DeliveryFailure.TRANSIENT.isRetryable()).isTrue(),
+                () -> assertThat(DeliveryFailure.TIMEOUT.isRelayFailure()).isTrue(),
+                () -> assertThat(DeliveryFailure.CONNECTION.isRelayFailure()).isTrue(),
+                () -> assertThat(DeliveryFailure.TRANSIENT.isRelayFailure()).isFalse(),
+                () -> assertThat(DeliveryFailure.CIRCUIT_OPEN.isRelayFailure()).isFalse(),
+                () -> assertThat(DeliveryFailure.RATE_LIMITED.isRelayFailure()).isFalse()
+        );
+    }
+
+    private MimeMessage message() {
+        return new MimeMessage(Session.getInstance(new Properties()));
+    }
+}
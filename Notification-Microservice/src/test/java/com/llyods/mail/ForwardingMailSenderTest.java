@@ -0,0 +1,65 @@
+package com.llyods.mail;
+
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.Mockito.*;
+
+class ForwardingMailSenderTest {
+
+    private final JavaMailSender delegate = mock(JavaMailSender.class);
+    private final List<Integer> forwarded = new ArrayList<>();
+    private final ForwardingMailSender sender = new ForwardingMailSender(delegate) {
+        @Override
+        protected void forward(Consumer<JavaMailSender> send, int messages) {
+            forwarded.add(messages);
+            send.accept(delegate);
+        }
+    };
+
+    @Test
+    void shouldForwardEverySendOverloadWithItsMessageCount() {
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        MimeMessagePreparator preparator = mimeMessage -> { };
+        SimpleMailMessage simpleMessage = new SimpleMailMessage();
+
+        sender.send(message);
+        sender.send(message, message);
+        sender.send(preparator);
+        sender.send(preparator, preparator, preparator);
+        sender.send(simpleMessage);
+        sender.send(simpleMessage, simpleMessage);
+
+        assertAll(
+                () -> assertThat(forwarded).containsExactly(1, 2, 1, 3, 1, 2),
+                () -> verify(delegate).send(message),
+                () -> verify(delegate).send(message, message),
+                () -> verify(delegate).send(preparator),
+                () -> verify(delegate).send(preparator, preparator, preparator),
+                () -> verify(delegate).send(simpleMessage),
+                () -> verify(delegate).send(simpleMessage, simpleMessage)
+        );
+    }
+
+    @Test
+    void shouldCreateMessagesWithTheDelegate() {
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        when(delegate.createMimeMessage()).thenReturn(message);
+
+        assertAll(
+                () -> assertThat(sender.createMimeMessage()).isSameAs(message),
+                () -> assertThat(forwarded).isEmpty()
+        );
+    }
+}
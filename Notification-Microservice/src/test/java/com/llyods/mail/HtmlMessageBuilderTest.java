@@ -0,0 +1,98 @@
+package com.llyods.mail;
+
+import jakarta.mail.Session;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class HtmlMessageBuilderTest {
+
+    private static final String ASCII_HTML = "<html><body><p>Hello John Doe,</p><p>Your code is 123456.</p></body></html>";
+    private static final String ACCENTED_HTML = "<html><body><p>Payment of £1,250.00 to Café Zoë completed.</p></body></html>";
+
+    private final Session session = Session.getInstance(new Properties());
+    private final HtmlMessageBuilder builder = new HtmlMessageBuilder();
+
+    @Test
+    void shouldBuildSinglePartHtmlMessage() throws Exception {
+        MimeMessage message = builder.build(session, "otpTemplate", "demo@gmail.com", "Your code", ASCII_HTML);
+        message.saveChanges();
+
+        assertAll(
+                () -> assertThat(message.getContentType()).isEqualTo("text/html; charset=UTF-8"),
+                () -> assertThat(message.getEncoding()).isEqualTo("7bit"),
+                () -> assertThat(message.getContent()).isEqualTo(ASCII_HTML),
+                () -> assertThat(message.getSubject()).isEqualTo("Your code"),
+                () -> assertThat(message.getAllRecipients()[0].toString()).isEqualTo("demo@gmail.com"),
+                () -> assertThat(message.getMessageID()).isNotNull()
+        );
+    }
+
+    @Test
+    void shouldQuotedPrintableEncodeMostlyAsciiBodyAndSurviveTheWire() throws Exception {
+        MimeMessage message = builder.build(session, "transactionTemplate", "demo@gmail.com", "Paiement reçu", ACCENTED_HTML);
+
+        MimeMessage received = new MimeMessage(session, new ByteArrayInputStream(wire(message)));
+
+        assertAll(
+                () -> assertThat(received.getEncoding()).isEqualTo("quoted-printable"),
+                () -> assertThat(received.getContent()).isEqualTo(ACCENTED_HTML),
+                () -> assertThat(received.getSubject()).isEqualTo("Paiement reçu")
+        );
+    }
+
+    @Test
+    void shouldBase64EncodeMostlyNonAsciiBody() throws Exception {
+        String html = "<p>Ваш код подтверждения: 123456</p>";
+        MimeMessage message = builder.build(session, "otpTemplate", "demo@gmail.com", "Код", html);
+
+        MimeMessage received = new MimeMessage(session, new ByteArrayInputStream(wire(message)));
+
+        assertAll(
+                () -> assertThat(received.getEncoding()).isEqualTo("base64"),
+                () -> assertThat(received.getContent()).isEqualTo(html)
+        );
+    }
+
+    @Test
+    void shouldUseQuotedPrintableForOverlongAsciiLines() {
+        byte[] body = ("<p>" + "x".repeat(1200) + "</p>").getBytes();
+
+        assertThat(HtmlMessageBuilder.TransferEncoding.of(body)).isEqualTo(HtmlMessageBuilder.TransferEncoding.QUOTED_PRINTABLE);
+    }
+
+    @Test
+    void shouldBeSmallerOnTheWireThanMultipartHelperMessage() throws Exception {
+        MimeMessage multipart = new MimeMessage(session);
+        MimeMessageHelper helper = new MimeMessageHelper(multipart, true, "UTF-8");
+        helper.setTo("demo@gmail.com");
+        helper.setSubject("Transaction complete");
+        helper.setText(ACCENTED_HTML, true);
+
+        MimeMessage lean = builder.build(session, "transactionTemplate", "demo@gmail.com", "Transaction complete", ACCENTED_HTML);
+
+        assertThat(wire(lean).length).isLessThan(wire(multipart).length);
+    }
+
+    @Test
+    void shouldRejectMissingRecipient() {
+        assertThatThrownBy(() -> builder.build(session, "otpTemplate", null, "Your code", ASCII_HTML))
+                .isInstanceOf(AddressException.class);
+    }
+
+    private static byte[] wire(MimeMessage message) throws Exception {
+        message.saveChanges();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailBatchProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MailBatcherTest {
+
+    private final JavaMailSender mailSender = mock(JavaMailSender.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MailBatchProperties properties;
+    private MailBatcher mailBatcher;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MailBatchProperties();
+        properties.setWindow(Duration.ofMillis(200));
+        properties.setMaxSize(3);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        mailBatcher.stop();
+    }
+
+    @Test
+    void shouldSendUpToMaxSizeMessagesInOneCall() {
+        mailBatcher = started();
+        List<MimeMessage> messages = IntStream.range(0, 3).mapToObj(i -> message()).toList();
+
+        List<CompletableFuture<Void>> results = messages.stream().map(mailBatcher::submit).toList();
+
+        ArgumentCaptor<MimeMessage[]> sent = ArgumentCaptor.forClass(MimeMessage[].class);
+        assertAll(
+                () -> assertThat(CompletableFuture.allOf(results.toArray(new CompletableFuture[0])))
+                        .succeedsWithin(Duration.ofSeconds(5)),
+                () -> verify(mailSender, times(1)).send(sent.capture()),
+                () -> assertThat(sent.getValue()).containsExactlyElementsOf(messages),
+                () -> assertThat(meterRegistry.get("mail.batch.size").summary().max()).isEqualTo(3)
+        );
+    }
+
+    @Test
+    void shouldSendPartialBatchWhenWindowCloses() {
+        properties.setWindow(Duration.ofMillis(20));
+        mailBatcher = started();
+
+        CompletableFuture<Void> result = mailBatcher.submit(message());
+
+        assertAll(
+                () -> assertThat(result).succeedsWithin(Duration.ofSeconds(5)),
+                () -> verify(mailSender, times(1)).send(any(MimeMessage[].class))
+        );
+    }
+
+    @Test
+    void shouldFailOnlyTheMessagesThatFailed() {
+        MimeMessage good = message();
+        MimeMessage bad = message();
+        MimeMessage alsoGood = message();
+        doThrow(new MailSendException(Map.of(bad, new RuntimeException("550 mailbox unavailable"))))
+                .when(mailSender).send(any(MimeMessage[].class));
+        mailBatcher = started();
+
+        CompletableFuture<Void> goodResult = mailBatcher.submit(good);
+        CompletableFuture<Void> badResult = mailBatcher.submit(bad);
+        CompletableFuture<Void> alsoGoodResult = mailBatcher.submit(alsoGood);
+
+        assertAll(
+                () -> assertThat(goodResult).succeedsWithin(Duration.ofSeconds(5)),
+                () -> assertThat(alsoGoodResult).succeedsWithin(Duration.ofSeconds(5)),
+                () -> assertThat(badResult).failsWithin(Duration.ofSeconds(5))
+                        .withThrowableOfType(ExecutionException.class)
+                        .withMessageContaining("550 mailbox unavailable")
+        );
+    }
+
+    @Test
+    void shouldFailWholeBatchOnConnectionFailure() {
+        doThrow(new MailSendException("Mail server connection failed"))
+                .when(mailSender).send(any(MimeMessage[].class));
+        mailBatcher = started();
+
+        assertThat(mailBatcher.submit(message())).failsWithin(Duration.ofSeconds(5))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(MailSendException.class);
+    }
+
+    @Test
+    void shouldFailSubmissionsAfterStop() throws InterruptedException {
+        mailBatcher = started();
+        mailBatcher.stop();
+
+        assertAll(
+                () -> assertThat(mailBatcher.submit(message())).failsWithin(Duration.ofSeconds(1))
+                        .withThrowableOfType(ExecutionException.class)
+                        .withCauseInstanceOf(MailSendException.class),
+                () -> verify(mailSender, never()).send(any(MimeMessage[].class))
+        );
+    }
+
+    @Test
+    void shouldSendImmediatelyWhenDisabled() {
+        properties.setEnabled(false);
+        mailBatcher = started();
+
+        CompletableFuture<Void> result = mailBatcher.submit(message());
+
+        assertAll(
+                () -> assertThat(result).isCompleted(),
+                () -> verify(mailSender).send(any(MimeMessage[].class))
+        );
+    }
+
+    private MailBatcher started() {
+        MailBatcher batcher = new MailBatcher(mailSender, properties, meterRegistry);
+        batcher.start();
+        return batcher;
+    }
+
+    private static MimeMessage message() {
+        return new MimeMessage(Session.getInstance(new Properties()));
+    }
+}
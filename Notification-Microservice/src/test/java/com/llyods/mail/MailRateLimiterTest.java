@@ -0,0 +1,147 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailRateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class MailRateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MailRateLimitProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MailRateLimitProperties();
+        properties.setEnabled(true);
+        properties.setMaxDelay(Duration.ZERO);
+    }
+
+    @Test
+    void shouldRefuseOnceGlobalBurstIsUsed() {
+        properties.getGlobal().put("per-minute", limit(60, Duration.ofMinutes(1), 2));
+        MailRateLimiter limiter = new MailRateLimiter(properties, meterRegistry);
+
+        limiter.acquire("otp", "one@gmail.com");
+        limiter.acquire("otp", "two@yahoo.com");
+
+        assertAll(
+                () -> assertThatThrownBy(() -> limiter.acquire("otp", "three@gmail.com"))
+                        .isInstanceOf(RateLimitedException.class)
+                        .hasMessageContaining("global per-minute"),
+                () -> assertThat(meterRegistry.get("mail.ratelimit.throttled").tag("scope", "global").tag("outcome", "rejected")
+                        .counter().count()).isEqualTo(1),
+                () -> assertThat(meterRegistry.get("mail.ratelimit.saturation").tag("limit", "per-minute").gauge().value())
+                        .isGreaterThan(0.9)
+        );
+    }
+
+    @Test
+    void shouldKeepReserveForFastLaneWhenBulkIsSaturated() {
+        properties.setFastLaneReserve(0.2);
+        properties.getGlobal().put("per-minute", limit(10, Duration.ofMinutes(1), 10));
+        MailRateLimiter limiter = new MailRateLimiter(properties, meterRegistry);
+
+        for (int i = 0; i < 8; i++) {
+            limiter.acquire("transactioncomplete", i + "@gmail.com");
+        }
+
+        assertAll(
+                () -> assertThatThrownBy(() -> limiter.acquire("transactioncomplete", "bulk@gmail.com"))
+                        .isInstanceOf(RateLimitedException.class)
+                        .hasMessageContaining("bulk per-minute"),
+                () -> assertThatCode(() -> limiter.fastLane().acquire("otp", "first@gmail.com")).doesNotThrowAnyException(),
+                () -> assertThatCode(() -> limiter.fastLane().acquire("otp", "second@gmail.com")).doesNotThrowAnyException(),
+                () -> assertThatThrownBy(() -> limiter.fastLane().acquire("otp", "third@gmail.com"))
+                        .isInstanceOf(RateLimitedException.class)
+                        .hasMessageContaining("global per-minute")
+        );
+    }
+
+    @Test
+    void shouldLimitEachDomainAndTypeSeparately() {
+        properties.getDomains().put("yahoo.com", limit(1, Duration.ofMinutes(1), 1));
+        properties.getTypes().put("transactioncomplete", limit(1, Duration.ofMinutes(1), 1));
+        MailRateLimiter limiter = new MailRateLimiter(properties, meterRegistry);
+
+        limiter.acquire("otp", "one@YAHOO.com");
+        limiter.acquire("transactioncomplete", "one@gmail.com");
+
+        assertAll(
+                () -> assertThatThrownBy(() -> limiter.acquire("otp", "two@yahoo.com")).isInstanceOf(RateLimitedException.class),
+                () -> assertThatThrownBy(() -> limiter.acquire("transactioncomplete", "two@gmail.com")).isInstanceOf(RateLimitedException.class),
+                () -> assertThatCode(() -> limiter.acquire("otp", "two@gmail.com")).doesNotThrowAnyException()
+        );
+    }
+
+    @Test
+    void shouldGiveEveryOtherDomainItsOwnDefaultBucket() {
+        properties.setDefaultDomain(limit(1, Duration.ofMinutes(1), 1));
+        MailRateLimiter limiter = new MailRateLimiter(properties, meterRegistry);
+
+        limiter.acquire("otp", "one@gmail.com");
+
+        assertAll(
+                () -> assertThatCode(() -> limiter.acquire("otp", "one@outlook.com")).doesNotThrowAnyException(),
+                () -> assertThatThrownBy(() -> limiter.acquire("otp", "two@gmail.com")).isInstanceOf(RateLimitedException.class)
+        );
+    }
+
+    @Test
+    void shouldGiveBackGlobalTokenWhenDomainRefuses() {
+        properties.getGlobal().put("per-minute", limit(2, Duration.ofMinutes(1), 2));
+        properties.getDomains().put("yahoo.com", limit(1, Duration.ofHours(1), 1));
+        MailRateLimiter limiter = new MailRateLimiter(properties, meterRegistry);
+
+        limiter.acquire("otp", "one@yahoo.com");
+
+        assertAll(
+                () -> assertThatThrownBy(() -> limiter.acquire("otp", "two@yahoo.com")).isInstanceOf(RateLimitedException.class),
+                () -> assertThatCode(() -> limiter.acquire("otp", "one@gmail.com")).doesNotThrowAnyException()
+        );
+    }
+
+    @Test
+    void shouldDelaySendWithinMaxDelay() {
+        properties.setMaxDelay(Duration.ofSeconds(1));
+        properties.getGlobal().put("per-second", limit(20, Duration.ofSeconds(1), 1));
+        MailRateLimiter limiter = new MailRateLimiter(properties, meterRegistry);
+
+        long start = System.nanoTime();
+        limiter.acquire("otp", "one@gmail.com");
+        limiter.acquire("otp", "two@gmail.com");
+        long elapsed = System.nanoTime() - start;
+
+        assertAll(
+                () -> assertThat(elapsed).isGreaterThanOrEqualTo(Duration.ofMillis(40).toNanos()),
+                () -> assertThat(meterRegistry.get("mail.ratelimit.throttled").tag("scope", "global").tag("outcome", "delayed")
+                        .counter().count()).isEqualTo(1)
+        );
+    }
+
+    @Test
+    void shouldNotLimitWhenDisabled() {
+        properties.setEnabled(false);
+        properties.getGlobal().put("per-minute", limit(1, Duration.ofMinutes(1), 1));
+        MailRateLimiter limiter = new MailRateLimiter(properties, meterRegistry);
+
+        limiter.acquire("otp", "one@gmail.com");
+
+        assertThatCode(() -> limiter.acquire("otp", "two@gmail.com")).doesNotThrowAnyException();
+    }
+
+    private MailRateLimitProperties.Limit limit(int permits, Duration period, int burst) {
+        MailRateLimitProperties.Limit limit = new MailRateLimitProperties.Limit();
+        limit.setPermits(permits);
+        limit.setPeriod(period);
+        limit.setBurst(burst);
+        return limit;
+    }
+}
@@ -0,0 +1,179 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailPoolProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PooledJavaMailSenderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Transport> opened = new ArrayList<>();
+    private final Deque<Transport> toOpen = new ArrayDeque<>();
+    private MailPoolProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MailPoolProperties();
+    }
+
+    @Test
+    void shouldReuseConnectionAcrossSends() throws Exception {
+        PooledJavaMailSender sender = sender();
+
+        sender.send(message("one@example.com"));
+        sender.send(message("two@example.com"));
+
+        assertAll(
+                () -> assertThat(opened).hasSize(1),
+                () -> verify(opened.get(0), times(2)).sendMessage(any(Message.class), any()),
+                () -> verify(opened.get(0), never()).close(),
+                () -> assertThat(meterRegistry.get("mail.pool.borrows").tag("connection", "reused").counter().count()).isEqualTo(1)
+        );
+    }
+
+    @Test
+    void shouldRetireConnectionAfterMaxMessages() throws Exception {
+        properties.setMaxMessagesPerConnection(2);
+        PooledJavaMailSender sender = sender();
+
+        sender.send(message("one@example.com"), message("two@example.com"));
+        sender.send(message("three@example.com"));
+
+        assertAll(
+                () -> assertThat(opened).hasSize(2),
+                () -> verify(opened.get(0)).close(),
+                () -> verify(opened.get(1), never()).close()
+        );
+    }
+
+    @Test
+    void shouldReconnectForRestOfBatchWhenConnectionDrops() throws Exception {
+        Transport dropping = connectedTransport();
+        doThrow(new MessagingException("421 closing connection")).when(dropping).sendMessage(any(Message.class), any());
+        when(dropping.isConnected()).thenReturn(false);
+        toOpen.add(dropping);
+        PooledJavaMailSender sender = sender();
+        MimeMessage first = message("one@example.com");
+        MimeMessage second = message("two@example.com");
+
+        assertThatThrownBy(() -> sender.send(first, second))
+                .isInstanceOfSatisfying(MailSendException.class,
+                        e -> assertThat(e.getFailedMessages()).containsOnlyKeys(first));
+
+        assertAll(
+                () -> assertThat(opened).hasSize(2),
+                () -> verify(dropping).close(),
+                () -> verify(opened.get(1)).sendMessage(eq(second), any())
+        );
+    }
+
+    @Test
+    void shouldCloseConnectionsIdleBeyondTimeout() throws Exception {
+        properties.setIdleTimeout(Duration.ZERO);
+        PooledJavaMailSender sender = sender();
+
+        sender.send(message("one@example.com"));
+        Thread.sleep(1);
+        sender.send(message("two@example.com"));
+
+        assertAll(
+                () -> assertThat(opened).hasSize(2),
+                () -> verify(opened.get(0)).close()
+        );
+    }
+
+    @Test
+    void shouldValidateIdleConnectionBeforeReuse() throws Exception {
+        properties.setValidateAfterIdle(Duration.ZERO);
+        Transport stale = connectedTransport();
+        toOpen.add(stale);
+        PooledJavaMailSender sender = sender();
+
+        sender.send(message("one@example.com"));
+        when(stale.isConnected()).thenReturn(false);
+        Thread.sleep(1);
+        sender.send(message("two@example.com"));
+
+        assertAll(
+                () -> assertThat(opened).hasSize(2),
+                () -> verify(stale).close(),
+                () -> verify(opened.get(1)).sendMessage(any(Message.class), any())
+        );
+    }
+
+    @Test
+    void shouldOpenConnectionPerSendWhenDisabled() throws Exception {
+        properties.setEnabled(false);
+        PooledJavaMailSender sender = sender();
+
+        sender.send(message("one@example.com"));
+        sender.send(message("two@example.com"));
+
+        assertAll(
+                () -> assertThat(opened).hasSize(2),
+                () -> verify(opened.get(0)).close(),
+                () -> verify(opened.get(1)).close()
+        );
+    }
+
+    @Test
+    void shouldCloseIdleConnectionsOnDestroy() throws Exception {
+        PooledJavaMailSender sender = sender();
+        sender.send(message("one@example.com"));
+
+        sender.destroy();
+
+        assertAll(
+                () -> verify(opened.get(0)).close(),
+                () -> assertThat(meterRegistry.get("mail.pool.connections").tag("state", "open").gauge().value()).isZero()
+        );
+    }
+
+    private PooledJavaMailSender sender() {
+        PooledJavaMailSender sender = new PooledJavaMailSender(properties, meterRegistry) {
+            @Override
+            protected Transport connectTransport() {
+                Transport transport = toOpen.isEmpty() ? connectedTransport() : toOpen.poll();
+                opened.add(transport);
+                return transport;
+            }
+        };
+        sender.setSession(Session.getInstance(new Properties()));
+        return sender;
+    }
+
+    private Transport connectedTransport() {
+        Transport transport = mock(Transport.class);
+        when(transport.isConnected()).thenReturn(true);
+        return transport;
+    }
+
+    private MimeMessage message(String to) throws MessagingException {
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(to));
+        message.setSubject("Subject");
+        message.setText("Body");
+        return message;
+    }
+}
@@ -0,0 +1,143 @@
+package com.llyods.mail;
+
+import com.llyods.config.MailRoutingProperties;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class RoutingMailSenderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MailRoutingProperties properties = new MailRoutingProperties();
+    private FakeSmtpServer first;
+    private FakeSmtpServer second;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        first = new FakeSmtpServer();
+        second = new FakeSmtpServer();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void shouldSpreadSendsByWeight() {
+        RoutingMailSender sender = new RoutingMailSender(
+                List.of(relay("first", 3, first.port()), relay("second", 1, second.port())), properties, meterRegistry);
+
+        IntStream.range(0, 40).forEach(i -> sender.send(message(sender)));
+
+        assertAll(
+                () -> assertThat(first.received() + second.received()).isEqualTo(40),
+                () -> assertThat(first.received()).isGreaterThan(second.received()),
+                () -> assertThat(second.received()).isPositive(),
+                () -> assertThat(meterRegistry.get("mail.relay.sends").tag("relay", "first").tag("outcome", "sent").counter().count())
+                        .isEqualTo(first.received())
+        );
+    }
+
+    @Test
+    void shouldFailOverFromUnreachableRelay() throws IOException {
+        RoutingMailSender sender = new RoutingMailSender(
+                List.of(relay("down", 1, FakeSmtpServer.closedPort()), relay("second", 1, second.port())), properties, meterRegistry);
+
+        IntStream.range(0, 10).forEach(i -> sender.send(message(sender)));
+
+        assertAll(
+                () -> assertThat(second.received()).isEqualTo(10),
+                () -> assertThat(meterRegistry.get("mail.relay.failovers").tag("relay", "down").counter().count()).isPositive(),
+                () -> assertThat(sender.score("down")).isLessThan(sender.score("second"))
+        );
+    }
+
+    @Test
+    void shouldSkipRelayWhileItsCircuitIsOpen() {
+        RoutingMailSender.Relay open = relay("first", 1, first.port());
+        open.circuitBreaker().transitionToOpenState();
+        RoutingMailSender sender = new RoutingMailSender(List.of(open, relay("second", 1, second.port())), properties, meterRegistry);
+
+        IntStream.range(0, 5).forEach(i -> sender.send(message(sender)));
+
+        assertAll(
+                () -> assertThat(first.received()).isZero(),
+                () -> assertThat(second.received()).isEqualTo(5)
+        );
+    }
+
+    @Test
+    void shouldFailAsRelayFailureWhenEveryCircuitIsOpen() {
+        List<RoutingMailSender.Relay> relays = List.of(relay("first", 1, first.port()), relay("second", 1, second.port()));
+        relays.forEach(relay -> relay.circuitBreaker().transitionToOpenState());
+        RoutingMailSender sender = new RoutingMailSender(relays, properties, meterRegistry);
+
+        assertThatThrownBy(() -> sender.send(message(sender)))
+                .isInstanceOf(MailSendException.class)
+                .satisfies(error -> assertThat(DeliveryFailure.of(error).isRelayFailure()).isTrue());
+    }
+
+    @Test
+    void shouldNotFailOverRejectedRecipients() {
+        first.rejectRecipients("550 5.1.1 User unknown");
+        second.rejectRecipients("550 5.1.1 User unknown");
+        RoutingMailSender sender = new RoutingMailSender(
+                List.of(relay("first", 1, first.port()), relay("second", 1, second.port())), properties, meterRegistry);
+
+        assertAll(
+                () -> assertThatThrownBy(() -> sender.send(message(sender)))
+                        .satisfies(error -> assertThat(DeliveryFailure.of(error)).isEqualTo(DeliveryFailure.PERMANENT)),
+                () -> assertThat(meterRegistry.get("mail.relay.failovers").counters())
+                        .allSatisfy(counter -> assertThat(counter.count()).isZero()),
+                () -> assertThat(meterRegistry.get("mail.relay.sends").tag("outcome", "failed").counters().stream()
+                        .mapToDouble(counter -> counter.count()).sum()).isEqualTo(1)
+        );
+    }
+
+    private static RoutingMailSender.Relay relay(String name, int weight, int port) {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("127.0.0.1");
+        sender.setPort(port);
+        Properties javaMailProperties = new Properties();
+        javaMailProperties.put("mail.smtp.connectiontimeout", "1000");
+        javaMailProperties.put("mail.smtp.timeout", "1000");
+        sender.setJavaMailProperties(javaMailProperties);
+        CircuitBreaker circuitBreaker = CircuitBreaker.of("smtp-" + name, CircuitBreakerConfig.custom()
+                .slidingWindowSize(4)
+                .minimumNumberOfCalls(4)
+                .recordException(CircuitBreakingMailSender::isRelayFailure)
+                .build());
+        return new RoutingMailSender.Relay(name, weight, sender, circuitBreaker);
+    }
+
+    private static MimeMessage message(RoutingMailSender sender) {
+        MimeMessage message = sender.createMimeMessage();
+        try {
+            message.setFrom("noreply@example.com");
+            message.setRecipients(MimeMessage.RecipientType.TO, "demo@example.com");
+            message.setSubject("Your code");
+            message.setText("123456");
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,86 @@
+package com.llyods.mail;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void shouldAllowBurstThenPaceAtRate() {
+        // 10 per second, bursts of 3
+        TokenBucket bucket = new TokenBucket(10, Duration.ofSeconds(1), 3, 0);
+
+        assertAll(
+                () -> assertThat(bucket.reserve(0, 0)).isZero(),
+                () -> assertThat(bucket.reserve(0, 0)).isZero(),
+                () -> assertThat(bucket.reserve(0, 0)).isZero(),
+                () -> assertThat(bucket.reserve(0, 0)).isEqualTo(-1),
+                () -> assertThat(bucket.reserve(0, SECOND)).isEqualTo(SECOND / 10),
+                () -> assertThat(bucket.reserve(SECOND, 0)).isZero()
+        );
+    }
+
+    @Test
+    void shouldRefundUnusedToken() {
+        TokenBucket bucket = new TokenBucket(1, Duration.ofSeconds(1), 1, 0);
+
+        bucket.reserve(0, 0);
+        bucket.refund();
+
+        assertThat(bucket.reserve(0, 0)).isZero();
+    }
+
+    @Test
+    void shouldReportSaturation() {
+        TokenBucket bucket = new TokenBucket(10, Duration.ofSeconds(1), 2, 0);
+
+        assertAll(
+                () -> assertThat(bucket.saturation(0)).isZero(),
+                () -> bucket.reserve(0, 0),
+                () -> assertThat(bucket.saturation(0)).isEqualTo(0.5),
+                () -> bucket.reserve(0, 0),
+                () -> assertThat(bucket.saturation(0)).isEqualTo(1.0),
+                () -> assertThat(bucket.saturation(SECOND)).isZero()
+        );
+    }
+
+    @Test
+    void shouldNeverHandOutMoreThanBurstConcurrently() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, Duration.ofHours(1), 50, 0);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            threads.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 100; j++) {
+                    if (bucket.reserve(0, 0) == 0) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        threads.shutdown();
+
+        assertAll(
+                () -> assertThat(threads.awaitTermination(5, TimeUnit.SECONDS)).isTrue(),
+                () -> assertThat(granted.get()).isEqualTo(50)
+        );
+    }
+}
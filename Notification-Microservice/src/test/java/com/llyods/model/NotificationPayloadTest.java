@@ -1,5 +1,6 @@
 package com.llyods.model;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -38,22 +39,17 @@ class NotificationPayloadTest {
     }
 
     @Test
-    void testSetters() {
-        NotificationPayload payload = new NotificationPayload(
-                "resetlink", "test@example.com", "Test User", "Test Subject", "Test Message"
-        );
-        payload.setType("resetlink");
-        payload.setMail("newemail@example.com");
-        payload.setName("Updated User");
-        payload.setSubject("Updated Subject");
-        payload.setMessageContent("Updated Message");
+    void testJsonBindsThroughConstructor() throws Exception {
+        String json = "{\"type\":\"otp\",\"mail\":\"test@example.com\",\"name\":\"Test User\",\"subject\":\"Test Subject\",\"messageContent\":\"123456\"}";
+
+        NotificationPayload payload = new ObjectMapper().readValue(json, NotificationPayload.class);
 
         assertAll(
-                () -> assertThat(payload.getType()).isEqualTo("resetlink"),
-                () -> assertThat(payload.getMail()).isEqualTo("newemail@example.com"),
-                () -> assertThat(payload.getName()).isEqualTo("Updated User"),
-                () -> assertThat(payload.getSubject()).isEqualTo("Updated Subject"),
-                () -> assertThat(payload.getMessageContent()).isEqualTo("Updated Message")
+                () -> assertThat(payload.getType()).isEqualTo("otp"),
+                () -> assertThat(payload.getMail()).isEqualTo("test@example.com"),
+                () -> assertThat(payload.getName()).isEqualTo("Test User"),
+                () -> assertThat(payload.getSubject()).isEqualTo("Test Subject"),
+                () -> assertThat(payload.getMessageContent()).isEqualTo("123456")
         );
     }
 
@@ -0,0 +1,98 @@
+package com.llyods.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llyods.config.DeadLetterProperties;
+import com.llyods.model.DeadLetter;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class DeadLetterJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DeadLetterProperties properties = new DeadLetterProperties();
+    private DeadLetterJournal deadLetterJournal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.getJournal().setDirectory(directory);
+        properties.getJournal().setSegmentSize(DataSize.ofKilobytes(64));
+        deadLetterJournal = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        deadLetterJournal.close();
+    }
+
+    @Test
+    void shouldReadBackJournaledDeadLetters() {
+        deadLetterJournal.append(deadLetter("first@gmail.com"));
+        deadLetterJournal.append(deadLetter("second@gmail.com"));
+
+        List<DeadLetterJournal.Entry> entries = deadLetterJournal.read(0, 10);
+
+        assertAll(
+                () -> assertThat(entries).extracting(DeadLetterJournal.Entry::sequence).containsExactly(0L, 1L),
+                () -> assertThat(entries.get(1).deadLetter().payload().getMail()).isEqualTo("second@gmail.com"),
+                () -> assertThat(entries.get(1).deadLetter().reason()).isEqualTo("451 4.7.1 Try again later"),
+                () -> assertThat(meterRegistry.get("notification.deadletters.journal.pending").gauge().value()).isEqualTo(2)
+        );
+    }
+
+    @Test
+    void shouldKeepReplayCheckpointAcrossRestarts() throws IOException {
+        deadLetterJournal.append(deadLetter("first@gmail.com"));
+        deadLetterJournal.append(deadLetter("second@gmail.com"));
+        deadLetterJournal.markReplayed(1);
+        deadLetterJournal.markReplayed(0);
+        deadLetterJournal.close();
+
+        deadLetterJournal = open();
+
+        assertAll(
+                () -> assertThat(deadLetterJournal.replayFrom()).isEqualTo(1),
+                () -> assertThat(deadLetterJournal.nextSequence()).isEqualTo(2),
+                () -> assertThat(deadLetterJournal.read(deadLetterJournal.replayFrom(), 10))
+                        .extracting(entry -> entry.deadLetter().payload().getMail()).containsExactly("second@gmail.com")
+        );
+    }
+
+    @Test
+    void shouldDoNothingWhenDisabled() throws IOException {
+        deadLetterJournal.close();
+        properties.getJournal().setEnabled(false);
+        deadLetterJournal = open();
+
+        assertAll(
+                () -> assertThat(deadLetterJournal.isEnabled()).isFalse(),
+                () -> assertThat(deadLetterJournal.append(deadLetter("first@gmail.com"))).isEqualTo(-1),
+                () -> assertThat(deadLetterJournal.read(0, 10)).isEmpty()
+        );
+    }
+
+    private DeadLetterJournal open() throws IOException {
+        DeadLetterJournal journal = new DeadLetterJournal(properties, new ObjectMapper(), meterRegistry);
+        journal.open();
+        return journal;
+    }
+
+    private DeadLetter deadLetter(String mail) {
+        return new DeadLetter("transaction", "TRANSIENT", "451 4.7.1 Try again later", 1_700_000_000_000L,
+                new NotificationPayload("transactioncomplete", mail, "John Doe", "Subject", "Message"));
+    }
+}
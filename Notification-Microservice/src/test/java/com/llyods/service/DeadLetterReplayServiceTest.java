@@ -0,0 +1,217 @@
+package com.llyods.service;
+
+import com.llyods.config.DeadLetterProperties;
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.mail.RelayUnavailableException;
+import com.llyods.model.DeadLetter;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.net.SocketTimeoutException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class DeadLetterReplayServiceTest {
+
+    @Mock
+    private DeadLetterJournal deadLetterJournal;
+
+    @Mock
+    private MessageProcessorService messageProcessorService;
+
+    @Mock
+    private FastLane fastLane;
+
+    @Mock
+    private SupersedeService supersedeService;
+
+    private final SubscriptionProperties subscriptionProperties = new SubscriptionProperties();
+    private final DeadLetterProperties properties = new DeadLetterProperties();
+    private final List<DeadLetterJournal.Entry> journal = new ArrayList<>();
+    private DeadLetterReplayService replayService;
+
+    @BeforeEach
+    void setUp() {
+        SubscriptionProperties.Stream otp = new SubscriptionProperties.Stream();
+        otp.setName("otp");
+        otp.setTemplate("otpTemplate");
+        SubscriptionProperties.Stream transaction = new SubscriptionProperties.Stream();
+        transaction.setName("transaction");
+        subscriptionProperties.setStreams(List.of(otp, transaction));
+        properties.getReplay().setBatchSize(2);
+
+        when(deadLetterJournal.isEnabled()).thenReturn(true);
+        when(deadLetterJournal.replayFrom()).thenReturn(0L);
+        when(deadLetterJournal.nextSequence()).thenAnswer(invocation -> (long) journal.size());
+        when(deadLetterJournal.read(anyLong(), anyInt())).thenAnswer(invocation -> {
+            int from = Math.toIntExact(invocation.<Long>getArgument(0));
+            int limit = invocation.getArgument(1);
+            return new ArrayList<>(journal.subList(Math.min(from, journal.size()), Math.min(from + limit, journal.size())));
+        });
+        when(messageProcessorService.processBatch(anyList(), any())).thenReturn(Map.of());
+        replayService = new DeadLetterReplayService(deadLetterJournal, messageProcessorService, fastLane, supersedeService,
+                subscriptionProperties, properties, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        replayService.shutdown();
+    }
+
+    @Test
+    void shouldReplayInBatchesGroupedByStreamTemplate() throws Exception {
+        append("otp", "a@gmail.com");
+        append("transaction", "b@gmail.com");
+        append("otp", "c@gmail.com");
+
+        replayService.start(null, null, 1000.0);
+        DeadLetterReplayService.Status status = awaitFinished();
+
+        assertAll(
+                () -> assertThat(status.replayed()).isEqualTo(3),
+                () -> assertThat(status.next()).isEqualTo(3),
+                () -> verify(messageProcessorService, times(2)).processBatch(anyList(), eq("otpTemplate")),
+                () -> verify(messageProcessorService).processBatch(anyList(), isNull()),
+                () -> verify(deadLetterJournal).markReplayed(2),
+                () -> verify(deadLetterJournal).markReplayed(3)
+        );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldSettleExpiredAndSupersededCodesWithoutSending() throws Exception {
+        long expiredAt = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10);
+        journal.add(new DeadLetterJournal.Entry(0, new DeadLetter("otp", "CONNECTION", "Connection refused", expiredAt,
+                new NotificationPayload("otp", "a@gmail.com", "John Doe", "Your code", "123456"))));
+        NotificationPayload superseded = append("otp", "b@gmail.com");
+        NotificationPayload valid = append("otp", "c@gmail.com");
+        when(fastLane.accepts(any(), eq("otpTemplate"))).thenReturn(true);
+        when(fastLane.isExpired(Instant.ofEpochMilli(expiredAt))).thenReturn(true);
+        when(supersedeService.dropIfSupersededSince(eq(superseded), any())).thenReturn(true);
+
+        replayService.start(null, null, 1000.0);
+        DeadLetterReplayService.Status status = awaitFinished();
+
+        ArgumentCaptor<List<NotificationPayload>> sent = ArgumentCaptor.forClass(List.class);
+        verify(messageProcessorService).processBatch(sent.capture(), eq("otpTemplate"));
+        assertAll(
+                () -> assertThat(status.dropped()).isEqualTo(2),
+                () -> assertThat(status.replayed()).isEqualTo(1),
+                () -> assertThat(status.next()).isEqualTo(3),
+                () -> assertThat(sent.getValue()).containsExactly(valid)
+        );
+    }
+
+    @Test
+    void shouldThrottleToRatePerSecond() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            append("transaction", i + "@gmail.com");
+        }
+
+        long started = System.nanoTime();
+        replayService.start(null, null, 20.0);
+        awaitFinished();
+
+        // the second batch of two waits for the first two sends' 100ms allowance
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isGreaterThanOrEqualTo(90);
+    }
+
+    @Test
+    void shouldRequeueRetryableFailuresAndStopWhenRelayIsDown() throws Exception {
+        NotificationPayload timedOut = append("transaction", "a@gmail.com");
+        NotificationPayload rejected = append("transaction", "b@gmail.com");
+        append("transaction", "c@gmail.com");
+        when(messageProcessorService.processBatch(anyList(), isNull())).thenReturn(Map.of(
+                timedOut, new MessagingException("Exception reading response", new SocketTimeoutException("Read timed out")),
+                rejected, new SendFailedException("550 5.1.1 User unknown")));
+
+        replayService.start(null, null, 1000.0);
+        DeadLetterReplayService.Status status = awaitFinished();
+
+        ArgumentCaptor<DeadLetter> requeued = ArgumentCaptor.forClass(DeadLetter.class);
+        verify(deadLetterJournal).append(requeued.capture());
+        assertAll(
+                () -> assertThat(status.requeued()).isEqualTo(1),
+                () -> assertThat(status.failed()).isEqualTo(1),
+                () -> assertThat(status.next()).isEqualTo(2),
+                () -> assertThat(status.stoppedBy()).isEqualTo("relay unavailable"),
+                () -> assertThat(requeued.getValue().payload()).isSameAs(timedOut),
+                () -> assertThat(requeued.getValue().failure()).isEqualTo("TIMEOUT"),
+                () -> verify(messageProcessorService, times(1)).processBatch(anyList(), any())
+        );
+    }
+
+    @Test
+    void shouldStopOnOpenCircuitBreaker() throws Exception {
+        NotificationPayload refused = append("transaction", "a@gmail.com");
+        append("transaction", "b@gmail.com");
+        append("transaction", "c@gmail.com");
+        when(messageProcessorService.processBatch(anyList(), isNull()))
+                .thenReturn(Map.of(refused, new RelayUnavailableException("SMTP relay circuit breaker is OPEN", null)));
+
+        replayService.start(null, null, 1000.0);
+        DeadLetterReplayService.Status status = awaitFinished();
+
+        assertAll(
+                () -> assertThat(status.stoppedBy()).isEqualTo("relay unavailable"),
+                () -> assertThat(status.next()).isEqualTo(2),
+                () -> verify(deadLetterJournal).append(any(DeadLetter.class))
+        );
+    }
+
+    @Test
+    void shouldReplayOnlyUpToLimit() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            append("transaction", i + "@gmail.com");
+        }
+
+        replayService.start(1L, 3, 1000.0);
+        DeadLetterReplayService.Status status = awaitFinished();
+
+        assertAll(
+                () -> assertThat(status.from()).isEqualTo(1),
+                () -> assertThat(status.until()).isEqualTo(4),
+                () -> assertThat(status.replayed()).isEqualTo(3)
+        );
+    }
+
+    private NotificationPayload append(String stream, String mail) {
+        NotificationPayload payload = new NotificationPayload("type", mail, "John Doe", "Subject", "Message");
+        journal.add(new DeadLetterJournal.Entry(journal.size(), new DeadLetter(stream, "CONNECTION", "Connection refused", 0L, payload)));
+        return payload;
+    }
+
+    private DeadLetterReplayService.Status awaitFinished() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (replayService.status().running() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return replayService.status();
+    }
+}
@@ -0,0 +1,123 @@
+package com.llyods.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.llyods.config.DeadLetterProperties;
+import com.llyods.exception.EmailDeliveryException;
+import com.llyods.model.DeadLetter;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.SendFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeadLetterServiceTest {
+
+    @Mock
+    private PubSubTemplate pubSubTemplate;
+
+    @Mock
+    private DeadLetterJournal deadLetterJournal;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final NotificationPayload payload = new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Subject", "Message");
+    private final EmailDeliveryException rejected = new EmailDeliveryException("Failed to send email to: demo@gmail.com",
+            new SendFailedException("550 5.1.1 User unknown"));
+    private final DeadLetterProperties properties = new DeadLetterProperties();
+    private DeadLetterService deadLetterService;
+
+    @BeforeEach
+    void setUp() {
+        deadLetterService = new DeadLetterService(pubSubTemplate, objectMapper, meterRegistry, deadLetterJournal, properties);
+    }
+
+    @Test
+    void testCountsDeadLetterWithoutTopic() {
+        CompletableFuture<Void> result = deadLetterService.deadLetter("otp", payload, rejected);
+
+        ArgumentCaptor<DeadLetter> journaled = ArgumentCaptor.forClass(DeadLetter.class);
+        verify(deadLetterJournal).append(journaled.capture());
+        assertAll(
+                () -> assertThat(result).isCompleted(),
+                () -> verifyNoInteractions(pubSubTemplate),
+                () -> assertThat(journaled.getValue().stream()).isEqualTo("otp"),
+                () -> assertThat(journaled.getValue().failure()).isEqualTo("PERMANENT"),
+                () -> assertThat(journaled.getValue().reason()).isEqualTo("550 5.1.1 User unknown"),
+                () -> assertThat(journaled.getValue().payload()).isSameAs(payload),
+                () -> assertThat(meterRegistry.get("notification.deadletters")
+                        .tag("stream", "otp").tag("failure", "PERMANENT").counter().count()).isEqualTo(1)
+        );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPublishesPayloadWithFailureToTopic() throws Exception {
+        properties.setTopic("notification-dead-letters");
+        when(pubSubTemplate.publish(eq("notification-dead-letters"), any(byte[].class), anyMap()))
+                .thenReturn(CompletableFuture.completedFuture("message-1"));
+
+        CompletableFuture<Void> result = deadLetterService.deadLetter("otp", payload, rejected);
+
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<Map<String, String>> attributes = ArgumentCaptor.forClass(Map.class);
+        verify(pubSubTemplate).publish(eq("notification-dead-letters"), body.capture(), attributes.capture());
+        assertAll(
+                () -> assertThat(result).isCompleted(),
+                () -> assertThat(objectMapper.readValue(body.getValue(), NotificationPayload.class).getMail()).isEqualTo("demo@gmail.com"),
+                () -> assertThat(attributes.getValue())
+                        .containsEntry("stream", "otp")
+                        .containsEntry("failure", "PERMANENT")
+                        .containsEntry("reason", "550 5.1.1 User unknown")
+        );
+    }
+
+    @Test
+    void testFailsWhenPublishFails() {
+        properties.setTopic("notification-dead-letters");
+        when(pubSubTemplate.publish(eq("notification-dead-letters"), any(byte[].class), anyMap()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("topic not found")));
+
+        assertThat(deadLetterService.deadLetter("otp", payload, rejected)).isCompletedExceptionally();
+    }
+
+    @Test
+    void testFailsWithoutPublishingWhenJournalFails() {
+        properties.setTopic("notification-dead-letters");
+        when(deadLetterJournal.append(any(DeadLetter.class))).thenThrow(new UncheckedIOException(new IOException("No space left on device")));
+
+        assertAll(
+                () -> assertThat(deadLetterService.deadLetter("otp", payload, rejected)).isCompletedExceptionally(),
+                () -> verifyNoInteractions(pubSubTemplate)
+        );
+    }
+
+    @Test
+    void testAcceptsExhaustedRetriesOnlyWithJournal() {
+        when(deadLetterJournal.isEnabled()).thenReturn(true, false);
+
+        assertAll(
+                () -> assertThat(deadLetterService.acceptsExhaustedRetries()).isTrue(),
+                () -> assertThat(deadLetterService.acceptsExhaustedRetries()).isFalse(),
+                () -> {
+                    properties.setAfterRetries(false);
+                    assertThat(deadLetterService.acceptsExhaustedRetries()).isFalse();
+                }
+        );
+    }
+}
@@ -0,0 +1,88 @@
+package com.llyods.service;
+
+import com.google.cloud.spring.pubsub.support.BasicAcknowledgeablePubsubMessage;
+import com.google.cloud.spring.pubsub.support.GcpPubSubHeaders;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import com.llyods.config.DeduplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DeduplicationServiceTest {
+
+    private static final String JSON = "{\"type\":\"otp\",\"mail\":\"demo@gmail.com\"}";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldSuppressOnlyDeliveredNotifications() {
+        DeduplicationService service = new DeduplicationService(new DeduplicationProperties(), meterRegistry);
+
+        assertAll(
+                () -> assertThat(service.claim("a")).isEqualTo(DeduplicationService.State.NEW),
+                () -> assertThat(service.claim("a")).isEqualTo(DeduplicationService.State.IN_FLIGHT),
+                () -> service.delivered("a"),
+                () -> assertThat(service.claim("a")).isEqualTo(DeduplicationService.State.DELIVERED),
+                () -> assertThat(service.claim("b")).isEqualTo(DeduplicationService.State.NEW),
+                () -> service.release("b"),
+                () -> assertThat(service.claim("b")).isEqualTo(DeduplicationService.State.NEW)
+        );
+    }
+
+    @Test
+    void shouldPublishHitAndDuplicateMetrics() {
+        DeduplicationService service = new DeduplicationService(new DeduplicationProperties(), meterRegistry);
+        service.claim("a");
+        service.delivered("a");
+        service.claim("a");
+        service.claim("a");
+
+        assertAll(
+                () -> assertThat(meterRegistry.get("cache.gets").tag("cache", "notification.dedup").tag("result", "hit").functionCounter().count()).isEqualTo(2),
+                () -> assertThat(meterRegistry.get("cache.gets").tag("cache", "notification.dedup").tag("result", "miss").functionCounter().count()).isEqualTo(1),
+                () -> assertThat(meterRegistry.get("notification.dedup.duplicates").tag("state", "delivered").counter().count()).isEqualTo(2)
+        );
+    }
+
+    @Test
+    void shouldNotTrackAnythingWhenDisabled() {
+        DeduplicationProperties properties = new DeduplicationProperties();
+        properties.setEnabled(false);
+        DeduplicationService service = new DeduplicationService(properties, meterRegistry);
+        service.claim("a");
+        service.delivered("a");
+
+        assertThat(service.claim("a")).isEqualTo(DeduplicationService.State.NEW);
+    }
+
+    @Test
+    void shouldKeyByMessageIdOrPayloadHash() {
+        DeduplicationService byId = new DeduplicationService(new DeduplicationProperties(), meterRegistry);
+        DeduplicationProperties hashProperties = new DeduplicationProperties();
+        hashProperties.setKey(DeduplicationProperties.Key.PAYLOAD_HASH);
+        DeduplicationService byHash = new DeduplicationService(hashProperties, new SimpleMeterRegistry());
+
+        byte[] bytes = JSON.getBytes(StandardCharsets.UTF_8);
+        assertAll(
+                () -> assertThat(byId.keyOf(streamed("1234", bytes))).isEqualTo("1234"),
+                () -> assertThat(byId.keyOf(MessageBuilder.withPayload(bytes).build())).isEqualTo(byHash.keyOf(null, bytes)),
+                () -> assertThat(byHash.keyOf("1234", bytes)).isEqualTo(byHash.keyOf("5678", ByteString.copyFromUtf8(JSON))),
+                () -> assertThat(byHash.keyOf("1234", bytes)).isNotEqualTo(byHash.keyOf("1234", "{}".getBytes(StandardCharsets.UTF_8)))
+        );
+    }
+
+    private Message<byte[]> streamed(String messageId, byte[] bytes) {
+        BasicAcknowledgeablePubsubMessage original = mock(BasicAcknowledgeablePubsubMessage.class);
+        when(original.getPubsubMessage()).thenReturn(PubsubMessage.newBuilder().setMessageId(messageId).build());
+        return MessageBuilder.withPayload(bytes).setHeader(GcpPubSubHeaders.ORIGINAL_MESSAGE, original).build();
+    }
+}
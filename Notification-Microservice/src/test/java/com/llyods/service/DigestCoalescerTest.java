@@ -0,0 +1,116 @@
+package com.llyods.service;
+
+import com.llyods.config.DigestProperties;
+import com.llyods.exception.MessageProcessingException;
+import com.llyods.model.NotificationPayload;
+import com.llyods.model.NotificationPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DigestCoalescerTest {
+
+    @Mock
+    private MessageProcessorService messageProcessorService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DigestProperties properties = new DigestProperties();
+    private DigestCoalescer digestCoalescer;
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        properties.setWindow(Duration.ofMillis(100));
+        properties.setMaxItems(3);
+        digestCoalescer = new DigestCoalescer(properties, messageProcessorService, meterRegistry);
+        digestCoalescer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        digestCoalescer.stop();
+    }
+
+    @Test
+    void shouldAcceptOnlyListedTypesThatAreNotHighPriority() {
+        assertAll(
+                () -> assertThat(digestCoalescer.accepts(payload("demo@gmail.com", "Paid"), NotificationPriority.LOW)).isTrue(),
+                () -> assertThat(digestCoalescer.accepts(payload("demo@gmail.com", "Paid"), NotificationPriority.HIGH)).isFalse(),
+                () -> assertThat(digestCoalescer.accepts(
+                        new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Your code", "123456"), NotificationPriority.LOW)).isFalse()
+        );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldSendOneDigestPerRecipientWhenWindowCloses() throws Exception {
+        CompletableFuture<Void> first = digestCoalescer.add(payload("demo@gmail.com", "Paid GBP 10.00"), "transactionTemplate");
+        CompletableFuture<Void> second = digestCoalescer.add(payload("DEMO@gmail.com", "Paid GBP 25.00"), "transactionTemplate");
+        CompletableFuture<Void> other = digestCoalescer.add(payload("other@gmail.com", "Paid GBP 5.00"), "transactionTemplate");
+
+        CompletableFuture.allOf(first, second, other).get(5, TimeUnit.SECONDS);
+
+        ArgumentCaptor<List<NotificationPayload>> digest = ArgumentCaptor.forClass(List.class);
+        verify(messageProcessorService).processDigest(digest.capture(), eq("transactionDigestTemplate"), eq("Your 2 recent transactions"));
+        assertAll(
+                () -> assertThat(digest.getValue()).extracting(NotificationPayload::getMessageContent)
+                        .containsExactly("Paid GBP 10.00", "Paid GBP 25.00"),
+                () -> verify(messageProcessorService).processMessage(argThat(payload -> payload.getMail().equals("other@gmail.com")), eq("transactionTemplate")),
+                () -> assertThat(meterRegistry.get("notification.digest.coalesced").counter().count()).isEqualTo(1)
+        );
+    }
+
+    @Test
+    void shouldSendFullDigestWithoutWaitingForWindow() throws Exception {
+        properties.setWindow(Duration.ofMinutes(10));
+        digestCoalescer.stop();
+        digestCoalescer = new DigestCoalescer(properties, messageProcessorService, meterRegistry);
+        digestCoalescer.start();
+
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 3; i++) {
+            last = digestCoalescer.add(payload("demo@gmail.com", "Paid " + i), "transactionTemplate");
+        }
+        last.get(5, TimeUnit.SECONDS);
+
+        verify(messageProcessorService).processDigest(anyList(), eq("transactionDigestTemplate"), eq("Your 3 recent transactions"));
+    }
+
+    @Test
+    void shouldFailEveryMemberWhenDigestFails() {
+        doThrow(new MessageProcessingException("Failed to process digest for email: demo@gmail.com"))
+                .when(messageProcessorService).processDigest(anyList(), eq("transactionDigestTemplate"), eq("Your 2 recent transactions"));
+
+        CompletableFuture<Void> first = digestCoalescer.add(payload("demo@gmail.com", "Paid GBP 10.00"), "transactionTemplate");
+        CompletableFuture<Void> second = digestCoalescer.add(payload("demo@gmail.com", "Paid GBP 25.00"), "transactionTemplate");
+
+        assertAll(
+                () -> assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(MessageProcessingException.class),
+                () -> assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+        );
+    }
+
+    private NotificationPayload payload(String mail, String content) {
+        return new NotificationPayload("transactioncomplete", mail, "John Doe", "Transaction complete", content);
+    }
+}
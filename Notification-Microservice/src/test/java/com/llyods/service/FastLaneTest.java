@@ -0,0 +1,156 @@
+package com.llyods.service;
+
+import com.llyods.config.FastLaneProperties;
+import com.llyods.config.RetryConfig;
+import com.llyods.config.RetryProperties;
+import com.llyods.exception.MessageProcessingException;
+import com.llyods.mail.MailBatcher;
+import com.llyods.mail.MailRateLimiter;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class FastLaneTest {
+
+    @Mock
+    private TemplateRegistry templateRegistry;
+
+    @Mock
+    private TemplateRenderer templateRenderer;
+
+    @Mock
+    private MailBatcher mailBatcher;
+
+    @Mock
+    private MailRateLimiter rateLimiter;
+
+    @Mock
+    private JavaMailSender fastLaneMailSender;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FastLaneProperties properties = new FastLaneProperties();
+    private FastLane fastLane;
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        properties.setWorkers(2);
+        properties.getRetry().setDelay(Duration.ofMillis(10));
+        when(fastLaneMailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage(Session.getInstance(new Properties())));
+        when(templateRenderer.render(eq("otpTemplate"), anyMap())).thenReturn("<p>123456</p>");
+        when(templateRegistry.mappedTemplate("otp")).thenReturn("otpTemplate");
+        when(templateRegistry.mappedTemplate("transactioncomplete")).thenReturn("transactionTemplate");
+        when(rateLimiter.fastLane()).thenReturn(rateLimiter);
+        fastLane = new FastLane(properties, templateRegistry, templateRenderer, mailBatcher, rateLimiter, fastLaneMailSender,
+                new RetryConfig(new RetryProperties()).fastLaneRetryTemplate(properties), meterRegistry);
+        fastLane.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        fastLane.stop();
+    }
+
+    @Test
+    void shouldAcceptOnlyNotificationsRenderedWithLaneTemplates() {
+        assertAll(
+                () -> assertThat(fastLane.accepts(otp(), null)).isTrue(),
+                () -> assertThat(fastLane.accepts(transaction(), null)).isFalse(),
+                () -> assertThat(fastLane.accepts(transaction(), "passwordResetTemplate")).isTrue()
+        );
+    }
+
+    @Test
+    void shouldSendThroughLaneMailSender() throws Exception {
+        FastLane.Outcome outcome = fastLane.send(otp(), "otpTemplate", Instant.now(), () -> false).get(5, TimeUnit.SECONDS);
+
+        assertAll(
+                () -> assertThat(outcome).isEqualTo(FastLane.Outcome.SENT),
+                () -> verify(fastLaneMailSender).send(any(MimeMessage.class))
+        );
+    }
+
+    @Test
+    void shouldDropCodeOlderThanItsValidity() throws Exception {
+        properties.setValidity(Duration.ofMinutes(5));
+
+        FastLane.Outcome outcome = fastLane.send(otp(), "otpTemplate", Instant.now().minus(Duration.ofMinutes(6)), () -> false)
+                .get(5, TimeUnit.SECONDS);
+
+        assertAll(
+                () -> assertThat(outcome).isEqualTo(FastLane.Outcome.EXPIRED),
+                () -> verify(fastLaneMailSender, never()).send(any(MimeMessage.class)),
+                () -> assertThat(meterRegistry.get("notification.fastlane.expired").counter().count()).isEqualTo(1),
+                () -> assertThat(fastLane.isExpired(null)).isFalse()
+        );
+    }
+
+    @Test
+    void shouldDropCodeSupersededWhileQueued() throws Exception {
+        FastLane.Outcome outcome = fastLane.send(otp(), "otpTemplate", Instant.now(), () -> true).get(5, TimeUnit.SECONDS);
+
+        assertAll(
+                () -> assertThat(outcome).isEqualTo(FastLane.Outcome.SUPERSEDED),
+                () -> verify(fastLaneMailSender, never()).send(any(MimeMessage.class))
+        );
+    }
+
+    @Test
+    void shouldFailOnceLaneRetriesAreUsedUp() {
+        doThrow(new MailSendException("421 Service not available")).when(fastLaneMailSender).send(any(MimeMessage.class));
+
+        assertAll(
+                () -> assertThatThrownBy(() -> fastLane.send(otp(), "otpTemplate", Instant.now(), () -> false).get(5, TimeUnit.SECONDS))
+                        .isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(MessageProcessingException.class),
+                () -> verify(fastLaneMailSender, times(2)).send(any(MimeMessage.class))
+        );
+    }
+
+    @Test
+    void shouldRecordLatencyPerLane() {
+        fastLane.recordLatency(true, Instant.now().minusMillis(50));
+        fastLane.recordLatency(false, Instant.now().minusMillis(500));
+        fastLane.recordLatency(false, null);
+
+        assertAll(
+                () -> assertThat(meterRegistry.get("notification.delivery.latency").tag("lane", "fast").timer().count()).isEqualTo(1),
+                () -> assertThat(meterRegistry.get("notification.delivery.latency").tag("lane", "bulk").timer().count()).isEqualTo(1)
+        );
+    }
+
+    private NotificationPayload otp() {
+        return new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Your code", "123456");
+    }
+
+    private NotificationPayload transaction() {
+        return new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Transaction complete", "Paid");
+    }
+}
@@ -0,0 +1,111 @@
+package com.llyods.service;
+
+import com.google.cloud.spring.pubsub.support.AcknowledgeablePubsubMessage;
+import com.google.cloud.spring.pubsub.support.BasicAcknowledgeablePubsubMessage;
+import com.google.cloud.spring.pubsub.support.GcpPubSubHeaders;
+import com.google.protobuf.Timestamp;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.Mockito.*;
+
+class MessageAcknowledgerTest {
+
+    private MessageAcknowledger messageAcknowledger;
+
+    @BeforeEach
+    void setUp() {
+        messageAcknowledger = new MessageAcknowledger();
+        ReflectionTestUtils.setField(messageAcknowledger, "retryDelaySeconds", 15);
+    }
+
+    @Test
+    void testAckSettlesOriginalMessage() {
+        BasicAcknowledgeablePubsubMessage original = mock(BasicAcknowledgeablePubsubMessage.class);
+        when(original.ack()).thenReturn(CompletableFuture.completedFuture(null));
+
+        messageAcknowledger.ack(withOriginal(original));
+
+        verify(original).ack();
+    }
+
+    @Test
+    void testRetryLaterNacksStreamingMessage() {
+        BasicAcknowledgeablePubsubMessage original = mock(BasicAcknowledgeablePubsubMessage.class);
+        when(original.nack()).thenReturn(CompletableFuture.completedFuture(null));
+
+        messageAcknowledger.retryLater(withOriginal(original));
+
+        verify(original).nack();
+    }
+
+    @Test
+    void testRetryLaterExtendsDeadlineOfPulledMessage() {
+        AcknowledgeablePubsubMessage original = mock(AcknowledgeablePubsubMessage.class);
+        when(original.modifyAckDeadline(15)).thenReturn(CompletableFuture.completedFuture(null));
+
+        messageAcknowledger.retryLater(withOriginal(original));
+
+        verify(original).modifyAckDeadline(15);
+        verify(original, never()).nack();
+    }
+
+    @Test
+    void testRetryLaterUsesGivenDelayForPulledMessage() {
+        AcknowledgeablePubsubMessage original = mock(AcknowledgeablePubsubMessage.class);
+        when(original.modifyAckDeadline(4)).thenReturn(CompletableFuture.completedFuture(null));
+
+        messageAcknowledger.retryLater(withOriginal(original), 4);
+
+        verify(original).modifyAckDeadline(4);
+    }
+
+    @Test
+    void testDeliveryAttemptFromClientHeader() {
+        Message<String> redelivered = MessageBuilder.withPayload("{}").setHeader("googclient_deliveryattempt", "3").build();
+        Message<String> malformed = MessageBuilder.withPayload("{}").setHeader("googclient_deliveryattempt", "x").build();
+
+        assertAll(
+                () -> assertThat(messageAcknowledger.deliveryAttempt(redelivered)).isEqualTo(3),
+                () -> assertThat(messageAcknowledger.deliveryAttempt(malformed)).isEqualTo(1),
+                () -> assertThat(messageAcknowledger.deliveryAttempt(MessageBuilder.withPayload("{}").build())).isEqualTo(1)
+        );
+    }
+
+    @Test
+    void testPublishTimeFromOriginalMessage() {
+        BasicAcknowledgeablePubsubMessage original = mock(BasicAcknowledgeablePubsubMessage.class);
+        when(original.getPubsubMessage()).thenReturn(PubsubMessage.newBuilder()
+                .setPublishTime(Timestamp.newBuilder().setSeconds(1_700_000_000L).setNanos(500_000_000))
+                .build());
+
+        assertAll(
+                () -> assertThat(messageAcknowledger.publishTime(withOriginal(original)))
+                        .isEqualTo(Instant.ofEpochSecond(1_700_000_000L, 500_000_000)),
+                () -> assertThat(messageAcknowledger.publishTime(MessageBuilder.withPayload("{}").build())).isNull()
+        );
+    }
+
+    @Test
+    void testMessageWithoutOriginalIsIgnored() {
+        Message<String> message = MessageBuilder.withPayload("{}").build();
+        assertDoesNotThrow(() -> messageAcknowledger.ack(message));
+        assertDoesNotThrow(() -> messageAcknowledger.retryLater(message));
+    }
+
+    private Message<String> withOriginal(BasicAcknowledgeablePubsubMessage original) {
+        return MessageBuilder.withPayload("{}")
+                .setHeader(GcpPubSubHeaders.ORIGINAL_MESSAGE, original)
+                .build();
+    }
+}
@@ -9,6 +9,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -31,37 +38,68 @@ class MessageProcessorServiceTest {
 
     @Test
     void testProcessMessageSuccessfully() {
-        doNothing().when(mailSenderService).sendEmail(payload);
+        doNothing().when(mailSenderService).sendEmail(payload, null);
 
         assertAll(
                 () -> assertDoesNotThrow(() -> messageProcessorService.processMessage(payload)),
-                () -> verify(mailSenderService, times(1)).sendEmail(payload)
+                () -> verify(mailSenderService, times(1)).sendEmail(payload, null)
         );
     }
 
     @Test
     void testProcessMessageThrowsEmailDeliveryException() {
-        doThrow(new EmailDeliveryException("Email sending failed")).when(mailSenderService).sendEmail(payload);
+        doThrow(new EmailDeliveryException("Email sending failed")).when(mailSenderService).sendEmail(payload, null);
 
         assertAll(
                 () -> assertThatThrownBy(() -> messageProcessorService.processMessage(payload))
                         .isInstanceOf(MessageProcessingException.class)
                         .hasMessageContaining("Failed to process message for email: " + payload.getMail()), // Ensure correct email is checked
-                () -> verify(mailSenderService, times(1)).sendEmail(payload)
+                () -> verify(mailSenderService, times(1)).sendEmail(payload, null)
         );
     }
 
 
     @Test
     void testProcessMessageThrowsUnexpectedException() {
-        doThrow(new RuntimeException("Unexpected error")).when(mailSenderService).sendEmail(payload);
+        doThrow(new RuntimeException("Unexpected error")).when(mailSenderService).sendEmail(payload, null);
 
         assertAll(
                 () -> assertThatThrownBy(() -> messageProcessorService.processMessage(payload))
                         .isInstanceOf(MessageProcessingException.class)
                         .hasMessageContaining("Unexpected error occurred while processing message for email: " + payload.getMail()), // Dynamically get the expected email
-                () -> verify(mailSenderService, times(1)).sendEmail(payload)
+                () -> verify(mailSenderService, times(1)).sendEmail(payload, null)
+        );
+    }
+
+    @Test
+    void testProcessBatchReturnsFailures() {
+        NotificationPayload failing = new NotificationPayload("otp", "bad@gmail.com", "Jane Doe", "Subject", "Message");
+        List<NotificationPayload> batch = List.of(payload, failing);
+        when(mailSenderService.sendEmails(batch, null)).thenReturn(Map.of(failing, new RuntimeException("550 mailbox unavailable")));
+
+        Map<NotificationPayload, Exception> failures = messageProcessorService.processBatch(batch, null);
+
+        assertAll(
+                () -> assertThat(failures).containsOnlyKeys(failing),
+                () -> verify(mailSenderService, times(1)).sendEmails(batch, null)
         );
     }
 
+    @Test
+    void testProcessMessageAsyncCompletesWithSend() {
+        when(mailSenderService.sendEmailAsync(payload, "transactionTemplate")).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertThat(messageProcessorService.processMessageAsync(payload, "transactionTemplate")).isCompleted();
+    }
+
+    @Test
+    void testProcessMessageAsyncFailsWithMessageProcessingException() {
+        when(mailSenderService.sendEmailAsync(payload, null))
+                .thenReturn(CompletableFuture.failedFuture(new EmailDeliveryException("Email sending failed")));
+
+        assertThat(messageProcessorService.processMessageAsync(payload, null))
+                .failsWithin(Duration.ZERO)
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(MessageProcessingException.class);
+    }
 }
@@ -0,0 +1,170 @@
+package com.llyods.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llyods.config.OutboxProperties;
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.exception.EmailDeliveryException;
+import com.llyods.exception.MessageProcessingException;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.SendFailedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OutboxSenderTest {
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private MessageProcessorService messageProcessorService;
+
+    @Mock
+    private DeadLetterService deadLetterService;
+
+    @Mock
+    private RetryScheduler retryScheduler;
+
+    @Mock
+    private RelayOutageListener relayOutageListener;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OutboxProperties properties = new OutboxProperties();
+    private final SubscriptionProperties subscriptionProperties = new SubscriptionProperties();
+    private OutboxService outboxService;
+    private OutboxSender outboxSender;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        properties.setEnabled(true);
+        properties.setDirectory(directory);
+        properties.setSegmentSize(DataSize.ofKilobytes(64));
+        properties.setPollInterval(Duration.ofMillis(10));
+        properties.setSenders(2);
+        SubscriptionProperties.Stream otp = new SubscriptionProperties.Stream();
+        otp.setName("otp");
+        otp.setTemplate("otpTemplate");
+        subscriptionProperties.setStreams(List.of(otp));
+        outboxService = new OutboxService(properties, new ObjectMapper(), meterRegistry);
+        outboxService.open();
+        outboxSender = new OutboxSender(outboxService, messageProcessorService, deadLetterService, retryScheduler,
+                relayOutageListener, subscriptionProperties, properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        outboxSender.stop();
+        outboxService.close();
+    }
+
+    @Test
+    void shouldSendEntriesWithStreamTemplateAndMoveCheckpoint() throws Exception {
+        outboxService.append("otp", payload("first@gmail.com")).get(5, TimeUnit.SECONDS);
+        outboxService.append("transaction", payload("second@gmail.com")).get(5, TimeUnit.SECONDS);
+
+        outboxSender.start();
+
+        assertAll(
+                () -> assertThat(await(() -> outboxService.checkpoint() == 2)).isTrue(),
+                () -> verify(messageProcessorService).processMessage(mailTo("first@gmail.com"), eq("otpTemplate")),
+                () -> verify(messageProcessorService).processMessage(mailTo("second@gmail.com"), isNull())
+        );
+    }
+
+    @Test
+    void shouldDeadLetterOnceRetriesRunOut() throws Exception {
+        MessageProcessingException failure = new MessageProcessingException("Failed to process message for email: rejected@gmail.com",
+                new EmailDeliveryException("Failed to send email", new SendFailedException("452 4.2.2 Mailbox full")));
+        doThrow(failure).when(messageProcessorService).processMessage(any(), eq("otpTemplate"));
+        when(retryScheduler.scheduleRetry(anyInt(), any())).thenReturn(false);
+        when(deadLetterService.deadLetter(eq("otp"), mailTo("rejected@gmail.com"), eq(failure)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        outboxService.append("otp", payload("rejected@gmail.com")).get(5, TimeUnit.SECONDS);
+
+        outboxSender.start();
+
+        assertAll(
+                () -> assertThat(await(() -> outboxService.checkpoint() == 1)).isTrue(),
+                () -> verify(retryScheduler).scheduleRetry(eq(1), any()),
+                () -> verify(deadLetterService).deadLetter(eq("otp"), mailTo("rejected@gmail.com"), eq(failure))
+        );
+    }
+
+    @Test
+    void shouldHoldCheckpointWhileEntryIsUnsettled() throws Exception {
+        doThrow(new MessageProcessingException("Failed to process message for email: failing@gmail.com"))
+                .when(messageProcessorService).processMessage(mailTo("failing@gmail.com"), isNull());
+        CountDownLatch nextSent = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            nextSent.countDown();
+            return null;
+        }).when(messageProcessorService).processMessage(mailTo("next@gmail.com"), isNull());
+        when(retryScheduler.scheduleRetry(anyInt(), any())).thenReturn(true);
+        outboxService.append("transaction", payload("failing@gmail.com")).get(5, TimeUnit.SECONDS);
+        outboxService.append("transaction", payload("next@gmail.com")).get(5, TimeUnit.SECONDS);
+
+        outboxSender.start();
+
+        assertAll(
+                () -> assertThat(nextSent.await(5, TimeUnit.SECONDS)).isTrue(),
+                () -> assertThat(outboxService.checkpoint()).isZero(),
+                () -> verify(deadLetterService, never()).deadLetter(any(), any(), any())
+        );
+    }
+
+    @Test
+    void shouldNotReadWhileRelayIsUnavailable() throws Exception {
+        when(relayOutageListener.isRelayUnavailable()).thenReturn(true);
+        outboxService.append("otp", payload("demo@gmail.com")).get(5, TimeUnit.SECONDS);
+
+        outboxSender.start();
+        Thread.sleep(100);
+
+        verify(messageProcessorService, never()).processMessage(any(), any());
+    }
+
+    private boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return condition.getAsBoolean();
+    }
+
+    /**
+     * Entries are read back from disk, so payloads are matched by address rather than identity.
+     */
+    private NotificationPayload mailTo(String mail) {
+        return argThat(payload -> payload != null && mail.equals(payload.getMail()));
+    }
+
+    private NotificationPayload payload(String mail) {
+        return new NotificationPayload("otp", mail, "John Doe", "Subject", "Message");
+    }
+}
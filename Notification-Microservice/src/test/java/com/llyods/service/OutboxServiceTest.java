@@ -0,0 +1,134 @@
+package com.llyods.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llyods.config.OutboxProperties;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class OutboxServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OutboxProperties properties = new OutboxProperties();
+    private OutboxService outboxService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        properties.setEnabled(true);
+        properties.setDirectory(directory);
+        properties.setSegmentSize(DataSize.ofKilobytes(64));
+        properties.setGroupCommitWindow(Duration.ofMillis(20));
+        outboxService = open();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        outboxService.close();
+    }
+
+    @Test
+    void shouldCompleteAppendsOnceSyncedAndShareOneCommit() throws Exception {
+        List<CompletableFuture<Long>> appended = IntStream.range(0, 10)
+                .mapToObj(i -> outboxService.append("transaction", payload(i + "@gmail.com")))
+                .toList();
+
+        CompletableFuture.allOf(appended.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertAll(
+                () -> assertThat(appended).extracting(CompletableFuture::join).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L),
+                () -> assertThat(meterRegistry.get("notification.outbox.commit.size").summary().count()).isLessThan(10),
+                () -> assertThat(meterRegistry.get("notification.outbox.commit.size").summary().totalAmount()).isEqualTo(10),
+                () -> assertThat(outboxService.read(0, 100)).hasSize(10),
+                () -> assertThat(outboxService.read(3, 1).get(0).entry().payload().getMail()).isEqualTo("3@gmail.com"),
+                () -> assertThat(outboxService.read(3, 1).get(0).entry().stream()).isEqualTo("transaction")
+        );
+    }
+
+    @Test
+    void shouldResumeFromCheckpointAfterRestart() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            outboxService.append("otp", payload(i + "@gmail.com")).get(5, TimeUnit.SECONDS);
+        }
+        outboxService.saveCheckpoint(2);
+        outboxService.close();
+
+        outboxService = open();
+
+        assertAll(
+                () -> assertThat(outboxService.checkpoint()).isEqualTo(2),
+                () -> assertThat(outboxService.read(outboxService.checkpoint(), 10))
+                        .extracting(entry -> entry.entry().payload().getMail()).containsExactly("2@gmail.com"),
+                () -> assertThat(outboxService.append("otp", payload("3@gmail.com")).get(5, TimeUnit.SECONDS)).isEqualTo(3)
+        );
+    }
+
+    @Test
+    void shouldAppendAcrossSegmentRolloverFromEmptyDirectory() throws Exception {
+        outboxService.close();
+        Path rolling = directory.resolve("rolling");
+        properties.setDirectory(rolling);
+        properties.setSegmentSize(DataSize.ofBytes(1024));
+        outboxService = open();
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(outboxService.append("otp", payload(i + "@gmail.com")).get(5, TimeUnit.SECONDS)).isEqualTo(i);
+        }
+        outboxService.close();
+        outboxService = open();
+
+        assertAll(
+                () -> assertThat(segments(rolling)).hasSizeGreaterThan(1).doesNotHaveDuplicates(),
+                () -> assertThat(outboxService.read(0, 100)).extracting(OutboxService.Entry::sequence).hasSize(20).isSorted(),
+                () -> assertThat(outboxService.read(19, 1).get(0).entry().payload().getMail()).isEqualTo("19@gmail.com"),
+                () -> assertThat(outboxService.append("otp", payload("20@gmail.com")).get(5, TimeUnit.SECONDS)).isEqualTo(20)
+        );
+    }
+
+    @Test
+    void shouldFailAppendsWhenDisabled() throws Exception {
+        outboxService.close();
+        properties.setEnabled(false);
+        outboxService = open();
+
+        assertAll(
+                () -> assertThat(outboxService.isEnabled()).isFalse(),
+                () -> assertThat(outboxService.append("otp", payload("demo@gmail.com"))).isCompletedExceptionally()
+        );
+    }
+
+    private OutboxService open() throws Exception {
+        OutboxService outbox = new OutboxService(properties, new ObjectMapper(), meterRegistry);
+        outbox.open();
+        return outbox;
+    }
+
+    private List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).toList();
+        }
+    }
+
+    private NotificationPayload payload(String mail) {
+        return new NotificationPayload("transactioncomplete", mail, "John Doe", "Subject", "Message");
+    }
+}
@@ -0,0 +1,102 @@
+package com.llyods.service;
+
+import com.llyods.config.PriorityProperties;
+import com.llyods.model.NotificationPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class PriorityDispatcherTest {
+
+    private PriorityProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private PriorityDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        properties = new PriorityProperties();
+        properties.setWorkers(1);
+        properties.getTypes().put("otp", NotificationPriority.HIGH);
+        properties.getTypes().put("transactioncomplete", NotificationPriority.LOW);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.stop();
+    }
+
+    @Test
+    void testDisabledDispatcherRunsInline() {
+        properties.setEnabled(false);
+        dispatcher = new PriorityDispatcher(properties, meterRegistry);
+        dispatcher.start();
+        List<String> threads = new CopyOnWriteArrayList<>();
+
+        dispatcher.dispatch("otp", () -> threads.add(Thread.currentThread().getName()));
+
+        assertThat(threads).containsExactly(Thread.currentThread().getName());
+    }
+
+    @Test
+    void testStrictModeRunsHighPriorityFirst() throws InterruptedException {
+        properties.setMode(PriorityProperties.Mode.STRICT);
+        dispatcher = new PriorityDispatcher(properties, meterRegistry);
+        dispatcher.start();
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        dispatcher.dispatch("otp", () -> awaitQuietly(blocker));
+        dispatcher.dispatch("transactioncomplete", () -> record(order, "transaction-1", done));
+        dispatcher.dispatch("transactioncomplete", () -> record(order, "transaction-2", done));
+        dispatcher.dispatch("otp", () -> record(order, "otp-1", done));
+        dispatcher.dispatch("profile", () -> record(order, "profile-1", done));
+        blocker.countDown();
+
+        assertAll(
+                () -> assertThat(done.await(5, TimeUnit.SECONDS)).isTrue(),
+                () -> assertThat(order).containsExactly("otp-1", "profile-1", "transaction-1", "transaction-2"),
+                () -> assertThat(meterRegistry.get("notification.queue.wait").tag("priority", "LOW").timer().count()).isEqualTo(2)
+        );
+    }
+
+    @Test
+    void testWeightedScheduleInterleavesPriorities() {
+        NotificationPriority[] schedule = PriorityDispatcher.buildSchedule(Map.of(
+                NotificationPriority.HIGH, 2,
+                NotificationPriority.NORMAL, 1,
+                NotificationPriority.LOW, 1));
+        dispatcher = new PriorityDispatcher(properties, meterRegistry);
+
+        assertAll(
+                () -> assertThat(schedule).hasSize(4),
+                () -> assertThat(schedule).filteredOn(NotificationPriority.HIGH::equals).hasSize(2),
+                () -> assertThat(schedule[0]).isEqualTo(NotificationPriority.HIGH),
+                () -> assertThat(schedule[1]).isNotEqualTo(NotificationPriority.HIGH)
+        );
+    }
+
+    private void record(List<String> order, String name, CountDownLatch done) {
+        order.add(name);
+        done.countDown();
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.llyods.service;
+
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.cloud.spring.pubsub.support.AcknowledgeablePubsubMessage;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.exception.InvalidPayloadException;
+import com.llyods.model.NotificationPayload;
+import com.llyods.util.NotificationDecoder;
+import com.llyods.util.PayloadValidator;
+import jakarta.mail.SendFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PubSubBatchPullServiceTest {
+
+    private static final String SUBSCRIPTION = "transaction-complete-management";
+    private static final String VALID_JSON = "{\"type\":\"transactioncomplete\",\"mail\":\"demo@gmail.com\",\"name\":\"John Doe\",\"subject\":\"Subject\",\"messageContent\":\"Message\"}";
+    private static final String FAILING_JSON = "{\"type\":\"transactioncomplete\",\"mail\":\"bad@gmail.com\",\"name\":\"Jane Doe\",\"subject\":\"Subject\",\"messageContent\":\"Message\"}";
+    private static final String OLDER_OTP_JSON = "{\"type\":\"otp\",\"mail\":\"demo@gmail.com\",\"name\":\"John Doe\",\"subject\":\"Code\",\"messageContent\":\"111111\"}";
+    private static final String NEWER_OTP_JSON = "{\"type\":\"otp\",\"mail\":\"demo@gmail.com\",\"name\":\"John Doe\",\"subject\":\"Code\",\"messageContent\":\"222222\"}";
+    private static final String INVALID_JSON = "{\"type\":\"transactioncomplete\"}";
+
+    @Mock
+    private PubSubTemplate pubSubTemplate;
+
+    @Mock
+    private NotificationDecoder notificationDecoder;
+
+    @Mock
+    private PayloadValidator payloadValidator;
+
+    @Mock
+    private MessageProcessorService messageProcessorService;
+
+    @Mock
+    private SubscriptionProperties subscriptionProperties;
+
+    @Mock
+    private DeduplicationService deduplicationService;
+
+    @Mock
+    private RelayOutageListener relayOutageListener;
+
+    @Mock
+    private DeadLetterService deadLetterService;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private FastLane fastLane;
+
+    @Mock
+    private SupersedeService supersedeService;
+
+    @InjectMocks
+    private PubSubBatchPullService pubSubBatchPullService;
+
+    private SubscriptionProperties.Stream stream;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(pubSubBatchPullService, "batchSize", 3);
+        ReflectionTestUtils.setField(pubSubBatchPullService, "retryDelaySeconds", 30);
+        stream = new SubscriptionProperties.Stream();
+        stream.setName("transaction");
+        stream.setSubscription(SUBSCRIPTION);
+        lenient().when(deduplicationService.keyOf(anyString(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(deduplicationService.claim(anyString())).thenReturn(DeduplicationService.State.NEW);
+    }
+
+    @Test
+    void testBatchIsSettledWithOneAckAndOneDeadlineCall() throws Exception {
+        AcknowledgeablePubsubMessage valid = pulled(VALID_JSON);
+        AcknowledgeablePubsubMessage failing = pulled(FAILING_JSON);
+        AcknowledgeablePubsubMessage invalid = pulled(INVALID_JSON);
+        NotificationPayload validPayload = new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Subject", "Message");
+        NotificationPayload failingPayload = new NotificationPayload("transactioncomplete", "bad@gmail.com", "Jane Doe", "Subject", "Message");
+
+        when(pubSubTemplate.pull(SUBSCRIPTION, 3, false)).thenReturn(List.of(valid, failing, invalid));
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(VALID_JSON))).thenReturn(validPayload);
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(FAILING_JSON))).thenReturn(failingPayload);
+        NotificationPayload invalidPayload = new NotificationPayload("transactioncomplete", null, null, null, null);
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(INVALID_JSON))).thenReturn(invalidPayload);
+        doThrow(new InvalidPayloadException("Missing email")).when(payloadValidator).validate(invalidPayload);
+        when(messageProcessorService.processBatch(List.of(validPayload, failingPayload), null))
+                .thenReturn(Map.of(failingPayload, new RuntimeException("550 mailbox unavailable")));
+
+        int pulled = pubSubBatchPullService.pullBatch(stream);
+
+        assertAll(
+                () -> assertThat(pulled).isEqualTo(3),
+                () -> verify(pubSubTemplate, times(1)).ack(List.of(invalid, valid)),
+                () -> verify(pubSubTemplate, times(1)).modifyAckDeadline(List.of(failing), 30)
+        );
+    }
+
+    @Test
+    void testOutboxModeAcksWhatWasWrittenWithoutSending() throws Exception {
+        AcknowledgeablePubsubMessage written = pulled(VALID_JSON);
+        AcknowledgeablePubsubMessage notWritten = pulled(FAILING_JSON);
+        NotificationPayload validPayload = new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Subject", "Message");
+        NotificationPayload failingPayload = new NotificationPayload("transactioncomplete", "bad@gmail.com", "Jane Doe", "Subject", "Message");
+
+        when(pubSubTemplate.pull(SUBSCRIPTION, 3, false)).thenReturn(List.of(written, notWritten));
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(VALID_JSON))).thenReturn(validPayload);
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(FAILING_JSON))).thenReturn(failingPayload);
+        when(outboxService.isEnabled()).thenReturn(true);
+        when(outboxService.append("transaction", validPayload)).thenReturn(CompletableFuture.completedFuture(0L));
+        when(outboxService.append("transaction", failingPayload))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("sync failed")));
+
+        pubSubBatchPullService.pullBatch(stream);
+
+        assertAll(
+                () -> verifyNoInteractions(messageProcessorService),
+                () -> verify(pubSubTemplate).ack(List.of(written)),
+                () -> verify(pubSubTemplate).modifyAckDeadline(List.of(notWritten), 30),
+                () -> verify(deduplicationService).delivered(written.getPubsubMessage().getMessageId()),
+                () -> verify(deduplicationService).release(notWritten.getPubsubMessage().getMessageId())
+        );
+    }
+
+    @Test
+    void testFastLaneCodesSkipTheBatchAndSupersededCodesAreDropped() throws Exception {
+        AcknowledgeablePubsubMessage older = pulled(OLDER_OTP_JSON);
+        AcknowledgeablePubsubMessage newer = pulled(NEWER_OTP_JSON);
+        AcknowledgeablePubsubMessage bulk = pulled(VALID_JSON);
+        NotificationPayload olderPayload = new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Code", "111111");
+        NotificationPayload newerPayload = new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Code", "222222");
+        NotificationPayload bulkPayload = new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Subject", "Message");
+        SupersedeService.Ticket olderTicket = new SupersedeService.Ticket("demo@gmail.com|otp", 1, 1);
+        SupersedeService.Ticket newerTicket = new SupersedeService.Ticket("demo@gmail.com|otp", 2, 2);
+
+        when(pubSubTemplate.pull(SUBSCRIPTION, 3, false)).thenReturn(List.of(older, newer, bulk));
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(OLDER_OTP_JSON))).thenReturn(olderPayload);
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(NEWER_OTP_JSON))).thenReturn(newerPayload);
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(VALID_JSON))).thenReturn(bulkPayload);
+        lenient().when(supersedeService.register(olderPayload, null)).thenReturn(olderTicket);
+        lenient().when(supersedeService.register(newerPayload, null)).thenReturn(newerTicket);
+        lenient().when(supersedeService.dropIfSuperseded(olderTicket)).thenReturn(true);
+        lenient().when(fastLane.accepts(newerPayload, null)).thenReturn(true);
+        when(fastLane.send(eq(newerPayload), isNull(), isNull(), any())).thenReturn(CompletableFuture.completedFuture(FastLane.Outcome.SENT));
+        when(messageProcessorService.processBatch(List.of(bulkPayload), null)).thenReturn(Map.of());
+
+        pubSubBatchPullService.pullBatch(stream);
+
+        assertAll(
+                () -> verify(fastLane, never()).send(eq(olderPayload), any(), any(), any()),
+                () -> verify(messageProcessorService).processBatch(List.of(bulkPayload), null),
+                () -> verify(pubSubTemplate).ack(List.of(older, bulk, newer)),
+                () -> verify(pubSubTemplate, never()).modifyAckDeadline(any(), anyInt()),
+                () -> verify(deduplicationService).delivered(older.getPubsubMessage().getMessageId()),
+                () -> verify(deduplicationService).delivered(newer.getPubsubMessage().getMessageId())
+        );
+    }
+
+    @Test
+    void testFastLaneFailuresAreReturnedForRetry() throws Exception {
+        AcknowledgeablePubsubMessage code = pulled(NEWER_OTP_JSON);
+        NotificationPayload codePayload = new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Code", "222222");
+
+        when(pubSubTemplate.pull(SUBSCRIPTION, 3, false)).thenReturn(List.of(code));
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(NEWER_OTP_JSON))).thenReturn(codePayload);
+        when(fastLane.accepts(codePayload, null)).thenReturn(true);
+        when(fastLane.send(eq(codePayload), isNull(), isNull(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("421 try again later")));
+
+        pubSubBatchPullService.pullBatch(stream);
+
+        assertAll(
+                () -> verify(messageProcessorService, never()).processBatch(any(), any()),
+                () -> verify(pubSubTemplate).modifyAckDeadline(List.of(code), 30),
+                () -> verify(deduplicationService).release(code.getPubsubMessage().getMessageId())
+        );
+    }
+
+    @Test
+    void testDuplicatesAreSettledWithoutSending() throws Exception {
+        AcknowledgeablePubsubMessage delivered = pulled(VALID_JSON);
+        AcknowledgeablePubsubMessage inFlight = pulled(FAILING_JSON);
+        NotificationPayload validPayload = new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Subject", "Message");
+        NotificationPayload failingPayload = new NotificationPayload("transactioncomplete", "bad@gmail.com", "Jane Doe", "Subject", "Message");
+
+        when(pubSubTemplate.pull(SUBSCRIPTION, 3, false)).thenReturn(List.of(delivered, inFlight));
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(VALID_JSON))).thenReturn(validPayload);
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(FAILING_JSON))).thenReturn(failingPayload);
+        when(deduplicationService.claim(delivered.getPubsubMessage().getMessageId())).thenReturn(DeduplicationService.State.DELIVERED);
+        when(deduplicationService.claim(inFlight.getPubsubMessage().getMessageId())).thenReturn(DeduplicationService.State.IN_FLIGHT);
+
+        pubSubBatchPullService.pullBatch(stream);
+
+        assertAll(
+                () -> verify(messageProcessorService, never()).processBatch(any(), any()),
+                () -> verify(pubSubTemplate).ack(List.of(delivered)),
+                () -> verify(pubSubTemplate).modifyAckDeadline(List.of(inFlight), 30)
+        );
+    }
+
+    @Test
+    void testDeliveredKeysAreRecordedAndFailedKeysReleased() throws Exception {
+        AcknowledgeablePubsubMessage valid = pulled(VALID_JSON);
+        AcknowledgeablePubsubMessage failing = pulled(FAILING_JSON);
+        NotificationPayload validPayload = new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Subject", "Message");
+        NotificationPayload failingPayload = new NotificationPayload("transactioncomplete", "bad@gmail.com", "Jane Doe", "Subject", "Message");
+
+        when(pubSubTemplate.pull(SUBSCRIPTION, 3, false)).thenReturn(List.of(valid, failing));
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(VALID_JSON))).thenReturn(validPayload);
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(FAILING_JSON))).thenReturn(failingPayload);
+        when(messageProcessorService.processBatch(List.of(validPayload, failingPayload), null))
+                .thenReturn(Map.of(failingPayload, new RuntimeException("550 mailbox unavailable")));
+
+        pubSubBatchPullService.pullBatch(stream);
+
+        assertAll(
+                () -> verify(deduplicationService).delivered(valid.getPubsubMessage().getMessageId()),
+                () -> verify(deduplicationService).release(failing.getPubsubMessage().getMessageId())
+        );
+    }
+
+    @Test
+    void testPermanentFailuresAreDeadLetteredAndAcked() throws Exception {
+        AcknowledgeablePubsubMessage valid = pulled(VALID_JSON);
+        AcknowledgeablePubsubMessage rejected = pulled(FAILING_JSON);
+        NotificationPayload validPayload = new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Subject", "Message");
+        NotificationPayload rejectedPayload = new NotificationPayload("transactioncomplete", "bad@gmail.com", "Jane Doe", "Subject", "Message");
+        SendFailedException userUnknown = new SendFailedException("550 5.1.1 User unknown");
+
+        when(pubSubTemplate.pull(SUBSCRIPTION, 3, false)).thenReturn(List.of(valid, rejected));
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(VALID_JSON))).thenReturn(validPayload);
+        when(notificationDecoder.decode(ByteString.copyFromUtf8(FAILING_JSON))).thenReturn(rejectedPayload);
+        when(messageProcessorService.processBatch(List.of(validPayload, rejectedPayload), null))
+                .thenReturn(Map.of(rejectedPayload, userUnknown));
+        when(deadLetterService.deadLetter("transaction", rejectedPayload, userUnknown))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        pubSubBatchPullService.pullBatch(stream);
+
+        assertAll(
+                () -> verify(pubSubTemplate).ack(List.of(valid, rejected)),
+                () -> verify(pubSubTemplate, never()).modifyAckDeadline(any(), anyInt()),
+                () -> verify(deduplicationService).delivered(rejected.getPubsubMessage().getMessageId())
+        );
+    }
+
+    @Test
+    void testEmptyPullDoesNothing() {
+        when(pubSubTemplate.pull(SUBSCRIPTION, 3, false)).thenReturn(List.of());
+
+        int pulled = pubSubBatchPullService.pullBatch(stream);
+
+        assertAll(
+                () -> assertThat(pulled).isZero(),
+                () -> verify(messageProcessorService, never()).processBatch(any(), any()),
+                () -> verify(pubSubTemplate, never()).ack(any())
+        );
+    }
+
+    @Test
+    void testDrainSkipsPullWhileRelayIsUnavailable() {
+        when(relayOutageListener.isRelayUnavailable()).thenReturn(true);
+
+        pubSubBatchPullService.drain(stream);
+
+        verify(pubSubTemplate, never()).pull(anyString(), anyInt(), anyBoolean());
+    }
+
+    @Test
+    void testDrainPullsWhileRelayIsAvailable() {
+        when(pubSubTemplate.pull(SUBSCRIPTION, 3, false)).thenReturn(List.of());
+
+        pubSubBatchPullService.drain(stream);
+
+        verify(pubSubTemplate, times(1)).pull(SUBSCRIPTION, 3, false);
+    }
+
+    private AcknowledgeablePubsubMessage pulled(String json) {
+        AcknowledgeablePubsubMessage message = mock(AcknowledgeablePubsubMessage.class);
+        PubsubMessage pubsubMessage = PubsubMessage.newBuilder()
+                .setMessageId(Integer.toHexString(json.hashCode()))
+                .setData(ByteString.copyFromUtf8(json))
+                .build();
+        lenient().when(message.getPubsubMessage()).thenReturn(pubsubMessage);
+        return message;
+    }
+}
@@ -1,17 +1,30 @@
 package com.llyods.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.llyods.config.RetryMode;
+import com.llyods.config.SubscriptionProperties;
 import com.llyods.exception.InvalidPayloadException;
+import com.llyods.exception.EmailDeliveryException;
+import com.llyods.exception.MessageProcessingException;
+import com.llyods.mail.RateLimitedException;
+import com.llyods.mail.RelayUnavailableException;
 import com.llyods.model.NotificationPayload;
+import com.llyods.model.NotificationPriority;
+import com.llyods.util.NotificationDecoder;
 import com.llyods.util.PayloadValidator;
+import jakarta.mail.SendFailedException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.mockito.ArgumentMatchers.any;
@@ -23,17 +36,46 @@ class PubSubConsumerServiceTest {
     private MessageProcessorService messageProcessorService;
 
     @Mock
-    private ObjectMapper objectMapper;
+    private NotificationDecoder notificationDecoder;
 
     @Mock
     private PayloadValidator payloadValidator;
 
+    @Mock
+    private MessageAcknowledger messageAcknowledger;
+
+    @Mock
+    private PriorityDispatcher priorityDispatcher;
+
+    @Mock
+    private DeduplicationService deduplicationService;
+
+    @Mock
+    private RetryScheduler retryScheduler;
+
+    @Mock
+    private DeadLetterService deadLetterService;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private DigestCoalescer digestCoalescer;
+
+    @Mock
+    private FastLane fastLane;
+
+    @Mock
+    private SupersedeService supersedeService;
+
     @InjectMocks
     private PubSubConsumerService pubSubConsumerService;
 
     private String jsonPayload;
     private NotificationPayload notificationPayload;
     private Message<String> message;
+    private SubscriptionProperties.Stream transactionStream;
+    private SubscriptionProperties.Stream otpStream;
 
     @BeforeEach
     void setUp() {
@@ -41,112 +83,515 @@ class PubSubConsumerServiceTest {
         jsonPayload = "{\"type\":\"Email\",\"email\":\"demo@gmail.com\",\"name\":\"John Doe\",\"subject\":\"Test Subject\",\"messageContent\":\"Test Message\"}";
         notificationPayload = new NotificationPayload("Email", "demo@gmail.com", "John Doe", "Test Subject", "Test Message");
         message = MessageBuilder.withPayload(jsonPayload).build();
+        transactionStream = stream("transaction", null, null);
+        otpStream = stream("otp", NotificationPriority.HIGH, "otpTemplate");
+        when(priorityDispatcher.priorityOf(anyString())).thenReturn(NotificationPriority.NORMAL);
+        when(deduplicationService.keyOf(any(Message.class))).thenReturn("message-1");
+        when(deduplicationService.claim("message-1")).thenReturn(DeduplicationService.State.NEW);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(priorityDispatcher).dispatch(any(NotificationPriority.class), any(Runnable.class));
     }
 
     @Test
     void shouldProcessTransactionMessageSuccessfully() throws Exception {
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-        pubSubConsumerService.receiveTransactionCompletedMessage(message);
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        pubSubConsumerService.receive(message, transactionStream);
         assertAll(
-                () -> verify(payloadValidator).validate(jsonPayload),
-                () -> verify(messageProcessorService).processMessage(notificationPayload)
+                () -> verify(payloadValidator).validate(notificationPayload),
+                () -> verify(messageProcessorService).processMessage(notificationPayload, null)
         );
     }
 
     @Test
-    void shouldProcessProfileUpdateMessageSuccessfully() throws Exception {
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-        pubSubConsumerService.receiveProfileUpdatedMessage(message);
+    void shouldAckMessageAfterSuccessfulProcessing() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        pubSubConsumerService.receive(message, transactionStream);
         assertAll(
-                () -> verify(payloadValidator).validate(jsonPayload),
-                () -> verify(messageProcessorService).processMessage(notificationPayload)
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(messageAcknowledger, never()).retryLater(any())
         );
     }
 
     @Test
-    void shouldThrowInvalidPayloadExceptionForTransactionMessage() {
-        doThrow(new InvalidPayloadException("Invalid payload")).when(payloadValidator).validate(jsonPayload);
+    void shouldHandBackMessageWhenProcessingFails() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(new RuntimeException("SMTP unavailable")).when(messageProcessorService).processMessage(notificationPayload, null);
 
-        assertThatThrownBy(() -> pubSubConsumerService.receiveTransactionCompletedMessage(message))
-                .isInstanceOf(InvalidPayloadException.class)
-                .hasMessageContaining("Error processing message: Invalid payload");
+        assertThatThrownBy(() -> pubSubConsumerService.receive(message, transactionStream))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Unexpected error processing message");
 
         assertAll(
-                () -> verify(payloadValidator).validate(jsonPayload),
-                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class))
+                () -> verify(messageAcknowledger).retryLater(message),
+                () -> verify(messageAcknowledger, never()).ack(any())
         );
     }
 
     @Test
-    void shouldThrowRuntimeExceptionForDeserializationError() throws Exception {
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenThrow(new RuntimeException("Deserialization error"));
-        assertThatThrownBy(() -> pubSubConsumerService.receiveTransactionCompletedMessage(message))
-                .isInstanceOf(RuntimeException.class)
-                .hasMessageContaining("Unexpected error processing message");
+    void shouldMarkDeliveredAfterSuccessfulProcessing() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        pubSubConsumerService.receive(message, transactionStream);
         assertAll(
-                () -> verify(payloadValidator, never()).validate(anyString()),
-                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class))
+                () -> verify(deduplicationService).delivered("message-1"),
+                () -> verify(deduplicationService, never()).release(any())
         );
     }
 
     @Test
-    void shouldThrowInvalidPayloadExceptionForOTPMessage() {
-        doThrow(new InvalidPayloadException("Invalid payload")).when(payloadValidator).validate(jsonPayload);
+    void shouldReleaseKeyWhenProcessingFails() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(new RuntimeException("SMTP unavailable")).when(messageProcessorService).processMessage(notificationPayload, null);
 
-        assertThatThrownBy(() -> pubSubConsumerService.receiveOTPdMessage(message))
-                .isInstanceOf(InvalidPayloadException.class)
-                .hasMessageContaining("Error processing message: Invalid payload");
+        assertThatThrownBy(() -> pubSubConsumerService.receive(message, transactionStream))
+                .isInstanceOf(RuntimeException.class);
 
         assertAll(
-                () -> verify(payloadValidator).validate(jsonPayload),
-                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class))
+                () -> verify(deduplicationService).release("message-1"),
+                () -> verify(deduplicationService, never()).delivered(any())
         );
     }
 
     @Test
-    void shouldProcessOTPMessageSuccessfully() throws Exception {
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-        pubSubConsumerService.receiveOTPdMessage(message);
+    void shouldAckDuplicateOfDeliveredMessageWithoutSending() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(deduplicationService.claim("message-1")).thenReturn(DeduplicationService.State.DELIVERED);
+
+        pubSubConsumerService.receive(message, transactionStream);
+
+        assertAll(
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(priorityDispatcher, never()).dispatch(any(), any()),
+                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class), any())
+        );
+    }
+
+    @Test
+    void shouldReturnDuplicateOfInFlightMessage() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(deduplicationService.claim("message-1")).thenReturn(DeduplicationService.State.IN_FLIGHT);
+
+        pubSubConsumerService.receive(message, transactionStream);
+
+        assertAll(
+                () -> verify(messageAcknowledger).retryLater(message),
+                () -> verify(messageAcknowledger, never()).ack(any()),
+                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class), any())
+        );
+    }
+
+    @Test
+    void shouldAckBatchedMessageWhenItsSendCompletes() throws Exception {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(messageProcessorService.processMessageAsync(notificationPayload, null)).thenReturn(sent);
+        transactionStream.setBatch(true);
+
+        pubSubConsumerService.receive(message, transactionStream);
+        verify(messageAcknowledger, never()).ack(any());
+        sent.complete(null);
+
+        assertAll(
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(deduplicationService).delivered("message-1"),
+                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class), any())
+        );
+    }
+
+    @Test
+    void shouldHandBackBatchedMessageWhenItsSendFails() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(messageProcessorService.processMessageAsync(notificationPayload, null))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("550 mailbox unavailable")));
+        transactionStream.setBatch(true);
+
+        pubSubConsumerService.receive(message, transactionStream);
+
+        assertAll(
+                () -> verify(messageAcknowledger).retryLater(message),
+                () -> verify(messageAcknowledger, never()).ack(any()),
+                () -> verify(deduplicationService).release("message-1")
+        );
+    }
+
+    @Test
+    void shouldScheduleRetryInsteadOfHandingBackMessage() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(new RuntimeException("SMTP unavailable")).doNothing()
+                .when(messageProcessorService).processMessage(notificationPayload, null);
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        when(retryScheduler.scheduleRetry(eq(1), retry.capture())).thenReturn(true);
+
+        pubSubConsumerService.receive(message, transactionStream);
+        verify(messageAcknowledger, never()).retryLater(any());
+        retry.getValue().run();
+
+        assertAll(
+                () -> verify(messageProcessorService, times(2)).processMessage(notificationPayload, null),
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(deduplicationService).delivered("message-1"),
+                () -> verify(deduplicationService, never()).release(any())
+        );
+    }
+
+    @Test
+    void shouldHandBackAtOnceWhileRelayIsUnavailable() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(new MessageProcessingException("Failed to process message for email: demo@gmail.com",
+                new RelayUnavailableException("SMTP relay circuit breaker is OPEN", null)))
+                .when(messageProcessorService).processMessage(notificationPayload, null);
+
+        assertThatThrownBy(() -> pubSubConsumerService.receive(message, transactionStream))
+                .isInstanceOf(MessageProcessingException.class);
+
+        assertAll(
+                () -> verify(retryScheduler, never()).scheduleRetry(anyInt(), any()),
+                () -> verify(messageAcknowledger).retryLater(message),
+                () -> verify(deduplicationService).release("message-1")
+        );
+    }
+
+    @Test
+    void shouldHandBackAtOnceWhenRateLimited() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(new MessageProcessingException("Failed to process message for email: demo@gmail.com",
+                new RateLimitedException("Rate limit global per-minute has no token within PT2S")))
+                .when(messageProcessorService).processMessage(notificationPayload, null);
+
+        assertThatThrownBy(() -> pubSubConsumerService.receive(message, transactionStream))
+                .isInstanceOf(MessageProcessingException.class);
+
+        assertAll(
+                () -> verify(retryScheduler, never()).scheduleRetry(anyInt(), any()),
+                () -> verify(deadLetterService, never()).deadLetter(any(), any(), any()),
+                () -> verify(messageAcknowledger).retryLater(message)
+        );
+    }
+
+    @Test
+    void shouldDeadLetterPermanentFailureWithoutRetrying() throws Exception {
+        MessageProcessingException rejected = new MessageProcessingException("Failed to process message for email: demo@gmail.com",
+                new EmailDeliveryException("Failed to send email to: demo@gmail.com", new SendFailedException("550 5.1.1 User unknown")));
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(rejected).when(messageProcessorService).processMessage(notificationPayload, null);
+        when(deadLetterService.deadLetter("transaction", notificationPayload, rejected))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        pubSubConsumerService.receive(message, transactionStream);
+
+        assertAll(
+                () -> verify(retryScheduler, never()).scheduleRetry(anyInt(), any()),
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(messageAcknowledger, never()).retryLater(any()),
+                () -> verify(deduplicationService).delivered("message-1")
+        );
+    }
+
+    @Test
+    void shouldHandBackWhenDeadLetterCannotBeRecorded() throws Exception {
+        MessageProcessingException rejected = new MessageProcessingException("Failed to process message for email: demo@gmail.com",
+                new EmailDeliveryException("Failed to send email to: demo@gmail.com", new SendFailedException("550 5.1.1 User unknown")));
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(rejected).when(messageProcessorService).processMessage(notificationPayload, null);
+        when(deadLetterService.deadLetter("transaction", notificationPayload, rejected))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("topic not found")));
+
+        pubSubConsumerService.receive(message, transactionStream);
+
+        assertAll(
+                () -> verify(messageAcknowledger).retryLater(message),
+                () -> verify(messageAcknowledger, never()).ack(any()),
+                () -> verify(deduplicationService).release("message-1")
+        );
+    }
+
+    @Test
+    void shouldDeadLetterOnceRetriesAreExhausted() throws Exception {
+        RuntimeException unavailable = new RuntimeException("SMTP unavailable");
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(unavailable).when(messageProcessorService).processMessage(notificationPayload, null);
+        when(messageAcknowledger.deliveryAttempt(message)).thenReturn(1);
+        when(deadLetterService.acceptsExhaustedRetries()).thenReturn(true);
+        when(retryScheduler.isExhausted(1, 1)).thenReturn(true);
+        when(deadLetterService.deadLetter("transaction", notificationPayload, unavailable))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        pubSubConsumerService.receive(message, transactionStream);
+
+        assertAll(
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(messageAcknowledger, never()).retryLater(any()),
+                () -> verify(deduplicationService).delivered("message-1")
+        );
+    }
+
+    @Test
+    void shouldAckOnceWrittenToOutboxWithoutSending() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(outboxService.isEnabled()).thenReturn(true);
+        when(outboxService.append("transaction", notificationPayload)).thenReturn(CompletableFuture.completedFuture(0L));
+
+        pubSubConsumerService.receive(message, transactionStream);
+
         assertAll(
-                () -> verify(payloadValidator).validate(jsonPayload),
-                () -> verify(messageProcessorService).processMessage(notificationPayload)
+                () -> verify(messageProcessorService, never()).processMessage(any(), any()),
+                () -> verify(priorityDispatcher, never()).dispatch(any(), any()),
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(deduplicationService).delivered("message-1")
         );
     }
 
     @Test
-    void shouldProcessPasswordUpdateMessageSuccessfully() throws Exception {
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-        pubSubConsumerService.receivePasswordUpdateSuccessMessage(message);
+    void shouldHandBackWhenOutboxWriteFails() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(outboxService.isEnabled()).thenReturn(true);
+        when(outboxService.append("transaction", notificationPayload))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("No space left on device")));
+
+        pubSubConsumerService.receive(message, transactionStream);
+
+        assertAll(
+                () -> verify(messageAcknowledger).retryLater(message),
+                () -> verify(messageAcknowledger, never()).ack(any()),
+                () -> verify(deduplicationService).release("message-1")
+        );
+    }
+
+    @Test
+    void shouldSettleCoalescedMessageWhenItsDigestIsSent() throws Exception {
+        CompletableFuture<Void> digestSent = new CompletableFuture<>();
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(digestCoalescer.accepts(notificationPayload, NotificationPriority.NORMAL)).thenReturn(true);
+        when(digestCoalescer.add(notificationPayload, transactionStream.getTemplate())).thenReturn(digestSent);
+
+        pubSubConsumerService.receive(message, transactionStream);
+        verify(messageAcknowledger, never()).ack(any());
+        digestSent.complete(null);
+
         assertAll(
-                () -> verify(payloadValidator).validate(jsonPayload),
-                () -> verify(messageProcessorService).processMessage(notificationPayload)
+                () -> verify(priorityDispatcher, never()).dispatch(any(), any()),
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(deduplicationService).delivered("message-1")
         );
     }
 
     @Test
-    void shouldThrowInvalidPayloadExceptionForRESENDOTPMessage() {
-        doThrow(new InvalidPayloadException("Invalid payload")).when(payloadValidator).validate(jsonPayload);
+    void shouldRetryMembersOfFailedDigestOneByOne() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(digestCoalescer.accepts(notificationPayload, NotificationPriority.NORMAL)).thenReturn(true);
+        when(digestCoalescer.add(notificationPayload, transactionStream.getTemplate()))
+                .thenReturn(CompletableFuture.failedFuture(new MessageProcessingException("Failed to process digest for email: demo@gmail.com")));
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        when(retryScheduler.scheduleRetry(eq(1), retry.capture())).thenReturn(true);
+
+        pubSubConsumerService.receive(message, transactionStream);
+        retry.getValue().run();
+
+        assertAll(
+                () -> verify(messageProcessorService).processMessage(notificationPayload, null),
+                () -> verify(messageAcknowledger).ack(message)
+        );
+    }
+
+    @Test
+    void shouldSendCodeOnFastLaneAndRecordItsLatency() throws Exception {
+        Instant publishedAt = Instant.now();
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(messageAcknowledger.publishTime(message)).thenReturn(publishedAt);
+        when(fastLane.accepts(notificationPayload, "otpTemplate")).thenReturn(true);
+        when(fastLane.send(eq(notificationPayload), eq("otpTemplate"), eq(publishedAt), any()))
+                .thenReturn(CompletableFuture.completedFuture(FastLane.Outcome.SENT));
+
+        pubSubConsumerService.receive(message, otpStream);
+
+        assertAll(
+                () -> verify(priorityDispatcher, never()).dispatch(any(), any()),
+                () -> verify(messageProcessorService, never()).processMessage(any(), any()),
+                () -> verify(fastLane).recordLatency(true, publishedAt),
+                () -> verify(messageAcknowledger).ack(message)
+        );
+    }
+
+    @Test
+    void shouldDropStaleCodeWithoutSending() throws Exception {
+        Instant publishedAt = Instant.now().minusSeconds(600);
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(messageAcknowledger.publishTime(message)).thenReturn(publishedAt);
+        when(fastLane.accepts(notificationPayload, "otpTemplate")).thenReturn(true);
+        when(fastLane.isExpired(publishedAt)).thenReturn(true);
+
+        pubSubConsumerService.receive(message, otpStream);
+
+        assertAll(
+                () -> verify(fastLane, never()).send(any(), any(), any(), any()),
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(deduplicationService).delivered("message-1")
+        );
+    }
+
+    @Test
+    void shouldHandBackCodeOnceFastLaneRetriesAreUsedUp() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(fastLane.accepts(notificationPayload, "otpTemplate")).thenReturn(true);
+        when(fastLane.send(eq(notificationPayload), eq("otpTemplate"), isNull(), any())).thenReturn(CompletableFuture.failedFuture(
+                new MessageProcessingException("Failed to process message for email: demo@gmail.com",
+                        new EmailDeliveryException("Failed to send email", new RuntimeException("SMTP unavailable")))));
+
+        pubSubConsumerService.receive(message, otpStream);
+
+        assertAll(
+                () -> verify(retryScheduler, never()).scheduleRetry(anyInt(), any()),
+                () -> verify(deduplicationService).release("message-1"),
+                () -> verify(messageAcknowledger).retryLater(message)
+        );
+    }
+
+    @Test
+    void shouldDropCodeSupersededOnArrival() throws Exception {
+        SupersedeService.Ticket ticket = new SupersedeService.Ticket("demo@gmail.com|otp", 1, 1);
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(supersedeService.register(notificationPayload, null)).thenReturn(ticket);
+        when(supersedeService.dropIfSuperseded(ticket)).thenReturn(true);
+
+        pubSubConsumerService.receive(message, otpStream);
+
+        assertAll(
+                () -> verify(priorityDispatcher, never()).dispatch(any(), any()),
+                () -> verify(messageProcessorService, never()).processMessage(any(), any()),
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(deduplicationService).delivered("message-1")
+        );
+    }
+
+    @Test
+    void shouldDropCodeSupersededWhileWaitingForWorker() throws Exception {
+        SupersedeService.Ticket ticket = new SupersedeService.Ticket("demo@gmail.com|otp", 1, 1);
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        when(supersedeService.register(notificationPayload, null)).thenReturn(ticket);
+        when(supersedeService.dropIfSuperseded(ticket)).thenReturn(false, true);
+
+        pubSubConsumerService.receive(message, otpStream);
 
-        assertThatThrownBy(() -> pubSubConsumerService.receiveRESETOTPMessage(message))
+        assertAll(
+                () -> verify(priorityDispatcher).dispatch(eq(NotificationPriority.HIGH), any()),
+                () -> verify(messageProcessorService, never()).processMessage(any(), any()),
+                () -> verify(messageAcknowledger).ack(message)
+        );
+    }
+
+    @Test
+    void shouldHandBackWithComputedDeadlineInNackMode() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(new RuntimeException("SMTP unavailable")).when(messageProcessorService).processMessage(notificationPayload, null);
+        when(retryScheduler.getMode()).thenReturn(RetryMode.NACK);
+        when(messageAcknowledger.deliveryAttempt(message)).thenReturn(3);
+        when(retryScheduler.ackDeadlineSeconds(3)).thenReturn(5);
+
+        assertThatThrownBy(() -> pubSubConsumerService.receive(message, transactionStream))
+                .isInstanceOf(MessageProcessingException.class);
+
+        assertAll(
+                () -> verify(messageAcknowledger).retryLater(message, 5),
+                () -> verify(messageAcknowledger, never()).retryLater(message)
+        );
+    }
+
+    @Test
+    void shouldDispatchByNotificationTypeWhenStreamHasNoPriority() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        pubSubConsumerService.receive(message, transactionStream);
+        assertAll(
+                () -> verify(priorityDispatcher).priorityOf("Email"),
+                () -> verify(priorityDispatcher).dispatch(eq(NotificationPriority.NORMAL), any(Runnable.class))
+        );
+    }
+
+    @Test
+    void shouldApplyStreamPriorityAndTemplate() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        pubSubConsumerService.receive(message, otpStream);
+        assertAll(
+                () -> verify(priorityDispatcher).dispatch(eq(NotificationPriority.HIGH), any(Runnable.class)),
+                () -> verify(priorityDispatcher, never()).priorityOf(anyString()),
+                () -> verify(messageProcessorService).processMessage(notificationPayload, "otpTemplate")
+        );
+    }
+
+    @Test
+    void shouldThrowInvalidPayloadExceptionForTransactionMessage() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(new InvalidPayloadException("Invalid payload")).when(payloadValidator).validate(notificationPayload);
+
+        assertThatThrownBy(() -> pubSubConsumerService.receive(message, transactionStream))
                 .isInstanceOf(InvalidPayloadException.class)
                 .hasMessageContaining("Error processing message: Invalid payload");
 
         assertAll(
-                () -> verify(payloadValidator).validate(jsonPayload),
-                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class))
+                () -> verify(payloadValidator).validate(notificationPayload),
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class), any())
+        );
+    }
+
+    @Test
+    void shouldThrowRuntimeExceptionForDeserializationError() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenThrow(new RuntimeException("Deserialization error"));
+        assertThatThrownBy(() -> pubSubConsumerService.receive(message, transactionStream))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Unexpected error processing message");
+        assertAll(
+                () -> verify(payloadValidator, never()).validate(any(NotificationPayload.class)),
+                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class), any())
+        );
+    }
+
+    @Test
+    void shouldDiscardMalformedJson() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenThrow(new JsonParseException(null, "Unexpected character"));
+
+        assertThatThrownBy(() -> pubSubConsumerService.receive(message, transactionStream))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Unexpected character");
+
+        assertAll(
+                () -> verify(messageAcknowledger).ack(message),
+                () -> verify(messageAcknowledger, never()).retryLater(any()),
+                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class), any())
         );
     }
 
     @Test
-    void shouldProcessRESETOTPMessageSuccessfully() throws Exception {
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
+    void shouldThrowInvalidPayloadExceptionForOTPMessage() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        doThrow(new InvalidPayloadException("Invalid payload")).when(payloadValidator).validate(notificationPayload);
+
+        assertThatThrownBy(() -> pubSubConsumerService.receive(message, otpStream))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Error processing message: Invalid payload");
 
-        pubSubConsumerService.receiveRESETOTPMessage(message);
+        assertAll(
+                () -> verify(payloadValidator).validate(notificationPayload),
+                () -> verify(messageProcessorService, never()).processMessage(any(NotificationPayload.class), any())
+        );
+    }
 
+    @Test
+    void shouldProcessOTPMessageSuccessfully() throws Exception {
+        when(notificationDecoder.decodePayload(jsonPayload)).thenReturn(notificationPayload);
+        pubSubConsumerService.receive(message, otpStream);
         assertAll(
-                () -> verify(payloadValidator).validate(jsonPayload),
-                () -> verify(messageProcessorService).processMessage(notificationPayload)
+                () -> verify(payloadValidator).validate(notificationPayload),
+                () -> verify(messageProcessorService).processMessage(notificationPayload, "otpTemplate")
         );
     }
 
+    private SubscriptionProperties.Stream stream(String name, NotificationPriority priority, String template) {
+        SubscriptionProperties.Stream stream = new SubscriptionProperties.Stream();
+        stream.setName(name);
+        stream.setSubscription(name + "-subscription");
+        stream.setPriority(priority);
+        stream.setTemplate(template);
+        return stream;
+    }
 }
@@ -1,27 +1,37 @@
 package com.llyods.service;
 
 import com.llyods.exception.EmailDeliveryException;
+import com.llyods.mail.MailBatcher;
+import com.llyods.mail.MailRateLimiter;
+import com.llyods.mail.RateLimitedException;
 import com.llyods.model.NotificationPayload;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.retry.RetryCallback;
 import org.springframework.retry.support.RetryTemplate;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
 
 import jakarta.mail.Session;
 import jakarta.mail.internet.MimeMessage;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 @ExtendWith(MockitoExtension.class)
 class PubSubMailSenderServiceTest {
@@ -33,7 +43,16 @@ class PubSubMailSenderServiceTest {
     private RetryTemplate retryTemplate;
 
     @Mock
-    private TemplateEngine templateEngine; // Mocking Template Engine
+    private TemplateRenderer templateRenderer;
+
+    @Mock
+    private TemplateRegistry templateRegistry;
+
+    @Mock
+    private MailBatcher mailBatcher;
+
+    @Mock
+    private MailRateLimiter rateLimiter;
 
     @InjectMocks
     private PubSubMailSenderService pubSubMailSenderService;
@@ -42,10 +61,11 @@ class PubSubMailSenderServiceTest {
     void setup() {
         mockRetryTemplate();
         mockMailSender();
+        lenient().when(templateRegistry.templateFor(any())).thenReturn("defaultTemplate");
     }
 
     private void mockRetryTemplate() {
-        doAnswer(invocation -> {
+        lenient().doAnswer(invocation -> {
             RetryCallback<?, ?> callback = invocation.getArgument(0);
             return callback.doWithRetry(null);
         }).when(retryTemplate).execute(any());
@@ -53,20 +73,55 @@ class PubSubMailSenderServiceTest {
 
     private void mockMailSender() {
         MimeMessage mimeMessage = new MimeMessage(Session.getInstance(new Properties())); // Create a real MimeMessage
-        when(mailSender.createMimeMessage()).thenReturn(mimeMessage);
+        lenient().when(mailSender.createMimeMessage()).thenReturn(mimeMessage);
     }
 
     @Test
     void testSendEmailSuccess() {
-        when(templateEngine.process(any(String.class), any(Context.class))).thenReturn("Mocked Email Content");
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
         NotificationPayload payload = new NotificationPayload("otp","demo@gmail.com", "John Doe","Subject", "Message" );
         pubSubMailSenderService.sendEmail(payload);
         verify(mailSender, times(1)).send(any(MimeMessage.class));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSendDigestRendersEveryItemIntoOneEmail() throws Exception {
+        when(templateRenderer.render(eq("transactionDigestTemplate"), anyMap())).thenReturn("Mocked Digest Content");
+        List<NotificationPayload> payloads = List.of(
+                new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Subject", "Paid GBP 10.00"),
+                new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Subject", "Paid GBP 25.00"));
+
+        pubSubMailSenderService.sendDigest(payloads, "transactionDigestTemplate", "Your 2 recent transactions");
+
+        ArgumentCaptor<Map<String, Object>> variables = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<MimeMessage> sent = ArgumentCaptor.forClass(MimeMessage.class);
+        verify(templateRenderer).render(eq("transactionDigestTemplate"), variables.capture());
+        verify(mailSender, times(1)).send(sent.capture());
+        assertAll(
+                () -> assertThat(variables.getValue()).containsEntry("name", "John Doe").containsEntry("count", 2),
+                () -> assertThat(variables.getValue().get("items")).isEqualTo(List.of("Paid GBP 10.00", "Paid GBP 25.00")),
+                () -> assertThat(sent.getValue().getSubject()).isEqualTo("Your 2 recent transactions"),
+                () -> assertThat(sent.getValue().getAllRecipients()[0].toString()).isEqualTo("demo@gmail.com")
+        );
+    }
+
+    @Test
+    void testSendEmailDoesNotSendWhenRateLimited() {
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
+        doThrow(new RateLimitedException("Rate limit global per-minute has no token within PT2S"))
+                .when(rateLimiter).acquire("otp", "demo@gmail.com");
+        NotificationPayload payload = new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Subject", "Message");
+
+        assertThatThrownBy(() -> pubSubMailSenderService.sendEmail(payload))
+                .isInstanceOf(EmailDeliveryException.class)
+                .hasCauseInstanceOf(RateLimitedException.class);
+        verify(mailSender, never()).send(any(MimeMessage.class));
+    }
+
     @Test
     void testSendEmailFailure() {
-        when(templateEngine.process(any(String.class), any(Context.class))).thenReturn("Mocked Email Content");
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
         NotificationPayload payload = new NotificationPayload("otp","demo@gmail.com", "John Doe","Subject", "Message" );
         doThrow(new RuntimeException("Mail server error")).when(mailSender).send(any(MimeMessage.class));
         assertThatThrownBy(() -> pubSubMailSenderService.sendEmail(payload))
@@ -78,7 +133,7 @@ class PubSubMailSenderServiceTest {
 
     @Test
     void testSendEmailWithEmptyMessageContent() {
-        when(templateEngine.process(any(String.class), any(Context.class))).thenReturn("Mocked Email Content");
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
         NotificationPayload payload = new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Subject", "");
         pubSubMailSenderService.sendEmail(payload);
         verify(mailSender, times(1)).send(any(MimeMessage.class));
@@ -86,7 +141,7 @@ class PubSubMailSenderServiceTest {
 
     @Test
     void testSendEmailWithInvalidEmailAddress() {
-        when(templateEngine.process(any(String.class), any(Context.class))).thenReturn("Mocked Email Content");
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
         doThrow(new EmailDeliveryException("Failed to send email to: invalid-email")).when(mailSender).send(any(MimeMessage.class));
         NotificationPayload payload = new NotificationPayload("otp", "invalid-email", "John Doe", "Subject", "Message");
         assertThatThrownBy(() -> pubSubMailSenderService.sendEmail(payload))
@@ -97,7 +152,7 @@ class PubSubMailSenderServiceTest {
 
     @Test
     void testSendEmailWithDifferentTemplateTypes() {
-        when(templateEngine.process(any(String.class), any(Context.class))).thenReturn("Mocked Email Content");
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
         NotificationPayload otpPayload = new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Subject", "Message");
         pubSubMailSenderService.sendEmail(otpPayload);
         verify(mailSender, times(1)).send(any(MimeMessage.class));
@@ -114,7 +169,7 @@ class PubSubMailSenderServiceTest {
 
     @Test
     void testSendEmailWithMailException() {
-        when(templateEngine.process(any(String.class), any(Context.class))).thenReturn("Mocked Email Content");
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
         NotificationPayload payload = new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Subject", "Message");
         doThrow(new MailException("Mail sending error") {}).when(mailSender).send(any(MimeMessage.class));
         assertThatThrownBy(() -> pubSubMailSenderService.sendEmail(payload))
@@ -125,9 +180,123 @@ class PubSubMailSenderServiceTest {
 
     @Test
     void testSendEmailWithUnknownTemplateType() {
-        when(templateEngine.process(any(String.class), any(Context.class))).thenReturn("Mocked Email Content");
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
         NotificationPayload unknownPayload = new NotificationPayload("unknown", "demo@gmail.com", "John Doe", "Subject", "Message");
         pubSubMailSenderService.sendEmail(unknownPayload);
         verify(mailSender, times(1)).send(any(MimeMessage.class)); // Ensuring the email is attempted to be sent
     }
+
+    @Test
+    void testSendEmailRendersTemplateFromRegistry() {
+        when(templateRegistry.templateFor("otp")).thenReturn("otpTemplate");
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
+        pubSubMailSenderService.sendEmail(new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Subject", "Message"));
+        verify(templateRenderer).render(eq("otpTemplate"), anyMap());
+    }
+
+    @Test
+    void testSendEmailPrefersStreamTemplate() {
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
+        pubSubMailSenderService.sendEmail(new NotificationPayload("otp", "demo@gmail.com", "John Doe", "Subject", "Message"), "transactionTemplate");
+        assertAll(
+                () -> verify(templateRenderer).render(eq("transactionTemplate"), anyMap()),
+                () -> verify(templateRegistry, never()).templateFor(any())
+        );
+    }
+
+    @Test
+    void testSendEmailsSendsBatchInOneCall() {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage(Session.getInstance(new Properties())));
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
+        List<NotificationPayload> batch = List.of(
+                new NotificationPayload("transactioncomplete", "one@gmail.com", "John Doe", "Subject", "Message"),
+                new NotificationPayload("otp", "two@gmail.com", "Jane Doe", "Subject", "Message"),
+                new NotificationPayload("transactioncomplete", "three@gmail.com", "Jim Doe", "Subject", "Message"));
+
+        Map<NotificationPayload, Exception> failures = pubSubMailSenderService.sendEmails(batch, null);
+
+        assertThat(failures).isEmpty();
+        verify(mailSender, times(1)).send(any(MimeMessage[].class));
+    }
+
+    @Test
+    void testSendEmailsReportsFailuresPerMessage() {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage(Session.getInstance(new Properties())));
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
+        NotificationPayload good = new NotificationPayload("otp", "good@gmail.com", "John Doe", "Subject", "Message");
+        NotificationPayload bad = new NotificationPayload("otp", "bad@gmail.com", "Jane Doe", "Subject", "Message");
+        doAnswer(invocation -> {
+            MimeMessage[] sent = (MimeMessage[]) invocation.getRawArguments()[0];
+            throw new MailSendException(Map.of(sent[1], new RuntimeException("550 mailbox unavailable")));
+        }).when(mailSender).send(any(MimeMessage[].class));
+
+        Map<NotificationPayload, Exception> failures = pubSubMailSenderService.sendEmails(List.of(good, bad), null);
+
+        assertThat(failures).containsOnlyKeys(bad);
+    }
+
+    @Test
+    void testSendEmailsFailsWholeBatchWhenNoConnectionCanBeBorrowed() {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage(Session.getInstance(new Properties())));
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
+        NotificationPayload first = new NotificationPayload("otp", "one@gmail.com", "John Doe", "Subject", "Message");
+        NotificationPayload second = new NotificationPayload("otp", "two@gmail.com", "Jane Doe", "Subject", "Message");
+        MailSendException timeout = new MailSendException("No SMTP connection available within PT5S");
+        doThrow(timeout).when(mailSender).send(any(MimeMessage[].class));
+
+        Map<NotificationPayload, Exception> failures = pubSubMailSenderService.sendEmails(List.of(first, second), null);
+
+        assertAll(
+                () -> assertThat(failures).containsOnlyKeys(first, second),
+                () -> assertThat(failures.values()).containsOnly(timeout)
+        );
+    }
+
+    @Test
+    void testSendEmailsFailsOnlyMessagesRefusedByRateLimiter() {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage(Session.getInstance(new Properties())));
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
+        NotificationPayload allowed = new NotificationPayload("transactioncomplete", "one@gmail.com", "John Doe", "Subject", "Message");
+        NotificationPayload throttled = new NotificationPayload("transactioncomplete", "two@yahoo.com", "Jane Doe", "Subject", "Message");
+        doThrow(new RateLimitedException("Rate limit domain yahoo.com has no token within PT2S"))
+                .when(rateLimiter).acquire("transactioncomplete", "two@yahoo.com");
+
+        Map<NotificationPayload, Exception> failures = pubSubMailSenderService.sendEmails(List.of(allowed, throttled), null);
+
+        assertAll(
+                () -> assertThat(failures).containsOnlyKeys(throttled),
+                () -> assertThat(failures.get(throttled)).isInstanceOf(RateLimitedException.class),
+                () -> verify(rateLimiter).acquire("transactioncomplete", "one@gmail.com"),
+                () -> verify(mailSender).send(any(MimeMessage[].class))
+        );
+    }
+
+    @Test
+    void testSendEmailAsyncHandsMessageToBatcher() {
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
+        when(mailBatcher.submit(any(MimeMessage.class))).thenReturn(CompletableFuture.completedFuture(null));
+        NotificationPayload payload = new NotificationPayload("transactioncomplete", "demo@gmail.com", "John Doe", "Subject", "Message");
+
+        CompletableFuture<Void> result = pubSubMailSenderService.sendEmailAsync(payload, null);
+
+        assertAll(
+                () -> assertThat(result).isCompleted(),
+                () -> verify(mailBatcher).submit(any(MimeMessage.class)),
+                () -> verify(mailSender, never()).send(any(MimeMessage.class))
+        );
+    }
+
+    @Test
+    void testSendEmailAsyncReportsDeliveryFailure() {
+        when(templateRenderer.render(any(String.class), anyMap())).thenReturn("Mocked Email Content");
+        when(mailBatcher.submit(any(MimeMessage.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("550 mailbox unavailable")));
+        NotificationPayload payload = new NotificationPayload("transactioncomplete", "bad@gmail.com", "John Doe", "Subject", "Message");
+
+        assertThat(pubSubMailSenderService.sendEmailAsync(payload, null))
+                .failsWithin(Duration.ZERO)
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(EmailDeliveryException.class)
+                .withMessageContaining("Failed to send email to: bad@gmail.com");
+    }
 }
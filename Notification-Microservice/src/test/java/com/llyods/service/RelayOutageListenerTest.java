@@ -0,0 +1,76 @@
+package com.llyods.service;
+
+import com.llyods.config.MailCircuitBreakerProperties;
+import com.llyods.config.SubscriptionRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RelayOutageListenerTest {
+
+    @Mock
+    private SubscriptionRegistry subscriptionRegistry;
+
+    @Mock
+    private ObjectProvider<SubscriptionRegistry> subscriptionRegistryProvider;
+
+    private final CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("smtp");
+    private final MailCircuitBreakerProperties properties = new MailCircuitBreakerProperties();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(subscriptionRegistryProvider.getIfAvailable()).thenReturn(subscriptionRegistry);
+    }
+
+    @Test
+    void testPausesWhileOpenAndResumesForProbes() {
+        listener().register();
+
+        circuitBreaker.transitionToOpenState();
+        circuitBreaker.transitionToHalfOpenState();
+
+        assertAll(
+                () -> verify(subscriptionRegistry).pause(),
+                () -> verify(subscriptionRegistry).resume()
+        );
+    }
+
+    @Test
+    void testNackActionKeepsSubscriptionsRunning() {
+        properties.setOpenAction(MailCircuitBreakerProperties.OpenAction.NACK);
+        listener().register();
+
+        circuitBreaker.transitionToOpenState();
+
+        verifyNoInteractions(subscriptionRegistry);
+    }
+
+    @Test
+    void testReportsRelayUnavailableOnlyWhileOpen() {
+        RelayOutageListener listener = listener();
+        boolean closed = listener.isRelayUnavailable();
+        circuitBreaker.transitionToOpenState();
+        boolean open = listener.isRelayUnavailable();
+        circuitBreaker.transitionToHalfOpenState();
+        boolean halfOpen = listener.isRelayUnavailable();
+
+        assertAll(
+                () -> assertThat(closed).isFalse(),
+                () -> assertThat(open).isTrue(),
+                () -> assertThat(halfOpen).isFalse()
+        );
+    }
+
+    private RelayOutageListener listener() {
+        return new RelayOutageListener(circuitBreaker, properties, subscriptionRegistryProvider);
+    }
+}
@@ -0,0 +1,98 @@
+package com.llyods.service;
+
+import com.llyods.config.RetryMode;
+import com.llyods.config.RetryProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class RetrySchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RetryProperties properties = new RetryProperties();
+    private RetryScheduler retryScheduler;
+
+    @BeforeEach
+    void setUp() {
+        properties.setMode(RetryMode.SCHEDULED);
+        properties.setMaxAttempts(3);
+        properties.setDelay(2000L);
+        properties.setMultiplier(1.5);
+        properties.setMaxDelay(5000L);
+        retryScheduler = new RetryScheduler(properties, meterRegistry);
+        retryScheduler.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        retryScheduler.stop();
+    }
+
+    @Test
+    void testBackoffMatchesRetryTemplatePolicy() {
+        assertAll(
+                () -> assertThat(retryScheduler.backoffMillis(1)).isEqualTo(2000L),
+                () -> assertThat(retryScheduler.backoffMillis(2)).isEqualTo(3000L),
+                () -> assertThat(retryScheduler.backoffMillis(3)).isEqualTo(4500L),
+                () -> assertThat(retryScheduler.backoffMillis(4)).isEqualTo(5000L)
+        );
+    }
+
+    @Test
+    void testRetryRunsAfterBackoffWithoutBlockingCaller() throws InterruptedException {
+        properties.setDelay(10L);
+        CountDownLatch ran = new CountDownLatch(1);
+
+        boolean scheduled = retryScheduler.scheduleRetry(1, ran::countDown);
+
+        assertAll(
+                () -> assertThat(scheduled).isTrue(),
+                () -> assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue(),
+                () -> assertThat(meterRegistry.get("notification.retry.scheduled").counter().count()).isEqualTo(1)
+        );
+    }
+
+    @Test
+    void testNoRetryOnceAttemptsAreExhausted() {
+        assertThat(retryScheduler.scheduleRetry(3, () -> { })).isFalse();
+    }
+
+    @Test
+    void testNoScheduledRetryOutsideScheduledMode() {
+        properties.setMode(RetryMode.NACK);
+        assertThat(retryScheduler.scheduleRetry(1, () -> { })).isFalse();
+    }
+
+    @Test
+    void testExhaustionCountsAttemptsTheWayEachModeRetries() {
+        assertAll(
+                () -> assertThat(retryScheduler.isExhausted(2, 1)).isFalse(),
+                () -> assertThat(retryScheduler.isExhausted(3, 1)).isTrue(),
+                () -> {
+                    properties.setMode(RetryMode.NACK);
+                    assertThat(retryScheduler.isExhausted(1, 2)).isFalse();
+                    assertThat(retryScheduler.isExhausted(1, 3)).isTrue();
+                },
+                () -> {
+                    properties.setMode(RetryMode.BLOCKING);
+                    assertThat(retryScheduler.isExhausted(1, 1)).isTrue();
+                }
+        );
+    }
+
+    @Test
+    void testAckDeadlineFollowsBackoffRoundedUpToSeconds() {
+        assertAll(
+                () -> assertThat(retryScheduler.ackDeadlineSeconds(1)).isEqualTo(2),
+                () -> assertThat(retryScheduler.ackDeadlineSeconds(3)).isEqualTo(5),
+                () -> assertThat(retryScheduler.ackDeadlineSeconds(10)).isEqualTo(5)
+        );
+    }
+}
@@ -0,0 +1,83 @@
+package com.llyods.service;
+
+import com.llyods.config.SupersedeProperties;
+import com.llyods.model.NotificationPayload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class SupersedeServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SupersedeProperties properties = new SupersedeProperties();
+
+    @Test
+    void shouldKeepOnlyLatestCodePerRecipientAndType() {
+        SupersedeService service = new SupersedeService(properties, meterRegistry);
+        Instant now = Instant.now();
+
+        SupersedeService.Ticket first = service.register(otp("demo@gmail.com"), now);
+        SupersedeService.Ticket resent = service.register(otp("DEMO@gmail.com"), now.plusSeconds(5));
+        SupersedeService.Ticket otherRecipient = service.register(otp("other@gmail.com"), now);
+        SupersedeService.Ticket reset = service.register(
+                new NotificationPayload("resetpassword", "demo@gmail.com", "John Doe", "Reset", "654321"), now);
+
+        assertAll(
+                () -> assertThat(service.dropIfSuperseded(first)).isTrue(),
+                () -> assertThat(service.dropIfSuperseded(resent)).isFalse(),
+                () -> assertThat(service.dropIfSuperseded(otherRecipient)).isFalse(),
+                () -> assertThat(service.dropIfSuperseded(reset)).isFalse(),
+                () -> assertThat(meterRegistry.get("notification.superseded").counter().count()).isEqualTo(1)
+        );
+    }
+
+    @Test
+    void shouldNotLetOlderCodeDeliveredOutOfOrderTakeOver() {
+        SupersedeService service = new SupersedeService(properties, meterRegistry);
+        Instant now = Instant.now();
+
+        SupersedeService.Ticket latest = service.register(otp("demo@gmail.com"), now);
+        SupersedeService.Ticket late = service.register(otp("demo@gmail.com"), now.minusSeconds(30));
+
+        assertAll(
+                () -> assertThat(service.dropIfSuperseded(late)).isTrue(),
+                () -> assertThat(service.dropIfSuperseded(latest)).isFalse()
+        );
+    }
+
+    @Test
+    void shouldSupersedeUnregisteredCodeOnlyByOneRegisteredAfterIt() {
+        SupersedeService service = new SupersedeService(properties, meterRegistry);
+        Instant failedAt = Instant.now().minusSeconds(60);
+        service.register(otp("demo@gmail.com"), failedAt.plusSeconds(10));
+        service.register(otp("other@gmail.com"), failedAt.minusSeconds(10));
+
+        assertAll(
+                () -> assertThat(service.dropIfSupersededSince(otp("DEMO@gmail.com"), failedAt)).isTrue(),
+                () -> assertThat(service.dropIfSupersededSince(otp("other@gmail.com"), failedAt)).isFalse(),
+                () -> assertThat(service.dropIfSupersededSince(otp("unknown@gmail.com"), failedAt)).isFalse()
+        );
+    }
+
+    @Test
+    void shouldIgnoreOtherTypesAndDisabledService() {
+        SupersedeService service = new SupersedeService(properties, meterRegistry);
+        properties.setEnabled(false);
+        SupersedeService disabled = new SupersedeService(properties, new SimpleMeterRegistry());
+
+        assertAll(
+                () -> assertThat(service.register(new NotificationPayload("transactioncomplete", "demo@gmail.com",
+                        "John Doe", "Transaction complete", "Paid"), Instant.now())).isNull(),
+                () -> assertThat(disabled.register(otp("demo@gmail.com"), Instant.now())).isNull(),
+                () -> assertThat(service.dropIfSuperseded(null)).isFalse()
+        );
+    }
+
+    private NotificationPayload otp(String mail) {
+        return new NotificationPayload("otp", mail, "John Doe", "Your code", "123456");
+    }
+}
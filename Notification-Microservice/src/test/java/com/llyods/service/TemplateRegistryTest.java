@@ -0,0 +1,98 @@
+package com.llyods.service;
+
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.config.TemplateProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class TemplateRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TemplateEngine templateEngine;
+    private TemplateProperties properties;
+    private SubscriptionProperties subscriptionProperties;
+
+    @BeforeEach
+    void setUp() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        properties = new TemplateProperties();
+        subscriptionProperties = new SubscriptionProperties();
+    }
+
+    @Test
+    void shouldMapTypesAndFallBackForUnknownTypes() {
+        TemplateRegistry registry = new TemplateRegistry(templateEngine, properties, subscriptionProperties, meterRegistry);
+        assertAll(
+                () -> assertThat(registry.templateFor("OTP")).isEqualTo("otpTemplate"),
+                () -> assertThat(registry.templateFor("transactioncomplete")).isEqualTo("transactionTemplate"),
+                () -> assertThat(registry.templateFor("marketing")).isEqualTo("defaultTemplate"),
+                () -> assertThat(registry.templateFor(null)).isEqualTo("defaultTemplate"),
+                () -> assertThat(meterRegistry.get("notification.template.fallback").counter().count()).isEqualTo(2)
+        );
+    }
+
+    @Test
+    void shouldLookUpMappedTemplateWithoutCountingFallback() {
+        TemplateRegistry registry = new TemplateRegistry(templateEngine, properties, subscriptionProperties, meterRegistry);
+        assertAll(
+                () -> assertThat(registry.mappedTemplate("OTP")).isEqualTo("otpTemplate"),
+                () -> assertThat(registry.mappedTemplate("marketing")).isNull(),
+                () -> assertThat(meterRegistry.get("notification.template.fallback").counter().count()).isZero()
+        );
+    }
+
+    @Test
+    void shouldWarmUpEveryKnownTemplate() {
+        TemplateRegistry registry = new TemplateRegistry(templateEngine, properties, subscriptionProperties, meterRegistry);
+        registry.afterPropertiesSet();
+        templateEngine.process("otpTemplate", new Context());
+
+        assertAll(
+                () -> assertThat(meterRegistry.get("notification.template.cache.size").gauge().value()).isEqualTo(5),
+                () -> assertThat(meterRegistry.get("notification.template.cache.gets").tag("result", "miss").functionCounter().count()).isGreaterThanOrEqualTo(5),
+                () -> assertThat(meterRegistry.get("notification.template.cache.gets").tag("result", "hit").functionCounter().count()).isGreaterThanOrEqualTo(1)
+        );
+    }
+
+    @Test
+    void shouldFailStartupWhenMappedTemplateIsMissing() {
+        properties.setTypes(Map.of("otp", "otpTemplate", "statement", "statementTemplate"));
+        TemplateRegistry registry = new TemplateRegistry(templateEngine, properties, subscriptionProperties, meterRegistry);
+
+        assertThatThrownBy(registry::afterPropertiesSet)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("statementTemplate")
+                .hasMessageNotContaining("otpTemplate=");
+    }
+
+    @Test
+    void shouldCheckStreamTemplates() {
+        SubscriptionProperties.Stream stream = new SubscriptionProperties.Stream();
+        stream.setName("statement");
+        stream.setTemplate("missingStreamTemplate");
+        subscriptionProperties.setStreams(List.of(stream));
+        TemplateRegistry registry = new TemplateRegistry(templateEngine, properties, subscriptionProperties, meterRegistry);
+
+        assertThatThrownBy(registry::afterPropertiesSet)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("missingStreamTemplate");
+    }
+}
@@ -0,0 +1,93 @@
+package com.llyods.service;
+
+import com.llyods.config.SubscriptionProperties;
+import com.llyods.config.TemplateProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class TemplateRendererTest {
+
+    private TemplateEngine templateEngine;
+    private TemplateProperties properties;
+    private TemplateRegistry templateRegistry;
+
+    @BeforeEach
+    void setUp() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        properties = new TemplateProperties();
+        templateRegistry = new TemplateRegistry(templateEngine, properties, new SubscriptionProperties(), new SimpleMeterRegistry());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"otpTemplate", "passwordResetTemplate", "passwordUpdateSuccessTemplate", "transactionTemplate", "defaultTemplate"})
+    void shouldRenderByteIdenticalToThymeleaf(String template) {
+        TemplateRenderer renderer = renderer();
+        Map<String, Object> variables = variables("Ann-Marie O'Neil & <Sons>", "https://example.com/reset?token=9f&id=\"42\"");
+
+        assertAll(
+                () -> assertThat(renderer.isPrecompiled(template)).isTrue(),
+                () -> assertThat(renderer.render(template, variables).getBytes(StandardCharsets.UTF_8))
+                        .isEqualTo(thymeleaf(template, variables).getBytes(StandardCharsets.UTF_8))
+        );
+    }
+
+    @Test
+    void shouldFallBackToThymeleafForEmptyVariables() {
+        TemplateRenderer renderer = renderer();
+        Map<String, Object> variables = variables("John Doe", null);
+
+        assertThat(renderer.render("passwordResetTemplate", variables))
+                .isEqualTo(thymeleaf("passwordResetTemplate", variables));
+    }
+
+    @Test
+    void shouldNotPrecompileInThymeleafMode() {
+        properties.setRenderMode(TemplateProperties.RenderMode.THYMELEAF);
+        TemplateRenderer renderer = renderer();
+        Map<String, Object> variables = variables("John Doe", "123456");
+
+        assertAll(
+                () -> assertThat(renderer.isPrecompiled("otpTemplate")).isFalse(),
+                () -> assertThat(renderer.render("otpTemplate", variables)).isEqualTo(thymeleaf("otpTemplate", variables))
+        );
+    }
+
+    private TemplateRenderer renderer() {
+        TemplateRenderer renderer = new TemplateRenderer(templateEngine, templateRegistry, properties);
+        renderer.afterPropertiesSet();
+        return renderer;
+    }
+
+    private String thymeleaf(String template, Map<String, Object> variables) {
+        Context context = new Context();
+        context.setVariables(variables);
+        return templateEngine.process(template, context);
+    }
+
+    private static Map<String, Object> variables(String name, String messageContent) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("name", name);
+        variables.put("messageContent", messageContent);
+        return variables;
+    }
+}
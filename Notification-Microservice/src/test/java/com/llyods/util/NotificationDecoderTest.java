@@ -0,0 +1,62 @@
+package com.llyods.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import com.llyods.model.NotificationPayload;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class NotificationDecoderTest {
+
+    private static final String JSON = "{\"type\":\"transactioncomplete\",\"mail\":\"test@example.com\",\"name\":\"John Doe\",\"subject\":\"Test Subject\",\"messageContent\":\"£25.00 paid\"}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testDecodeBytes() throws Exception {
+        NotificationDecoder decoder = new NotificationDecoder(objectMapper, NotificationDecoder.Mode.STANDARD);
+
+        NotificationPayload payload = decoder.decode(JSON.getBytes(StandardCharsets.UTF_8));
+
+        assertAll(
+                () -> assertThat(payload.getType()).isEqualTo("transactioncomplete"),
+                () -> assertThat(payload.getMail()).isEqualTo("test@example.com"),
+                () -> assertThat(payload.getMessageContent()).isEqualTo("£25.00 paid")
+        );
+    }
+
+    @Test
+    void testDecodeByteStringWithBlackbird() throws Exception {
+        NotificationDecoder decoder = new NotificationDecoder(objectMapper, NotificationDecoder.Mode.BLACKBIRD);
+
+        NotificationPayload payload = decoder.decode(ByteString.copyFromUtf8(JSON));
+
+        assertAll(
+                () -> assertThat(payload.getName()).isEqualTo("John Doe"),
+                () -> assertThat(payload.getSubject()).isEqualTo("Test Subject")
+        );
+    }
+
+    @Test
+    void testDecodePayloadAcceptsStringBytesAndByteString() throws Exception {
+        NotificationDecoder decoder = new NotificationDecoder(objectMapper, NotificationDecoder.Mode.STANDARD);
+
+        assertAll(
+                () -> assertThat(decoder.decodePayload(JSON).getMail()).isEqualTo("test@example.com"),
+                () -> assertThat(decoder.decodePayload(JSON.getBytes(StandardCharsets.UTF_8)).getMail()).isEqualTo("test@example.com"),
+                () -> assertThat(decoder.decodePayload(ByteString.copyFromUtf8(JSON)).getMail()).isEqualTo("test@example.com")
+        );
+    }
+
+    @Test
+    void testDecodeMalformedJson() {
+        NotificationDecoder decoder = new NotificationDecoder(objectMapper, NotificationDecoder.Mode.STANDARD);
+        assertThatThrownBy(() -> decoder.decode("{\"type\":".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(Exception.class);
+    }
+}
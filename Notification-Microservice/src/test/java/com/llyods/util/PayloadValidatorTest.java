@@ -1,164 +1,86 @@
 package com.llyods.util;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.llyods.exception.InvalidPayloadException;
 import com.llyods.model.NotificationPayload;
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
-import org.mockito.MockitoAnnotations;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
-import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.assertAll;
 
 class PayloadValidatorTest {
 
-    @Mock
-    private ObjectMapper objectMapper;
-
-    @InjectMocks
-    private PayloadValidator payloadValidator;
-
-    @BeforeEach
-    void setUp() {
-        MockitoAnnotations.openMocks(this);
-    }
+    private final PayloadValidator payloadValidator = new PayloadValidator();
 
     @Test
-    void testValidateWithValidPayload() throws Exception {
-        String jsonPayload = "{\"type\":\"INFO\",\"mail\":\"test@example.com\",\"name\":\"John Doe\",\"subject\":\"Test Subject\",\"messageContent\":\"Test Message\"}";
+    void testValidateWithValidPayload() {
         NotificationPayload notificationPayload = new NotificationPayload("INFO", "test@example.com", "John Doe", "Test Subject", "Test Message");
+        assertDoesNotThrow(() -> payloadValidator.validate(notificationPayload));
+    }
 
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-
-        assertAll(
-                () -> assertDoesNotThrow(() -> payloadValidator.validate(jsonPayload)),
-                () -> verify(objectMapper, times(1)).readValue(jsonPayload, NotificationPayload.class)
-        );
+    @Test
+    void testValidateWithNullPayload() {
+        assertThatThrownBy(() -> payloadValidator.validate(null))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Invalid message payload: Empty message");
     }
 
     @Test
-    void testValidateWithMissingEmail() throws Exception {
-        String jsonPayload = "{\"type\":\"INFO\",\"name\":\"John Doe\",\"subject\":\"Test Subject\",\"messageContent\":\"Test Message\"}";
+    void testValidateWithMissingEmail() {
         NotificationPayload notificationPayload = new NotificationPayload("INFO", null, "John Doe", "Test Subject", "Test Message");
-
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-
-        assertAll(
-                () -> assertThatThrownBy(() -> payloadValidator.validate(jsonPayload))
-                        .isInstanceOf(InvalidPayloadException.class)
-                        .hasMessageContaining("Invalid message payload: Missing email"),
-                () -> verify(objectMapper, times(1)).readValue(jsonPayload, NotificationPayload.class)
-        );
+        assertThatThrownBy(() -> payloadValidator.validate(notificationPayload))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Invalid message payload: Missing email");
     }
 
     @Test
-    void testValidateWithEmptyEmail() throws Exception {
-        String jsonPayload = "{\"type\":\"INFO\",\"mail\":\"\",\"name\":\"John Doe\",\"subject\":\"Test Subject\",\"messageContent\":\"Test Message\"}";
+    void testValidateWithEmptyEmail() {
         NotificationPayload notificationPayload = new NotificationPayload("INFO", "", "John Doe", "Test Subject", "Test Message");
-
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-
-        assertAll(
-                () -> assertThatThrownBy(() -> payloadValidator.validate(jsonPayload))
-                        .isInstanceOf(InvalidPayloadException.class)
-                        .hasMessageContaining("Invalid message payload: Missing email"),
-                () -> verify(objectMapper, times(1)).readValue(jsonPayload, NotificationPayload.class)
-        );
+        assertThatThrownBy(() -> payloadValidator.validate(notificationPayload))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Invalid message payload: Missing email");
     }
 
     @Test
-    void testValidateWithInvalidEmailFormat() throws Exception {
-        String jsonPayload = "{\"type\":\"INFO\",\"mail\":\"invalid-email\",\"name\":\"John Doe\",\"subject\":\"Test Subject\",\"messageContent\":\"Test Message\"}";
+    void testValidateWithInvalidEmailFormat() {
         NotificationPayload notificationPayload = new NotificationPayload("INFO", "invalid-email", "John Doe", "Test Subject", "Test Message");
-
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-
-        assertAll(
-                () -> assertThatThrownBy(() -> payloadValidator.validate(jsonPayload))
-                        .isInstanceOf(InvalidPayloadException.class)
-                        .hasMessageContaining("Invalid email format"),
-                () -> verify(objectMapper, times(1)).readValue(jsonPayload, NotificationPayload.class)
-        );
+        assertThatThrownBy(() -> payloadValidator.validate(notificationPayload))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Invalid email format");
     }
 
     @Test
-    void testValidateWithDeserializationError() throws Exception {
-        String jsonPayload = "{\"type\":\"INFO\",\"mail\":\"test@example.com\",\"name\":\"John Doe\",\"subject\":\"Test Subject\",\"messageContent\":\"Test Message\"}";
-
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenThrow(new JsonProcessingException("Deserialization error") {});
-
-        assertAll(
-                () -> assertThatThrownBy(() -> payloadValidator.validate(jsonPayload))
-                        .isInstanceOf(InvalidPayloadException.class)
-                        .hasMessageContaining("Invalid message payload: Deserialization error"),
-                () -> verify(objectMapper, times(1)).readValue(jsonPayload, NotificationPayload.class)
-        );
-    }
-
-    @Test
-    void testValidateWithMissingSubject() throws Exception {
-        String jsonPayload = "{\"type\":\"INFO\",\"mail\":\"test@example.com\",\"name\":\"John Doe\",\"messageContent\":\"Test Message\"}";
+    void testValidateWithMissingSubject() {
         NotificationPayload notificationPayload = new NotificationPayload("INFO", "test@example.com", "John Doe", null, "Test Message");
-
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-
-        assertAll(
-                () -> assertThatThrownBy(() -> payloadValidator.validate(jsonPayload))
-                        .isInstanceOf(InvalidPayloadException.class)
-                        .hasMessageContaining("Invalid message payload: Missing subject"),
-                () -> verify(objectMapper, times(1)).readValue(jsonPayload, NotificationPayload.class)
-        );
+        assertThatThrownBy(() -> payloadValidator.validate(notificationPayload))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Invalid message payload: Missing subject");
     }
 
     @Test
-    void testValidateWithEmptySubject() throws Exception {
-        String jsonPayload = "{\"type\":\"INFO\",\"mail\":\"test@example.com\",\"name\":\"John Doe\",\"subject\":\"\",\"messageContent\":\"Test Message\"}";
+    void testValidateWithEmptySubject() {
         NotificationPayload notificationPayload = new NotificationPayload("INFO", "test@example.com", "John Doe", "", "Test Message");
-
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-
-        assertAll(
-                () -> assertThatThrownBy(() -> payloadValidator.validate(jsonPayload))
-                        .isInstanceOf(InvalidPayloadException.class)
-                        .hasMessageContaining("Invalid message payload: Missing subject"),
-                () -> verify(objectMapper, times(1)).readValue(jsonPayload, NotificationPayload.class)
-        );
+        assertThatThrownBy(() -> payloadValidator.validate(notificationPayload))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Invalid message payload: Missing subject");
     }
 
     @Test
-    void testValidateWithMissingMessageContent() throws Exception {
-        String jsonPayload = "{\"type\":\"INFO\",\"mail\":\"test@example.com\",\"name\":\"John Doe\",\"subject\":\"Test Subject\"}";
+    void testValidateWithMissingMessageContent() {
         NotificationPayload notificationPayload = new NotificationPayload("INFO", "test@example.com", "John Doe", "Test Subject", null);
-
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-
-        assertAll(
-                () -> assertThatThrownBy(() -> payloadValidator.validate(jsonPayload))
-                        .isInstanceOf(InvalidPayloadException.class)
-                        .hasMessageContaining("Invalid message payload: Invalid payload: Missing Content"),
-                () -> verify(objectMapper, times(1)).readValue(jsonPayload, NotificationPayload.class)
-        );
+        assertThatThrownBy(() -> payloadValidator.validate(notificationPayload))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Invalid payload: Missing Content");
     }
 
     @Test
-    void testValidateWithEmptyMessageContent() throws Exception {
-        String jsonPayload = "{\"type\":\"INFO\",\"mail\":\"test@example.com\",\"name\":\"John Doe\",\"subject\":\"Test Subject\",\"messageContent\":\"\"}";
+    void testValidateWithEmptyMessageContent() {
         NotificationPayload notificationPayload = new NotificationPayload("INFO", "test@example.com", "John Doe", "Test Subject", "");
-
-        when(objectMapper.readValue(jsonPayload, NotificationPayload.class)).thenReturn(notificationPayload);
-
-        assertAll(
-                () -> assertThatThrownBy(() -> payloadValidator.validate(jsonPayload))
-                        .isInstanceOf(InvalidPayloadException.class)
-                        .hasMessageContaining("Invalid message payload: Invalid payload: Missing Content"),
-                () -> verify(objectMapper, times(1)).readValue(jsonPayload, NotificationPayload.class)
-        );
+        assertThatThrownBy(() -> payloadValidator.validate(notificationPayload))
+                .isInstanceOf(InvalidPayloadException.class)
+                .hasMessageContaining("Invalid payload: Missing Content");
     }
+
     @Test
     void testIsValidEmail() {
         assertAll(
@@ -174,4 +96,17 @@ class PayloadValidatorTest {
                 () -> assertThat(payloadValidator.isValidEmail("")).isFalse()
         );
     }
+
+    @Test
+    void testIsValidEmailMatchesOriginalRegex() {
+        String[] samples = {
+                "a@b", "@b.com", "a b@c.com", "a@b@c.com", "a+tag@x.io", "a@b.com\n", "a@\nb.com",
+                "UPPER_case-1@host", "a@ ", "a!b@c.com", "é@c.com", "a@é.com", "a@b "
+        };
+        for (String sample : samples) {
+            assertThat(payloadValidator.isValidEmail(sample))
+                    .as(sample)
+                    .isEqualTo(sample.matches("^[A-Za-z0-9+_.-]+@(.+)$"));
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package com.llyods.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+class SegmentedTemplateTest {
+
+    private final Map<String, String> sentinels = new LinkedHashMap<>(Map.of("name", "__n__", "messageContent", "__m__"));
+
+    @Test
+    void shouldSpliceEscapedVariablesIntoSlots() {
+        SegmentedTemplate template = SegmentedTemplate.compile("<p>Hi __n__,</p><a href=\"__m__\">__m__</a>", sentinels);
+        StringBuilder out = new StringBuilder();
+
+        boolean rendered = template.renderTo(out, Map.of("name", "Tom & \"Jerry\"", "messageContent", "<b>'x'</b>"));
+
+        assertAll(
+                () -> assertThat(rendered).isTrue(),
+                () -> assertThat(template.slotCount()).isEqualTo(3),
+                () -> assertThat(out.toString()).isEqualTo(
+                        "<p>Hi Tom &amp; &quot;Jerry&quot;,</p><a href=\"&lt;b&gt;&#39;x&#39;&lt;/b&gt;\">&lt;b&gt;&#39;x&#39;&lt;/b&gt;</a>")
+        );
+    }
+
+    @Test
+    void shouldRefuseMissingOrEmptyVariables() {
+        SegmentedTemplate template = SegmentedTemplate.compile("<p>__n__</p>", sentinels);
+        StringBuilder out = new StringBuilder();
+
+        assertAll(
+                () -> assertThat(template.renderTo(out, Map.of("name", ""))).isFalse(),
+                () -> assertThat(template.renderTo(out, Map.of())).isFalse(),
+                () -> assertThat(out).isEmpty()
+        );
+    }
+
+    @Test
+    void shouldKeepTemplatesWithoutSlotsStatic() {
+        SegmentedTemplate template = SegmentedTemplate.compile("<p>static</p>", sentinels);
+        StringBuilder out = new StringBuilder();
+
+        assertAll(
+                () -> assertThat(template.renderTo(out, Map.of())).isTrue(),
+                () -> assertThat(out.toString()).isEqualTo("<p>static</p>")
+        );
+    }
+}